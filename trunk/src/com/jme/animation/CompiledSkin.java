@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2003-2008 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors 
+ *   may be used to endorse or promote products derived from this software 
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.jme.animation;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import com.jme.math.Quaternion;
+import com.jme.math.Vector3f;
+
+/**
+ * CompiledSkin is a flattened copy of the BoneInfluence cache of a SkinNode,
+ * laid out for fast skinning. Every vertex of a skin gets the same number of
+ * influence slots (the largest influence count found in that skin), stored as
+ * a bone index into a palette and a weight, with the bone space vertex and
+ * normal offsets packed in float arrays. Each frame the world transform of
+ * every bone used is written once into a float palette, then the skin
+ * vertices and normals are computed in a tight loop with no object access
+ * and no allocation.
+ * <p>
+ * A CompiledSkin holds no static state, so several skins may be updated from
+ * different threads at once. It must be recompiled whenever the influences it
+ * was built from change.
+ * 
+ * @see SkinNode#updateSkin()
+ */
+public class CompiledSkin {
+
+    /** Number of floats stored per bone in the palette. */
+    private static final int PALETTE_STRIDE = 15;
+
+    private final Bone[] bones;
+    private final float[] palette;
+
+    private final int[] influencesPerVertex;
+    private final int[][] boneIndices;
+    private final float[][] weights;
+    private final float[][] vertexOffsets;
+    private final float[][] normalOffsets;
+
+    /**
+     * Builds the compiled layout of the given influence cache. Influences
+     * without a bone, vertex offset or weight are dropped, as they do not
+     * affect the skin.
+     * 
+     * @param cache
+     *            the SkinNode influence cache, indexed by geometry then
+     *            vertex.
+     */
+    public CompiledSkin(ArrayList<BoneInfluence>[][] cache) {
+        IdentityHashMap<Bone, Integer> boneMap = new IdentityHashMap<Bone, Integer>();
+        ArrayList<Bone> boneList = new ArrayList<Bone>();
+
+        int geoms = cache.length;
+        influencesPerVertex = new int[geoms];
+        boneIndices = new int[geoms][];
+        weights = new float[geoms][];
+        vertexOffsets = new float[geoms][];
+        normalOffsets = new float[geoms][];
+
+        for (int geom = 0; geom < geoms; geom++) {
+            ArrayList<BoneInfluence>[] verts = cache[geom];
+            int vertCount = verts != null ? verts.length : 0;
+            int max = 0;
+            for (int vert = 0; vert < vertCount; vert++) {
+                if (verts[vert] != null) {
+                    max = Math.max(max, verts[vert].size());
+                }
+            }
+            influencesPerVertex[geom] = max;
+            int[] indices = boneIndices[geom] = new int[vertCount * max];
+            float[] weight = weights[geom] = new float[vertCount * max];
+            float[] vOffsets = vertexOffsets[geom] = new float[vertCount * max * 3];
+            float[] nOffsets = normalOffsets[geom] = new float[vertCount * max * 3];
+
+            for (int vert = 0; vert < vertCount; vert++) {
+                ArrayList<BoneInfluence> infs = verts[vert];
+                if (infs == null) {
+                    continue;
+                }
+                // valid influences are packed first, unused slots keep a
+                // zero weight
+                int slot = vert * max;
+                for (int x = 0, iSize = infs.size(); x < iSize; x++) {
+                    BoneInfluence inf = infs.get(x);
+                    // zero weights are dropped so that an empty first slot
+                    // means the vertex has no influence at all
+                    if (inf.bone == null || inf.vOffset == null
+                            || inf.weight == 0) {
+                        continue;
+                    }
+                    Integer boneIndex = boneMap.get(inf.bone);
+                    if (boneIndex == null) {
+                        boneIndex = boneList.size();
+                        boneMap.put(inf.bone, boneIndex);
+                        boneList.add(inf.bone);
+                    }
+                    indices[slot] = boneIndex;
+                    weight[slot] = inf.weight;
+                    vOffsets[slot * 3] = inf.vOffset.x;
+                    vOffsets[slot * 3 + 1] = inf.vOffset.y;
+                    vOffsets[slot * 3 + 2] = inf.vOffset.z;
+                    if (inf.nOffset != null) {
+                        nOffsets[slot * 3] = inf.nOffset.x;
+                        nOffsets[slot * 3 + 1] = inf.nOffset.y;
+                        nOffsets[slot * 3 + 2] = inf.nOffset.z;
+                    }
+                    slot++;
+                }
+            }
+        }
+
+        bones = boneList.toArray(new Bone[boneList.size()]);
+        palette = new float[bones.length * PALETTE_STRIDE];
+    }
+
+    /**
+     * @return the number of distinct bones affecting the skin.
+     */
+    public int getBoneCount() {
+        return bones.length;
+    }
+
+    /**
+     * @param geomIndex
+     *            the skin geometry index.
+     * @return the number of influence slots stored per vertex for the given
+     *         geometry.
+     */
+    public int getInfluencesPerVertex(int geomIndex) {
+        return influencesPerVertex[geomIndex];
+    }
+
+    /**
+     * Copies the current world rotation, scale and translation of every bone
+     * into the palette. Must be called once the skeleton has been updated and
+     * before {@link #skin(int, FloatBuffer, FloatBuffer)}.
+     */
+    public void updatePalette() {
+        for (int b = 0, p = 0; b < bones.length; b++, p += PALETTE_STRIDE) {
+            Bone bone = bones[b];
+            Quaternion q = bone.getWorldRotation();
+            // same as Quaternion.toRotationMatrix
+            float norm = q.norm();
+            float s = (norm == 1f) ? 2f : (norm > 0f) ? 2f / norm : 0;
+            float xs = q.x * s, ys = q.y * s, zs = q.z * s;
+            float xx = q.x * xs, xy = q.x * ys, xz = q.x * zs;
+            float xw = q.w * xs, yy = q.y * ys, yz = q.y * zs;
+            float yw = q.w * ys, zz = q.z * zs, zw = q.w * zs;
+            palette[p] = 1 - (yy + zz);
+            palette[p + 1] = xy - zw;
+            palette[p + 2] = xz + yw;
+            palette[p + 3] = xy + zw;
+            palette[p + 4] = 1 - (xx + zz);
+            palette[p + 5] = yz - xw;
+            palette[p + 6] = xz - yw;
+            palette[p + 7] = yz + xw;
+            palette[p + 8] = 1 - (xx + yy);
+
+            Vector3f scale = bone.getWorldScale();
+            palette[p + 9] = scale.x;
+            palette[p + 10] = scale.y;
+            palette[p + 11] = scale.z;
+
+            Vector3f trans = bone.getWorldTranslation();
+            palette[p + 12] = trans.x;
+            palette[p + 13] = trans.y;
+            palette[p + 14] = trans.z;
+        }
+    }
+
+    /**
+     * Writes the skinned vertices and normals of one skin geometry. Vertices
+     * without any influence are left untouched.
+     * 
+     * @param geomIndex
+     *            the skin geometry index.
+     * @param verts
+     *            the geometry's vertex buffer.
+     * @param norms
+     *            the geometry's normal buffer, may be null.
+     */
+    public void skin(int geomIndex, FloatBuffer verts, FloatBuffer norms) {
+        final int count = influencesPerVertex[geomIndex];
+        if (count == 0 || verts == null) {
+            return;
+        }
+        final int[] indices = boneIndices[geomIndex];
+        final float[] weight = weights[geomIndex];
+        final float[] vOffsets = vertexOffsets[geomIndex];
+        final float[] nOffsets = normalOffsets[geomIndex];
+        final float[] pal = palette;
+
+        int vertCount = weight.length / count;
+        vertCount = Math.min(vertCount, verts.limit() / 3);
+        boolean doNormals = norms != null;
+        if (doNormals) {
+            vertCount = Math.min(vertCount, norms.limit() / 3);
+        }
+
+        for (int vert = 0, slot = 0; vert < vertCount; vert++) {
+            int end = slot + count;
+            if (weight[slot] == 0) {
+                slot = end;
+                continue;
+            }
+            float vx = 0, vy = 0, vz = 0;
+            float nx = 0, ny = 0, nz = 0;
+            for (; slot < end; slot++) {
+                float w = weight[slot];
+                if (w == 0) {
+                    continue;
+                }
+                int p = indices[slot] * PALETTE_STRIDE;
+                int o = slot * 3;
+
+                float ox = vOffsets[o], oy = vOffsets[o + 1], oz = vOffsets[o + 2];
+                vx += w * ((pal[p] * ox + pal[p + 1] * oy + pal[p + 2] * oz)
+                        * pal[p + 9] + pal[p + 12]);
+                vy += w * ((pal[p + 3] * ox + pal[p + 4] * oy + pal[p + 5] * oz)
+                        * pal[p + 10] + pal[p + 13]);
+                vz += w * ((pal[p + 6] * ox + pal[p + 7] * oy + pal[p + 8] * oz)
+                        * pal[p + 11] + pal[p + 14]);
+
+                if (doNormals) {
+                    ox = nOffsets[o];
+                    oy = nOffsets[o + 1];
+                    oz = nOffsets[o + 2];
+                    nx += w * (pal[p] * ox + pal[p + 1] * oy + pal[p + 2] * oz);
+                    ny += w * (pal[p + 3] * ox + pal[p + 4] * oy + pal[p + 5] * oz);
+                    nz += w * (pal[p + 6] * ox + pal[p + 7] * oy + pal[p + 8] * oz);
+                }
+            }
+
+            int i = vert * 3;
+            verts.put(i, vx);
+            verts.put(i + 1, vy);
+            verts.put(i + 2, vz);
+            if (doNormals) {
+                norms.put(i, nx);
+                norms.put(i + 1, ny);
+                norms.put(i + 2, nz);
+            }
+        }
+    }
+}
@@ -35,6 +35,7 @@ package com.jme.animation;
 import java.io.IOException;
 import java.nio.FloatBuffer;
 import java.util.ArrayList;
+import java.util.List;
 
 import com.jme.math.Matrix4f;
 import com.jme.math.Quaternion;
@@ -43,6 +44,7 @@ import com.jme.renderer.Camera;
 import com.jme.scene.ConnectionPoint;
 import com.jme.scene.Geometry;
 import com.jme.scene.Node;
+import com.jme.util.WorkerPool;
 import com.jme.util.export.InputCapsule;
 import com.jme.util.export.JMEExporter;
 import com.jme.util.export.JMEImporter;
@@ -71,6 +73,7 @@ public class SkinNode extends Node implements Savable, BoneChangeListener {
     protected static Vector3f normal = new Vector3f();
 
     protected boolean needsRefresh = true;
+    private transient boolean boundNeedsUpdate;
 
     protected Node skins = null;
 
@@ -87,6 +90,9 @@ public class SkinNode extends Node implements Savable, BoneChangeListener {
     private final Vector3f tmpScale = new Vector3f();
 
     private boolean externalControl = false;
+
+    protected boolean useCompiledSkin = false;
+    protected transient CompiledSkin compiledSkin = null;
     
     /**
      * Empty Constructor to be used internally only.
@@ -170,6 +176,7 @@ public class SkinNode extends Node implements Savable, BoneChangeListener {
         i.boneId = bone.getName();
         if (!infs.contains(i))
         	infs.add(i);
+        compiledSkin = null;
     }
     
     public void setAnimation(BoneAnimation anim) {
@@ -223,6 +230,7 @@ public class SkinNode extends Node implements Savable, BoneChangeListener {
         i.boneId = boneId;
         if (!infs.contains(i))
         	infs.add(i);
+        compiledSkin = null;
     }
     
     public ConnectionPoint addConnectionPoint(String name, Bone b) {
@@ -249,6 +257,7 @@ public class SkinNode extends Node implements Savable, BoneChangeListener {
         for (int x = 0; x < cache.length; x++) {
         	cache[x] = new ArrayList[skins.getChild(x).getVertexCount()];
         }
+        compiledSkin = null;
     }
 
     /**
@@ -261,18 +270,67 @@ public class SkinNode extends Node implements Savable, BoneChangeListener {
      *            true if this is the top level being called.
      */
     public void updateGeometricState(float time, boolean initiator) {
+        refreshSkin(true);
+
+        super.updateGeometricState(time, initiator);
+    }
+
+    /**
+     * Assigns a new skeleton's bones and updates the skin if any bone changed
+     * since the last update.
+     * 
+     * @param updateBound
+     *            false to only mark the model bound of the skins for an update,
+     *            as bounding volumes must not be computed on several threads
+     *            at once.
+     */
+    private void refreshSkin(boolean updateBound) {
         if (newSkeletonAssigned) {
             assignSkeletonBoneInfluences();
         }
 
         if (!externalControl && skins != null && needsRefresh) {
         	updateSkin();
-        	skins.updateModelBound();
+        	if (updateBound) {
+        	    skins.updateModelBound();
+        	} else {
+        	    boundNeedsUpdate = true;
+        	}
 
         	needsRefresh = false;
         }
+    }
 
-        super.updateGeometricState(time, initiator);
+    /**
+     * Updates the skins of all the given SkinNodes on the {@link WorkerPool},
+     * ahead of their updateGeometricState call which then has nothing left to
+     * skin. The nodes must not share skeletons (or skeleton parents) and must
+     * use the compiled skin path.
+     * 
+     * @param skinNodes
+     *            the SkinNodes to skin.
+     * @see #setUseCompiledSkin(boolean)
+     */
+    public static void updateSkins(final List<? extends SkinNode> skinNodes) {
+        WorkerPool.getPool().invokeRange(skinNodes.size(), 1,
+                new WorkerPool.RangeTask() {
+                    public void run(int start, int end) {
+                        for (int i = start; i < end; i++) {
+                            SkinNode skinNode = skinNodes.get(i);
+                            skinNode.refreshSkin(false);
+                        }
+                    }
+                });
+
+        // oriented box and capsule bounds share static temporaries, so not in
+        // the task
+        for (int i = 0, n = skinNodes.size(); i < n; i++) {
+            SkinNode skinNode = skinNodes.get(i);
+            if (skinNode.boundNeedsUpdate) {
+                skinNode.skins.updateModelBound();
+                skinNode.boundNeedsUpdate = false;
+            }
+        }
     }
     
     /**
@@ -317,6 +375,7 @@ public class SkinNode extends Node implements Savable, BoneChangeListener {
                 influence.weight /= total;
             }
         }
+        compiledSkin = null;
     }
     
     public void setSkeleton(Bone b) {
@@ -344,6 +403,7 @@ public class SkinNode extends Node implements Savable, BoneChangeListener {
 	                }
             	}
             }
+            compiledSkin = null;
         }
 
         newSkeletonAssigned = false;
@@ -393,6 +453,7 @@ public class SkinNode extends Node implements Savable, BoneChangeListener {
                 }
             }
         }
+        compiledSkin = null;
     }
 
     /**
@@ -419,6 +480,33 @@ public class SkinNode extends Node implements Savable, BoneChangeListener {
         	skeleton.update();
         }
         
+        if (useCompiledSkin) {
+            if (compiledSkin == null) {
+                compiledSkin = new CompiledSkin(cache);
+            }
+            compiledSkin.updatePalette();
+            for (int index = cache.length; --index >= 0;) {
+                Geometry geom = (Geometry)skins.getChild(index);
+                compiledSkin.skin(index, geom.getVertexBuffer(), geom.getNormalBuffer());
+                geom.setHasDirtyVertices(true);
+            }
+        } else {
+            updateSkinInfluences();
+        }
+        
+        if (skeleton != null && skeleton.getParent() != null) {
+    		skeleton.getParent().getWorldTranslation().set(tmpTranslation);
+    		skeleton.getParent().getWorldRotation().set(tmpRotation);
+    		skeleton.getParent().getWorldScale().set(tmpScale);
+    		skeleton.updateWorldVectors(true);
+        }        
+    }
+
+    /**
+     * Positions the skin vertices by applying each BoneInfluence of the cache
+     * through {@link Bone#applyBone(BoneInfluence, Vector3f, Vector3f)}.
+     */
+    private void updateSkinInfluences() {
         FloatBuffer verts, norms;
 
         for (int index = cache.length; --index >= 0;) {
@@ -449,14 +537,34 @@ public class SkinNode extends Node implements Savable, BoneChangeListener {
                 }
             }
         }
-        
-        if (skeleton != null && skeleton.getParent() != null) {
-    		skeleton.getParent().getWorldTranslation().set(tmpTranslation);
-    		skeleton.getParent().getWorldRotation().set(tmpRotation);
-    		skeleton.getParent().getWorldScale().set(tmpScale);
-    		skeleton.updateWorldVectors(true);
-        }        
-    }   
+    }
+
+    /**
+     * Sets whether the skin is computed from a {@link CompiledSkin}, a flat
+     * copy of the influence cache rebuilt whenever influences change, or by
+     * walking the BoneInfluence cache. The compiled path is much faster and
+     * can run on several SkinNodes at once.
+     * 
+     * @param useCompiledSkin
+     *            true to use the compiled path, false (the default) to walk
+     *            the BoneInfluence cache.
+     */
+    public void setUseCompiledSkin(boolean useCompiledSkin) {
+        this.useCompiledSkin = useCompiledSkin;
+    }
+
+    public boolean isUseCompiledSkin() {
+        return useCompiledSkin;
+    }
+
+    /**
+     * Drops the compiled copy of the influence cache so it is rebuilt on next
+     * skin update. Must be called after changing BoneInfluences obtained
+     * through {@link #getCache()}.
+     */
+    public void invalidateCompiledSkin() {
+        compiledSkin = null;
+    }
 
     public ArrayList<BoneInfluence>[][] getCache() {
         return cache;
@@ -464,6 +572,7 @@ public class SkinNode extends Node implements Savable, BoneChangeListener {
 
     public void setCache(ArrayList<BoneInfluence>[][] cache) {
         this.cache = cache;
+        compiledSkin = null;
     }
 
     public void setBindMatrix(Matrix4f mat) {
@@ -476,6 +585,7 @@ public class SkinNode extends Node implements Savable, BoneChangeListener {
             ArrayList<BoneInfluence>[] temp2 = cache[index2];
             cache[index1] = temp2;
             cache[index2] = temp1;
+            compiledSkin = null;
         }
     }
 
@@ -498,6 +608,7 @@ public class SkinNode extends Node implements Savable, BoneChangeListener {
         skeleton = (Bone)cap.readSavable("skeleton", null);
         cache = cap.readSavableArrayListArray2D("cache", null);
         connectionPoints = cap.readSavableArrayList("connectionPoints", null);
+        compiledSkin = null;
         
         if (skeleton != null) {
             //skeleton.revertToBind();
@@ -538,6 +649,7 @@ public class SkinNode extends Node implements Savable, BoneChangeListener {
             }
         }
         normalizeWeights(geomIndex);
+        compiledSkin = null;
     }
     
     @SuppressWarnings("unchecked")
@@ -550,6 +662,7 @@ public class SkinNode extends Node implements Savable, BoneChangeListener {
                 newCache[x] = cache[x+1];
         }
         cache = newCache;
+        compiledSkin = null;
     }
 
 	public void setExternalControl(boolean externalControl) {
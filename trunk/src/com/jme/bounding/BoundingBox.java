@@ -37,7 +37,6 @@ import java.nio.FloatBuffer;
 
 import com.jme.intersection.IntersectionRecord;
 import com.jme.math.FastMath;
-import com.jme.math.Matrix3f;
 import com.jme.math.Plane;
 import com.jme.math.Quaternion;
 import com.jme.math.Ray;
@@ -68,15 +67,8 @@ public class BoundingBox extends BoundingVolume {
 
     public float xExtent, yExtent, zExtent;
 
-    private static final transient Matrix3f _compMat = new Matrix3f();
-    private static final float[] fWdU = new float[3];
-    private static final float[] fAWdU = new float[3];
-    private static final float[] fDdU = new float[3];
-    private static final float[] fADdU = new float[3];
-    private static final float[] fAWxDdU = new float[3];
+    // no static temporaries, bounds may be computed on several threads at once
 
-
-	private static final Vector3f[] verts = new Vector3f[3];
     /**
      * Default constructor instantiates a new <code>BoundingBox</code>
      * object.
@@ -123,8 +115,8 @@ public class BoundingBox extends BoundingVolume {
             return;
         }
 
-        Vector3f min = _compVect1.set(new Vector3f(Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY));
-        Vector3f max = _compVect2.set(new Vector3f(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY));
+        Vector3f min = new Vector3f(Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY);
+        Vector3f max = new Vector3f(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
         
         Vector3f point;
         for (int i = start; i < end; i++) {
@@ -149,9 +141,10 @@ public class BoundingBox extends BoundingVolume {
             return;
         }
     	
-    	Vector3f min = _compVect1.set(new Vector3f(Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY));
-        Vector3f max = _compVect2.set(new Vector3f(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY));
+    	Vector3f min = new Vector3f(Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY);
+        Vector3f max = new Vector3f(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
         Vector3f point;
+        Vector3f[] verts = new Vector3f[3];
         
         for (int i = start; i < end; i++) {
         	mesh.getTriangle(indices[i], verts);
@@ -172,17 +165,19 @@ public class BoundingBox extends BoundingVolume {
     }
 
     private void checkMinMax(Vector3f min, Vector3f max, Vector3f point) {
+        // min and max start out infinite, so the first point has to update
+        // both of them
         if (point.x < min.x)
             min.x = point.x;
-        else if (point.x > max.x)
+        if (point.x > max.x)
             max.x = point.x;
         if (point.y < min.y)
             min.y = point.y;
-        else if (point.y > max.y)
+        if (point.y > max.y)
             max.y = point.y;
         if (point.z < min.z)
             min.z = point.z;
-        else if (point.z > max.z)
+        if (point.z > max.z)
             max.z = point.z;
     }
 
@@ -202,27 +197,26 @@ public class BoundingBox extends BoundingVolume {
         if (points.remaining() <= 2) // we need at least a 3 float vector
             return;
 
-        BufferUtils.populateFromBuffer(_compVect1, points, 0);
-        float minX = _compVect1.x, minY = _compVect1.y, minZ = _compVect1.z;
-        float maxX = _compVect1.x, maxY = _compVect1.y, maxZ = _compVect1.z;
+        float minX = points.get(0), minY = points.get(1), minZ = points.get(2);
+        float maxX = minX, maxY = minY, maxZ = minZ;
 
-        for (int i = 1, len = points.remaining() / 3; i < len; i++) {
-            BufferUtils.populateFromBuffer(_compVect1, points, i);
+        for (int i = 3, len = points.remaining() / 3 * 3; i < len; i += 3) {
+            float x = points.get(i), y = points.get(i + 1), z = points.get(i + 2);
 
-            if (_compVect1.x < minX)
-                minX = _compVect1.x;
-            else if (_compVect1.x > maxX)
-                maxX = _compVect1.x;
+            if (x < minX)
+                minX = x;
+            else if (x > maxX)
+                maxX = x;
 
-            if (_compVect1.y < minY)
-                minY = _compVect1.y;
-            else if (_compVect1.y > maxY)
-                maxY = _compVect1.y;
+            if (y < minY)
+                minY = y;
+            else if (y > maxY)
+                maxY = y;
 
-            if (_compVect1.z < minZ)
-                minZ = _compVect1.z;
-            else if (_compVect1.z > maxZ)
-                maxZ = _compVect1.z;
+            if (z < minZ)
+                minZ = z;
+            else if (z > maxZ)
+                maxZ = z;
         }
 
         center.set(minX + maxX, minY + maxY, minZ + maxZ);
@@ -260,25 +254,24 @@ public class BoundingBox extends BoundingVolume {
         rotate.mult(box.center, box.center);
         box.center.addLocal(translate);
 
-        Matrix3f transMatrix = _compMat;
-        transMatrix.set(rotate);
-        // Make the rotation matrix all positive to get the maximum x/y/z extent
-        transMatrix.m00 = FastMath.abs(transMatrix.m00);
-        transMatrix.m01 = FastMath.abs(transMatrix.m01);
-        transMatrix.m02 = FastMath.abs(transMatrix.m02);
-        transMatrix.m10 = FastMath.abs(transMatrix.m10);
-        transMatrix.m11 = FastMath.abs(transMatrix.m11);
-        transMatrix.m12 = FastMath.abs(transMatrix.m12);
-        transMatrix.m20 = FastMath.abs(transMatrix.m20);
-        transMatrix.m21 = FastMath.abs(transMatrix.m21);
-        transMatrix.m22 = FastMath.abs(transMatrix.m22);
-
-        _compVect1.set(xExtent * scale.x, yExtent * scale.y, zExtent * scale.z);
-        transMatrix.mult(_compVect1, _compVect2);
+        // Take the absolute values of the rotation matrix to get the maximum
+        // x/y/z extent. This is done in locals instead of shared temp vars so
+        // bounds can be transformed from several threads at once.
+        float norm = rotate.norm();
+        float s = (norm == 1f) ? 2f : (norm > 0f) ? 2f / norm : 0;
+        float xs = rotate.x * s, ys = rotate.y * s, zs = rotate.z * s;
+        float xx = rotate.x * xs, xy = rotate.x * ys, xz = rotate.x * zs;
+        float xw = rotate.w * xs, yy = rotate.y * ys, yz = rotate.y * zs;
+        float yw = rotate.w * ys, zz = rotate.z * zs, zw = rotate.w * zs;
+
+        float ex = xExtent * scale.x, ey = yExtent * scale.y, ez = zExtent * scale.z;
         // Assign the biggest rotations after scales.
-        box.xExtent = FastMath.abs(_compVect2.x);
-        box.yExtent = FastMath.abs(_compVect2.y);
-        box.zExtent = FastMath.abs(_compVect2.z);
+        box.xExtent = FastMath.abs(FastMath.abs(1 - (yy + zz)) * ex
+                + FastMath.abs(xy - zw) * ey + FastMath.abs(xz + yw) * ez);
+        box.yExtent = FastMath.abs(FastMath.abs(xy + zw) * ex
+                + FastMath.abs(1 - (xx + zz)) * ey + FastMath.abs(yz - xw) * ez);
+        box.zExtent = FastMath.abs(FastMath.abs(xz - yw) * ex
+                + FastMath.abs(yz + xw) * ey + FastMath.abs(1 - (xx + yy)) * ez);
 
         return box;
     }
@@ -410,9 +403,9 @@ public class BoundingBox extends BoundingVolume {
         if (!volume.correctCorners)
             volume.computeCorners();
 
-        Vector3f min = _compVect1.set(center.x - xExtent, center.y - yExtent,
+        Vector3f min = new Vector3f(center.x - xExtent, center.y - yExtent,
                 center.z - zExtent);
-        Vector3f max = _compVect2.set(center.x + xExtent, center.y + yExtent,
+        Vector3f max = new Vector3f(center.x + xExtent, center.y + yExtent,
                 center.z + zExtent);
 
         for (int i = 1; i < volume.vectorStore.length; i++) {
@@ -461,31 +454,31 @@ public class BoundingBox extends BoundingVolume {
     private BoundingBox merge(Vector3f boxCenter, float boxX, float boxY,
             float boxZ, BoundingBox rVal) {
 
-        _compVect1.x = center.x - xExtent;
-        if (_compVect1.x > boxCenter.x - boxX)
-            _compVect1.x = boxCenter.x - boxX;
-        _compVect1.y = center.y - yExtent;
-        if (_compVect1.y > boxCenter.y - boxY)
-            _compVect1.y = boxCenter.y - boxY;
-        _compVect1.z = center.z - zExtent;
-        if (_compVect1.z > boxCenter.z - boxZ)
-            _compVect1.z = boxCenter.z - boxZ;
-
-        _compVect2.x = center.x + xExtent;
-        if (_compVect2.x < boxCenter.x + boxX)
-            _compVect2.x = boxCenter.x + boxX;
-        _compVect2.y = center.y + yExtent;
-        if (_compVect2.y < boxCenter.y + boxY)
-            _compVect2.y = boxCenter.y + boxY;
-        _compVect2.z = center.z + zExtent;
-        if (_compVect2.z < boxCenter.z + boxZ)
-            _compVect2.z = boxCenter.z + boxZ;
-
-        center.set(_compVect2).addLocal(_compVect1).multLocal(0.5f);
-
-        xExtent = _compVect2.x - center.x;
-        yExtent = _compVect2.y - center.y;
-        zExtent = _compVect2.z - center.z;
+        float minX = center.x - xExtent;
+        if (minX > boxCenter.x - boxX)
+            minX = boxCenter.x - boxX;
+        float minY = center.y - yExtent;
+        if (minY > boxCenter.y - boxY)
+            minY = boxCenter.y - boxY;
+        float minZ = center.z - zExtent;
+        if (minZ > boxCenter.z - boxZ)
+            minZ = boxCenter.z - boxZ;
+
+        float maxX = center.x + xExtent;
+        if (maxX < boxCenter.x + boxX)
+            maxX = boxCenter.x + boxX;
+        float maxY = center.y + yExtent;
+        if (maxY < boxCenter.y + boxY)
+            maxY = boxCenter.y + boxY;
+        float maxZ = center.z + zExtent;
+        if (maxZ < boxCenter.z + boxZ)
+            maxZ = boxCenter.z + boxZ;
+
+        center.set(maxX, maxY, maxZ).addLocal(minX, minY, minZ).multLocal(0.5f);
+
+        xExtent = maxX - center.x;
+        yExtent = maxY - center.y;
+        zExtent = maxZ - center.z;
 
         return rVal;
     }
@@ -612,51 +605,43 @@ public class BoundingBox extends BoundingVolume {
 
         float rhs;
 
-        Vector3f diff = ray.origin.subtract(getCenter(_compVect2), _compVect1);
+        Vector3f direction = ray.getDirection();
+        float diffX = ray.origin.x - center.x;
+        float diffY = ray.origin.y - center.y;
+        float diffZ = ray.origin.z - center.z;
 
-        fWdU[0] = ray.getDirection().dot(Vector3f.UNIT_X);
-        fAWdU[0] = FastMath.abs(fWdU[0]);
-        fDdU[0] = diff.dot(Vector3f.UNIT_X);
-        fADdU[0] = FastMath.abs(fDdU[0]);
-        if (fADdU[0] > xExtent && fDdU[0] * fWdU[0] >= 0.0) {
+        float fAWdU0 = FastMath.abs(direction.x);
+        if (FastMath.abs(diffX) > xExtent && diffX * direction.x >= 0.0) {
             return false;
         }
 
-        fWdU[1] = ray.getDirection().dot(Vector3f.UNIT_Y);
-        fAWdU[1] = FastMath.abs(fWdU[1]);
-        fDdU[1] = diff.dot(Vector3f.UNIT_Y);
-        fADdU[1] = FastMath.abs(fDdU[1]);
-        if (fADdU[1] > yExtent && fDdU[1] * fWdU[1] >= 0.0) {
+        float fAWdU1 = FastMath.abs(direction.y);
+        if (FastMath.abs(diffY) > yExtent && diffY * direction.y >= 0.0) {
             return false;
         }
 
-        fWdU[2] = ray.getDirection().dot(Vector3f.UNIT_Z);
-        fAWdU[2] = FastMath.abs(fWdU[2]);
-        fDdU[2] = diff.dot(Vector3f.UNIT_Z);
-        fADdU[2] = FastMath.abs(fDdU[2]);
-        if (fADdU[2] > zExtent && fDdU[2] * fWdU[2] >= 0.0) {
+        float fAWdU2 = FastMath.abs(direction.z);
+        if (FastMath.abs(diffZ) > zExtent && diffZ * direction.z >= 0.0) {
             return false;
         }
 
-        Vector3f wCrossD = ray.getDirection().cross(diff, _compVect2);
-
-        fAWxDdU[0] = FastMath.abs(wCrossD.dot(Vector3f.UNIT_X));
-        rhs = yExtent * fAWdU[2] + zExtent * fAWdU[1];
-        if (fAWxDdU[0] > rhs) {
+        // direction cross diff
+        float wCrossDX = direction.y * diffZ - direction.z * diffY;
+        rhs = yExtent * fAWdU2 + zExtent * fAWdU1;
+        if (FastMath.abs(wCrossDX) > rhs) {
             return false;
         }
 
-        fAWxDdU[1] = FastMath.abs(wCrossD.dot(Vector3f.UNIT_Y));
-        rhs = xExtent * fAWdU[2] + zExtent * fAWdU[0];
-        if (fAWxDdU[1] > rhs) {
+        float wCrossDY = direction.z * diffX - direction.x * diffZ;
+        rhs = xExtent * fAWdU2 + zExtent * fAWdU0;
+        if (FastMath.abs(wCrossDY) > rhs) {
             return false;
         }
 
-        fAWxDdU[2] = FastMath.abs(wCrossD.dot(Vector3f.UNIT_Z));
-        rhs = xExtent * fAWdU[1] + yExtent * fAWdU[0];
-        if (fAWxDdU[2] > rhs) {
+        float wCrossDZ = direction.x * diffY - direction.y * diffX;
+        rhs = xExtent * fAWdU1 + yExtent * fAWdU0;
+        if (FastMath.abs(wCrossDZ) > rhs) {
             return false;
-
         }
 
         return true;
@@ -666,8 +651,8 @@ public class BoundingBox extends BoundingVolume {
      * @see com.jme.bounding.BoundingVolume#intersectsWhere(com.jme.math.Ray)
      */
     public IntersectionRecord intersectsWhere(Ray ray) {
-        Vector3f diff = _compVect1.set(ray.origin).subtractLocal(center);
-        Vector3f direction = _compVect2.set(ray.direction);
+        Vector3f diff = ray.origin.subtract(center);
+        Vector3f direction = ray.direction;
 
         float[] t = { 0f, Float.POSITIVE_INFINITY };
         
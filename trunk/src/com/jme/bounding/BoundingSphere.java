@@ -71,9 +71,7 @@ public class BoundingSphere extends BoundingVolume {
 
 	static final private float radiusEpsilon = 1f + 0.00001f;
 
-	static final private FloatBuffer _mergeBuf = BufferUtils.createVector3Buffer(8);
-
-    static private final Vector3f[] verts = new Vector3f[3];
+    // no static temporaries, bounds may be computed on several threads at once
 
     /**
      * Default contstructor instantiates a new <code>BoundingSphere</code>
@@ -169,6 +167,7 @@ public class BoundingSphere extends BoundingVolume {
         }
     	
     	Vector3f[] vertList = new Vector3f[(end - start) * 3];
+        Vector3f[] verts = new Vector3f[3];
         
         int count = 0;
         for (int i = start; i < end; i++) {
@@ -197,10 +196,11 @@ public class BoundingSphere extends BoundingVolume {
         points.rewind();
         buf.put(points);
         buf.flip();
-        recurseMini(buf, buf.limit() / 3, 0, 0);
+        Vector3f[] temp = { new Vector3f(), new Vector3f(), new Vector3f(),
+                new Vector3f() };
+        recurseMini(buf, buf.limit() / 3, 0, 0, temp);
     }
 
-    private static Vector3f tempA = new Vector3f(), tempB = new Vector3f(), tempC = new Vector3f(), tempD = new Vector3f();
     /**
      * Used from calcWelzl. This function recurses to calculate a minimum
      * bounding sphere a few points at a time.
@@ -215,8 +215,11 @@ public class BoundingSphere extends BoundingVolume {
      * @param ap
      *            A variable simulating pointer arithmatic from C++, and offset
      *            in <code>points</code>.
+     * @param temp
+     *            four vectors to work with, shared by all levels.
      */
-    private void recurseMini(FloatBuffer points, int p, int b, int ap) {
+    private void recurseMini(FloatBuffer points, int p, int b, int ap,
+            Vector3f[] temp) {
         switch (b) {
         case 0:
             this.radius = 0;
@@ -227,34 +230,34 @@ public class BoundingSphere extends BoundingVolume {
             BufferUtils.populateFromBuffer(center, points, ap-1);
             break;
         case 2:
-            BufferUtils.populateFromBuffer(tempA, points, ap-1);
-            BufferUtils.populateFromBuffer(tempB, points, ap-2);
-            setSphere(tempA, tempB);
+            BufferUtils.populateFromBuffer(temp[0], points, ap-1);
+            BufferUtils.populateFromBuffer(temp[1], points, ap-2);
+            setSphere(temp[0], temp[1]);
             break;
         case 3:
-            BufferUtils.populateFromBuffer(tempA, points, ap-1);
-            BufferUtils.populateFromBuffer(tempB, points, ap-2);
-            BufferUtils.populateFromBuffer(tempC, points, ap-3);
-            setSphere(tempA, tempB, tempC);
+            BufferUtils.populateFromBuffer(temp[0], points, ap-1);
+            BufferUtils.populateFromBuffer(temp[1], points, ap-2);
+            BufferUtils.populateFromBuffer(temp[2], points, ap-3);
+            setSphere(temp[0], temp[1], temp[2]);
             break;
         case 4:
-            BufferUtils.populateFromBuffer(tempA, points, ap-1);
-            BufferUtils.populateFromBuffer(tempB, points, ap-2);
-            BufferUtils.populateFromBuffer(tempC, points, ap-3);
-            BufferUtils.populateFromBuffer(tempD, points, ap-4);
-            setSphere(tempA, tempB, tempC, tempD);
+            BufferUtils.populateFromBuffer(temp[0], points, ap-1);
+            BufferUtils.populateFromBuffer(temp[1], points, ap-2);
+            BufferUtils.populateFromBuffer(temp[2], points, ap-3);
+            BufferUtils.populateFromBuffer(temp[3], points, ap-4);
+            setSphere(temp[0], temp[1], temp[2], temp[3]);
             return;
         }
         for (int i = 0; i < p; i++) {
-            BufferUtils.populateFromBuffer(tempA, points, i+ap);
-            if (tempA.distanceSquared(center) - (radius * radius) > radiusEpsilon - 1f) {
+            BufferUtils.populateFromBuffer(temp[0], points, i+ap);
+            if (temp[0].distanceSquared(center) - (radius * radius) > radiusEpsilon - 1f) {
                 for (int j = i; j > 0; j--) {
-                    BufferUtils.populateFromBuffer(tempB, points, j + ap);
-                    BufferUtils.populateFromBuffer(tempC, points, j - 1 + ap);
-                    BufferUtils.setInBuffer(tempC, points, j + ap);
-                    BufferUtils.setInBuffer(tempB, points, j - 1 + ap);
+                    BufferUtils.populateFromBuffer(temp[1], points, j + ap);
+                    BufferUtils.populateFromBuffer(temp[2], points, j - 1 + ap);
+                    BufferUtils.setInBuffer(temp[2], points, j + ap);
+                    BufferUtils.setInBuffer(temp[1], points, j - 1 + ap);
                 }
-                recurseMini(points, i, b + 1, ap + 1);
+                recurseMini(points, i, b + 1, ap + 1, temp);
             }
         }
     }
@@ -554,20 +557,20 @@ public class BoundingSphere extends BoundingVolume {
         // compute edge points from the obb
         if (!volume.correctCorners)
             volume.computeCorners();
-        _mergeBuf.rewind();
+        FloatBuffer mergeBuf = FloatBuffer.allocate(8 * 3);
         for (int i = 0; i < 8; i++) {
-            _mergeBuf.put(volume.vectorStore[i].x);
-            _mergeBuf.put(volume.vectorStore[i].y);
-            _mergeBuf.put(volume.vectorStore[i].z);
+            mergeBuf.put(volume.vectorStore[i].x);
+            mergeBuf.put(volume.vectorStore[i].y);
+            mergeBuf.put(volume.vectorStore[i].z);
         }
 
         // remember old radius and center
         float oldRadius = radius;
-        Vector3f oldCenter = _compVect2.set( center );
+        Vector3f oldCenter = new Vector3f( center );
 
         // compute new radius and center from obb points
-        computeFromPoints(_mergeBuf);
-        Vector3f newCenter = _compVect3.set( center );
+        computeFromPoints(mergeBuf);
+        Vector3f newCenter = new Vector3f( center );
         float newRadius = radius;
 
         // restore old center and radius
@@ -582,8 +585,11 @@ public class BoundingSphere extends BoundingVolume {
 
     private BoundingVolume merge(float temp_radius, Vector3f temp_center,
             BoundingSphere rVal) {
-        Vector3f diff = temp_center.subtract(center, _compVect1);
-        float lengthSquared = diff.lengthSquared();
+        // kept in locals so bounds can be merged from several threads at once
+        float diffX = temp_center.x - center.x;
+        float diffY = temp_center.y - center.y;
+        float diffZ = temp_center.z - center.z;
+        float lengthSquared = diffX * diffX + diffY * diffY + diffZ * diffZ;
         float radiusDiff = temp_radius - radius;
 
         float fRDiffSqr = radiusDiff * radiusDiff;
@@ -610,7 +616,7 @@ public class BoundingSphere extends BoundingVolume {
         }
         if (length > radiusEpsilon) {
             float coeff = (length + radiusDiff) / (2.0f * length);
-            rCenter.set(center.addLocal(diff.multLocal(coeff)));
+            rCenter.set(center.addLocal(diffX * coeff, diffY * coeff, diffZ * coeff));
         } else {
             rCenter.set(center);
         }
@@ -675,9 +681,11 @@ public class BoundingSphere extends BoundingVolume {
     public boolean intersectsSphere(BoundingSphere bs) {
         if (!Vector3f.isValidVector(center) || !Vector3f.isValidVector(bs.center)) return false;
 
-        Vector3f diff = getCenter().subtract(bs.getCenter(), _compVect1);
+        float diffX = center.x - bs.center.x;
+        float diffY = center.y - bs.center.y;
+        float diffZ = center.z - bs.center.z;
         float rsum = getRadius() + bs.getRadius();
-        return (diff.dot(diff) <= rsum * rsum);
+        return (diffX * diffX + diffY * diffY + diffZ * diffZ <= rsum * rsum);
     }
 
     /*
@@ -720,17 +728,20 @@ public class BoundingSphere extends BoundingVolume {
     public boolean intersects(Ray ray) {
         if (!Vector3f.isValidVector(center)) return false;
 
-        Vector3f diff = _compVect1.set(ray.getOrigin())
-                .subtractLocal(getCenter());
+        Vector3f origin = ray.getOrigin();
+        float diffX = origin.x - center.x;
+        float diffY = origin.y - center.y;
+        float diffZ = origin.z - center.z;
         float radiusSquared = getRadius() * getRadius();
-        float a = diff.dot(diff) - radiusSquared;
+        float a = diffX * diffX + diffY * diffY + diffZ * diffZ - radiusSquared;
         if (a <= 0.0) {
             // in sphere
             return true;
         }
 
         // outside sphere
-        float b = ray.getDirection().dot(diff);
+        Vector3f direction = ray.getDirection();
+        float b = direction.x * diffX + direction.y * diffY + direction.z * diffZ;
         if (b >= 0.0) {
             return false;
         }
@@ -743,8 +754,7 @@ public class BoundingSphere extends BoundingVolume {
      * @see com.jme.bounding.BoundingVolume#intersectsWhere(com.jme.math.Ray)
      */
     public IntersectionRecord intersectsWhere(Ray ray) {
-        Vector3f diff = _compVect1.set(ray.getOrigin()).subtractLocal(
-                getCenter());
+        Vector3f diff = ray.getOrigin().subtract(getCenter());
         float a = diff.dot(diff) - (getRadius()*getRadius());
         float a1, discr, root;
         if (a <= 0.0) {
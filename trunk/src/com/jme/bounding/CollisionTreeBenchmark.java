@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2003-2008 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors 
+ *   may be used to endorse or promote products derived from this software 
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.jme.bounding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.jme.math.Ray;
+import com.jme.math.Vector3f;
+import com.jme.scene.TriMesh;
+import com.jme.scene.shape.Sphere;
+import com.jme.util.IntList;
+
+/**
+ * <code>CollisionTreeBenchmark</code> compares {@link CollisionTree} and
+ * {@link FlatCollisionTree} on two large spheres: the time to build the
+ * trees, the number of triangle accurate picks per second and the number of
+ * mesh against mesh collision queries per second. It also checks that both
+ * kinds of trees find the same triangles for every ray and for the collision
+ * query, and fails with an exception if they do not.
+ * <p>
+ * Usage: <code>CollisionTreeBenchmark [samples] [picks] [collisions]</code>
+ */
+public class CollisionTreeBenchmark {
+
+    public static void main(String[] args) {
+        Logger.getLogger("").setLevel(Level.WARNING);
+        int samples = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        int picks = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        int collisions = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+
+        TriMesh a = new Sphere("a", samples, samples, 10);
+        TriMesh b = new Sphere("b", samples / 2, samples / 2, 6);
+        b.getLocalTranslation().set(12, 1, 0);
+        b.getLocalRotation().fromAngles(0.3f, 0.2f, 0.1f);
+        a.updateGeometricState(0, true);
+        b.updateGeometricState(0, true);
+        System.out.println("Meshes: " + a.getTriangleCount() + " and "
+                + b.getTriangleCount() + " triangles");
+
+        // build, a few times to warm up and once timed
+        for (int i = 0; i < 3; i++) {
+            new CollisionTree(CollisionTree.Type.AABB).construct(a, true);
+            new FlatCollisionTree().construct(a);
+        }
+        long start = System.nanoTime();
+        new CollisionTree(CollisionTree.Type.AABB).construct(a, true);
+        new CollisionTree(CollisionTree.Type.AABB).construct(b, true);
+        double sortedBuild = ms(start);
+        CollisionTree treeA = new CollisionTree(CollisionTree.Type.AABB);
+        CollisionTree treeB = new CollisionTree(CollisionTree.Type.AABB);
+        start = System.nanoTime();
+        treeA.construct(a, false);
+        treeB.construct(b, false);
+        double legacyBuild = ms(start);
+        FlatCollisionTree flatA = new FlatCollisionTree();
+        FlatCollisionTree flatB = new FlatCollisionTree();
+        start = System.nanoTime();
+        flatA.construct(a);
+        flatB.construct(b);
+        double flatBuild = ms(start);
+        System.out.println("build:   CollisionTree " + format(legacyBuild)
+                + " ms (sorted " + format(sortedBuild)
+                + " ms), FlatCollisionTree " + format(flatBuild) + " ms ("
+                + flatA.getNodeCount() + " + " + flatB.getNodeCount()
+                + " nodes)");
+
+        // picks
+        Random rand = new Random(1);
+        Ray[] rays = new Ray[picks];
+        for (int i = 0; i < picks; i++) {
+            Vector3f dir = new Vector3f(rand.nextFloat() - .5f, rand
+                    .nextFloat() - .5f, rand.nextFloat() - .5f)
+                    .normalizeLocal();
+            rays[i] = new Ray(dir.mult(-30), dir);
+        }
+        ArrayList<Integer> legacyHits = new ArrayList<Integer>();
+        IntList flatHits = new IntList();
+        for (int i = 0; i < picks; i++) {
+            legacyHits.clear();
+            flatHits.clear();
+            legacyPick(treeA, a, rays[i], legacyHits);
+            flatA.intersect(rays[i], flatHits);
+            if (!sameTriangles(legacyHits, flatHits)) {
+                throw new IllegalStateException("pick " + i
+                        + ": CollisionTree found " + legacyHits
+                        + ", FlatCollisionTree found "
+                        + Arrays.toString(flatHits.toArray(null)));
+            }
+        }
+        start = System.nanoTime();
+        for (int i = 0; i < picks; i++) {
+            legacyHits.clear();
+            legacyPick(treeA, a, rays[i], legacyHits);
+        }
+        double legacyPick = ms(start);
+        start = System.nanoTime();
+        for (int i = 0; i < picks; i++) {
+            flatHits.clear();
+            flatA.intersect(rays[i], flatHits);
+        }
+        double flatPick = ms(start);
+        System.out.println("pick:    CollisionTree "
+                + format(picks / legacyPick * 1000) + "/s, FlatCollisionTree "
+                + format(picks / flatPick * 1000) + "/s");
+
+        // collisions
+        ArrayList<Integer> la = new ArrayList<Integer>(), lb = new ArrayList<Integer>();
+        IntList fa = new IntList(), fb = new IntList();
+        legacyCollide(treeA, a, treeB, la, lb);
+        flatA.intersect(flatB, fa, fb);
+        if (!sameTriangles(la, fa) || !sameTriangles(lb, fb)) {
+            throw new IllegalStateException("collide: CollisionTree found "
+                    + la.size() + " triangle pairs, FlatCollisionTree "
+                    + fa.size());
+        }
+        start = System.nanoTime();
+        for (int i = 0; i < collisions; i++) {
+            la.clear();
+            lb.clear();
+            legacyCollide(treeA, a, treeB, la, lb);
+        }
+        double legacyCollide = ms(start);
+        start = System.nanoTime();
+        for (int i = 0; i < collisions; i++) {
+            fa.clear();
+            fb.clear();
+            flatA.intersect(flatB, fa, fb);
+        }
+        double flatCollide = ms(start);
+        System.out.println("collide: CollisionTree "
+                + format(collisions / legacyCollide * 1000)
+                + "/s, FlatCollisionTree "
+                + format(collisions / flatCollide * 1000) + "/s ("
+                + fa.size() + " triangle pairs)");
+    }
+
+    private static void legacyPick(CollisionTree tree, TriMesh mesh, Ray ray,
+            ArrayList<Integer> hits) {
+        tree.getBounds().transform(mesh.getWorldRotation(),
+                mesh.getWorldTranslation(), mesh.getWorldScale(),
+                tree.getWorldBounds());
+        tree.intersect(ray, hits);
+    }
+
+    private static void legacyCollide(CollisionTree tree, TriMesh mesh,
+            CollisionTree other, ArrayList<Integer> a, ArrayList<Integer> b) {
+        tree.getBounds().transform(mesh.getWorldRotation(),
+                mesh.getWorldTranslation(), mesh.getWorldScale(),
+                tree.getWorldBounds());
+        tree.intersect(other, a, b);
+    }
+
+    private static boolean sameTriangles(ArrayList<Integer> legacy,
+            IntList flat) {
+        if (legacy.size() != flat.size()) {
+            return false;
+        }
+        int[] l = new int[legacy.size()];
+        for (int i = 0; i < l.length; i++) {
+            l[i] = legacy.get(i);
+        }
+        int[] f = flat.toArray(null);
+        Arrays.sort(l);
+        Arrays.sort(f);
+        return Arrays.equals(l, f);
+    }
+
+    private static double ms(long start) {
+        return (System.nanoTime() - start) / 1000000.0;
+    }
+
+    private static String format(double value) {
+        return String.valueOf(Math.round(value * 100) / 100.0);
+    }
+}
@@ -34,6 +34,7 @@ package com.jme.bounding;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -78,6 +79,11 @@ import com.jme.scene.TriMesh;
  * create protected tree manually. These are collision trees that you request
  * the manager to create and not allow them to be removed by the
  * CollisionTreeController.
+ * <br>
+ * Meshes can also be opted into using a {@link FlatCollisionTree} with
+ * generateFlatCollisionTree, or all new trees can be flat ones with
+ * setUseFlatTrees. Flat trees are kept in their own cache and TriMesh uses
+ * them instead of the regular trees whenever they are available.
  * 
  * @author Mark Powell
  * @see com.jme.bounding.CollisionTree
@@ -98,10 +104,12 @@ public class CollisionTreeManager {
 
     // the cache and protected list for storing trees.
     private Map<TriMesh, CollisionTree> cache;
+    private Map<TriMesh, FlatCollisionTree> flatCache;
     private List<TriMesh> protectedList;
 
     private boolean generateTrees = true;
     private boolean doSort;
+    private boolean useFlatTrees;
 
     private CollisionTree.Type treeType = CollisionTree.Type.AABB;
 
@@ -115,6 +123,7 @@ public class CollisionTreeManager {
      */
     private CollisionTreeManager() {
         cache = Collections.synchronizedMap(new LinkedHashMap<TriMesh, CollisionTree>(1));
+        flatCache = Collections.synchronizedMap(new LinkedHashMap<TriMesh, FlatCollisionTree>(1));
         setCollisionTreeController(new UsageTreeController());
     }
 
@@ -180,6 +189,99 @@ public class CollisionTreeManager {
         }
     }
 
+    /**
+     * getFlatCollisionTree obtains the flat collision tree assigned to a
+     * supplied TriMesh. If there is none and both generateTrees and
+     * useFlatTrees are true, a new flat tree is created and returned.
+     * 
+     * @param mesh
+     *            the mesh to use as the key for the tree to obtain.
+     * @return the flat tree associated with the mesh, or null.
+     */
+    public synchronized FlatCollisionTree getFlatCollisionTree(TriMesh mesh) {
+        TriMesh key = mesh instanceof SharedMesh ? ((SharedMesh) mesh)
+                .getTarget() : mesh;
+        FlatCollisionTree toReturn = flatCache.get(key);
+
+        if (toReturn == null) {
+            if (generateTrees && useFlatTrees) {
+                return generateFlatCollisionTree(mesh, false);
+            }
+            return null;
+        }
+        // see getCollisionTree
+        toReturn.mesh = mesh;
+        flatCache.remove(key);
+        flatCache.put(key, toReturn);
+        return toReturn;
+    }
+
+    /**
+     * creates new flat collision trees for all the TriMeshes of the provided
+     * spatial, opting them into using flat trees.
+     * 
+     * @param object
+     *            the Spatial to generate tree(s) for.
+     * @param protect
+     *            true to keep these trees from being removed, false otherwise.
+     */
+    public void generateFlatCollisionTree(Spatial object, boolean protect) {
+        if (object instanceof Node) {
+            Node n = (Node) object;
+            for (int i = n.getQuantity() - 1; i >= 0; i--) {
+                generateFlatCollisionTree(n.getChild(i), protect);
+            }
+        } else if (object instanceof TriMesh) {
+            generateFlatCollisionTree((TriMesh) object, protect);
+        }
+    }
+
+    /**
+     * generates a new flat tree for the mesh and places it in the cache. If
+     * the cache then holds more than maxElements flat trees, the least
+     * recently used ones that are not protected are removed.
+     * 
+     * @param mesh
+     *            the mesh to generate the tree for.
+     * @param protect
+     *            true if this tree is to be protected, false otherwise.
+     * @return the new flat collision tree.
+     */
+    public synchronized FlatCollisionTree generateFlatCollisionTree(
+            TriMesh mesh, boolean protect) {
+        if (mesh == null) {
+            return null;
+        }
+        TriMesh key = mesh instanceof SharedMesh ? ((SharedMesh) mesh)
+                .getTarget() : mesh;
+        FlatCollisionTree tree = new FlatCollisionTree();
+        tree.construct(key, maxTrisPerLeaf);
+        tree.mesh = mesh;
+        flatCache.put(key, tree);
+        if (protect) {
+            if (protectedList == null) {
+                protectedList = Collections.synchronizedList(new ArrayList<TriMesh>(1));
+            }
+            if (!protectedList.contains(key)) {
+                protectedList.add(key);
+            }
+        }
+
+        if (flatCache.size() > maxElements) {
+            synchronized (flatCache) {
+                Iterator<TriMesh> it = flatCache.keySet().iterator();
+                while (it.hasNext() && flatCache.size() > maxElements) {
+                    TriMesh oldest = it.next();
+                    if (protectedList == null
+                            || !protectedList.contains(oldest)) {
+                        it.remove();
+                    }
+                }
+            }
+        }
+        return tree;
+    }
+
     /**
      * creates a new collision tree for the provided spatial. If the spatial is
      * a node, it recursively calls generateCollisionTree for each child. If it
@@ -294,6 +396,7 @@ public class CollisionTreeManager {
      */
     public void removeCollisionTree(TriMesh mesh) {
         cache.remove(mesh);
+        flatCache.remove(mesh);
     }
 
     /**
@@ -327,6 +430,10 @@ public class CollisionTreeManager {
             generateCollisionTree(ct, mesh, protectedList != null
                     && protectedList.contains(mesh));
         }
+        if (flatCache.containsKey(mesh)) {
+            generateFlatCollisionTree(mesh, protectedList != null
+                    && protectedList.contains(mesh));
+        }
     }
 
     /**
@@ -368,6 +475,25 @@ public class CollisionTreeManager {
         this.doSort = doSort;
     }
 
+    /**
+     * @return true if trees generated on demand are flat trees.
+     * @see #setUseFlatTrees(boolean)
+     */
+    public boolean isUseFlatTrees() {
+        return useFlatTrees;
+    }
+
+    /**
+     * set if this manager should generate {@link FlatCollisionTree}s instead
+     * of regular CollisionTrees for the meshes that have no tree yet.
+     * 
+     * @param useFlatTrees
+     *            true to generate flat trees, false otherwise.
+     */
+    public void setUseFlatTrees(boolean useFlatTrees) {
+        this.useFlatTrees = useFlatTrees;
+    }
+
     /**
      * returns true if the manager will automatically generate new trees as
      * needed, false otherwise.
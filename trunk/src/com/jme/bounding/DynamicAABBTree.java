@@ -0,0 +1,528 @@
+/*
+ * Copyright (c) 2003-2008 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors 
+ *   may be used to endorse or promote products derived from this software 
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.jme.bounding;
+
+import java.util.List;
+
+import com.jme.math.Ray;
+import com.jme.math.Vector3f;
+
+/**
+ * <code>DynamicAABBTree</code> is a balanced binary tree of axis aligned
+ * boxes, built incrementally as proxies are created, moved and destroyed.
+ * Leaf boxes are "fattened" by a margin so that small movements do not
+ * require updating the tree. All nodes are stored in flat primitive arrays and
+ * addressed by index, so the tree creates no garbage once it has grown to its
+ * working size.
+ * <p>
+ * Queries are conservative: every proxy whose real box overlaps the query is
+ * reported, along with proxies whose fattened box only does.
+ * 
+ * @param <T>
+ *            the type of the user data stored with each proxy.
+ */
+public class DynamicAABBTree<T> {
+
+    private static final int NULL = -1;
+
+    private float margin = 0.1f;
+
+    // per node data, 6 floats per box: minX, minY, minZ, maxX, maxY, maxZ
+    private float[] boxes;
+    private int[] parent;
+    private int[] child1;
+    private int[] child2;
+    private int[] height;
+    private Object[] userData;
+
+    private int root = NULL;
+    private int capacity;
+    private int count;
+    private int freeList;
+
+    private int[] stack = new int[64];
+
+    public DynamicAABBTree() {
+        this(16);
+    }
+
+    /**
+     * @param initialCapacity
+     *            the number of nodes to allocate room for. The tree uses
+     *            about two nodes per proxy and grows as needed.
+     */
+    public DynamicAABBTree(int initialCapacity) {
+        capacity = Math.max(initialCapacity, 2);
+        boxes = new float[capacity * 6];
+        parent = new int[capacity];
+        child1 = new int[capacity];
+        child2 = new int[capacity];
+        height = new int[capacity];
+        userData = new Object[capacity];
+        buildFreeList(0);
+    }
+
+    /**
+     * Sets the amount leaf boxes are grown by, as a fraction of their
+     * largest extent. Defaults to 0.1.
+     * 
+     * @param margin
+     *            the new relative margin, 0 or more.
+     */
+    public void setMargin(float margin) {
+        this.margin = margin;
+    }
+
+    public float getMargin() {
+        return margin;
+    }
+
+    /**
+     * @return the number of proxies in the tree.
+     */
+    public int getProxyCount() {
+        return count;
+    }
+
+    /**
+     * @return the height of the tree, 0 for an empty or single proxy tree.
+     */
+    public int getHeight() {
+        return root == NULL ? 0 : height[root];
+    }
+
+    /**
+     * Adds a box to the tree.
+     * 
+     * @param min
+     *            the minimum corner of the box.
+     * @param max
+     *            the maximum corner of the box.
+     * @param data
+     *            the user data of the proxy.
+     * @return the id of the new proxy.
+     */
+    public int createProxy(Vector3f min, Vector3f max, T data) {
+        int node = allocateNode();
+        setFatBox(node, min, max);
+        userData[node] = data;
+        height[node] = 0;
+        insertLeaf(node);
+        count++;
+        return node;
+    }
+
+    /**
+     * Removes a proxy from the tree.
+     * 
+     * @param proxy
+     *            the id returned by createProxy.
+     */
+    public void destroyProxy(int proxy) {
+        removeLeaf(proxy);
+        freeNode(proxy);
+        count--;
+    }
+
+    /**
+     * Updates the box of a proxy. The tree is only changed if the new box is
+     * no longer contained in the proxy's fattened box.
+     * 
+     * @return true if the proxy was reinserted.
+     */
+    public boolean moveProxy(int proxy, Vector3f min, Vector3f max) {
+        int b = proxy * 6;
+        if (boxes[b] <= min.x && boxes[b + 1] <= min.y && boxes[b + 2] <= min.z
+                && boxes[b + 3] >= max.x && boxes[b + 4] >= max.y
+                && boxes[b + 5] >= max.z) {
+            return false;
+        }
+        removeLeaf(proxy);
+        setFatBox(proxy, min, max);
+        insertLeaf(proxy);
+        return true;
+    }
+
+    /**
+     * @return the user data of the given proxy.
+     */
+    @SuppressWarnings("unchecked")
+    public T getUserData(int proxy) {
+        return (T) userData[proxy];
+    }
+
+    /**
+     * Adds to <code>store</code> the user data of every proxy whose box
+     * overlaps the given box.
+     */
+    @SuppressWarnings("unchecked")
+    public void query(Vector3f min, Vector3f max, List<? super T> store) {
+        if (root == NULL) {
+            return;
+        }
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int node = stack[--top];
+            int b = node * 6;
+            if (boxes[b] > max.x || boxes[b + 1] > max.y || boxes[b + 2] > max.z
+                    || boxes[b + 3] < min.x || boxes[b + 4] < min.y
+                    || boxes[b + 5] < min.z) {
+                continue;
+            }
+            if (child1[node] == NULL) {
+                store.add((T) userData[node]);
+            } else {
+                top = push(top, child1[node]);
+                top = push(top, child2[node]);
+            }
+        }
+    }
+
+    /**
+     * Adds to <code>store</code> the user data of every proxy whose box is
+     * crossed by the line supporting the given ray. Boxes behind the ray
+     * origin are reported too, callers do the exact test.
+     */
+    @SuppressWarnings("unchecked")
+    public void query(Ray ray, List<? super T> store) {
+        if (root == NULL) {
+            return;
+        }
+        Vector3f o = ray.getOrigin(), d = ray.getDirection();
+        float invX = 1f / d.x, invY = 1f / d.y, invZ = 1f / d.z;
+
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int node = stack[--top];
+            if (!lineIntersects(node, o, d, invX, invY, invZ)) {
+                continue;
+            }
+            if (child1[node] == NULL) {
+                store.add((T) userData[node]);
+            } else {
+                top = push(top, child1[node]);
+                top = push(top, child2[node]);
+            }
+        }
+    }
+
+    private boolean lineIntersects(int node, Vector3f o, Vector3f d,
+            float invX, float invY, float invZ) {
+        int b = node * 6;
+        float tMin = Float.NEGATIVE_INFINITY, tMax = Float.POSITIVE_INFINITY;
+
+        if (d.x == 0) {
+            if (o.x < boxes[b] || o.x > boxes[b + 3]) return false;
+        } else {
+            float t1 = (boxes[b] - o.x) * invX, t2 = (boxes[b + 3] - o.x) * invX;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        }
+        if (d.y == 0) {
+            if (o.y < boxes[b + 1] || o.y > boxes[b + 4]) return false;
+        } else {
+            float t1 = (boxes[b + 1] - o.y) * invY, t2 = (boxes[b + 4] - o.y) * invY;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        }
+        if (d.z == 0) {
+            if (o.z < boxes[b + 2] || o.z > boxes[b + 5]) return false;
+        } else {
+            float t1 = (boxes[b + 2] - o.z) * invZ, t2 = (boxes[b + 5] - o.z) * invZ;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        }
+        return tMin <= tMax;
+    }
+
+    private int push(int top, int node) {
+        if (top == stack.length) {
+            int[] temp = new int[stack.length * 2];
+            System.arraycopy(stack, 0, temp, 0, top);
+            stack = temp;
+        }
+        stack[top] = node;
+        return top + 1;
+    }
+
+    private void setFatBox(int node, Vector3f min, Vector3f max) {
+        float grow = Math.max(max.x - min.x, Math.max(max.y - min.y, max.z
+                - min.z))
+                * margin;
+        // always grow a little so rounding in the exact tests can not make
+        // a touching volume fall outside of its box
+        grow += 1e-4f * (1 + Math.max(Math.abs(min.x), Math.max(Math
+                .abs(min.y), Math.max(Math.abs(min.z), Math.max(Math
+                .abs(max.x), Math.max(Math.abs(max.y), Math.abs(max.z)))))));
+        int b = node * 6;
+        boxes[b] = min.x - grow;
+        boxes[b + 1] = min.y - grow;
+        boxes[b + 2] = min.z - grow;
+        boxes[b + 3] = max.x + grow;
+        boxes[b + 4] = max.y + grow;
+        boxes[b + 5] = max.z + grow;
+    }
+
+    private int allocateNode() {
+        if (freeList == NULL) {
+            int oldCapacity = capacity;
+            capacity *= 2;
+            float[] newBoxes = new float[capacity * 6];
+            System.arraycopy(boxes, 0, newBoxes, 0, oldCapacity * 6);
+            boxes = newBoxes;
+            parent = grow(parent, capacity);
+            child1 = grow(child1, capacity);
+            child2 = grow(child2, capacity);
+            height = grow(height, capacity);
+            Object[] newData = new Object[capacity];
+            System.arraycopy(userData, 0, newData, 0, oldCapacity);
+            userData = newData;
+            buildFreeList(oldCapacity);
+        }
+        int node = freeList;
+        freeList = parent[node];
+        parent[node] = NULL;
+        child1[node] = NULL;
+        child2[node] = NULL;
+        height[node] = 0;
+        return node;
+    }
+
+    private static int[] grow(int[] array, int size) {
+        int[] temp = new int[size];
+        System.arraycopy(array, 0, temp, 0, array.length);
+        return temp;
+    }
+
+    private void buildFreeList(int start) {
+        for (int i = start; i < capacity - 1; i++) {
+            parent[i] = i + 1;
+            height[i] = -1;
+        }
+        parent[capacity - 1] = NULL;
+        height[capacity - 1] = -1;
+        freeList = start;
+    }
+
+    private void freeNode(int node) {
+        parent[node] = freeList;
+        height[node] = -1;
+        userData[node] = null;
+        freeList = node;
+    }
+
+    private float area(int node) {
+        int b = node * 6;
+        float dx = boxes[b + 3] - boxes[b];
+        float dy = boxes[b + 4] - boxes[b + 1];
+        float dz = boxes[b + 5] - boxes[b + 2];
+        return dx * dy + dy * dz + dz * dx;
+    }
+
+    private float mergedArea(int a, int c) {
+        int ba = a * 6, bc = c * 6;
+        float dx = Math.max(boxes[ba + 3], boxes[bc + 3])
+                - Math.min(boxes[ba], boxes[bc]);
+        float dy = Math.max(boxes[ba + 4], boxes[bc + 4])
+                - Math.min(boxes[ba + 1], boxes[bc + 1]);
+        float dz = Math.max(boxes[ba + 5], boxes[bc + 5])
+                - Math.min(boxes[ba + 2], boxes[bc + 2]);
+        return dx * dy + dy * dz + dz * dx;
+    }
+
+    private void merge(int store, int a, int c) {
+        int bs = store * 6, ba = a * 6, bc = c * 6;
+        for (int i = 0; i < 3; i++) {
+            boxes[bs + i] = Math.min(boxes[ba + i], boxes[bc + i]);
+            boxes[bs + 3 + i] = Math.max(boxes[ba + 3 + i], boxes[bc + 3 + i]);
+        }
+    }
+
+    private void insertLeaf(int leaf) {
+        if (root == NULL) {
+            root = leaf;
+            parent[root] = NULL;
+            return;
+        }
+
+        // find the best sibling, using the increase of surface area as cost
+        int index = root;
+        while (child1[index] != NULL) {
+            int c1 = child1[index], c2 = child2[index];
+            float area = area(index);
+            float combinedArea = mergedArea(index, leaf);
+
+            float cost = 2 * combinedArea;
+            float inheritanceCost = 2 * (combinedArea - area);
+
+            float cost1 = mergedArea(c1, leaf) + inheritanceCost;
+            if (child1[c1] != NULL) {
+                cost1 -= area(c1);
+            }
+            float cost2 = mergedArea(c2, leaf) + inheritanceCost;
+            if (child1[c2] != NULL) {
+                cost2 -= area(c2);
+            }
+
+            if (cost < cost1 && cost < cost2) {
+                break;
+            }
+            index = cost1 < cost2 ? c1 : c2;
+        }
+        int sibling = index;
+
+        int oldParent = parent[sibling];
+        int newParent = allocateNode();
+        parent[newParent] = oldParent;
+        userData[newParent] = null;
+        merge(newParent, leaf, sibling);
+        height[newParent] = height[sibling] + 1;
+
+        if (oldParent != NULL) {
+            if (child1[oldParent] == sibling) {
+                child1[oldParent] = newParent;
+            } else {
+                child2[oldParent] = newParent;
+            }
+        } else {
+            root = newParent;
+        }
+        child1[newParent] = sibling;
+        child2[newParent] = leaf;
+        parent[sibling] = newParent;
+        parent[leaf] = newParent;
+
+        refit(parent[leaf]);
+    }
+
+    private void removeLeaf(int leaf) {
+        if (leaf == root) {
+            root = NULL;
+            return;
+        }
+
+        int p = parent[leaf];
+        int grandParent = parent[p];
+        int sibling = child1[p] == leaf ? child2[p] : child1[p];
+
+        if (grandParent != NULL) {
+            if (child1[grandParent] == p) {
+                child1[grandParent] = sibling;
+            } else {
+                child2[grandParent] = sibling;
+            }
+            parent[sibling] = grandParent;
+            freeNode(p);
+            refit(grandParent);
+        } else {
+            root = sibling;
+            parent[sibling] = NULL;
+            freeNode(p);
+        }
+    }
+
+    /** Walks back to the root fixing heights and boxes, and rebalancing. */
+    private void refit(int index) {
+        while (index != NULL) {
+            index = balance(index);
+            int c1 = child1[index], c2 = child2[index];
+            height[index] = 1 + Math.max(height[c1], height[c2]);
+            merge(index, c1, c2);
+            index = parent[index];
+        }
+    }
+
+    /**
+     * Performs a left or right rotation if node a is imbalanced.
+     * 
+     * @return the new root of the sub tree.
+     */
+    private int balance(int a) {
+        if (child1[a] == NULL || height[a] < 2) {
+            return a;
+        }
+
+        int b = child1[a];
+        int c = child2[a];
+        int diff = height[c] - height[b];
+
+        if (diff > 1) {
+            return rotate(a, c, b);
+        }
+        if (diff < -1) {
+            return rotate(a, b, c);
+        }
+        return a;
+    }
+
+    /** Promotes the taller child <code>up</code> of a, above a. */
+    private int rotate(int a, int up, int other) {
+        int f = child1[up];
+        int g = child2[up];
+
+        // swap a and up
+        child1[up] = a;
+        parent[up] = parent[a];
+        parent[a] = up;
+
+        if (parent[up] != NULL) {
+            if (child1[parent[up]] == a) {
+                child1[parent[up]] = up;
+            } else {
+                child2[parent[up]] = up;
+            }
+        } else {
+            root = up;
+        }
+
+        // keep the taller of up's children above, move the other under a
+        int keep = height[f] > height[g] ? f : g;
+        int move = keep == f ? g : f;
+        child2[up] = keep;
+        if (child1[a] == up) {
+            child1[a] = move;
+        } else {
+            child2[a] = move;
+        }
+        parent[move] = a;
+
+        merge(a, child1[a], child2[a]);
+        height[a] = 1 + Math.max(height[child1[a]], height[child2[a]]);
+        merge(up, a, keep);
+        height[up] = 1 + Math.max(height[a], height[keep]);
+
+        return up;
+    }
+}
@@ -0,0 +1,780 @@
+/*
+ * Copyright (c) 2003-2008 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors 
+ *   may be used to endorse or promote products derived from this software 
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.jme.bounding;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.jme.intersection.Intersection;
+import com.jme.math.Matrix3f;
+import com.jme.math.Quaternion;
+import com.jme.math.Ray;
+import com.jme.math.Vector3f;
+import com.jme.scene.TriMesh;
+import com.jme.util.IntList;
+import com.jme.util.WorkerPool;
+
+/**
+ * FlatCollisionTree is a compact alternative to {@link CollisionTree} for
+ * large static meshes. Instead of a tree of objects each holding its own
+ * bounding volumes, the whole hierarchy is stored in two arrays: the local
+ * space bounds of every node (six floats per node) and its layout (two ints
+ * per node), in depth first order so that the left child of a node always
+ * directly follows it. The triangles are copied in leaf order too, so a leaf
+ * test walks memory linearly.
+ * <br>
+ * Splits are chosen with the surface area heuristic, evaluated over a fixed
+ * number of bins along the axis the triangles are most spread on, and the
+ * upper levels of the tree are built on the {@link WorkerPool}.
+ * <br>
+ * Intersection results are reported as triangle indices into an
+ * {@link IntList}, so no Integer is created per hit. The triangle tests are
+ * the same as the ones of CollisionTree, only the order of the reported
+ * triangles differs.
+ * 
+ * @see CollisionTreeManager#generateFlatCollisionTree(TriMesh, boolean)
+ */
+public class FlatCollisionTree {
+
+    private static final int BINS = 16;
+
+    /** Ranges smaller than this are never split across threads. */
+    private static final int MIN_PARALLEL_TRIS = 8192;
+
+    /** Deeper than this median splits are used, to bound the depth. */
+    private static final int MAX_SAH_DEPTH = 64;
+
+    // Required Spatial information
+    protected TriMesh mesh;
+
+    // local bounds, minX, minY, minZ, maxX, maxY, maxZ per node
+    private float[] bounds;
+    // per node: offset to the right child and 0, or first triangle and count
+    // for leaves
+    private int[] nodes;
+    private int nodeCount;
+
+    // the triangle indices in leaf order and their local vertices (9 floats
+    // each) in the same order
+    private int[] triIndex;
+    private float[] triVerts;
+    private int maxLeafSize;
+
+    // temporaries for queries
+    private int[] stack = new int[64];
+    private final Matrix3f rotA = new Matrix3f();
+    private final Matrix3f rotB = new Matrix3f();
+    private final float[] boxA = new float[6];
+    private final float[] boxB = new float[6];
+    private final Vector3f tempVa = new Vector3f();
+    private final Vector3f tempVb = new Vector3f();
+    private final Vector3f tempVc = new Vector3f();
+    private Vector3f[] leafVerts = new Vector3f[0];
+
+    /**
+     * Recreates this tree for the given mesh, using the maximum number of
+     * triangles per leaf of the CollisionTreeManager.
+     * 
+     * @param mesh
+     *            the mesh this tree should represent.
+     */
+    public void construct(TriMesh mesh) {
+        construct(mesh, CollisionTreeManager.getInstance().getMaxTrisPerLeaf());
+    }
+
+    /**
+     * Recreates this tree for the given mesh.
+     * 
+     * @param mesh
+     *            the mesh this tree should represent.
+     * @param maxTrisPerLeaf
+     *            the maximum number of triangles of a leaf.
+     */
+    public void construct(TriMesh mesh, int maxTrisPerLeaf) {
+        this.mesh = mesh;
+        maxTrisPerLeaf = Math.max(1, maxTrisPerLeaf);
+        triIndex = mesh.getTriangleIndices(triIndex);
+        int count = triIndex.length;
+
+        // gather the local vertices of every triangle
+        float[] verts = new float[count * 9];
+        FloatBuffer vb = mesh.getVertexBuffer();
+        int[] tri = new int[3];
+        for (int i = 0; i < count; i++) {
+            mesh.getTriangle(i, tri);
+            for (int v = 0; v < 3; v++) {
+                vb.position(tri[v] * 3);
+                vb.get(verts, i * 9 + v * 3, 3);
+            }
+        }
+        vb.rewind();
+
+        Chunk tree;
+        if (count == 0) {
+            tree = new Chunk(1);
+        } else {
+            Builder builder = new Builder(verts, maxTrisPerLeaf);
+            tree = builder.build(0, count);
+        }
+        nodeCount = tree.count;
+        bounds = new float[nodeCount * 6];
+        System.arraycopy(tree.bounds, 0, bounds, 0, bounds.length);
+        nodes = new int[nodeCount * 2];
+        System.arraycopy(tree.nodes, 0, nodes, 0, nodes.length);
+        maxLeafSize = maxTrisPerLeaf;
+        leafVerts = new Vector3f[maxLeafSize * 3];
+        for (int i = 0; i < leafVerts.length; i++) {
+            leafVerts[i] = new Vector3f();
+        }
+
+        // store the vertices in leaf order
+        triVerts = new float[count * 9];
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(verts, triIndex[i] * 9, triVerts, i * 9, 9);
+        }
+    }
+
+    /**
+     * @return the number of nodes of the tree, leaves included.
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return the number of triangles in the tree.
+     */
+    public int getTriangleCount() {
+        return triIndex == null ? 0 : triIndex.length;
+    }
+
+    /**
+     * @return the mesh this tree was built for, or the SharedMesh currently
+     *         using it.
+     */
+    public TriMesh getMesh() {
+        return mesh;
+    }
+
+    /**
+     * intersect checks for collisions between the triangles of this tree and
+     * the given Ray. The index of each triangle hit is added to triList. The
+     * ray is assumed to have a normalized direction.
+     * 
+     * @param ray
+     *            the ray to test for intersections.
+     * @param triList
+     *            the list to store the triangle indices in.
+     */
+    public void intersect(Ray ray, IntList triList) {
+        if (nodeCount == 0 || triIndex.length == 0) {
+            return;
+        }
+        loadRotation(mesh, rotA);
+        Vector3f origin = ray.getOrigin(), dir = ray.getDirection();
+
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            worldBox(node, bounds, mesh, rotA, boxA);
+            if (!rayHits(boxA, origin, dir)) {
+                continue;
+            }
+            int count = nodes[node * 2 + 1];
+            if (count == 0) {
+                // push the right child first so the left one is tested first
+                top = push(top, node + nodes[node * 2]);
+                top = push(top, node + 1);
+                continue;
+            }
+            for (int i = nodes[node * 2], end = i + count; i < end; i++) {
+                loadWorldTriangle(i, tempVa, tempVb, tempVc);
+                if (ray.intersect(tempVa, tempVb, tempVc)) {
+                    triList.add(triIndex[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Determines if the triangles of this tree intersect the ones of the
+     * given tree.
+     * 
+     * @param other
+     *            the tree to test.
+     * @return true if at least one pair of triangles intersect.
+     */
+    public boolean intersect(FlatCollisionTree other) {
+        return intersect(other, null, null, true);
+    }
+
+    /**
+     * Finds all the pairs of intersecting triangles between this tree and the
+     * given tree. For each pair, the triangle of this mesh is added to aList
+     * and the one of the other mesh to bList.
+     * 
+     * @param other
+     *            the tree to test.
+     * @param aList
+     *            the list to store this tree's triangles in.
+     * @param bList
+     *            the list to store the other tree's triangles in.
+     * @return true if at least one pair of triangles intersect.
+     */
+    public boolean intersect(FlatCollisionTree other, IntList aList,
+            IntList bList) {
+        return intersect(other, aList, bList, false);
+    }
+
+    private boolean intersect(FlatCollisionTree other, IntList aList,
+            IntList bList, boolean firstOnly) {
+        if (other == null || nodeCount == 0 || other.nodeCount == 0
+                || triIndex.length == 0 || other.triIndex.length == 0) {
+            return false;
+        }
+        loadRotation(mesh, rotA);
+        loadRotation(other.mesh, rotB);
+        if (leafVerts.length < other.maxLeafSize * 3) {
+            Vector3f[] temp = new Vector3f[other.maxLeafSize * 3];
+            for (int i = 0; i < temp.length; i++) {
+                temp[i] = i < leafVerts.length ? leafVerts[i] : new Vector3f();
+            }
+            leafVerts = temp;
+        }
+
+        boolean hit = false;
+        int top = 0;
+        top = push(top, 0);
+        top = push(top, 0);
+        while (top > 0) {
+            int b = stack[--top];
+            int a = stack[--top];
+            worldBox(a, bounds, mesh, rotA, boxA);
+            worldBox(b, other.bounds, other.mesh, rotB, boxB);
+            if (boxA[0] > boxB[3] || boxA[1] > boxB[4] || boxA[2] > boxB[5]
+                    || boxA[3] < boxB[0] || boxA[4] < boxB[1]
+                    || boxA[5] < boxB[2]) {
+                continue;
+            }
+            int countA = nodes[a * 2 + 1], countB = other.nodes[b * 2 + 1];
+            if (countA == 0
+                    && (countB != 0 || volume(boxA) >= volume(boxB))) {
+                // descend this tree
+                top = push(top, a + nodes[a * 2]);
+                top = push(top, b);
+                top = push(top, a + 1);
+                top = push(top, b);
+            } else if (countB == 0) {
+                // descend the other tree
+                top = push(top, a);
+                top = push(top, b + other.nodes[b * 2]);
+                top = push(top, a);
+                top = push(top, b + 1);
+            } else if (testLeaves(a, other, b, aList, bList, firstOnly)) {
+                hit = true;
+                if (firstOnly) {
+                    return true;
+                }
+            }
+        }
+        return hit;
+    }
+
+    private boolean testLeaves(int a, FlatCollisionTree other, int b,
+            IntList aList, IntList bList, boolean firstOnly) {
+        int firstB = other.nodes[b * 2], countB = other.nodes[b * 2 + 1];
+        for (int j = 0; j < countB; j++) {
+            other.loadWorldTriangle(firstB + j, leafVerts[j * 3],
+                    leafVerts[j * 3 + 1], leafVerts[j * 3 + 2]);
+        }
+
+        boolean hit = false;
+        for (int i = nodes[a * 2], end = i + nodes[a * 2 + 1]; i < end; i++) {
+            loadWorldTriangle(i, tempVa, tempVb, tempVc);
+            for (int j = 0; j < countB; j++) {
+                if (Intersection.intersection(tempVa, tempVb, tempVc,
+                        leafVerts[j * 3], leafVerts[j * 3 + 1],
+                        leafVerts[j * 3 + 2])) {
+                    hit = true;
+                    if (firstOnly) {
+                        return true;
+                    }
+                    aList.add(triIndex[i]);
+                    bList.add(other.triIndex[firstB + j]);
+                }
+            }
+        }
+        return hit;
+    }
+
+    /**
+     * Puts the given triangle (in leaf order) in world space, the same way
+     * {@link TriMesh#localToWorld(Vector3f, Vector3f)} does.
+     */
+    private void loadWorldTriangle(int position, Vector3f va, Vector3f vb,
+            Vector3f vc) {
+        int v = position * 9;
+        Quaternion rot = mesh.getWorldRotation();
+        Vector3f scale = mesh.getWorldScale();
+        Vector3f trans = mesh.getWorldTranslation();
+        va.set(triVerts[v], triVerts[v + 1], triVerts[v + 2]);
+        rot.mult(va.multLocal(scale), va).addLocal(trans);
+        vb.set(triVerts[v + 3], triVerts[v + 4], triVerts[v + 5]);
+        rot.mult(vb.multLocal(scale), vb).addLocal(trans);
+        vc.set(triVerts[v + 6], triVerts[v + 7], triVerts[v + 8]);
+        rot.mult(vc.multLocal(scale), vc).addLocal(trans);
+    }
+
+    private int push(int top, int value) {
+        if (top == stack.length) {
+            int[] temp = new int[stack.length * 2];
+            System.arraycopy(stack, 0, temp, 0, top);
+            stack = temp;
+        }
+        stack[top] = value;
+        return top + 1;
+    }
+
+    private static void loadRotation(TriMesh mesh, Matrix3f store) {
+        mesh.getWorldRotation().toRotationMatrix(store);
+        Vector3f s = mesh.getWorldScale();
+        store.m00 *= s.x; store.m01 *= s.y; store.m02 *= s.z;
+        store.m10 *= s.x; store.m11 *= s.y; store.m12 *= s.z;
+        store.m20 *= s.x; store.m21 *= s.y; store.m22 *= s.z;
+    }
+
+    /**
+     * Stores in box the world axis aligned box enclosing the local box of the
+     * given node, slightly grown to absorb rounding errors.
+     */
+    private static void worldBox(int node, float[] bounds, TriMesh mesh,
+            Matrix3f m, float[] box) {
+        int b = node * 6;
+        float cx = (bounds[b] + bounds[b + 3]) * .5f;
+        float cy = (bounds[b + 1] + bounds[b + 4]) * .5f;
+        float cz = (bounds[b + 2] + bounds[b + 5]) * .5f;
+        float ex = (bounds[b + 3] - bounds[b]) * .5f;
+        float ey = (bounds[b + 4] - bounds[b + 1]) * .5f;
+        float ez = (bounds[b + 5] - bounds[b + 2]) * .5f;
+        Vector3f t = mesh.getWorldTranslation();
+
+        float wx = m.m00 * cx + m.m01 * cy + m.m02 * cz + t.x;
+        float wy = m.m10 * cx + m.m11 * cy + m.m12 * cz + t.y;
+        float wz = m.m20 * cx + m.m21 * cy + m.m22 * cz + t.z;
+        float rx = Math.abs(m.m00) * ex + Math.abs(m.m01) * ey
+                + Math.abs(m.m02) * ez;
+        float ry = Math.abs(m.m10) * ex + Math.abs(m.m11) * ey
+                + Math.abs(m.m12) * ez;
+        float rz = Math.abs(m.m20) * ex + Math.abs(m.m21) * ey
+                + Math.abs(m.m22) * ez;
+        float pad = 1e-5f * (Math.abs(wx) + Math.abs(wy) + Math.abs(wz) + rx
+                + ry + rz) + 1e-6f;
+        box[0] = wx - rx - pad;
+        box[1] = wy - ry - pad;
+        box[2] = wz - rz - pad;
+        box[3] = wx + rx + pad;
+        box[4] = wy + ry + pad;
+        box[5] = wz + rz + pad;
+    }
+
+    private static float volume(float[] box) {
+        return (box[3] - box[0]) * (box[4] - box[1]) * (box[5] - box[2]);
+    }
+
+    /** Slab test of the ray (as a half line) against the box. */
+    private static boolean rayHits(float[] box, Vector3f o, Vector3f d) {
+        float tMin = 0, tMax = Float.POSITIVE_INFINITY;
+        for (int axis = 0; axis < 3; axis++) {
+            float origin = o.get(axis), dir = d.get(axis);
+            if (dir == 0) {
+                if (origin < box[axis] || origin > box[axis + 3]) {
+                    return false;
+                }
+                continue;
+            }
+            float inv = 1f / dir;
+            float t1 = (box[axis] - origin) * inv;
+            float t2 = (box[axis + 3] - origin) * inv;
+            if (t1 > t2) {
+                float t = t1;
+                t1 = t2;
+                t2 = t;
+            }
+            if (t1 > tMin) tMin = t1;
+            if (t2 < tMax) tMax = t2;
+            if (tMin > tMax) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Growable node storage. Child offsets are relative, so the chunks built
+     * for separate sub trees can be appended to their parent as they are.
+     */
+    private static class Chunk {
+        float[] bounds;
+        int[] nodes;
+        int count;
+
+        Chunk(int capacity) {
+            bounds = new float[capacity * 6];
+            nodes = new int[capacity * 2];
+        }
+
+        int add() {
+            if (count * 2 == nodes.length) {
+                ensureCapacity(count * 2);
+            }
+            return count++;
+        }
+
+        void ensureCapacity(int capacity) {
+            if (capacity * 2 > nodes.length) {
+                float[] b = new float[capacity * 6];
+                System.arraycopy(bounds, 0, b, 0, count * 6);
+                bounds = b;
+                int[] n = new int[capacity * 2];
+                System.arraycopy(nodes, 0, n, 0, count * 2);
+                nodes = n;
+            }
+        }
+
+        void append(Chunk chunk) {
+            if (count + chunk.count > nodes.length / 2) {
+                ensureCapacity(Math.max(count * 2, count + chunk.count));
+            }
+            System.arraycopy(chunk.bounds, 0, bounds, count * 6,
+                    chunk.count * 6);
+            System.arraycopy(chunk.nodes, 0, nodes, count * 2,
+                    chunk.count * 2);
+            count += chunk.count;
+        }
+    }
+
+    /**
+     * The top of the tree, split serially before the sub trees below it are
+     * built in parallel.
+     */
+    private static class TopNode {
+        int start, end;
+        final float[] box = new float[6];
+        TopNode left, right;
+        Chunk chunk;
+    }
+
+    private class Builder {
+        // per triangle bounds and centroids (times 3), by triangle index
+        private final float[] triBounds;
+        private final float[] centroids;
+        private final int maxTrisPerLeaf;
+
+        Builder(float[] verts, int maxTrisPerLeaf) {
+            this.maxTrisPerLeaf = maxTrisPerLeaf;
+            int count = verts.length / 9;
+            triBounds = new float[count * 6];
+            centroids = new float[count * 3];
+            for (int tri = 0; tri < count; tri++) {
+                int v = tri * 9, b = tri * 6;
+                for (int axis = 0; axis < 3; axis++) {
+                    float v0 = verts[v + axis], v1 = verts[v + 3 + axis], v2 = verts[v
+                            + 6 + axis];
+                    triBounds[b + axis] = Math.min(v0, Math.min(v1, v2));
+                    triBounds[b + 3 + axis] = Math.max(v0, Math.max(v1, v2));
+                    centroids[tri * 3 + axis] = v0 + v1 + v2;
+                }
+            }
+        }
+
+        Chunk build(int start, int end) {
+            int threads = WorkerPool.isWorkerThread() ? 1 : WorkerPool
+                    .getPool().getThreadCount();
+            if (threads == 1 || end - start < MIN_PARALLEL_TRIS) {
+                Chunk chunk = new Chunk(2 * (end - start) / maxTrisPerLeaf + 1);
+                build(chunk, start, end, 0);
+                return chunk;
+            }
+
+            // split the top levels until there are a few sub trees per thread
+            int levels = 1;
+            while ((1 << levels) < threads * 2) {
+                levels++;
+            }
+            List<Runnable> tasks = new ArrayList<Runnable>();
+            TopNode root = split(start, end, levels, tasks);
+            WorkerPool.getPool().invokeAll(tasks);
+
+            Chunk chunk = new Chunk(2 * (end - start) / maxTrisPerLeaf + 1);
+            assemble(root, chunk);
+            return chunk;
+        }
+
+        private TopNode split(int start, int end, int levels,
+                List<Runnable> tasks) {
+            final TopNode top = new TopNode();
+            top.start = start;
+            top.end = end;
+            computeBounds(start, end, top.box, 0);
+            int mid;
+            if (levels == 0 || end - start < MIN_PARALLEL_TRIS
+                    || (mid = partition(start, end, 0)) < 0) {
+                tasks.add(new Runnable() {
+                    public void run() {
+                        Chunk chunk = new Chunk(2 * (top.end - top.start)
+                                / maxTrisPerLeaf + 1);
+                        build(chunk, top.start, top.end, 0);
+                        top.chunk = chunk;
+                    }
+                });
+                return top;
+            }
+            top.left = split(start, mid, levels - 1, tasks);
+            top.right = split(mid, end, levels - 1, tasks);
+            return top;
+        }
+
+        private void assemble(TopNode top, Chunk out) {
+            if (top.chunk != null) {
+                out.append(top.chunk);
+                return;
+            }
+            int node = out.add();
+            System.arraycopy(top.box, 0, out.bounds, node * 6, 6);
+            assemble(top.left, out);
+            out.nodes[node * 2] = out.count - node;
+            out.nodes[node * 2 + 1] = 0;
+            assemble(top.right, out);
+        }
+
+        private void build(Chunk out, int start, int end, int depth) {
+            int node = out.add();
+            computeBounds(start, end, out.bounds, node * 6);
+
+            int mid;
+            if (end - start <= maxTrisPerLeaf
+                    || (mid = partition(start, end, depth)) < 0) {
+                out.nodes[node * 2] = start;
+                out.nodes[node * 2 + 1] = end - start;
+                return;
+            }
+            build(out, start, mid, depth + 1);
+            out.nodes[node * 2] = out.count - node;
+            out.nodes[node * 2 + 1] = 0;
+            build(out, mid, end, depth + 1);
+        }
+
+        private void computeBounds(int start, int end, float[] store,
+                int offset) {
+            float minX = Float.POSITIVE_INFINITY, minY = minX, minZ = minX;
+            float maxX = Float.NEGATIVE_INFINITY, maxY = maxX, maxZ = maxX;
+            for (int i = start; i < end; i++) {
+                int b = triIndex[i] * 6;
+                if (triBounds[b] < minX) minX = triBounds[b];
+                if (triBounds[b + 1] < minY) minY = triBounds[b + 1];
+                if (triBounds[b + 2] < minZ) minZ = triBounds[b + 2];
+                if (triBounds[b + 3] > maxX) maxX = triBounds[b + 3];
+                if (triBounds[b + 4] > maxY) maxY = triBounds[b + 4];
+                if (triBounds[b + 5] > maxZ) maxZ = triBounds[b + 5];
+            }
+            store[offset] = minX;
+            store[offset + 1] = minY;
+            store[offset + 2] = minZ;
+            store[offset + 3] = maxX;
+            store[offset + 4] = maxY;
+            store[offset + 5] = maxZ;
+        }
+
+        private float centroid(int tri, int axis) {
+            return centroids[tri * 3 + axis];
+        }
+
+        /**
+         * Reorders the triangles of [start, end) in two groups, choosing the
+         * split with the lowest surface area cost among BINS candidates along
+         * the longest axis of the centroids' bounds.
+         * 
+         * @return the start of the second group, or -1 if the range can not
+         *         be split.
+         */
+        private int partition(int start, int end, int depth) {
+            // bounds of the centroids
+            float[] cMin = new float[3], cMax = new float[3];
+            for (int axis = 0; axis < 3; axis++) {
+                cMin[axis] = Float.POSITIVE_INFINITY;
+                cMax[axis] = Float.NEGATIVE_INFINITY;
+            }
+            for (int i = start; i < end; i++) {
+                for (int axis = 0; axis < 3; axis++) {
+                    float c = centroid(triIndex[i], axis);
+                    if (c < cMin[axis]) cMin[axis] = c;
+                    if (c > cMax[axis]) cMax[axis] = c;
+                }
+            }
+
+            int bestAxis = 0;
+            for (int axis = 1; axis < 3; axis++) {
+                if (cMax[axis] - cMin[axis] > cMax[bestAxis] - cMin[bestAxis]) {
+                    bestAxis = axis;
+                }
+            }
+            float extent = cMax[bestAxis] - cMin[bestAxis];
+            if (depth >= MAX_SAH_DEPTH || !(extent > 0)) {
+                // all centroids at the same place (or too deep), split by
+                // count
+                return medianSplit(start, end, bestAxis);
+            }
+
+            float scale = BINS / extent;
+            int[] counts = new int[BINS];
+            float[] binBounds = new float[BINS * 6];
+            for (int bin = 0; bin < BINS; bin++) {
+                reset(binBounds, bin * 6);
+            }
+            for (int i = start; i < end; i++) {
+                int bin = bin(centroid(triIndex[i], bestAxis), cMin[bestAxis],
+                        scale);
+                counts[bin]++;
+                grow(binBounds, bin * 6, triIndex[i]);
+            }
+
+            // sweep from the right, then from the left
+            float[] rightArea = new float[BINS];
+            float[] acc = new float[6];
+            reset(acc, 0);
+            for (int bin = BINS - 1; bin > 0; bin--) {
+                merge(acc, 0, binBounds, bin * 6);
+                rightArea[bin] = area(acc);
+            }
+            reset(acc, 0);
+            int bestBin = -1, leftCount = 0;
+            float bestCost = Float.POSITIVE_INFINITY;
+            for (int bin = 0; bin < BINS - 1; bin++) {
+                merge(acc, 0, binBounds, bin * 6);
+                leftCount += counts[bin];
+                int rightCount = (end - start) - leftCount;
+                if (leftCount == 0 || rightCount == 0) {
+                    continue;
+                }
+                float cost = area(acc) * leftCount + rightArea[bin + 1]
+                        * rightCount;
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    bestBin = bin;
+                }
+            }
+            if (bestBin == -1) {
+                return medianSplit(start, end, bestAxis);
+            }
+
+            int i = start, j = end - 1;
+            while (i <= j) {
+                if (bin(centroid(triIndex[i], bestAxis), cMin[bestAxis],
+                        scale) <= bestBin) {
+                    i++;
+                } else {
+                    int temp = triIndex[i];
+                    triIndex[i] = triIndex[j];
+                    triIndex[j--] = temp;
+                }
+            }
+            return i;
+        }
+
+        private int medianSplit(int start, int end, int axis) {
+            if (end - start < 2) {
+                return -1;
+            }
+            int mid = (start + end) >>> 1;
+            // quick select so that [start, mid) holds the smaller centroids
+            int lo = start, hi = end - 1;
+            while (lo < hi) {
+                float pivot = centroid(triIndex[(lo + hi) >>> 1], axis);
+                int i = lo, j = hi;
+                while (i <= j) {
+                    while (centroid(triIndex[i], axis) < pivot) i++;
+                    while (centroid(triIndex[j], axis) > pivot) j--;
+                    if (i <= j) {
+                        int temp = triIndex[i];
+                        triIndex[i++] = triIndex[j];
+                        triIndex[j--] = temp;
+                    }
+                }
+                if (mid <= j) {
+                    hi = j;
+                } else if (mid >= i) {
+                    lo = i;
+                } else {
+                    break;
+                }
+            }
+            return mid;
+        }
+
+        private int bin(float c, float min, float scale) {
+            int bin = (int) ((c - min) * scale);
+            return bin < 0 ? 0 : (bin >= BINS ? BINS - 1 : bin);
+        }
+
+        private void reset(float[] box, int offset) {
+            box[offset] = box[offset + 1] = box[offset + 2] = Float.POSITIVE_INFINITY;
+            box[offset + 3] = box[offset + 4] = box[offset + 5] = Float.NEGATIVE_INFINITY;
+        }
+
+        private void grow(float[] box, int offset, int tri) {
+            merge(box, offset, triBounds, tri * 6);
+        }
+
+        private void merge(float[] store, int storeOffset, float[] box,
+                int offset) {
+            for (int axis = 0; axis < 3; axis++) {
+                if (box[offset + axis] < store[storeOffset + axis]) {
+                    store[storeOffset + axis] = box[offset + axis];
+                }
+                if (box[offset + 3 + axis] > store[storeOffset + 3 + axis]) {
+                    store[storeOffset + 3 + axis] = box[offset + 3 + axis];
+                }
+            }
+        }
+
+        private float area(float[] box) {
+            if (box[0] > box[3]) {
+                return 0;
+            }
+            float dx = box[3] - box[0], dy = box[4] - box[1], dz = box[5] - box[2];
+            return dx * dy + dy * dz + dz * dx;
+        }
+    }
+}
@@ -719,6 +719,9 @@ public abstract class Texture implements Savable {
      */
     public void setTextureId(int textureId) {
         this.textureId = textureId;
+        if (textureId != 0) {
+            TextureManager.registerTextureId(this);
+        }
     }
 
     /**
@@ -43,7 +43,10 @@ import com.jme.scene.state.RenderState;
 import com.jme.scene.state.TextureState;
 import com.jme.scene.state.ZBufferState;
 import com.jme.system.JmeException;
+import com.jme.util.Debug;
 import com.jme.util.SortUtil;
+import com.jme.util.stat.StatCollector;
+import com.jme.util.stat.StatType;
 
 /**
  * This optional class supports queueing of rendering states that are drawn when
@@ -53,6 +56,11 @@ import com.jme.util.SortUtil;
  * spatials in the ortho bucket are rendered in ortho mode from highest to
  * lowest Z order. As a user, you shouldn't need to use this class directly. All
  * you'll need to do is call Spatial.setRenderQueueMode .
+ * <p>
+ * By default the opaque bucket is ordered by a 64 bit key packing the shader,
+ * texture and material states and the quantised camera distance of each
+ * Geometry, sorted with a radix sort. Geometries sharing states are thus drawn
+ * together, front to back, which keeps state switches to a minimum.
  * 
  * @author Joshua Slack
  * @author Jack Lindamood (javadoc + SpatialList only)
@@ -84,6 +92,27 @@ public class RenderQueue {
     
     /** boolean for enabling / disabling two pass transparency rendering. */
     private boolean twoPassTransparent = true;
+
+    /** boolean for enabling / disabling sort key ordering of opaque items. */
+    private boolean sortKeyOrdering = true;
+
+    // Sort key layout, from most to least significant bits. The sign bit is
+    // left clear so keys sort as positive longs. State sort ids are reused
+    // per state type once states are garbage collected, so they only wrap
+    // with more than 2047 shader or 4095 material states around at once.
+    // Wrapped ids merely mix the groups of those states, the rendering itself
+    // stays correct.
+    private static final int DEPTH_BITS = 20;
+    private static final int MATERIAL_BITS = 12;
+    private static final int TEXTURE_BITS = 20;
+    private static final int SHADER_BITS = 11;
+    private static final int MATERIAL_SHIFT = DEPTH_BITS;
+    private static final int TEXTURE_SHIFT = MATERIAL_SHIFT + MATERIAL_BITS;
+    private static final int SHADER_SHIFT = TEXTURE_SHIFT + TEXTURE_BITS;
+    private static final int DEPTH_MASK = (1 << DEPTH_BITS) - 1;
+    private static final int MATERIAL_MASK = (1 << MATERIAL_BITS) - 1;
+    private static final int TEXTURE_MASK = (1 << TEXTURE_BITS) - 1;
+    private static final int SHADER_MASK = (1 << SHADER_BITS) - 1;
     
     private Vector3f tempVector = new Vector3f();
 
@@ -123,6 +152,26 @@ public class RenderQueue {
     public boolean isTwoPassTransparency() {
         return twoPassTransparent;
     }
+
+    /**
+     * Enables/Disables sort key ordering of the opaque bucket. If enabled
+     * (the default), opaque items are radix sorted on a key made of their
+     * shader, texture and material states and their quantised distance to the
+     * camera. If disabled, they are merge sorted on their texture states only.
+     * 
+     * @param enabled
+     *            set true to order opaque items by sort key
+     */
+    public void setSortKeyOrdering(boolean enabled) {
+        sortKeyOrdering = enabled;
+    }
+
+    /**
+     * @return true if the opaque bucket is ordered by sort key.
+     */
+    public boolean isSortKeyOrdering() {
+        return sortKeyOrdering;
+    }
     
     /**
      * Creates the buckets needed.
@@ -204,6 +253,66 @@ public class RenderQueue {
         return spat.queueDistance;
     }
 
+    /**
+     * Computes the opaque bucket sort key of a spatial: shader state id,
+     * texture ids (or texture state id if not all uploaded yet), material
+     * state id and distance to the camera, quantised over the frustum range.
+     * The ids of all texture units are hashed together, so states sharing the
+     * first texture but not the others do not end up in one group.
+     * 
+     * @param spat
+     *            Spatial to compute the key of.
+     * @return the sort key, never negative.
+     */
+    private long opaqueSortKey(Spatial spat) {
+        long key = 0;
+        if (spat instanceof Geometry) {
+            RenderState[] states = ((Geometry) spat).states;
+
+            RenderState shader = states[RenderState.RS_GLSL_SHADER_OBJECTS];
+            if (shader != null && shader.isEnabled()) {
+                key |= (long) (shader.getSortId() & SHADER_MASK) << SHADER_SHIFT;
+            }
+
+            TextureState ts = (TextureState) states[RenderState.RS_TEXTURE];
+            if (ts != null && ts.getNumberOfSetTextures() > 0) {
+                int textureId = ts.getTextureID(0);
+                boolean uploaded = textureId != 0;
+                for (int x = 1, n = ts.getNumberOfSetTextures(); x < n
+                        && uploaded; x++) {
+                    int id = ts.getTextureID(x);
+                    if (id == 0 && ts.getTexture(x) != null) {
+                        uploaded = false;
+                    }
+                    textureId = 31 * textureId + id;
+                }
+                // ids of textures not on the card yet get the top bit so they
+                // do not mix with real texture ids
+                int texKey = uploaded ? textureId & (TEXTURE_MASK >> 1)
+                        : (TEXTURE_MASK >> 1) + 1 + (ts.getSortId() & (TEXTURE_MASK >> 1));
+                key |= (long) (texKey & TEXTURE_MASK) << TEXTURE_SHIFT;
+            }
+
+            RenderState material = states[RenderState.RS_MATERIAL];
+            if (material != null) {
+                key |= (long) (material.getSortId() & MATERIAL_MASK) << MATERIAL_SHIFT;
+            }
+        }
+
+        spat.queueDistance = Float.NEGATIVE_INFINITY;
+        float distance = distanceToCam(spat);
+        Camera cam = renderer.getCamera();
+        if (cam != null && cam.getFrustumFar() > 0) {
+            float depth = distance / cam.getFrustumFar();
+            if (depth >= 1) {
+                key |= DEPTH_MASK;
+            } else if (depth > 0) {
+                key |= (long) (depth * DEPTH_MASK);
+            }
+        }
+        return key;
+    }
+
     /**
      * clears all of the buckets.
      */
@@ -244,7 +353,11 @@ public class RenderQueue {
      * first.
      */
     private void renderOpaqueBucket() {
-        opaqueBucket.sort();        
+        if (sortKeyOrdering) {
+            opaqueBucket.sortByKeys();
+        } else {
+            opaqueBucket.sort();
+        }
         for (int i = 0; i < opaqueBucket.listSize; i++) {
             opaqueBucket.list[i].draw(renderer);
         }
@@ -317,6 +430,10 @@ public class RenderQueue {
 
         Spatial[] list, tlist;
 
+        long[] keys, tkeys;
+
+        int[] counts;
+
         int listSize;
 
         private static final int DEFAULT_SIZE = 32;
@@ -370,6 +487,53 @@ public class RenderQueue {
                 SortUtil.msort(tlist, list, 0, listSize, c);
             }
         }
+
+        /**
+         * Sorts the elements in the list according to their opaque sort key.
+         */
+        void sortByKeys() {
+            if (listSize > 1) {
+                if (keys == null || keys.length < list.length) {
+                    keys = new long[list.length];
+                    tkeys = new long[list.length];
+                }
+                if (tlist == null || tlist.length != list.length) {
+                    tlist = new Spatial[list.length];
+                }
+                if (counts == null) {
+                    counts = new int[SortUtil.RADIX_SIZE];
+                }
+                for (int i = 0; i < listSize; i++) {
+                    keys[i] = opaqueSortKey(list[i]);
+                }
+
+                int changesBefore = 0;
+                if (Debug.stats) {
+                    changesBefore = countStateChanges();
+                }
+
+                SortUtil.rsort(keys, list, listSize, tkeys, tlist, counts);
+
+                if (Debug.stats) {
+                    StatCollector.addStat(StatType.STAT_STATE_CHANGES_AVOIDED,
+                            changesBefore - countStateChanges());
+                }
+            }
+        }
+
+        /**
+         * @return the number of times the state part of the keys changes
+         *         between consecutive items.
+         */
+        private int countStateChanges() {
+            int changes = 0;
+            for (int i = 1; i < listSize; i++) {
+                if ((keys[i] >>> MATERIAL_SHIFT) != (keys[i - 1] >>> MATERIAL_SHIFT)) {
+                    changes++;
+                }
+            }
+            return changes;
+        }
     }
 
     private class OpaqueComp implements Comparator<Spatial> {
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2003-2008 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors 
+ *   may be used to endorse or promote products derived from this software 
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.jme.renderer;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.jme.bounding.BoundingBox;
+import com.jme.image.Texture2D;
+import com.jme.math.Vector3f;
+import com.jme.scene.state.RenderState;
+import com.jme.scene.state.TextureState;
+import com.jme.scene.shape.Box;
+import com.jme.system.dummy.DummyRenderer;
+
+/**
+ * <code>RenderQueueBenchmark</code> fills a {@link RenderQueue} backed by a
+ * {@link DummyRenderer} with opaque geometries using a random mix of shader,
+ * texture and material states, then compares the merge sorted texture state
+ * ordering with the sort key ordering: time spent sorting and number of state
+ * switches in the resulting draw order.
+ * <p>
+ * Usage: <code>RenderQueueBenchmark [geometries] [frames]</code>
+ */
+public class RenderQueueBenchmark {
+
+    public static void main(String[] args) {
+        Logger.getLogger("").setLevel(Level.SEVERE);
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        DummyRenderer renderer = new DummyRenderer();
+        renderer.camera = new BenchmarkCamera();
+        renderer.camera.setFrustumPerspective(45, 1, 1, 1000);
+        renderer.camera.setLocation(new Vector3f(0, 0, 0));
+
+        RenderState[] shaders = new RenderState[8];
+        RenderState[] textures = new RenderState[64];
+        RenderState[] materials = new RenderState[32];
+        for (int i = 0; i < shaders.length; i++) {
+            shaders[i] = renderer.createGLSLShaderObjectsState();
+        }
+        for (int i = 0; i < textures.length; i++) {
+            TextureState ts = renderer.createTextureState();
+            ts.setTexture(new Texture2D());
+            textures[i] = ts;
+        }
+        for (int i = 0; i < materials.length; i++) {
+            materials[i] = renderer.createMaterialState();
+        }
+
+        Random rand = new Random(1);
+        ArrayList<RecordingBox> geoms = new ArrayList<RecordingBox>(count);
+        for (int i = 0; i < count; i++) {
+            RecordingBox box = new RecordingBox(renderer);
+            box.getLocalTranslation().set(rand.nextFloat() * 200 - 100,
+                    rand.nextFloat() * 200 - 100, -rand.nextFloat() * 900);
+            box.setModelBound(new BoundingBox());
+            box.updateModelBound();
+            box.updateGeometricState(0, true);
+            box.states[RenderState.RS_GLSL_SHADER_OBJECTS] = rand.nextInt(4) == 0 ? null
+                    : shaders[rand.nextInt(shaders.length)];
+            box.states[RenderState.RS_TEXTURE] = textures[rand.nextInt(textures.length)];
+            box.states[RenderState.RS_MATERIAL] = materials[rand.nextInt(materials.length)];
+            geoms.add(box);
+        }
+
+        RenderQueue queue = new RenderQueue(renderer);
+        for (int pass = 0; pass < 2; pass++) {
+            boolean keys = pass == 1;
+            queue.setSortKeyOrdering(keys);
+            // warm up
+            for (int f = 0; f < frames / 4; f++) {
+                render(queue, geoms);
+            }
+            long start = System.nanoTime();
+            for (int f = 0; f < frames; f++) {
+                render(queue, geoms);
+            }
+            double ms = (System.nanoTime() - start) / 1000000.0 / frames;
+            System.out.println((keys ? "sort keys:      " : "texture states: ")
+                    + Math.round(ms * 1000) / 1000.0 + " ms/frame, "
+                    + countSwitches(RecordingBox.drawn) + " state switches");
+        }
+    }
+
+    private static void render(RenderQueue queue, ArrayList<RecordingBox> geoms) {
+        RecordingBox.drawn.clear();
+        for (int i = 0, size = geoms.size(); i < size; i++) {
+            queue.addToQueue(geoms.get(i), Renderer.QUEUE_OPAQUE);
+        }
+        queue.renderBuckets();
+    }
+
+    private static int countSwitches(ArrayList<RecordingBox> drawn) {
+        int switches = 0;
+        int[] types = { RenderState.RS_GLSL_SHADER_OBJECTS,
+                RenderState.RS_TEXTURE, RenderState.RS_MATERIAL };
+        for (int i = 1; i < drawn.size(); i++) {
+            for (int type : types) {
+                if (drawn.get(i).states[type] != drawn.get(i - 1).states[type]) {
+                    switches++;
+                }
+            }
+        }
+        return switches;
+    }
+
+    /** Box recording the order it is drawn in. */
+    private static class RecordingBox extends Box {
+        private static final long serialVersionUID = 1L;
+        static final ArrayList<RecordingBox> drawn = new ArrayList<RecordingBox>();
+
+        RecordingBox(Renderer r) {
+            super("box", new Vector3f(), 1, 1, 1);
+        }
+
+        @Override
+        public void draw(Renderer r) {
+            drawn.add(this);
+        }
+    }
+
+    /** Data only camera. */
+    private static class BenchmarkCamera extends AbstractCamera {
+        private static final long serialVersionUID = 1L;
+
+        BenchmarkCamera() {
+            super(true);
+        }
+
+        @Override
+        public int getHeight() {
+            return 768;
+        }
+
+        @Override
+        public int getWidth() {
+            return 1024;
+        }
+
+        public void resize(int width, int height) {
+        }
+
+        public void onViewPortChange() {
+        }
+
+        public void apply() {
+        }
+    }
+}
@@ -48,6 +48,7 @@ import com.jme.light.DirectionalLight;
 import com.jme.math.Matrix4f;
 import com.jme.math.Vector3f;
 import com.jme.renderer.AbstractCamera;
+import com.jme.renderer.Camera;
 import com.jme.renderer.ColorRGBA;
 import com.jme.renderer.Renderer;
 import com.jme.renderer.TextureRenderer;
@@ -64,9 +65,30 @@ import com.jme.scene.state.MaterialState;
 import com.jme.scene.state.RenderState;
 import com.jme.scene.state.TextureState;
 import com.jme.system.DisplaySystem;
+import com.jme.util.stat.StatCollector;
+import com.jme.util.stat.StatType;
 
 /**
  * A pass providing a shadow mapping layer across the top of an existing scene.
+ * <p>
+ * By default one shadow map is rendered around the view target. With
+ * {@link #setCascadeCount(int)} the distance up to
+ * {@link #setShadowDistance(float)} in front of the camera is split into
+ * several ranges instead, each with its own shadow map fitted to that slice of
+ * the view frustum, so near shadows get a much higher resolution than far ones.
+ * Occluders are culled against the frustum of each shadow map.
+ * <p>
+ * Occluders added with {@link #addStaticOccluder(Spatial)} are rendered into
+ * a separate map per cascade that is only updated when the light direction,
+ * the set of static occluders or the placement of the cascade changes (the
+ * cascades move in steps, see {@link #setStaticCacheMargin(float)}). Call
+ * {@link #invalidateStaticOccluders()} after moving a static occluder. This
+ * needs GLSL; without it static occluders are rendered every frame like the
+ * others.
+ * <p>
+ * The time spent updating each cascade is recorded with
+ * {@link StatCollector} as {@link #STAT_CASCADE_TIMERS}, and the number of
+ * static map updates as {@link #STAT_STATIC_SHADOW_RENDERS}.
  * 
  * Based on code by Robert Larsson and Joshua Slack
  * 
@@ -75,6 +97,34 @@ import com.jme.system.DisplaySystem;
 public class DirectionalShadowMapPass extends Pass {
     private static final long serialVersionUID = 1L;
 
+    /** The maximum number of cascades */
+    public static final int MAX_CASCADES = 4;
+
+    /** Time spent updating the shadow map of each cascade */
+    public static final StatType[] STAT_CASCADE_TIMERS = {
+            new StatType("_timedShadowCascade0"),
+            new StatType("_timedShadowCascade1"),
+            new StatType("_timedShadowCascade2"),
+            new StatType("_timedShadowCascade3") };
+
+    /** Number of times a cached static occluder map was rendered */
+    public static final StatType STAT_STATIC_SHADOW_RENDERS = new StatType(
+            "_shadowStaticRenders");
+
+    /**
+     * How the shadow distance is divided between cascades.
+     */
+    public static enum SplitScheme {
+        /** Equal ranges, wastes resolution close to the camera */
+        Uniform,
+        /** Ranges growing geometrically, matching perspective aliasing */
+        Logarithmic,
+        /** A blend of both, see {@link DirectionalShadowMapPass#setSplitLambda(float)} */
+        Practical,
+        /** Distances given with {@link DirectionalShadowMapPass#setCascadeSplits(float[])} */
+        Custom;
+    }
+
     /** Bias matrix borrowed from the projected texture utility */
     private static Matrix4f biasMatrix = new Matrix4f(0.5f, 0.0f, 0.0f, 0.0f,
             0.0f, 0.5f, 0.0f, 0.0f, 0.0f, 0.0f, 0.5f, 0.0f, 0.5f, 0.5f, 0.5f,
@@ -82,7 +132,7 @@ public class DirectionalShadowMapPass extends Pass {
 
     /** The renderer used to produce the shadow map */
     private TextureRenderer shadowMapRenderer;
-    /** The texture storing the shadow map */
+    /** The texture storing the shadow map (of the first cascade) */
     private Texture2D shadowMapTexture;
     /** The near plane when rendering the shadow map */
     private float nearPlane = 1f;
@@ -104,6 +154,8 @@ public class DirectionalShadowMapPass extends Pass {
 
     /** The list of occluding nodes */
     private ArrayList<Spatial> occluderNodes = new ArrayList<Spatial>();
+    /** The list of occluding nodes that don't move */
+    private ArrayList<Spatial> staticOccluderNodes = new ArrayList<Spatial>();
 
     /** Culling front faces when rendering shadow maps */
     private CullState cullFrontFace;
@@ -119,7 +171,7 @@ public class DirectionalShadowMapPass extends Pass {
      * be free of shadows and to blend into the background scene
      */
     private BlendState discardShadowFragments;
-    /** The state applying the shadow map */
+    /** The state applying the shadow map (of the first cascade) */
     private TextureState shadowTextureState;
     /** The bright light used to blend the shadows version into the scene */
     private LightState brightLights;
@@ -156,13 +208,48 @@ public class DirectionalShadowMapPass extends Pass {
     private ColorRGBA shadowCol = new ColorRGBA(0, 0, 0, 0.3f);
     /** The optional shader for smoothing */
     private GLSLShaderObjectsState shader;
+    /** The shader combining the shadow map with the static occluder map */
+    private GLSLShaderObjectsState cachedShader;
     /** True if the pass should use shaders */
     private boolean useShaders;
 
     /** True if we should cull occluders - if not we'll draw all includers */
     private boolean cullOccluders = true;
     /** Node providing easy rendering of all occluders added to the pass */
-    private final OccludersRenderNode occludersRenderNode = new OccludersRenderNode();
+    private final OccludersRenderNode occludersRenderNode = new OccludersRenderNode(
+            occluderNodes, staticOccluderNodes);
+    /** Node rendering the occluders that don't move */
+    private final OccludersRenderNode staticRenderNode = new OccludersRenderNode(
+            staticOccluderNodes, null);
+    /** Node rendering the occluders that move */
+    private final OccludersRenderNode dynamicRenderNode = new OccludersRenderNode(
+            occluderNodes, null);
+
+    /** The number of shadow maps splitting the view */
+    private int cascadeCount = 1;
+    private SplitScheme splitScheme = SplitScheme.Practical;
+    private float splitLambda = 0.75f;
+    /** The distances bounding the cascades, cascadeCount + 1 of them */
+    private float[] splits = new float[] { 0, 500 };
+    /** How far from the camera shadows are cast with cascades */
+    private float shadowDistance = 500;
+    /** How much larger than their slice of the view cascades are made */
+    private float staticCacheMargin = 0.25f;
+    private Cascade[] cascades;
+    /** True if static occluders are kept in their own maps this frame */
+    private boolean cacheStatic;
+    /** The light direction the cascades were last placed for */
+    private final Vector3f lastDirection = new Vector3f();
+
+    // temporary vectors for placing the cascades
+    private final Vector3f lightDir = new Vector3f();
+    private final Vector3f lightLeft = new Vector3f();
+    private final Vector3f lightUp = new Vector3f();
+    private final Vector3f center = new Vector3f();
+    private final Vector3f corner = new Vector3f();
+    private final Vector3f tmp = new Vector3f();
+    private final Matrix4f tmpProj = new Matrix4f();
+    private final Matrix4f tmpView = new Matrix4f();
 
     /**
      * Create a shadow map pass casting shadows from a light with the direction
@@ -242,6 +329,128 @@ public class DirectionalShadowMapPass extends Pass {
         shadowMapScale = scale;
     }
 
+    /**
+     * Set the number of shadow maps the shadow distance in front of the
+     * camera is split into. With a single one (the default) the shadow map is
+     * placed around the view target instead. Must be called before the pass
+     * is first rendered.
+     * 
+     * @param count
+     *            The number of cascades, 1 to {@link #MAX_CASCADES}
+     */
+    public void setCascadeCount(int count) {
+        if (count < 1 || count > MAX_CASCADES) {
+            throw new IllegalArgumentException("count must be between 1 and "
+                    + MAX_CASCADES);
+        }
+        if (initialised) {
+            throw new IllegalStateException(
+                    "The cascade count can not be changed after the pass was rendered.");
+        }
+        if (count != cascadeCount) {
+            cascadeCount = count;
+            if (splitScheme == SplitScheme.Custom) {
+                splitScheme = SplitScheme.Practical;
+            }
+            splits = new float[count + 1];
+        }
+    }
+
+    public int getCascadeCount() {
+        return cascadeCount;
+    }
+
+    /**
+     * Set how far in front of the camera shadows are cast when using
+     * cascades.
+     * 
+     * @param distance
+     *            The shadow distance (default = 500)
+     */
+    public void setShadowDistance(float distance) {
+        shadowDistance = distance;
+    }
+
+    public float getShadowDistance() {
+        return shadowDistance;
+    }
+
+    /**
+     * Set how the shadow distance is split between the cascades.
+     * 
+     * @param scheme
+     *            The split scheme (default = Practical)
+     */
+    public void setSplitScheme(SplitScheme scheme) {
+        if (scheme == SplitScheme.Custom) {
+            throw new IllegalArgumentException(
+                    "Use setCascadeSplits to give custom split distances.");
+        }
+        splitScheme = scheme;
+    }
+
+    public SplitScheme getSplitScheme() {
+        return splitScheme;
+    }
+
+    /**
+     * Set the weight of the logarithmic split distances in the practical
+     * split scheme, the rest being uniform.
+     * 
+     * @param lambda
+     *            The weight from 0 (uniform) to 1 (logarithmic), default =
+     *            0.75
+     */
+    public void setSplitLambda(float lambda) {
+        splitLambda = lambda;
+    }
+
+    public float getSplitLambda() {
+        return splitLambda;
+    }
+
+    /**
+     * Give the distances between the cascades explicitly. Switches the split
+     * scheme to Custom.
+     * 
+     * @param distances
+     *            cascadeCount - 1 increasing distances from the camera, all
+     *            less than the shadow distance
+     */
+    public void setCascadeSplits(float[] distances) {
+        if (distances.length != cascadeCount - 1) {
+            throw new IllegalArgumentException("Expected " + (cascadeCount - 1)
+                    + " split distances.");
+        }
+        System.arraycopy(distances, 0, splits, 1, distances.length);
+        splitScheme = SplitScheme.Custom;
+    }
+
+    /**
+     * @return The distances bounding the cascades as of the last rendering,
+     *         from the near plane of the camera to the shadow distance.
+     */
+    public float[] getCascadeSplits() {
+        return splits.clone();
+    }
+
+    /**
+     * Set how much larger than its slice of the view frustum each cascade is
+     * made. Cascades only move in steps of about this fraction of their size,
+     * and static occluders are only rendered again after a step. Larger values
+     * cost resolution.
+     * 
+     * @param margin
+     *            The margin as a fraction of the cascade size (default = 0.25)
+     */
+    public void setStaticCacheMargin(float margin) {
+        staticCacheMargin = margin;
+    }
+
+    public float getStaticCacheMargin() {
+        return staticCacheMargin;
+    }
+
     /**
      * Set the target of the view. This will be where the camera points when
      * generating the shadow map and should be the centre of the scene
@@ -295,6 +504,45 @@ public class DirectionalShadowMapPass extends Pass {
         occluderNodes.add(occluder);
     }
 
+    /**
+     * Add a spatial that will occlude light and does not move. Its shadows are
+     * cached until the light or the set of static occluders changes.
+     * 
+     * @param occluder
+     *            The spatial to add as a static occluder
+     */
+    public void addStaticOccluder(Spatial occluder) {
+        staticOccluderNodes.add(occluder);
+        invalidateStaticOccluders();
+    }
+
+    /**
+     * Remove an occluder added with addOccluder or addStaticOccluder
+     * 
+     * @param occluder
+     *            The spatial to remove
+     * @return true if the spatial was an occluder
+     */
+    public boolean removeOccluder(Spatial occluder) {
+        if (staticOccluderNodes.remove(occluder)) {
+            invalidateStaticOccluders();
+            return true;
+        }
+        return occluderNodes.remove(occluder);
+    }
+
+    /**
+     * Render the static occluders again in the next frame, e.g. after one of
+     * them moved.
+     */
+    public void invalidateStaticOccluders() {
+        if (cascades != null) {
+            for (Cascade c : cascades) {
+                c.staticDirty = true;
+            }
+        }
+    }
+
     /**
      * Initialise the pass render states
      */
@@ -305,36 +553,36 @@ public class DirectionalShadowMapPass extends Pass {
 
         initialised = true; // now it's initialised
 
-        // the texture that the shadow map will be rendered into. Modulated so
-        // that it can be blended over the scene.
-        shadowMapTexture = new Texture2D();
-        shadowMapTexture.setApply(Texture.ApplyMode.Modulate);
-        shadowMapTexture
-                .setMinificationFilter(Texture.MinificationFilter.NearestNeighborNoMipMaps);
-        shadowMapTexture.setWrap(Texture.WrapMode.Clamp);
-        shadowMapTexture
-                .setMagnificationFilter(Texture.MagnificationFilter.Bilinear);
-        shadowMapTexture
-                .setRenderToTextureType(Texture.RenderToTextureType.Depth);
-        shadowMapTexture.setMatrix(new Matrix4f());
-        shadowMapTexture
-                .setEnvironmentalMapMode(Texture.EnvironmentalMapMode.EyeLinear);
-
-        shadowMapTexture
-                .setDepthCompareMode(DepthTextureCompareMode.RtoTexture);
-        shadowMapTexture
-                .setDepthCompareFunc(DepthTextureCompareFunc.GreaterThanEqual);
-        shadowMapTexture.setDepthMode(DepthTextureMode.Intensity);
-
-        // configure the texture renderer to output to the texture
+        // configure the texture renderer to output to the textures
         shadowMapRenderer = DisplaySystem.getDisplaySystem()
                 .createTextureRenderer(shadowMapSize, shadowMapSize,
                         TextureRenderer.Target.Texture2D);
-        shadowMapRenderer.setupTexture(shadowMapTexture);
 
-        // render state to apply the shadow map texture
-        shadowTextureState = r.createTextureState();
-        shadowTextureState.setTexture(shadowMapTexture, 0);
+        cascades = new Cascade[cascadeCount];
+        for (int i = 0; i < cascadeCount; i++) {
+            Cascade c = new Cascade();
+            c.shadowMap = createShadowMapTexture();
+            // render state to apply the shadow map texture, and the static
+            // map on the second unit when it is cached
+            c.textureState = r.createTextureState();
+            c.textureState.setTexture(c.shadowMap, 0);
+            if (useShaders) {
+                c.staticMap = createShadowMapTexture();
+                c.cachedTextureState = r.createTextureState();
+                c.cachedTextureState.setTexture(c.shadowMap, 0);
+                c.cachedTextureState.setTexture(c.staticMap, 1);
+            }
+            if (cascadeCount > 1) {
+                // keeps the shadows of this cascade to its slice of the view
+                c.clip = r.createClipState();
+                c.clip.setEnabled(true);
+                c.clip.setEnableClipPlane(ClipState.CLIP_PLANE0, i > 0);
+                c.clip.setEnableClipPlane(ClipState.CLIP_PLANE1, true);
+            }
+            cascades[i] = c;
+        }
+        shadowMapTexture = cascades[0].shadowMap;
+        shadowTextureState = cascades[0].textureState;
 
         noClip = r.createClipState();
         noClip.setEnabled(false);
@@ -397,11 +645,52 @@ public class DirectionalShadowMapPass extends Pass {
             shader.setUniform("shadowMap", 0);
             shader.setUniform("offset", 0.0002f);
             shader.setEnabled(true);
+
+            cachedShader = DisplaySystem.getDisplaySystem().getRenderer()
+                    .createGLSLShaderObjectsState();
+            cachedShader.load(getResource("shadowMap.vert"), prefixStream(
+                    "#define STATIC_MAP\nconst float OFFSET = 0.5 / "
+                            + shadowMapSize + ".0;",
+                    getResource("shadowMap.frag")));
+            cachedShader.setUniform("shadowMap", 0);
+            cachedShader.setUniform("staticMap", 1);
+            cachedShader.setUniform("offset", 0.0002f);
+            cachedShader.setEnabled(true);
         }
 
+        lastDirection.set(direction);
         updateShadowCamera();
     }
 
+    /**
+     * @return a new depth texture a shadow map can be rendered into
+     */
+    private Texture2D createShadowMapTexture() {
+        // the texture that the shadow map will be rendered into. Modulated so
+        // that it can be blended over the scene.
+        Texture2D texture = new Texture2D();
+        texture.setApply(Texture.ApplyMode.Modulate);
+        texture
+                .setMinificationFilter(Texture.MinificationFilter.NearestNeighborNoMipMaps);
+        texture.setWrap(Texture.WrapMode.Clamp);
+        texture
+                .setMagnificationFilter(Texture.MagnificationFilter.Bilinear);
+        texture
+                .setRenderToTextureType(Texture.RenderToTextureType.Depth);
+        texture.setMatrix(new Matrix4f());
+        texture
+                .setEnvironmentalMapMode(Texture.EnvironmentalMapMode.EyeLinear);
+
+        texture
+                .setDepthCompareMode(DepthTextureCompareMode.RtoTexture);
+        texture
+                .setDepthCompareFunc(DepthTextureCompareFunc.GreaterThanEqual);
+        texture.setDepthMode(DepthTextureMode.Intensity);
+
+        shadowMapRenderer.setupTexture(texture);
+        return texture;
+    }
+
     public GLSLShaderObjectsState getShader() {
         return shader;
     }
@@ -435,11 +724,19 @@ public class DirectionalShadowMapPass extends Pass {
      * @see com.jme.renderer.pass.Pass#doRender(com.jme.renderer.Renderer)
      */
     public void doRender(Renderer r) {
-        if (occluderNodes.size() == 0) {
+        if (occluderNodes.size() == 0 && staticOccluderNodes.size() == 0) {
             return;
         }
 
         init(r);
+        if (!lastDirection.equals(direction)) {
+            lastDirection.set(direction);
+            invalidateStaticOccluders();
+        }
+        cacheStatic = useShaders && staticOccluderNodes.size() > 0;
+        if (cascadeCount > 1) {
+            updateCascades(r.getCamera());
+        }
         updateShadowMap(r);
         renderShadowedScene(r);
     }
@@ -452,38 +749,82 @@ public class DirectionalShadowMapPass extends Pass {
      */
     protected void renderShadowedScene(Renderer r) {
         saveEnforcedStates();
-        context.enforceState(shadowTextureState);
         context.enforceState(discardShadowFragments);
 
         if (useShaders) {
             Matrix4f view = ((AbstractCamera) r.getCamera())
                     .getModelViewMatrix();
-            shader.setUniform("inverseView", view.invert(), false);
-            context.enforceState(shader);
+            GLSLShaderObjectsState s = cacheStatic ? cachedShader : shader;
+            s.setUniform("inverseView", view.invert(), false);
+            context.enforceState(s);
         } else {
             context.enforceState(brightLights);
             context.enforceState(darkMaterial);
         }
 
         // draw the scene, only the shadowed bits will be drawn and blended
-        // with the shadow coloured geometry
+        // with the shadow coloured geometry. With cascades once per cascade,
+        // clipped to its slice of the view
         r.setPolygonOffset(0, -5);
-        for (Spatial spat : spatials) {
-            spat.onDraw(r);
+        for (int i = 0; i < cascadeCount; i++) {
+            Cascade c = cascades[i];
+            context.enforceState(cacheStatic ? c.cachedTextureState
+                    : c.textureState);
+            if (c.clip != null) {
+                setClipPlanes(c, r.getCamera());
+                context.enforceState(c.clip);
+            }
+            for (Spatial spat : spatials) {
+                spat.onDraw(r);
+            }
+            r.renderQueue();
         }
-        r.renderQueue();
         r.clearPolygonOffset();
 
         replaceEnforcedStates();
     }
 
     /**
-     * Update the shadow map
+     * Set the clip planes of a cascade to the near and far distance of its
+     * slice of the view
+     */
+    private void setClipPlanes(Cascade c, Camera view) {
+        Vector3f dir = view.getDirection();
+        float d = dir.dot(view.getLocation());
+        c.clip.setClipPlaneEquation(ClipState.CLIP_PLANE0, dir.x, dir.y,
+                dir.z, -(d + c.near));
+        c.clip.setClipPlaneEquation(ClipState.CLIP_PLANE1, -dir.x, -dir.y,
+                -dir.z, d + c.far);
+    }
+
+    /**
+     * Update the shadow maps of all cascades
      * 
      * @param r
      *            The renderer to being use to display this map
      */
     protected void updateShadowMap(Renderer r) {
+        for (int i = 0; i < cascadeCount; i++) {
+            StatCollector.startStat(STAT_CASCADE_TIMERS[i]);
+            updateShadowMap(r, i);
+            StatCollector.endStat(STAT_CASCADE_TIMERS[i]);
+        }
+    }
+
+    /**
+     * Update the shadow map of one cascade
+     * 
+     * @param r
+     *            The renderer to being use to display this map
+     * @param cascade
+     *            the index of the cascade, 0 without cascades
+     */
+    protected void updateShadowMap(Renderer r, int cascade) {
+        Cascade c = cascades[cascade];
+        if (cascadeCount > 1) {
+            applyCascadeCamera(c);
+        }
+
         saveEnforcedStates();
         context.enforceState(noClip);
         context.enforceState(noTexture);
@@ -493,17 +834,15 @@ public class DirectionalShadowMapPass extends Pass {
 
         r.setPolygonOffset(0, 5);
 
-        CullHint cullModeBefore = CullHint.Never;
-
-        if (!cullOccluders) {
-            cullModeBefore = occludersRenderNode.getCullHint();
-            occluderNodes.get(0).setCullHint(CullHint.Never);
-        }
-
-        shadowMapRenderer.render(occludersRenderNode, shadowMapTexture, true);
-
-        if (!cullOccluders) {
-            occludersRenderNode.setCullHint(cullModeBefore);
+        if (cacheStatic) {
+            if (c.staticDirty) {
+                shadowMapRenderer.render(staticRenderNode, c.staticMap, true);
+                c.staticDirty = false;
+                StatCollector.addStat(STAT_STATIC_SHADOW_RENDERS, 1);
+            }
+            shadowMapRenderer.render(dynamicRenderNode, c.shadowMap, true);
+        } else {
+            shadowMapRenderer.render(occludersRenderNode, c.shadowMap, true);
         }
 
         r.clearPolygonOffset();
@@ -526,15 +865,153 @@ public class DirectionalShadowMapPass extends Pass {
         shadowMapRenderer.getCamera().setParallelProjection(true);
         shadowMapRenderer.getCamera().update();
 
-        Matrix4f proj = new Matrix4f();
-        Matrix4f view = new Matrix4f();
-        proj.set(((AbstractCamera) shadowMapRenderer.getCamera())
+        updateTextureMatrix(shadowMapTexture);
+        if (cascades != null) {
+            cascades[0].staticDirty = true;
+        }
+    }
+
+    /**
+     * Set the matrix of a shadow map texture from the current shadow camera
+     */
+    private void updateTextureMatrix(Texture texture) {
+        tmpProj.set(((AbstractCamera) shadowMapRenderer.getCamera())
                 .getProjectionMatrix());
-        view.set(((AbstractCamera) shadowMapRenderer.getCamera())
+        tmpView.set(((AbstractCamera) shadowMapRenderer.getCamera())
                 .getModelViewMatrix());
 
-        shadowMapTexture.getMatrix().set(
-                view.multLocal(proj).multLocal(biasMatrix)).transposeLocal();
+        texture.getMatrix().set(
+                tmpView.multLocal(tmpProj).multLocal(biasMatrix)).transposeLocal();
+    }
+
+    /**
+     * Compute the distances bounding the cascades
+     */
+    protected void updateSplits(Camera view) {
+        float near = view.getFrustumNear();
+        float far = Math.max(shadowDistance, near * 1.01f);
+        splits[0] = near;
+        splits[cascadeCount] = far;
+        if (splitScheme == SplitScheme.Custom) {
+            return;
+        }
+        float lambda = splitScheme == SplitScheme.Uniform ? 0
+                : splitScheme == SplitScheme.Logarithmic ? 1 : splitLambda;
+        for (int i = 1; i < cascadeCount; i++) {
+            float f = (float) i / cascadeCount;
+            float log = near * (float) Math.pow(far / near, f);
+            float uniform = near + (far - near) * f;
+            splits[i] = lambda * log + (1 - lambda) * uniform;
+        }
+    }
+
+    /**
+     * Fit each cascade to its slice of the view frustum. A cascade is a box
+     * around the bounding sphere of its slice, so its size does not change
+     * when the camera turns, and it is moved in steps of whole texels so
+     * shadow edges don't shimmer, and of a fraction of its size so the static
+     * occluder map stays valid for a while.
+     */
+    protected void updateCascades(Camera view) {
+        updateSplits(view);
+
+        lightDir.set(direction).normalizeLocal();
+        if (Math.abs(lightDir.y) > 0.99f) {
+            lightUp.set(Vector3f.UNIT_Z);
+        } else {
+            lightUp.set(Vector3f.UNIT_Y);
+        }
+        lightUp.cross(lightDir, lightLeft).normalizeLocal();
+        lightDir.cross(lightLeft, lightUp).normalizeLocal();
+
+        for (int i = 0; i < cascadeCount; i++) {
+            Cascade c = cascades[i];
+            c.near = splits[i];
+            c.far = splits[i + 1];
+            float radius = sliceBounds(view, c.near, c.far, center);
+            float extent = radius * (1 + staticCacheMargin);
+            float texel = 2 * extent / shadowMapSize;
+            float step = Math.max(1, Math.round(radius * staticCacheMargin
+                    / texel))
+                    * texel;
+            float x = snap(center.dot(lightLeft), step);
+            float y = snap(center.dot(lightUp), step);
+            float z = snap(center.dot(lightDir), step);
+            if (c.x != x || c.y != y || c.z != z || c.extent != extent
+                    || !c.lightDir.equals(lightDir)) {
+                c.x = x;
+                c.y = y;
+                c.z = z;
+                c.extent = extent;
+                c.lightDir.set(lightDir);
+                c.left.set(lightLeft);
+                c.up.set(lightUp);
+                c.staticDirty = true;
+            }
+        }
+    }
+
+    private static float snap(float value, float step) {
+        return (float) Math.floor(value / step + 0.5f) * step;
+    }
+
+    /**
+     * @return the radius of the sphere around the corners of the view frustum
+     *         between near and far, its center is stored in store
+     */
+    private float sliceBounds(Camera view, float near, float far,
+            Vector3f store) {
+        Vector3f loc = view.getLocation();
+        float frustumNear = view.getFrustumNear();
+        store.zero();
+        for (int i = 0; i < 8; i++) {
+            sliceCorner(view, (i & 4) == 0 ? near : far, i, frustumNear, loc,
+                    corner);
+            store.addLocal(corner);
+        }
+        store.multLocal(1f / 8);
+        float radius = 0;
+        for (int i = 0; i < 8; i++) {
+            sliceCorner(view, (i & 4) == 0 ? near : far, i, frustumNear, loc,
+                    corner);
+            radius = Math.max(radius, corner.distance(store));
+        }
+        return radius;
+    }
+
+    private void sliceCorner(Camera view, float dist, int i,
+            float frustumNear, Vector3f loc, Vector3f store) {
+        float scale = view.isParallelProjection() ? 1 : dist / frustumNear;
+        float sx = ((i & 1) == 0 ? view.getFrustumLeft() : view
+                .getFrustumRight())
+                * scale;
+        float sy = ((i & 2) == 0 ? view.getFrustumBottom() : view
+                .getFrustumTop())
+                * scale;
+        // the left vector points against increasing screen x
+        store.set(loc).scaleAdd(dist, view.getDirection(), store);
+        store.scaleAdd(-sx, view.getLeft(), store);
+        store.scaleAdd(sy, view.getUp(), store);
+    }
+
+    /**
+     * Place the shadow camera on a cascade and set the texture matrix of its
+     * shadow map
+     */
+    private void applyCascadeCamera(Cascade c) {
+        Camera cam = shadowMapRenderer.getCamera();
+        // pull back along the light, occluders in front of the cascade box
+        // cast into it as well
+        float back = c.extent + dis;
+        tmp.set(c.left).multLocal(c.x);
+        tmp.scaleAdd(c.y, c.up, tmp);
+        tmp.scaleAdd(c.z - back, c.lightDir, tmp);
+        cam.setFrame(tmp, c.left, c.up, c.lightDir);
+        cam.setFrustum(nearPlane, back + c.extent, -c.extent, c.extent,
+                -c.extent, c.extent);
+        cam.setParallelProjection(true);
+        cam.update();
+        updateTextureMatrix(c.shadowMap);
     }
 
     /**
@@ -553,7 +1030,28 @@ public class DirectionalShadowMapPass extends Pass {
      */
     public void clear() {
         occluderNodes.clear();
+        staticOccluderNodes.clear();
         spatials.clear();
+        invalidateStaticOccluders();
+    }
+
+    /**
+     * The shadow maps and placement of one cascade
+     */
+    private static class Cascade {
+        Texture2D shadowMap;
+        Texture2D staticMap;
+        TextureState textureState;
+        TextureState cachedTextureState;
+        ClipState clip;
+        /** the slice of the view covered */
+        float near, far;
+        /** the placement in light space, and the basis it was made in */
+        float x, y, z, extent;
+        final Vector3f lightDir = new Vector3f();
+        final Vector3f left = new Vector3f();
+        final Vector3f up = new Vector3f();
+        boolean staticDirty = true;
     }
 
     /**
@@ -563,12 +1061,37 @@ public class DirectionalShadowMapPass extends Pass {
     private class OccludersRenderNode extends Node {
         private static final long serialVersionUID = 7367501683137581101L;
 
+        private final ArrayList<Spatial> occluders;
+        private final ArrayList<Spatial> moreOccluders;
+
+        OccludersRenderNode(ArrayList<Spatial> occluders,
+                ArrayList<Spatial> moreOccluders) {
+            this.occluders = occluders;
+            this.moreOccluders = moreOccluders;
+        }
+
         public void draw(Renderer r) {
+            draw(r, occluders);
+            if (moreOccluders != null) {
+                draw(r, moreOccluders);
+            }
+        }
+
+        private void draw(Renderer r, ArrayList<Spatial> list) {
             Spatial child;
-            for (int i = 0, cSize = occluderNodes.size(); i < cSize; i++) {
-                child = occluderNodes.get(i);
-                if (child != null)
+            for (int i = 0, cSize = list.size(); i < cSize; i++) {
+                child = list.get(i);
+                if (child == null) {
+                    continue;
+                }
+                if (cullOccluders) {
+                    child.onDraw(r);
+                } else {
+                    CullHint hint = child.getLocalCullHint();
+                    child.setCullHint(CullHint.Never);
                     child.onDraw(r);
+                    child.setCullHint(hint);
+                }
             }
         }
 
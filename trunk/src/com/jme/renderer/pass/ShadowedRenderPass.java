@@ -58,6 +58,7 @@ import com.jme.scene.state.ZBufferState;
 import com.jme.scene.state.StencilState.StencilFunction;
 import com.jme.scene.state.StencilState.StencilOperation;
 import com.jme.system.DisplaySystem;
+import com.jme.util.WorkerPool;
 
 /**
  * <code>ShadowedRenderPass</code> is a render pass that renders the added
@@ -145,6 +146,13 @@ public class ShadowedRenderPass extends Pass {
 
    private ShadowGate shadowGate = new DefaultShadowGate();    
 
+   /** whether the volumes of the occluders are built on the worker pool */
+   protected boolean parallelVolumes = false;
+
+   /** the occluders whose volumes are built on the worker pool this frame */
+   private ArrayList<TriMesh> pendingMeshes = new ArrayList<TriMesh>();
+   private WorkerPool.RangeTask volumeTask;
+
    public static boolean rTexture = true;
 
 
@@ -192,6 +200,25 @@ public class ShadowedRenderPass extends Pass {
        return occluders.size();
    }
 
+   /**
+    * @return whether the shadow volumes of the occluders are built in
+    *         parallel
+    */
+   public boolean isParallelVolumes() {
+       return parallelVolumes;
+   }
+
+   /**
+    * @param parallelVolumes
+    *            sets whether the shadow volumes of the occluders are built in
+    *            parallel on the {@link WorkerPool}. Each occluder is still
+    *            handled by a single thread, and occluders with locked shadows
+    *            are always built on the rendering thread.
+    */
+   public void setParallelVolumes(boolean parallelVolumes) {
+       this.parallelVolumes = parallelVolumes;
+   }
+
    /**
     * @return Returns whether shadow volumes will be rendered to the display.
     */
@@ -531,9 +558,36 @@ public class ShadowedRenderPass extends Pass {
             }
 
             MeshShadows sv = meshes.get(mesh);
+            LightState ls = (LightState) mesh.states[RenderState.RS_LIGHT];
+
+            // locking the volumes needs the GL thread
+            if (parallelVolumes
+                    && (mesh.getLocks() & Spatial.LOCKED_SHADOWS) == 0) {
+                // new volumes set up render states, so create them here
+                sv.createVolumes(ls);
+                pendingMeshes.add(mesh);
+                continue;
+            }
 
             // Create the geometry for the shadow volume
-            sv.createGeometry((LightState) mesh.states[RenderState.RS_LIGHT]);
+            sv.createGeometry(ls);
+        }
+
+        if (!pendingMeshes.isEmpty()) {
+            if (volumeTask == null) {
+                volumeTask = new WorkerPool.RangeTask() {
+                    public void run(int start, int end) {
+                        for (int i = start; i < end; i++) {
+                            TriMesh mesh = pendingMeshes.get(i);
+                            meshes.get(mesh).createGeometry(
+                                    (LightState) mesh.states[RenderState.RS_LIGHT]);
+                        }
+                    }
+                };
+            }
+            WorkerPool.getPool().invokeRange(pendingMeshes.size(), 1,
+                    volumeTask);
+            pendingMeshes.clear();
         }
     }
 
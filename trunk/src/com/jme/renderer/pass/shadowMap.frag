@@ -3,19 +3,34 @@ const float MULTIPLIER = (1.0 / 9.0) * 0.4;
 // shader since it's a constant dependent on a client value (the size of the shadow map)
 // OFFSET = 0.5f / SHADOW_MAP_SIZE;
 
+// STATIC_MAP is defined by the client code when the shadows of static
+// occluders are cached in a second map, the shadows of both are combined
+
 uniform sampler2DShadow shadowMap;
+#ifdef STATIC_MAP
+uniform sampler2DShadow staticMap;
+#endif
+
+float pcf(sampler2DShadow map)
+{
+	float shade = shadow2DProj(map, gl_TexCoord[0] + vec4(OFFSET * -1.0, OFFSET * -1.0, 0.0, 0.0)).r;
+    shade      += shadow2DProj(map, gl_TexCoord[0] + vec4(OFFSET *  0.0, OFFSET * -1.0, 0.0, 0.0)).r;
+    shade      += shadow2DProj(map, gl_TexCoord[0] + vec4(OFFSET *  1.0, OFFSET * -1.0, 0.0, 0.0)).r;
+    shade      += shadow2DProj(map, gl_TexCoord[0] + vec4(OFFSET * -1.0, OFFSET *  0.0, 0.0, 0.0)).r;
+    shade      += shadow2DProj(map, gl_TexCoord[0] + vec4(OFFSET *  0.0, OFFSET *  0.0, 0.0, 0.0)).r;
+    shade      += shadow2DProj(map, gl_TexCoord[0] + vec4(OFFSET *  1.0, OFFSET *  0.0, 0.0, 0.0)).r;
+    shade      += shadow2DProj(map, gl_TexCoord[0] + vec4(OFFSET * -1.0, OFFSET *  1.0, 0.0, 0.0)).r;
+    shade      += shadow2DProj(map, gl_TexCoord[0] + vec4(OFFSET *  0.0, OFFSET *  1.0, 0.0, 0.0)).r;
+    shade      += shadow2DProj(map, gl_TexCoord[0] + vec4(OFFSET *  1.0, OFFSET *  1.0, 0.0, 0.0)).r;
+    return shade;
+}
 
 void main()
 {   
-	float shade = shadow2DProj(shadowMap, gl_TexCoord[0] + vec4(OFFSET * -1.0, OFFSET * -1.0, 0.0, 0.0)).r;
-    shade      += shadow2DProj(shadowMap, gl_TexCoord[0] + vec4(OFFSET *  0.0, OFFSET * -1.0, 0.0, 0.0)).r;
-    shade      += shadow2DProj(shadowMap, gl_TexCoord[0] + vec4(OFFSET *  1.0, OFFSET * -1.0, 0.0, 0.0)).r;
-    shade      += shadow2DProj(shadowMap, gl_TexCoord[0] + vec4(OFFSET * -1.0, OFFSET *  0.0, 0.0, 0.0)).r;
-    shade      += shadow2DProj(shadowMap, gl_TexCoord[0] + vec4(OFFSET *  0.0, OFFSET *  0.0, 0.0, 0.0)).r;
-    shade      += shadow2DProj(shadowMap, gl_TexCoord[0] + vec4(OFFSET *  1.0, OFFSET *  0.0, 0.0, 0.0)).r;
-    shade      += shadow2DProj(shadowMap, gl_TexCoord[0] + vec4(OFFSET * -1.0, OFFSET *  1.0, 0.0, 0.0)).r;
-    shade      += shadow2DProj(shadowMap, gl_TexCoord[0] + vec4(OFFSET *  0.0, OFFSET *  1.0, 0.0, 0.0)).r;
-    shade      += shadow2DProj(shadowMap, gl_TexCoord[0] + vec4(OFFSET *  1.0, OFFSET *  1.0, 0.0, 0.0)).r;
+	float shade = pcf(shadowMap);
+#ifdef STATIC_MAP
+	shade = max(shade, pcf(staticMap));
+#endif
     shade *= MULTIPLIER;
     
     gl_FragColor = vec4(0,0,0,shade);
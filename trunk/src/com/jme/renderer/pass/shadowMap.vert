@@ -1,7 +1,10 @@
 uniform mat4 inverseView;
 
 void main(void){
-    gl_TexCoord[0] = gl_TextureMatrix[0] * inverseView * (gl_ModelViewMatrix * gl_Vertex);
+    vec4 eyePos = gl_ModelViewMatrix * gl_Vertex;
+    gl_TexCoord[0] = gl_TextureMatrix[0] * inverseView * eyePos;
+    // needed for the clip planes limiting each cascade
+    gl_ClipVertex = eyePos;
  
     gl_Position = ftransform();
 }
@@ -546,6 +546,7 @@ public abstract class Geometry extends Spatial implements Serializable, Savable
             worldBound = bound.transform(getWorldRotation(),
                     getWorldTranslation(), getWorldScale(), worldBound);
         }
+        worldBoundUpdated();
     }
 
     /**
@@ -47,6 +47,7 @@ import com.jme.intersection.PickResults;
 import com.jme.math.Ray;
 import com.jme.renderer.Renderer;
 import com.jme.scene.state.RenderState;
+import com.jme.util.WorkerPool;
 import com.jme.util.export.JMEExporter;
 import com.jme.util.export.JMEImporter;
 import com.jme.util.export.Savable;
@@ -69,6 +70,22 @@ public class Node extends Spatial implements Serializable, Savable {
     /** This node's children. */
     protected List<Spatial> children;
 
+    /**
+     * If true, the children of this node are updated on the
+     * {@link WorkerPool} instead of the calling thread.
+     */
+    protected transient boolean parallelUpdate = false;
+
+    /** Minimum number of children for this node to update in parallel. */
+    protected transient int parallelUpdateThreshold = 2;
+
+    /** The BVH used to pick and collide this node's children, if any. */
+    transient SceneBVH sceneBVH;
+    /** The query that last tested this node through a SceneBVH. */
+    transient int bvhStamp;
+    /** The verdict of that query. */
+    transient boolean bvhPass;
+
     /**
      * Default constructor.
      */
@@ -161,6 +178,7 @@ public class Node extends Spatial implements Serializable, Savable {
                     children = Collections.synchronizedList(new ArrayList<Spatial>(1));  
                 }
                 children.add(child);
+                SceneBVH.childAttached(this, child);
                 if (logger.isLoggable(Level.INFO)) {
                     logger.info("Child (" + child.getName()
                             + ") attached to this" + " node (" + getName()
@@ -196,6 +214,7 @@ public class Node extends Spatial implements Serializable, Savable {
                     children = Collections.synchronizedList(new ArrayList<Spatial>(1));  
                 }
                 children.add(index, child);
+                SceneBVH.childAttached(this, child);
                 if (logger.isLoggable(Level.INFO)) {
                     logger.info("Child (" + child.getName()
                             + ") attached to this" + " node (" + getName()
@@ -273,6 +292,7 @@ public class Node extends Spatial implements Serializable, Savable {
         }
         Spatial child =  children.remove(index);
         if ( child != null ) {
+            SceneBVH.childDetached(child);
             child.setParent( null );
             logger.info("Child removed.");
         }
@@ -306,6 +326,7 @@ public class Node extends Spatial implements Serializable, Savable {
         children.add(index1, c2);
         children.remove(index2);
         children.add(index2, c1);
+        SceneBVH.childrenReordered(this);
     }
 
     /**
@@ -382,6 +403,12 @@ public class Node extends Spatial implements Serializable, Savable {
     public void updateWorldData(float time) {
         super.updateWorldData(time);
 
+        if (parallelUpdate && getQuantity() >= parallelUpdateThreshold
+                && !WorkerPool.isWorkerThread()) {
+            updateChildrenParallel(time);
+            return;
+        }
+
         Spatial child;
         for (int i = 0, n = getQuantity(); i < n; i++) {
             try {
@@ -397,6 +424,131 @@ public class Node extends Spatial implements Serializable, Savable {
         }
     }
 
+    /**
+     * Updates the geometric state of all children, splitting them in about
+     * one group of consecutive children per worker thread. World bounds are
+     * merged afterwards on the calling thread in child order, so the result
+     * is the same as a serial update.
+     * 
+     * @param time
+     *            the frame time.
+     */
+    protected void updateChildrenParallel(final float time) {
+        final Spatial[] kids = children.toArray(new Spatial[0]);
+        WorkerPool.getPool().invokeRange(kids.length, 1,
+                new WorkerPool.RangeTask() {
+                    public void run(int start, int end) {
+                        for (int i = start; i < end; i++) {
+                            if (kids[i] != null) {
+                                kids[i].updateGeometricState(time, false);
+                            }
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Sets whether the children of this node should have their controllers,
+     * world transforms and world bounds updated in parallel on the shared
+     * {@link WorkerPool}. Only useful for nodes with several large, independent
+     * branches - typically the root of a big scene.
+     * <p>
+     * Controllers and overridden update methods found under this node must
+     * then be safe to run concurrently with those of sibling branches, and must
+     * not attach or detach children of this node. Nested parallel nodes are
+     * updated serially by the worker thread that reaches them.
+     * <p>
+     * {@link com.jme.bounding.BoundingBox} and
+     * {@link com.jme.bounding.BoundingSphere} keep no shared temporaries, so
+     * controllers may recompute model bounds of those types, as the animation
+     * and particle controllers do every frame.
+     * {@link com.jme.bounding.OrientedBoundingBox} and
+     * {@link com.jme.bounding.BoundingCapsule} still compute through static
+     * temporaries: branches that update model bounds of those types must not
+     * be updated in parallel.
+     * 
+     * @param parallelUpdate
+     *            true to update children in parallel, false (the default) to
+     *            update them on the calling thread.
+     */
+    public void setParallelUpdate(boolean parallelUpdate) {
+        this.parallelUpdate = parallelUpdate;
+    }
+
+    /**
+     * @return true if the children of this node are updated in parallel.
+     * @see #setParallelUpdate(boolean)
+     */
+    public boolean isParallelUpdate() {
+        return parallelUpdate;
+    }
+
+    /**
+     * @param threshold
+     *            the minimum number of children this node must have for a
+     *            parallel update to be used. Defaults to 2.
+     * @see #setParallelUpdate(boolean)
+     */
+    public void setParallelUpdateThreshold(int threshold) {
+        this.parallelUpdateThreshold = threshold;
+    }
+
+    /**
+     * @return the minimum number of children for a parallel update.
+     */
+    public int getParallelUpdateThreshold() {
+        return parallelUpdateThreshold;
+    }
+
+    /**
+     * Enables or disables the bounding volume hierarchy of this node. When
+     * enabled, {@link #findPick(Ray, PickResults)},
+     * {@link #findCollisions(Spatial, CollisionResults)} and
+     * {@link #hasCollision(Spatial, boolean)} only visit the leaves whose
+     * world bound is near the ray or scene, instead of every child. The
+     * results are the same either way. Worth it on the root of large scenes.
+     * 
+     * @param useBVH
+     *            true to index the leaves below this node in a BVH.
+     * @see SceneBVH
+     */
+    public void setUseBVH(boolean useBVH) {
+        if (useBVH == (sceneBVH != null)) {
+            return;
+        }
+        // this node turns into a leaf of any outer BVH, or back
+        SceneBVH outer = bvh;
+        if (outer != null) {
+            outer.remove(this);
+        }
+        if (useBVH) {
+            sceneBVH = new SceneBVH(this);
+        } else {
+            sceneBVH.clear();
+            sceneBVH = null;
+        }
+        if (outer != null) {
+            outer.add(this);
+        }
+    }
+
+    /**
+     * @return true if this node uses a bounding volume hierarchy for picking
+     *         and collisions.
+     * @see #setUseBVH(boolean)
+     */
+    public boolean isUseBVH() {
+        return sceneBVH != null;
+    }
+
+    /**
+     * @return the bounding volume hierarchy of this node, or null.
+     * @see #setUseBVH(boolean)
+     */
+    public SceneBVH getSceneBVH() {
+        return sceneBVH;
+    }
+
     @Override
     public void updateWorldVectors(boolean recurse) {
         if (((lockedMode & Spatial.LOCKED_TRANSFORMS) == 0)) {
@@ -581,12 +733,17 @@ public class Node extends Spatial implements Serializable, Savable {
             }
         }
         this.worldBound = worldBound;
+        worldBoundUpdated();
     }
 
     @Override
     public void findCollisions(Spatial scene, CollisionResults results) {
         if (getWorldBound() != null && isCollidable && scene.isCollidable()) {
             if (getWorldBound().intersects(scene.getWorldBound())) {
+                if (sceneBVH != null) {
+                    sceneBVH.findCollisions(scene, results);
+                    return;
+                }
                 // further checking needed.
                 for (int i = 0; i < getQuantity(); i++) {
                     getChild(i).findCollisions(scene, results);
@@ -602,6 +759,9 @@ public class Node extends Spatial implements Serializable, Savable {
                 if(children == null && !checkTriangles) {
                     return true;
                 }
+                if (sceneBVH != null) {
+                    return sceneBVH.hasCollision(scene, checkTriangles);
+                }
                 // further checking needed.
                 for (int i = 0; i < getQuantity(); i++) {
                     if (getChild(i).hasCollision(scene, checkTriangles)) {
@@ -621,6 +781,10 @@ public class Node extends Spatial implements Serializable, Savable {
         }
         if (getWorldBound() != null && isCollidable) {
             if (getWorldBound().intersects(toTest)) {
+                if (sceneBVH != null) {
+                    sceneBVH.findPick(toTest, results);
+                    return;
+                }
                 // further checking needed.
                 for (int i = 0; i < getQuantity(); i++) {
                     ( children.get(i)).findPick(toTest, results);
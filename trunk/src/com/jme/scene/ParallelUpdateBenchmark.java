@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2003-2008 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors 
+ *   may be used to endorse or promote products derived from this software 
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.jme.scene;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.jme.bounding.BoundingBox;
+import com.jme.math.FastMath;
+import com.jme.math.Quaternion;
+import com.jme.math.Vector3f;
+import com.jme.scene.shape.Box;
+import com.jme.util.WorkerPool;
+
+/**
+ * <code>ParallelUpdateBenchmark</code> times
+ * {@link Node#updateGeometricState(float, boolean)} on a large synthetic tree
+ * with and without {@link Node#setParallelUpdate(boolean)}, for an increasing
+ * number of worker threads, and checks that every run ends with the same world
+ * data as the serial update.
+ * <p>
+ * Usage: <code>ParallelUpdateBenchmark [branches] [leavesPerBranch] [frames]</code>
+ */
+public class ParallelUpdateBenchmark {
+
+    public static void main(String[] args) {
+        Logger.getLogger("").setLevel(Level.WARNING);
+        int branches = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int leaves = args.length > 1 ? Integer.parseInt(args[1]) : 512;
+        int frames = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+        System.out.println("Tree: " + branches + " branches x " + leaves
+                + " leaves, " + frames + " frames");
+
+        Node serial = buildTree(branches, leaves);
+        double serialTime = run(serial, frames);
+        double serialSum = checksum(serial);
+        System.out.println("serial:            " + format(serialTime)
+                + " ms/frame");
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            WorkerPool.setThreadCount(threads);
+            Node parallel = buildTree(branches, leaves);
+            parallel.setParallelUpdate(true);
+            double time = run(parallel, frames);
+            boolean same = checksum(parallel) == serialSum;
+            System.out.println("parallel, " + threads + " thread(s): "
+                    + format(time) + " ms/frame, speedup "
+                    + format(serialTime / time) + (same ? "" : "  MISMATCH!"));
+            if (threads < cores && threads * 2 > cores) {
+                threads = cores / 2;
+            }
+        }
+        WorkerPool.shutdown();
+    }
+
+    private static Node buildTree(int branches, int leaves) {
+        Node root = new Node("root");
+        for (int b = 0; b < branches; b++) {
+            Node branch = new Node("branch" + b);
+            branch.getLocalTranslation().set(b * 10, 0, 0);
+            branch.addController(new Spinner(branch, 0.1f + b * 0.01f));
+            for (int l = 0; l < leaves; l++) {
+                Box box = new Box("box" + l, new Vector3f(), 0.5f, 0.5f, 0.5f);
+                box.getLocalTranslation().set(0, l % 32, l / 32);
+                box.addController(new Spinner(box, 1 + l * 0.001f));
+                box.setModelBound(new BoundingBox());
+                box.updateModelBound();
+                branch.attachChild(box);
+            }
+            root.attachChild(branch);
+        }
+        return root;
+    }
+
+    private static double run(Node root, int frames) {
+        // warm up
+        for (int i = 0; i < frames / 4; i++) {
+            root.updateGeometricState(0.016f, true);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < frames; i++) {
+            root.updateGeometricState(0.016f, true);
+        }
+        return (System.nanoTime() - start) / 1000000.0 / frames;
+    }
+
+    private static double checksum(Node root) {
+        BoundingBox rootBound = (BoundingBox) root.getWorldBound();
+        double sum = rootBound.getCenter().x + rootBound.xExtent
+                + rootBound.yExtent * 3 + rootBound.zExtent * 7;
+        for (int b = 0; b < root.getQuantity(); b++) {
+            Node branch = (Node) root.getChild(b);
+            for (int l = 0; l < branch.getQuantity(); l++) {
+                Spatial leaf = branch.getChild(l);
+                Vector3f t = leaf.getWorldTranslation();
+                BoundingBox bound = (BoundingBox) leaf.getWorldBound();
+                sum += t.x + t.y * 3 + t.z * 7 + bound.xExtent
+                        + bound.yExtent * 3 + bound.zExtent * 7;
+            }
+        }
+        return sum;
+    }
+
+    private static String format(double value) {
+        return String.valueOf(Math.round(value * 1000) / 1000.0);
+    }
+
+    /** Rotates its spatial around Y, using only per instance data. */
+    private static class Spinner extends Controller {
+        private static final long serialVersionUID = 1L;
+
+        private final Spatial spatial;
+        private final Quaternion rotation = new Quaternion();
+        private float angle;
+
+        Spinner(Spatial spatial, float speed) {
+            this.spatial = spatial;
+            setSpeed(speed);
+        }
+
+        @Override
+        public void update(float time) {
+            angle = (angle + time * getSpeed()) % FastMath.TWO_PI;
+            spatial.setLocalRotation(rotation.fromAngleNormalAxis(angle,
+                    Vector3f.UNIT_Y));
+        }
+    }
+}
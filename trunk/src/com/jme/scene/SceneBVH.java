@@ -0,0 +1,490 @@
+/*
+ * Copyright (c) 2003-2008 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors 
+ *   may be used to endorse or promote products derived from this software 
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.jme.scene;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.jme.bounding.BoundingBox;
+import com.jme.bounding.BoundingCapsule;
+import com.jme.bounding.BoundingSphere;
+import com.jme.bounding.BoundingVolume;
+import com.jme.bounding.DynamicAABBTree;
+import com.jme.bounding.OrientedBoundingBox;
+import com.jme.intersection.CollisionResults;
+import com.jme.intersection.PickResults;
+import com.jme.math.Ray;
+import com.jme.math.Vector3f;
+
+/**
+ * <code>SceneBVH</code> keeps the world bounds of all the leaves below a
+ * {@link Node} in a {@link DynamicAABBTree}, so that picking and collision
+ * queries on that node only visit the leaves near the ray or volume instead
+ * of the whole scene. It is created with {@link Node#setUseBVH(boolean)} and
+ * kept up to date as children are attached, detached and their world bounds
+ * are updated.
+ * <p>
+ * Leaves are all the Spatials that are not Nodes, plus the Nodes without
+ * children, the Nodes that do their own picking (i.e. override findPick,
+ * findCollisions or hasCollision, like {@link SwitchNode}) and the Nodes that
+ * have a BVH of their own. The
+ * tree only selects candidates: every Node between a candidate and the owner
+ * is tested exactly like the brute force traversal does, candidates are
+ * visited in scene graph order and then asked to do their own test. The
+ * results are therefore the same as without the BVH, as long as world bounds
+ * only change through updateWorldBound.
+ */
+public class SceneBVH {
+
+    private static final Map<Class<?>, Boolean> customQueries = new HashMap<Class<?>, Boolean>();
+
+    private static final Comparator<Spatial> ORDER = new Comparator<Spatial>() {
+        public int compare(Spatial o1, Spatial o2) {
+            return o1.bvhOrder < o2.bvhOrder ? -1
+                    : (o1.bvhOrder == o2.bvhOrder ? 0 : 1);
+        }
+    };
+
+    // shared by all BVHs, as nodes may move from one BVH to another with
+    // their stamps
+    private static final AtomicInteger queryStamp = new AtomicInteger();
+
+    private final Node owner;
+    private final DynamicAABBTree<Spatial> tree = new DynamicAABBTree<Spatial>(64);
+
+    /** leaves without a usable world bound, tested by every query */
+    private final Map<Spatial, Boolean> unbounded = new IdentityHashMap<Spatial, Boolean>();
+    private final List<Spatial> candidates = new ArrayList<Spatial>();
+
+    private boolean orderDirty = true;
+
+    private final Vector3f min = new Vector3f();
+    private final Vector3f max = new Vector3f();
+
+    SceneBVH(Node owner) {
+        this.owner = owner;
+        for (int i = 0, cSize = owner.getQuantity(); i < cSize; i++) {
+            add(owner.getChild(i));
+        }
+    }
+
+    /**
+     * @return the Node whose children are indexed by this BVH.
+     */
+    public Node getOwner() {
+        return owner;
+    }
+
+    /**
+     * @return the number of leaves with a bound in the tree.
+     */
+    public synchronized int getLeafCount() {
+        return tree.getProxyCount();
+    }
+
+    /**
+     * @return the height of the tree.
+     */
+    public synchronized int getHeight() {
+        return tree.getHeight();
+    }
+
+    /**
+     * Called when a child was attached to the given node.
+     */
+    static void childAttached(Node parent, Spatial child) {
+        SceneBVH bvh = parent.sceneBVH;
+        if (bvh == null) {
+            bvh = parent.bvh;
+            if (bvh == null) {
+                return;
+            }
+            if (parent.bvhLeaf) {
+                synchronized (bvh) {
+                    if (parent.bvh == bvh && parent.bvhLeaf && !isLeaf(parent)) {
+                        // a childless node got its first child
+                        bvh.remove(parent);
+                        bvh.add(parent);
+                    }
+                }
+                return;
+            }
+        }
+        bvh.add(child);
+    }
+
+    /**
+     * Called when a child was removed from the children of its parent, before
+     * its parent is cleared.
+     */
+    static void childDetached(Spatial child) {
+        SceneBVH bvh = child.bvh;
+        if (bvh == null) {
+            return;
+        }
+        synchronized (bvh) {
+            bvh.remove(child);
+            Node parent = child.getParent();
+            if (parent != null && parent.bvh == bvh && !parent.bvhLeaf
+                    && isLeaf(parent)) {
+                // the node lost its last child
+                bvh.remove(parent);
+                bvh.add(parent);
+            }
+        }
+    }
+
+    /**
+     * Called when the children of the given node were reordered.
+     */
+    static void childrenReordered(Node parent) {
+        SceneBVH bvh = parent.sceneBVH;
+        if (bvh == null) {
+            if (parent.bvh == null || parent.bvhLeaf) {
+                return;
+            }
+            bvh = parent.bvh;
+        }
+        synchronized (bvh) {
+            bvh.orderDirty = true;
+        }
+    }
+
+    /**
+     * Called when the world bound of the given spatial was updated.
+     */
+    static void boundUpdated(Spatial spatial) {
+        SceneBVH bvh = spatial.bvh;
+        if (bvh != null && spatial.bvhLeaf) {
+            bvh.updateLeaf(spatial);
+        }
+    }
+
+    synchronized void add(Spatial spatial) {
+        spatial.bvh = this;
+        orderDirty = true;
+        if (isLeaf(spatial)) {
+            spatial.bvhLeaf = true;
+            spatial.bvhProxy = -1;
+            updateLeaf(spatial);
+        } else {
+            spatial.bvhLeaf = false;
+            Node node = (Node) spatial;
+            for (int i = 0, cSize = node.getQuantity(); i < cSize; i++) {
+                add(node.getChild(i));
+            }
+        }
+    }
+
+    synchronized void remove(Spatial spatial) {
+        if (spatial.bvh != this) {
+            return;
+        }
+        orderDirty = true;
+        if (spatial.bvhLeaf) {
+            if (spatial.bvhProxy != -1) {
+                tree.destroyProxy(spatial.bvhProxy);
+                spatial.bvhProxy = -1;
+            } else {
+                unbounded.remove(spatial);
+            }
+        } else {
+            Node node = (Node) spatial;
+            for (int i = 0, cSize = node.getQuantity(); i < cSize; i++) {
+                remove(node.getChild(i));
+            }
+        }
+        spatial.bvh = null;
+        spatial.bvhLeaf = false;
+    }
+
+    /** Removes all the leaves, called when the owner stops using a BVH. */
+    synchronized void clear() {
+        for (int i = 0, cSize = owner.getQuantity(); i < cSize; i++) {
+            remove(owner.getChild(i));
+        }
+    }
+
+    private synchronized void updateLeaf(Spatial leaf) {
+        boolean bounded = computeBox(leaf.getWorldBound(), min, max);
+        if (leaf.bvhProxy != -1) {
+            if (bounded) {
+                tree.moveProxy(leaf.bvhProxy, min, max);
+                return;
+            }
+            tree.destroyProxy(leaf.bvhProxy);
+            leaf.bvhProxy = -1;
+            unbounded.put(leaf, Boolean.TRUE);
+        } else if (bounded) {
+            unbounded.remove(leaf);
+            leaf.bvhProxy = tree.createProxy(min, max, leaf);
+        } else {
+            unbounded.put(leaf, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Finds the picks of the given ray below the owner. The owner itself has
+     * already been tested.
+     */
+    synchronized void findPick(Ray ray, PickResults results) {
+        candidates.clear();
+        tree.query(ray, candidates);
+        int stamp = prepareCandidates();
+        for (int i = 0, cSize = candidates.size(); i < cSize; i++) {
+            Spatial leaf = candidates.get(i);
+            if (ancestorsPass(leaf.getParent(), stamp, ray, null)) {
+                leaf.findPick(ray, results);
+            }
+        }
+        candidates.clear();
+    }
+
+    /**
+     * Finds the collisions of the given scene with the leaves below the
+     * owner. The owner itself has already been tested.
+     */
+    synchronized void findCollisions(Spatial scene, CollisionResults results) {
+        queryScene(scene);
+        int stamp = prepareCandidates();
+        for (int i = 0, cSize = candidates.size(); i < cSize; i++) {
+            Spatial leaf = candidates.get(i);
+            if (ancestorsPass(leaf.getParent(), stamp, null, scene)) {
+                leaf.findCollisions(scene, results);
+            }
+        }
+        candidates.clear();
+    }
+
+    /**
+     * @return true if the given scene collides with one of the leaves below
+     *         the owner. The owner itself has already been tested.
+     */
+    synchronized boolean hasCollision(Spatial scene, boolean checkTriangles) {
+        queryScene(scene);
+        int stamp = prepareCandidates();
+        try {
+            for (int i = 0, cSize = candidates.size(); i < cSize; i++) {
+                Spatial leaf = candidates.get(i);
+                if (ancestorsPass(leaf.getParent(), stamp, null, scene)
+                        && leaf.hasCollision(scene, checkTriangles)) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            candidates.clear();
+        }
+    }
+
+    private void queryScene(Spatial scene) {
+        candidates.clear();
+        if (computeBox(scene.getWorldBound(), min, max)) {
+            tree.query(min, max, candidates);
+        } else {
+            // no usable bound to query with, check every leaf
+            collectLeaves(owner);
+        }
+    }
+
+    private void collectLeaves(Node node) {
+        for (int i = 0, cSize = node.getQuantity(); i < cSize; i++) {
+            Spatial child = node.getChild(i);
+            if (!child.bvhLeaf) {
+                collectLeaves((Node) child);
+            } else if (child.bvhProxy != -1) {
+                // the unbounded leaves are added by prepareCandidates
+                candidates.add(child);
+            }
+        }
+    }
+
+    /**
+     * Adds the unbounded leaves to the candidates and puts them in scene
+     * graph order.
+     * 
+     * @return the stamp to use for caching the verdicts of this query.
+     */
+    private int prepareCandidates() {
+        candidates.addAll(unbounded.keySet());
+        if (orderDirty) {
+            number(owner, 0);
+            orderDirty = false;
+        }
+        if (candidates.size() > 1) {
+            Collections.sort(candidates, ORDER);
+        }
+        return queryStamp.incrementAndGet();
+    }
+
+    private int number(Node node, int next) {
+        for (int i = 0, cSize = node.getQuantity(); i < cSize; i++) {
+            Spatial child = node.getChild(i);
+            if (child.bvhLeaf) {
+                child.bvhOrder = next++;
+            } else {
+                next = number((Node) child, next);
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Applies the tests of {@link Node#findPick(Ray, PickResults)} (if ray is
+     * not null) or {@link Node#findCollisions(Spatial, CollisionResults)} to
+     * the given node and its parents up to the owner, caching the verdict of
+     * each node for the query.
+     */
+    private boolean ancestorsPass(Node node, int stamp, Ray ray, Spatial scene) {
+        if (node == owner) {
+            return true;
+        }
+        if (node.bvhStamp == stamp) {
+            return node.bvhPass;
+        }
+        boolean pass = ancestorsPass(node.getParent(), stamp, ray, scene);
+        if (pass) {
+            BoundingVolume bound = node.getWorldBound();
+            if (ray != null) {
+                pass = bound != null && node.isCollidable
+                        && bound.intersects(ray);
+            } else {
+                pass = bound != null && node.isCollidable
+                        && scene.isCollidable()
+                        && bound.intersects(scene.getWorldBound());
+            }
+        }
+        node.bvhStamp = stamp;
+        node.bvhPass = pass;
+        return pass;
+    }
+
+    private static boolean isLeaf(Spatial spatial) {
+        if (!(spatial instanceof Node)) {
+            return true;
+        }
+        Node node = (Node) spatial;
+        return node.getQuantity() == 0 || node.sceneBVH != null
+                || hasCustomQueries(node.getClass());
+    }
+
+    /**
+     * @return true if the given Node class changes the way its children are
+     *         picked or collided.
+     */
+    private static boolean hasCustomQueries(Class<?> nodeClass) {
+        synchronized (customQueries) {
+            Boolean custom = customQueries.get(nodeClass);
+            if (custom == null) {
+                try {
+                    custom = nodeClass.getMethod("findPick", Ray.class,
+                            PickResults.class).getDeclaringClass() != Node.class
+                            || nodeClass.getMethod("findCollisions",
+                                    Spatial.class, CollisionResults.class)
+                                    .getDeclaringClass() != Node.class
+                            || nodeClass.getMethod("hasCollision",
+                                    Spatial.class, boolean.class)
+                                    .getDeclaringClass() != Node.class;
+                } catch (NoSuchMethodException e) {
+                    custom = Boolean.TRUE;
+                }
+                customQueries.put(nodeClass, custom);
+            }
+            return custom.booleanValue();
+        }
+    }
+
+    /**
+     * Stores the axis aligned box enclosing the given volume in min and max.
+     * 
+     * @return false if the volume is null, not valid or of an unknown type.
+     */
+    private static boolean computeBox(BoundingVolume volume, Vector3f min,
+            Vector3f max) {
+        if (volume == null) {
+            return false;
+        }
+        switch (volume.getType()) {
+            case AABB: {
+                BoundingBox box = (BoundingBox) volume;
+                set(box.getCenter(), box.xExtent, box.yExtent, box.zExtent,
+                        min, max);
+                break;
+            }
+            case Sphere: {
+                BoundingSphere sphere = (BoundingSphere) volume;
+                float r = sphere.getRadius();
+                set(sphere.getCenter(), r, r, r, min, max);
+                break;
+            }
+            case Capsule: {
+                BoundingCapsule capsule = (BoundingCapsule) volume;
+                float r = capsule.getRadius()
+                        + capsule.getLineSegment().getExtent();
+                set(capsule.getLineSegment().getOrigin(), r, r, r, min, max);
+                break;
+            }
+            case OBB: {
+                OrientedBoundingBox obb = (OrientedBoundingBox) volume;
+                Vector3f e = obb.getExtent();
+                Vector3f x = obb.getXAxis(), y = obb.getYAxis(), z = obb
+                        .getZAxis();
+                set(obb.getCenter(), Math.abs(x.x) * e.x + Math.abs(y.x) * e.y
+                        + Math.abs(z.x) * e.z, Math.abs(x.y) * e.x
+                        + Math.abs(y.y) * e.y + Math.abs(z.y) * e.z, Math
+                        .abs(x.z)
+                        * e.x + Math.abs(y.z) * e.y + Math.abs(z.z) * e.z, min,
+                        max);
+                break;
+            }
+            default:
+                return false;
+        }
+        return Vector3f.isValidVector(min) && Vector3f.isValidVector(max);
+    }
+
+    private static void set(Vector3f center, float x, float y, float z,
+            Vector3f min, Vector3f max) {
+        x = Math.abs(x);
+        y = Math.abs(y);
+        z = Math.abs(z);
+        min.set(center.x - x, center.y - y, center.z - z);
+        max.set(center.x + x, center.y + y, center.z + z);
+    }
+}
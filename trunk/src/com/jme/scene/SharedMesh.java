@@ -561,6 +561,7 @@ public class SharedMesh extends TriMesh {
             worldBound = target.getModelBound().transform(getWorldRotation(),
                     getWorldTranslation(), getWorldScale(), worldBound);
         }
+        worldBoundUpdated();
     }
 
     /**
@@ -266,6 +266,15 @@ public abstract class Spatial implements Serializable, Savable {
     /** Spatial's parent, or null if it has none. */
     protected transient Node parent;
 
+    /** The scene BVH this Spatial is indexed in, if any. */
+    transient SceneBVH bvh;
+    /** True if this Spatial is a leaf of bvh. */
+    transient boolean bvhLeaf;
+    /** The id of this leaf in the tree of bvh, -1 if it has no usable bound. */
+    transient int bvhProxy = -1;
+    /** The position of this leaf in scene graph order. */
+    transient int bvhOrder;
+
     /** ArrayList of controllers for this spatial. */
     protected ArrayList<Controller> geometricalControllers;
 
@@ -1451,6 +1460,17 @@ public abstract class Spatial implements Serializable, Savable {
      */
     public abstract void updateWorldBound();
 
+    /**
+     * Lets the {@link SceneBVH} this Spatial is indexed in, if any, know that
+     * its world bound has changed. Implementations of updateWorldBound call
+     * this once the new bound is computed.
+     */
+    protected void worldBoundUpdated() {
+        if (bvh != null) {
+            SceneBVH.boundUpdated(this);
+        }
+    }
+
     /**
      * Updates the render state values of this Spatial and and children it has.
      * Should be called whenever render states change.
@@ -41,6 +41,7 @@ import java.util.logging.Logger;
 
 import com.jme.bounding.CollisionTree;
 import com.jme.bounding.CollisionTreeManager;
+import com.jme.bounding.FlatCollisionTree;
 import com.jme.intersection.CollisionResults;
 import com.jme.math.FastMath;
 import com.jme.math.Ray;
@@ -48,6 +49,7 @@ import com.jme.math.Triangle;
 import com.jme.math.Vector3f;
 import com.jme.renderer.Renderer;
 import com.jme.system.JmeException;
+import com.jme.util.IntList;
 import com.jme.util.export.InputCapsule;
 import com.jme.util.export.JMEExporter;
 import com.jme.util.export.JMEImporter;
@@ -311,6 +313,19 @@ public class TriMesh extends Geometry implements Serializable {
      * @return True if they intersect.
      */
     public boolean hasTriangleCollision(TriMesh toCheck) {
+        FlatCollisionTree thisFT = CollisionTreeManager.getInstance()
+                .getFlatCollisionTree(this);
+        if (thisFT != null) {
+            FlatCollisionTree checkFT = CollisionTreeManager.getInstance()
+                    .getFlatCollisionTree(toCheck);
+            if (checkFT != null) {
+                if (!isCollidable || !toCheck.isCollidable()) {
+                    return false;
+                }
+                return thisFT.intersect(checkFT);
+            }
+        }
+
         CollisionTree thisCT = CollisionTreeManager.getInstance()
                 .getCollisionTree(this);
         CollisionTree checkCT = CollisionTreeManager.getInstance()
@@ -339,6 +354,21 @@ public class TriMesh extends Geometry implements Serializable {
      */
     public void findTriangleCollision(TriMesh toCheck,
             ArrayList<Integer> thisIndex, ArrayList<Integer> otherIndex) {
+        FlatCollisionTree myFlatTree = CollisionTreeManager.getInstance()
+                .getFlatCollisionTree(this);
+        if (myFlatTree != null) {
+            FlatCollisionTree otherFlatTree = CollisionTreeManager
+                    .getInstance().getFlatCollisionTree(toCheck);
+            if (otherFlatTree != null) {
+                IntList a = new IntList(), b = new IntList();
+                myFlatTree.intersect(otherFlatTree, a, b);
+                for (int i = 0; i < a.size(); i++) {
+                    thisIndex.add(a.get(i));
+                    otherIndex.add(b.get(i));
+                }
+                return;
+            }
+        }
 
         CollisionTree myTree = CollisionTreeManager.getInstance()
                 .getCollisionTree(this);
@@ -354,6 +384,39 @@ public class TriMesh extends Geometry implements Serializable {
         myTree.intersect(otherTree, thisIndex, otherIndex);
     }
 
+    /**
+     * This function finds all intersections between this trimesh and the
+     * checking one, without boxing the triangle indices. Flat collision trees
+     * are used if both meshes have one.
+     * 
+     * @param toCheck
+     *            The TriMesh to check.
+     * @param thisIndex
+     *            The list of triangle indexes intersecting in this mesh.
+     * @param otherIndex
+     *            The list of triangle indexes intersecting in the given mesh.
+     * @see CollisionTreeManager#generateFlatCollisionTree(TriMesh, boolean)
+     */
+    public void findTriangleCollision(TriMesh toCheck, IntList thisIndex,
+            IntList otherIndex) {
+        FlatCollisionTree myTree = CollisionTreeManager.getInstance()
+                .getFlatCollisionTree(this);
+        FlatCollisionTree otherTree = CollisionTreeManager.getInstance()
+                .getFlatCollisionTree(toCheck);
+        if (myTree != null && otherTree != null) {
+            myTree.intersect(otherTree, thisIndex, otherIndex);
+            return;
+        }
+
+        ArrayList<Integer> a = new ArrayList<Integer>();
+        ArrayList<Integer> b = new ArrayList<Integer>();
+        findTriangleCollision(toCheck, a, b);
+        for (int i = 0; i < a.size(); i++) {
+            thisIndex.add(a.get(i));
+            otherIndex.add(b.get(i));
+        }
+    }
+
     /**
      * Stores in the <code>storage</code> array the indices of triangle
      * <code>i</code>. If <code>i</code> is an invalid index, or if
@@ -414,6 +477,16 @@ public class TriMesh extends Geometry implements Serializable {
         }
 
         if (worldBound.intersects(toTest)) {
+            FlatCollisionTree ft = CollisionTreeManager.getInstance()
+                    .getFlatCollisionTree(this);
+            if (ft != null) {
+                IntList hits = new IntList();
+                ft.intersect(toTest, hits);
+                for (int i = 0; i < hits.size(); i++) {
+                    results.add(hits.get(i));
+                }
+                return;
+            }
             CollisionTree ct = CollisionTreeManager.getInstance()
                     .getCollisionTree(this);
             if (ct != null) {
@@ -425,6 +498,38 @@ public class TriMesh extends Geometry implements Serializable {
         }
     }
 
+    /**
+     * <code>findTrianglePick</code> determines the triangles of this trimesh
+     * that are being touched by the ray, without boxing the triangle indices.
+     * A flat collision tree is used if the mesh has one.
+     * 
+     * @param toTest
+     *            the ray to test. The direction of the ray must be normalized
+     *            (length 1).
+     * @param results
+     *            the indices to the triangles.
+     * @see CollisionTreeManager#generateFlatCollisionTree(TriMesh, boolean)
+     */
+    public void findTrianglePick(Ray toTest, IntList results) {
+        if (worldBound == null || !isCollidable) {
+            return;
+        }
+
+        if (worldBound.intersects(toTest)) {
+            FlatCollisionTree ft = CollisionTreeManager.getInstance()
+                    .getFlatCollisionTree(this);
+            if (ft != null) {
+                ft.intersect(toTest, results);
+                return;
+            }
+            ArrayList<Integer> hits = new ArrayList<Integer>();
+            findTrianglePick(toTest, hits);
+            for (int i = 0; i < hits.size(); i++) {
+                results.add(hits.get(i));
+            }
+        }
+    }
+
     /**
      * Return this mesh object as triangles. Every 3 vertices returned compose a
      * single triangle.
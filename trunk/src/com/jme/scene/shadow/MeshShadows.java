@@ -35,6 +35,7 @@ package com.jme.scene.shadow;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 
 import com.jme.light.DirectionalLight;
@@ -62,8 +63,21 @@ public class MeshShadows {
     /** the distance to which shadow volumes will be projected */
     protected float projectionLength = 1000;
 
-    /** The triangles of our occluding mesh (one per triangle in the mesh) */
-    protected ArrayList<ShadowTriangle> faces;
+    /** The vertex indices of the occluding mesh, three per triangle */
+    protected int[] triangles;
+
+    /**
+     * The triangle sharing each triangle edge, three per triangle in the order
+     * of the edges 0-1, 1-2 and 2-0, or ShadowTriangle.INVALID_TRIANGLE if the
+     * edge is open
+     */
+    protected int[] neighbours;
+
+    /**
+     * The unnormalized model space plane of each triangle, four per triangle
+     * (normal and distance to the origin)
+     */
+    protected float[] planes;
 
     /** A bitset used for storing directional flags. */
     protected BitSet facing;
@@ -90,10 +104,19 @@ public class MeshShadows {
     public static long throttle = 1000 / 50; // 50 x a sec
     private long lastTime;
     private boolean nextTime = true;
+    private boolean geometryDirty = true;
 
     /** Static computation field */
     protected static Vector3f compVect = new Vector3f();
 
+    // per instance computation fields, so that several meshes may be
+    // processed at the same time
+    private final Quaternion invRotation = new Quaternion();
+    private final Vector3f localLight = new Vector3f();
+    private final Vector3f p0 = new Vector3f(), p1 = new Vector3f(),
+            p2 = new Vector3f(), p3 = new Vector3f();
+    private final Vector3f n0 = new Vector3f(), n1 = new Vector3f();
+
     /**
      * Constructor for <code>MeshShadows</code>
      * 
@@ -106,12 +129,43 @@ public class MeshShadows {
         recreateFaces();
     }
 
+    /**
+     * <code>createVolumes</code> adds a ShadowVolume for each applicable
+     * Light of the given LightState that does not have one yet. This is done
+     * by {@link #createGeometry(LightState)} as well, but has to happen on the
+     * rendering thread, so callers building the geometry on other threads call
+     * it first.
+     * 
+     * @param lightState
+     *            is the current lighting state
+     */
+    public void createVolumes(LightState lightState) {
+        for (int l = 0; l < lightState.getQuantity(); l++) {
+            Light light = lightState.get(l);
+
+            // Make sure we can (or want to) handle this light
+            if (!light.isShadowCaster()
+                    || (!(light.getType() == Light.Type.Directional) && !(light
+                            .getType() == Light.Type.Point)))
+                continue;
+
+            // See if this light has not been seen before!
+            if (getShadowVolume(light) == null) {
+                // Create a new light volume
+                ShadowVolume lv = new ShadowVolume(light);
+                volumes.add(lv);
+                lv.setUpdate(true);
+            }
+        }
+    }
+
     /**
      * <code>createGeometry</code> creates or updates the ShadowVolume
      * geometries for the target TriMesh - one for each applicable Light in the
      * given LightState. Only Directional and Point lights are currently
      * supported. ShadowVolume geometry is only regen'd when light or occluder
-     * aspects change.
+     * aspects change, and the silhouette of a volume is only searched again
+     * when the light moved relative to the occluder or its vertices changed.
      * 
      * @param lightState
      *            is the current lighting state
@@ -122,40 +176,31 @@ public class MeshShadows {
             recreateFaces();
         }
 
-        // Holds a copy of the mesh vertices transformed to world coordinates
-        FloatBuffer vertex = null;
-
         // Ensure that we have some potential lights to cast shadows!
         if (lightState.getQuantity() != 0) {
             LightState lights = lightState;
 
+            createVolumes(lights);
+
             // Update the cache of lights - if still sane, return
             if (updateCache(lights))
                 return;
 
-            // Now scan through each light and create the shadow volume
+            if (geometryDirty) {
+                updatePlanes();
+                for (int v = volumes.size(); --v >= 0;) {
+                    volumes.get(v).silhouetteEdges = -1;
+                }
+                geometryDirty = false;
+            }
+
+            // Now scan through each light and update its shadow volume
             for (int l = 0; l < lights.getQuantity(); l++) {
                 Light light = lights.get(l);
-
-                // Make sure we can (or want to) handle this light
-                if (!light.isShadowCaster()
-                        || (!(light.getType() == Light.Type.Directional) && !(light
-                                .getType() == Light.Type.Point)))
-                    continue;
-
-                // Get the volume assoicated with this light
                 ShadowVolume lv = getShadowVolume(light);
 
-                // See if this light has not been seen before!
-                if (lv == null) {
-                    // Create a new light volume
-                    lv = new ShadowVolume(light);
-                    volumes.add(lv);
-                    lv.setUpdate(true);
-                }
-
                 // See if the volume requires updating
-                if (lv.isUpdate()) {
+                if (lv != null && lv.isUpdate()) {
                     lv.setUpdate(false);
 
                     if (!target.isCastsShadows()) {
@@ -165,64 +210,18 @@ public class MeshShadows {
 
                     lv.setCullHint(Spatial.CullHint.Dynamic);
 
-                    // Translate the vertex information from the mesh to
-                    // world
-                    // coordinates if
-                    // we are going to do any work
-                    if (vertex == null) {
-                        vertex = target.getWorldCoords(null);
-                    }
-
-                    // Find out which triangles are facing the light
-                    // triangle will be set true for faces towards the light
-                    processFaces(vertex, light, target);
-
-                    // Get the edges that are in shadow
-                    ShadowEdge[] edges = getShadowEdges();
+                    // Find the edges between the triangles facing the light
+                    // and the others, unless the light did not move relative
+                    // to the mesh
+                    findSilhouette(lv, light);
 
                     // Now we need to develop a mesh based on projecting
-                    // these
-                    // edges
-                    // to infinity in the direction of the light
-                    int length = edges.length;
-
-                    // Create arrays to hold the shadow mesh
-                    FloatBuffer shadowVertex = lv.getVertexBuffer();
-                    if (shadowVertex == null
-                            || shadowVertex.capacity() < length * 12)
-                        shadowVertex = BufferUtils
-                                .createVector3Buffer(length * 4);
-                    FloatBuffer shadowNormal = lv.getNormalBuffer();
-                    if (shadowNormal == null
-                            || shadowNormal.capacity() < length * 12)
-                        shadowNormal = BufferUtils
-                                .createVector3Buffer(length * 4);
-                    IntBuffer shadowIndex = lv.getIndexBuffer();
-                    if (shadowIndex == null
-                            || shadowIndex.capacity() < length * 6)
-                        shadowIndex = BufferUtils.createIntBuffer(length * 6);
-
-                    shadowVertex.limit(length * 12);
-                    shadowNormal.limit(length * 12);
-                    shadowIndex.limit(length * 6);
-
-                    // Create quads out of the edge vertices
-                    createShadowQuads(vertex, edges, shadowVertex,
-                            shadowNormal, shadowIndex, light);
-
-                    // Rebuild the TriMesh
-                    lv.reconstruct(shadowVertex, shadowNormal, null, null,
-                            shadowIndex);
-                    shadowVertex.rewind();
-                    lv.setVertexCount(shadowVertex.remaining() / 3);
-                    shadowIndex.rewind();
-                    lv.setTriangleQuantity(
-                            shadowIndex.remaining() / 3);
-                    lv.updateModelBound();
+                    // these edges to infinity in the direction of the light
+                    createShadowQuads(lv, light);
+
                     if ((target.getLocks() & Spatial.LOCKED_SHADOWS) != 0)
                         lv.lock();
                 }
-
             }
 
         } else {
@@ -233,52 +232,157 @@ public class MeshShadows {
     }
 
     /**
-     * void <code>createShadowQuad</code> Creates projected quads from a
-     * series of edges and vertices and stores them in the output shadowXXXX
-     * arrays
+     * <code>findSilhouette</code> stores the silhouette edges of the target
+     * as seen from the given light in the volume. The search is done in model
+     * space, so the previous result is kept when the light did not move
+     * relative to the target.
+     * 
+     * @param lv
+     *            the volume of the light
+     * @param light
+     *            light casting shadow
+     */
+    private void findSilhouette(ShadowVolume lv, Light light) {
+        boolean directional = light.getType() == Light.Type.Directional;
+
+        // Bring the light into model space, undoing the translation, rotation
+        // and scale of the target in that order
+        invRotation.set(target.getWorldRotation()).inverseLocal();
+        if (directional) {
+            invRotation.mult(((DirectionalLight) light).getDirection(),
+                    localLight);
+        } else {
+            localLight.set(((PointLight) light).getLocation()).subtractLocal(
+                    target.getWorldTranslation());
+            invRotation.mult(localLight, localLight);
+        }
+        Vector3f scale = target.getWorldScale();
+        localLight.divideLocal(scale);
+
+        // A mirroring scale turns the triangles inside out
+        float sign = scale.x * scale.y * scale.z < 0 ? -1 : 1;
+
+        if (lv.silhouetteEdges >= 0 && sign == lv.silhouetteSign
+                && same(localLight, lv.silhouetteLight)) {
+            return;
+        }
+        lv.silhouetteLight.set(localLight);
+        lv.silhouetteSign = sign;
+
+        // Find out which triangles are facing the light
+        processFaces(localLight, directional, sign);
+
+        // Get the edges of the lit triangles that are open or shared with an
+        // unlit one
+        int[] edges = lv.silhouette;
+        int count = 0;
+        for (int t = 0; t < maxIndex; t++) {
+            if (!facing.get(t)) {
+                continue;
+            }
+            for (int e = 0; e < 3; e++) {
+                int neighbour = neighbours[t * 3 + e];
+                if (neighbour == ShadowTriangle.INVALID_TRIANGLE
+                        || !facing.get(neighbour)) {
+                    if (edges == null || edges.length < count * 2 + 2) {
+                        int[] tmp = new int[Math.max(32, count * 4)];
+                        if (edges != null) {
+                            System.arraycopy(edges, 0, tmp, 0, count * 2);
+                        }
+                        edges = tmp;
+                    }
+                    edges[count * 2] = triangles[t * 3 + e];
+                    edges[count * 2 + 1] = triangles[t * 3 + (e + 1) % 3];
+                    count++;
+                }
+            }
+        }
+        lv.silhouette = edges;
+        lv.silhouetteEdges = count;
+    }
+
+    private static boolean same(Vector3f a, Vector3f b) {
+        // tolerate the rounding of moving light and mesh together
+        float eps = 1e-5f * Math.max(1, Math.max(Math.abs(a.x), Math.max(
+                Math.abs(a.y), Math.abs(a.z))));
+        return Math.abs(a.x - b.x) <= eps && Math.abs(a.y - b.y) <= eps
+                && Math.abs(a.z - b.z) <= eps;
+    }
+
+    /**
+     * void <code>createShadowQuads</code> Creates projected quads from the
+     * silhouette edges of the volume and stores them in its buffers, which are
+     * only replaced when they have to grow.
      * 
-     * @param vertex
-     *            array of world coordinate vertices for the target TriMesh
-     * @param edges
-     *            a collection of edges that will be projected
-     * @param shadowVertex
-     * @param shadowNormal
-     * @param shadowIndex
+     * @param lv
+     *            the volume to build
      * @param light
      *            light casting shadow
      */
-    private void createShadowQuads(FloatBuffer vertex, ShadowEdge[] edges,
-            FloatBuffer shadowVertex, FloatBuffer shadowNormal,
-            IntBuffer shadowIndex, Light light) {
-        Vector3f p0 = new Vector3f(), p1 = new Vector3f(), p2 = new Vector3f(), p3 = new Vector3f();
+    private void createShadowQuads(ShadowVolume lv, Light light) {
+        int length = lv.silhouetteEdges;
+        int[] edges = lv.silhouette;
+
+        FloatBuffer shadowVertex = lv.getVertexBuffer();
+        FloatBuffer shadowNormal = lv.getNormalBuffer();
+        IntBuffer shadowIndex = lv.getIndexBuffer();
+        if (shadowVertex == null || shadowVertex.capacity() < length * 12
+                || shadowNormal == null
+                || shadowNormal.capacity() < length * 12
+                || shadowIndex == null || shadowIndex.capacity() < length * 6) {
+            // leave room for the silhouette to grow a bit
+            int capacity = Math.max(16, length + (length >> 1));
+            shadowVertex = BufferUtils.createVector3Buffer(capacity * 4);
+            shadowNormal = BufferUtils.createVector3Buffer(capacity * 4);
+            shadowIndex = BufferUtils.createIntBuffer(capacity * 6);
+            // The quads always use the same indices
+            for (int e = 0; e < capacity; e++) {
+                int vertexOffset = e * 4;
+                shadowIndex.put(vertexOffset + 0);
+                shadowIndex.put(vertexOffset + 1);
+                shadowIndex.put(vertexOffset + 3);
+                shadowIndex.put(vertexOffset + 3);
+                shadowIndex.put(vertexOffset + 1);
+                shadowIndex.put(vertexOffset + 2);
+            }
+            shadowIndex.clear();
+            lv.reconstruct(shadowVertex, shadowNormal, null, null, shadowIndex);
+        }
 
         // Setup a flag to indicate which type of light this is
         boolean directional = (light.getType() == Light.Type.Directional);
 
-        Vector3f direction = new Vector3f();
-        Vector3f location = new Vector3f();
+        Vector3f direction = null;
+        Vector3f location = null;
         if (directional) {
             direction = ((DirectionalLight) light).getDirection();
         } else {
             location = ((PointLight) light).getLocation();
+            direction = n0;
         }
 
+        FloatBuffer vertex = target.getVertexBuffer();
+        shadowVertex.clear();
+        shadowNormal.clear();
+
         // Loop for each edge
-        for (int e = 0; e < edges.length; e++) {
+        for (int e = 0; e < length; e++) {
             // get the two known vertices
-            BufferUtils.populateFromBuffer(p0, vertex, edges[e].p0);
-            BufferUtils.populateFromBuffer(p3, vertex, edges[e].p1);
+            BufferUtils.populateFromBuffer(p0, vertex, edges[e * 2]);
+            target.localToWorld(p0, p0);
+            BufferUtils.populateFromBuffer(p3, vertex, edges[e * 2 + 1]);
+            target.localToWorld(p3, p3);
 
             // Calculate the projection of p0
             if (!directional) {
-                direction = p0.subtract(location, direction).normalizeLocal();
+                p0.subtract(location, direction).normalizeLocal();
             }
             // Project the other edges to infinity
-            p1 = direction.mult(projectionLength, p1).addLocal(p0);
+            p1.scaleAdd(projectionLength, direction, p0);
             if (!directional) {
-                direction = p3.subtract(location, direction).normalizeLocal();
+                p3.subtract(location, direction).normalizeLocal();
             }
-            p2 = direction.mult(projectionLength).addLocal(p3);
+            p2.scaleAdd(projectionLength, direction, p3);
 
             // Now we need to add a quad to the model
             int vertexOffset = e * 4;
@@ -288,22 +392,20 @@ public class MeshShadows {
             BufferUtils.setInBuffer(p3, shadowVertex, vertexOffset + 3);
 
             // Calculate the normal
-            Vector3f n = p1.subtract(p0).normalizeLocal().crossLocal(
-                    p3.subtract(p0).normalizeLocal()).normalizeLocal();
+            Vector3f n = p1.subtract(p0, n0).normalizeLocal().crossLocal(
+                    p3.subtract(p0, n1).normalizeLocal()).normalizeLocal();
             BufferUtils.setInBuffer(n, shadowNormal, vertexOffset);
             BufferUtils.setInBuffer(n, shadowNormal, vertexOffset + 1);
             BufferUtils.setInBuffer(n, shadowNormal, vertexOffset + 2);
             BufferUtils.setInBuffer(n, shadowNormal, vertexOffset + 3);
-
-            // Add the indices
-            int indexOffset = e * 6;
-            shadowIndex.put(indexOffset + 0, vertexOffset + 0);
-            shadowIndex.put(indexOffset + 1, vertexOffset + 1);
-            shadowIndex.put(indexOffset + 2, vertexOffset + 3);
-            shadowIndex.put(indexOffset + 3, vertexOffset + 3);
-            shadowIndex.put(indexOffset + 4, vertexOffset + 1);
-            shadowIndex.put(indexOffset + 5, vertexOffset + 2);
         }
+
+        shadowVertex.limit(length * 12);
+        shadowNormal.limit(length * 12);
+        shadowIndex.clear().limit(length * 6);
+        lv.setVertexCount(length * 4);
+        lv.setTriangleQuantity(length * 2);
+        lv.updateModelBound();
     }
 
     // Get the intersection of a line segment and a plane in terms of t>=0 t<=1
@@ -320,86 +422,50 @@ public class MeshShadows {
     }
 
     /**
-     * <code>getShadowEdges</code>
+     * <code>processFaces</code> Determines whether faces of the target face
+     * the light
      * 
-     * @return an array of the edges which are in shadow
+     * @param light
+     *            the direction or position of the light in model space
+     * @param directional
+     *            true if light is a direction
+     * @param sign
+     *            -1 if the world scale of the target mirrors it, 1 otherwise
      */
-    private ShadowEdge[] getShadowEdges() {
-        // Create a dynamic structure to contain the vertices
-        ArrayList<ShadowEdge> shadowEdges = new ArrayList<ShadowEdge>();
-        // Now work through the faces
-        for (int t = 0; t < maxIndex; t++) {
-            // Check whether this is a front facing triangle
-            if (facing.get(t)) {
-                ShadowTriangle tri = faces.get(t);
-                // If it is then check if any of the edges are connected to a
-                // back facing triangle or are unconnected
-                checkAndAdd(tri.edge1, shadowEdges);
-                checkAndAdd(tri.edge2, shadowEdges);
-                checkAndAdd(tri.edge3, shadowEdges);
+    private void processFaces(Vector3f light, boolean directional, float sign) {
+        float[] plane = planes;
+        for (int t = 0, p = 0; t < maxIndex; t++, p += 4) {
+            float dot = plane[p] * light.x + plane[p + 1] * light.y
+                    + plane[p + 2] * light.z;
+            if (!directional) {
+                // the direction from the light to the triangle
+                dot = plane[p + 3] - dot;
             }
-        }
-        return shadowEdges.toArray(new ShadowEdge[0]);
-    }
-
-    private void checkAndAdd(ShadowEdge edge, ArrayList<ShadowEdge> shadowEdges) {
-        // Is the edge connected
-        if (edge.triangle == ShadowTriangle.INVALID_TRIANGLE) {
-            // if not then add the edge
-            shadowEdges.add(edge);
-
-        }
-        // check if the connected triangle is back facing
-        else if (!facing.get(edge.triangle)) {
-            // if it is then add the edge
-            shadowEdges.add(edge);
-
+            // See if it is back facing
+            facing.set(t, sign * dot >= 0);
         }
     }
 
     /**
-     * <code>processFaces</code> Determines whether faces of a TriMesh face
-     * the light
-     * 
-     * @param triangle
-     *            an array of boolean values that will indicate whether a
-     *            triangle is front or back facing
-     * @param light
-     *            the light to use
-     * @param target
-     *            the TriMesh that will be shadowed and holds the triangles for
-     *            testing
+     * <code>updatePlanes</code> computes the model space planes of the
+     * triangles from the current vertices of the target.
      */
-    private void processFaces(FloatBuffer vertex, Light light, TriMesh target) {
-        Vector3f v0 = new Vector3f();
-        Vector3f v1 = new Vector3f();
-        boolean directional = light.getType() == Light.Type.Directional;
-        Vector3f vLight = null;
-        int[] index = BufferUtils.getIntArray(target.getIndexBuffer());
-        if (index == null) return;
-
-        if (directional) {
-            vLight = ((DirectionalLight) light).getDirection();
+    private void updatePlanes() {
+        FloatBuffer vertex = target.getVertexBuffer();
+        if (vertex == null) {
+            return;
         }
-
-        // Loop through each triangle and see if it is back or front facing
-        for (int t = 0, tri = 0; t < index.length; tri++, t += 3) {
-            // Calculate a normal to the plane
-            BufferUtils.populateFromBuffer(compVect, vertex, index[t]);
-            BufferUtils.populateFromBuffer(v0, vertex, index[t + 1]);
-            BufferUtils.populateFromBuffer(v1, vertex, index[t + 2]);
-            v1.subtractLocal(v0).normalizeLocal();
-            v0.subtractLocal(compVect).normalizeLocal();
-            Vector3f n = v1.cross(v0);
-
-            // Some kind of bodge for a direction to a point light - TODO
-            // improve this
-            if (!directional) {
-                vLight = compVect.subtract(((PointLight) light).getLocation())
-                        .normalizeLocal();
-            }
-            // See if it is back facing
-            facing.set(tri, (n.dot(vLight) >= 0));
+        for (int t = 0, i = 0, p = 0; t < maxIndex; t++, i += 3, p += 4) {
+            BufferUtils.populateFromBuffer(p0, vertex, triangles[i]);
+            BufferUtils.populateFromBuffer(p1, vertex, triangles[i + 1]);
+            BufferUtils.populateFromBuffer(p2, vertex, triangles[i + 2]);
+            p2.subtract(p1, n1);
+            p1.subtract(p0, n0);
+            n1.crossLocal(n0);
+            planes[p] = n1.x;
+            planes[p + 1] = n1.y;
+            planes[p + 2] = n1.z;
+            planes[p + 3] = n1.dot(p0);
         }
     }
 
@@ -421,6 +487,7 @@ public class MeshShadows {
             if (passTime > throttle) {
                 voidLights = true;
                 nextTime = false;
+                geometryDirty = true;
             }
         } else {
             // First see if we need to void all volumes as the target has
@@ -440,12 +507,14 @@ public class MeshShadows {
 
         if (target.hasDirtyVertices()) {
             target.setHasDirtyVertices(false);
-            if (!voidLights)
-                if (passTime > throttle) {
-                    voidLights = true;
-                    nextTime = false;
-                } else
-                    nextTime = true;
+            if (voidLights)
+                geometryDirty = true;
+            else if (passTime > throttle) {
+                voidLights = true;
+                nextTime = false;
+                geometryDirty = true;
+            } else
+                nextTime = true;
         }
 
         // See if we need to update all of the volumes
@@ -466,7 +535,9 @@ public class MeshShadows {
                 continue;
             ShadowVolume v = getShadowVolume(testLight);
             if (v != null) {
-                if (testLight.getType() == Light.Type.Directional) {
+                if (v.isUpdate()) {
+                    same = false;
+                } else if (testLight.getType() == Light.Type.Directional) {
                     DirectionalLight dl = (DirectionalLight) testLight;
                     if (!v.direction.equals(dl.getDirection())) {
                         v.setUpdate(true);
@@ -487,69 +558,81 @@ public class MeshShadows {
         return same;
     }
 
-    // Checks whether two edges are connected and sets triangle field if they
-    // are.
-    private void edgeConnected(int face, IntBuffer index, int index1,
-            int index2, ShadowEdge edge) {
-        edge.p0 = index1;
-        edge.p1 = index2;
-
-        index.rewind();
-
-        for (int t = 0; t < maxIndex; t++) {
-            if (t != face) {
-                int offset = t * 3;
-                int t0 = index.get(offset), t1 = index.get(offset + 1), t2 = index
-                        .get(offset + 2);
-                if ((t0 == index1 && t1 == index2)
-                        || (t1 == index1 && t2 == index2)
-                        || (t2 == index1 && t0 == index2)
-                        || (t0 == index2 && t1 == index1)
-                        || (t1 == index2 && t2 == index1)
-                        || (t2 == index2 && t0 == index1)) {
-                    // Edges are connected
-                    edge.triangle = t;
-                    return;
-                }
-            }
-        }
-    }
-
     /**
-     * <code>recreateFaces</code> creates a triangle array for every triangle
-     * in the target occluder mesh and stores it in the faces field. This is
-     * only done rarely in general.
+     * <code>recreateFaces</code> copies the triangles of the target occluder
+     * mesh and finds the triangle sharing each of their edges. This is only
+     * done rarely in general.
      */
     public void recreateFaces() {
         // make a copy of the original indices
         maxIndex = 0;
         facing = new BitSet();
-        IntBuffer index = BufferUtils.clone(target.getIndexBuffer());
+        triangles = neighbours = new int[0];
+        planes = new float[0];
+        geometryDirty = true;
+        IntBuffer index = target.getIndexBuffer();
         if (index == null) {
             return;
         }
-        index.clear();
-
-        // Create a ShadowTriangle object for each face
-        faces = new ArrayList<ShadowTriangle>();
 
-        maxIndex = index.capacity() / 3;
+        maxIndex = index.limit() / 3;
         vertCount = target.getVertexCount();
+        triangles = new int[maxIndex * 3];
+        for (int i = 0; i < triangles.length; i++) {
+            triangles[i] = index.get(i);
+        }
+        neighbours = new int[maxIndex * 3];
+        planes = new float[maxIndex * 4];
 
         // Create a bitset for holding direction flags
         facing = new BitSet(maxIndex);
 
-        // Loop through all of the triangles
-        for (int t = 0; t < maxIndex; t++) {
-            ShadowTriangle tri = new ShadowTriangle();
-            faces.add(tri);
-            int offset = t * 3;
-            int t0 = index.get(offset), t1 = index.get(offset + 1), t2 = index
-                    .get(offset + 2);
-            edgeConnected(t, index, t0, t1, tri.edge1);
-            edgeConnected(t, index, t1, t2, tri.edge2);
-            edgeConnected(t, index, t2, t0, tri.edge3);
+        // Hash every undirected edge to the first two triangles using it, in
+        // triangle order, so an edge is connected to the lowest other
+        // triangle sharing it
+        int size = Integer.highestOneBit(Math.max(maxIndex * 6, 16) - 1) << 1;
+        long[] keys = new long[size];
+        int[] first = new int[size];
+        int[] second = new int[size];
+        Arrays.fill(keys, -1);
+        int[] slots = new int[maxIndex * 3];
+        for (int t = 0, i = 0; t < maxIndex; t++) {
+            for (int e = 0; e < 3; e++, i++) {
+                int slot = findEdge(keys, triangles[i],
+                        triangles[t * 3 + (e + 1) % 3]);
+                if (keys[slot] == -1) {
+                    keys[slot] = edgeKey(triangles[i],
+                            triangles[t * 3 + (e + 1) % 3]);
+                    first[slot] = t;
+                    second[slot] = ShadowTriangle.INVALID_TRIANGLE;
+                } else if (first[slot] != t
+                        && second[slot] == ShadowTriangle.INVALID_TRIANGLE) {
+                    second[slot] = t;
+                }
+                slots[i] = slot;
+            }
+        }
+        for (int t = 0, i = 0; t < maxIndex; t++) {
+            for (int e = 0; e < 3; e++, i++) {
+                int slot = slots[i];
+                neighbours[i] = first[slot] != t ? first[slot] : second[slot];
+            }
+        }
+    }
+
+    private static long edgeKey(int a, int b) {
+        return a < b ? (long) a << 32 | b : (long) b << 32 | a;
+    }
+
+    private static int findEdge(long[] keys, int a, int b) {
+        long key = edgeKey(a, b);
+        long h = key * 0x9E3779B97F4A7C15L;
+        int mask = keys.length - 1;
+        int slot = (int) (h ^ h >>> 32) & mask;
+        while (keys[slot] != -1 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
         }
+        return slot;
     }
 
     /**
@@ -62,6 +62,15 @@ public class ShadowVolume extends TriMesh {
     protected boolean update = true;
     protected static int _ordinal = 0;
 
+    // silhouette cache of MeshShadows
+    /** the light in model space of the occluder when the silhouette was found */
+    final Vector3f silhouetteLight = new Vector3f();
+    float silhouetteSign;
+    /** vertex index pairs of the silhouette edges */
+    int[] silhouette;
+    /** number of silhouette edges, or -1 if they have to be searched again */
+    int silhouetteEdges = -1;
+
     /**
      * Constructor for <code>ShadowVolume</code>
      * @param light the light for which a volume should be created
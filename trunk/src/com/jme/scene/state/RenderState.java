@@ -33,7 +33,12 @@
 package com.jme.scene.state;
 
 import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
 import java.util.Stack;
 
 import com.jme.scene.Spatial;
@@ -185,12 +190,42 @@ public abstract class RenderState implements Savable {
 
     private boolean needsRefresh = false;
 
+    private static final SortIdPool[] sortIdPools = new SortIdPool[RS_MAX_STATE + 1];
+
+    private final int sortId = acquireSortId(this);
+
     /**
      * Construts a new RenderState. The state is enabled by default.
      */
     public RenderState() {
     }
 
+    /**
+     * Returns a small number unique among the live states of the same type.
+     * Ids of garbage collected states are given out again, smallest first, so
+     * the ids stay as low as the number of states not collected yet. Used by
+     * the RenderQueue to group geometries sharing the same states.
+     * 
+     * @return the sort id of this state, always greater than 0.
+     */
+    public int getSortId() {
+        return sortId;
+    }
+
+    private static int acquireSortId(RenderState state) {
+        int type = state.getType();
+        if (type < 0 || type >= RS_MAX_STATE) {
+            // states of unknown types share one pool
+            type = RS_MAX_STATE;
+        }
+        synchronized (sortIdPools) {
+            if (sortIdPools[type] == null) {
+                sortIdPools[type] = new SortIdPool();
+            }
+            return sortIdPools[type].acquire(state);
+        }
+    }
+
     /**
      * Defined by the subclass, this returns an int identifying the renderstate.
      * For example, RS_CULL or RS_TEXTURE.
@@ -289,4 +324,37 @@ public abstract class RenderState implements Savable {
     public static void setQuickCompares(boolean enabled) {
         Arrays.fill(QUICK_COMPARE, enabled);
     }
+
+    /**
+     * The sort ids of one state type. Every state is watched through a weak
+     * reference, its id is freed once the reference has been cleared.
+     */
+    private static class SortIdPool {
+        private final BitSet used = new BitSet();
+        private final ReferenceQueue<RenderState> collected = new ReferenceQueue<RenderState>();
+        // keeps the references reachable until they are enqueued
+        private final HashSet<SortIdReference> live = new HashSet<SortIdReference>();
+
+        int acquire(RenderState state) {
+            Reference<? extends RenderState> ref;
+            while ((ref = collected.poll()) != null) {
+                live.remove(ref);
+                used.clear(((SortIdReference) ref).sortId);
+            }
+            int id = used.nextClearBit(1);
+            used.set(id);
+            live.add(new SortIdReference(state, id, collected));
+            return id;
+        }
+    }
+
+    private static class SortIdReference extends WeakReference<RenderState> {
+        final int sortId;
+
+        SortIdReference(RenderState state, int sortId,
+                ReferenceQueue<RenderState> queue) {
+            super(state, queue);
+            this.sortId = sortId;
+        }
+    }
 }
@@ -223,6 +223,7 @@ public class JOGLTextureState extends TextureState {
                 TextureManager.addToCache(texture);
             } else if (cached.getTextureId() != 0) {
                 texture.setTextureId(cached.getTextureId());
+                TextureManager.addCacheUser(texture);
                 gl.glBindTexture(getGLType(type), cached.getTextureId());
                 if (Debug.stats) {
                     StatCollector.addStat(StatType.STAT_TEXTURE_BINDS, 1);
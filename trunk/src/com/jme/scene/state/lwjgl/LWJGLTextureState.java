@@ -288,6 +288,7 @@ public class LWJGLTextureState extends TextureState {
                 TextureManager.addToCache(texture);
             } else if (cached.getTextureId() != 0) {
                 texture.setTextureId(cached.getTextureId());
+                TextureManager.addCacheUser(texture);
                 GL11.glBindTexture(getGLType(type), cached.getTextureId());
                 if (Debug.stats) {
                     StatCollector.addStat(StatType.STAT_TEXTURE_BINDS, 1);
@@ -36,8 +36,9 @@ import java.util.Arrays;
 import java.util.Comparator;
 
 /**
- * Quick and merge sort implementations that create no garbage, unlike {@link
- * Arrays#sort}. The merge sort is stable, the quick sort is not.
+ * Quick, merge and radix sort implementations that create no garbage, unlike
+ * {@link Arrays#sort}. The merge and radix sorts are stable, the quick sort is
+ * not.
  */
 public class SortUtil
 {
@@ -231,6 +232,60 @@ public class SortUtil
         }
     }
 
+    /**
+     * Radix sorts the first <code>size</code> elements of the supplied
+     * key array in ascending order, moving the matching values along. Keys
+     * must not be negative. The sort is stable and skips passes over digits
+     * that are the same for every key.
+     *
+     * @param keys the keys to sort.
+     * @param values the values paired with each key.
+     * @param tmpKeys scratch space, at least <code>size</code> long.
+     * @param tmpValues scratch space, at least <code>size</code> long.
+     * @param counts scratch space, at least {@link #RADIX_SIZE} long.
+     */
+    public static void rsort (long[] keys, Object[] values, int size,
+                              long[] tmpKeys, Object[] tmpValues, int[] counts)
+    {
+        long[] srcKeys = keys, dstKeys = tmpKeys;
+        Object[] srcValues = values, dstValues = tmpValues;
+
+        for (int shift = 0; shift < 63; shift += RADIX_BITS) {
+            Arrays.fill(counts, 0);
+            for (int ii = 0; ii < size; ii++) {
+                counts[(int) (srcKeys[ii] >>> shift) & RADIX_MASK]++;
+            }
+            // every key has the same digit, nothing to do for this pass
+            if (counts[(int) (srcKeys[0] >>> shift) & RADIX_MASK] == size) {
+                continue;
+            }
+            for (int ii = 0, total = 0; ii < RADIX_SIZE; ii++) {
+                int count = counts[ii];
+                counts[ii] = total;
+                total += count;
+            }
+            for (int ii = 0; ii < size; ii++) {
+                long key = srcKeys[ii];
+                int pos = counts[(int) (key >>> shift) & RADIX_MASK]++;
+                dstKeys[pos] = key;
+                dstValues[pos] = srcValues[ii];
+            }
+            long[] swapKeys = srcKeys; srcKeys = dstKeys; dstKeys = swapKeys;
+            Object[] swapValues = srcValues; srcValues = dstValues; dstValues = swapValues;
+        }
+
+        if (srcKeys != keys) {
+            System.arraycopy(srcKeys, 0, keys, 0, size);
+            System.arraycopy(srcValues, 0, values, 0, size);
+        }
+    }
+
+    /** Number of key bits sorted per radix sort pass. */
+    private static final int RADIX_BITS = 11;
+    /** Number of counters needed by {@link #rsort}. */
+    public static final int RADIX_SIZE = 1 << RADIX_BITS;
+    private static final int RADIX_MASK = RADIX_SIZE - 1;
+
     /** The size at or below which we will use insertion sort because it's
      * probably faster. */
     private static final int INSERTION_SORT_THRESHOLD = 7;
@@ -44,9 +44,11 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.lang.ref.WeakReference;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -71,6 +73,8 @@ import com.jme.util.export.Savable;
 import com.jme.util.export.binary.BinaryImporter;
 import com.jme.util.geom.BufferUtils;
 import com.jme.util.resource.ResourceLocatorTool;
+import com.jme.util.stat.StatCollector;
+import com.jme.util.stat.StatType;
 
 /**
  * <code>TextureManager</code> provides static methods for building a
@@ -85,7 +89,13 @@ final public class TextureManager {
     private static final Logger logger = Logger.getLogger(TextureManager.class
             .getName());
 
-    private static HashMap<TextureKey, Texture> m_tCache = new HashMap<TextureKey, Texture>();
+    // access ordered, least recently used first
+    private static LinkedHashMap<TextureKey, CacheEntry> m_tCache = new LinkedHashMap<TextureKey, CacheEntry>(
+            16, 0.75f, true);
+    private static long cacheBudget = Long.MAX_VALUE;
+    private static long cacheSize = 0;
+    // live textures by texture id, clones share the id of their original
+    private static HashMap<Integer, ArrayList<WeakReference<Texture>>> idUsers = new HashMap<Integer, ArrayList<WeakReference<Texture>>>();
     private static HashMap<String, ImageLoader> loaders = new HashMap<String, ImageLoader>();
     private static ArrayList<Integer> cleanupStore = new ArrayList<Integer>();
 
@@ -330,21 +340,35 @@ final public class TextureManager {
             return TextureState.getDefaultTexture();
         }
 
-        Texture cache = findCachedTexture(tkey);
-        if (cache != null) {
-            // look into cache.
-            // Uncomment if you want to see when this occurs.
-            // logging.info("******** REUSING TEXTURE ******** "+cache);
-            if (texture == null) {
-                Texture tClone = cache.createSimpleClone();
-                if (tClone.getTextureKey() == null) {
-                    tClone.setTextureKey(tkey);
+        Texture cache = null;
+        synchronized (m_tCache) {
+            CacheEntry entry = m_tCache.get(tkey);
+            if (entry != null) {
+                // look into cache.
+                // Uncomment if you want to see when this occurs.
+                // logging.info("******** REUSING TEXTURE ******** "+cache);
+                cache = entry.getTemplate();
+                if (texture == null) {
+                    texture = cache.createSimpleClone();
+                    if (texture.getTextureKey() == null) {
+                        texture.setTextureKey(tkey);
+                    }
+                } else {
+                    cache.createSimpleClone(texture);
                 }
-                return tClone;
+                texture.setTextureId(entry.texture.getTextureId());
+                entry.addUser(texture);
+            }
+        }
+        if (cache != null) {
+            if (Debug.stats) {
+                StatCollector.addStat(StatType.STAT_TEXTURE_CACHE_HITS, 1);
             }
-            cache.createSimpleClone(texture);
             return texture;
         }
+        if (Debug.stats) {
+            StatCollector.addStat(StatType.STAT_TEXTURE_CACHE_MISSES, 1);
+        }
 
         if (imageData == null)
             imageData = loadImage(tkey);
@@ -400,11 +424,118 @@ final public class TextureManager {
         return texture;
     }
 
+    /**
+     * Caches the given texture under its TextureKey, or updates the cached
+     * settings if the key was already cached. The texture counts as a user of
+     * the cache entry.
+     */
     public static void addToCache(Texture t) {
         if (TextureState.getDefaultTexture() == null
                 || (t != TextureState.getDefaultTexture() && t.getImage() != TextureState
                         .getDefaultTextureImage())) {
-            m_tCache.put(t.getTextureKey(), t);
+            synchronized (m_tCache) {
+                CacheEntry entry = m_tCache.get(t.getTextureKey());
+                if (entry == null) {
+                    entry = new CacheEntry(t.createSimpleClone());
+                    m_tCache.put(t.getTextureKey(), entry);
+                } else {
+                    int id = entry.texture.getTextureId();
+                    t.createSimpleClone(entry.texture);
+                    if (t.getTextureId() == 0) {
+                        entry.texture.setTextureId(id);
+                    }
+                }
+                entry.addUser(t);
+                updateSize(entry);
+            }
+        }
+    }
+
+    /**
+     * Tells the cache that the given texture uses the card data of the cached
+     * texture with the same key, so the cache entry is not evicted while the
+     * texture is in use. Called by the TextureStates when a texture takes the
+     * id of the cached one.
+     */
+    public static void addCacheUser(Texture t) {
+        if (t.getTextureKey() == null) {
+            return;
+        }
+        synchronized (m_tCache) {
+            CacheEntry entry = m_tCache.get(t.getTextureKey());
+            if (entry != null) {
+                entry.addUser(t);
+            }
+        }
+    }
+
+    /**
+     * Sets the maximum number of bytes the cached textures may use, counting
+     * both their image data and their estimated size on the card. Once it is
+     * exceeded the least recently used textures that are not referenced
+     * anymore are removed from the cache and deleted from the card.
+     * 
+     * @param bytes
+     *            the budget, unlimited by default.
+     */
+    public static void setCacheBudget(long bytes) {
+        synchronized (m_tCache) {
+            cacheBudget = bytes;
+            evict(null);
+        }
+    }
+
+    public static long getCacheBudget() {
+        return cacheBudget;
+    }
+
+    /**
+     * @return the number of bytes used by the cached textures, as counted
+     *         for the budget.
+     */
+    public static long getCacheSize() {
+        synchronized (m_tCache) {
+            return cacheSize;
+        }
+    }
+
+    private static void updateSize(CacheEntry entry) {
+        long size = entry.computeSize();
+        cacheSize += size - entry.size;
+        entry.size = size;
+        evict(entry);
+    }
+
+    /**
+     * Removes unreferenced entries, least recently used first, until the
+     * cache fits its budget.
+     */
+    private static void evict(CacheEntry keep) {
+        if (cacheSize <= cacheBudget) {
+            return;
+        }
+        Iterator<CacheEntry> it = m_tCache.values().iterator();
+        while (cacheSize > cacheBudget && it.hasNext()) {
+            CacheEntry entry = it.next();
+            if (entry == keep || entry.isReferenced()
+                    || isTextureIdShared(entry.texture)) {
+                continue;
+            }
+            it.remove();
+            cacheSize -= entry.size;
+            if (Debug.stats) {
+                StatCollector.addStat(StatType.STAT_TEXTURE_CACHE_EVICTIONS, 1);
+            }
+            if (entry.texture.getTextureId() != 0) {
+                // we might not be on the OpenGL thread
+                final Texture evicted = entry.texture;
+                GameTaskQueueManager.getManager().render(new Callable<Object>() {
+                    public Object call() {
+                        deleteTextureFromCard(evicted);
+                        return null;
+                    }
+                });
+            }
         }
     }
 
@@ -506,7 +637,10 @@ final public class TextureManager {
 
         com.jme.image.Image imageData = null;
         try {
-            ImageLoader loader = loaders.get(fileExt.toLowerCase());
+            ImageLoader loader;
+            synchronized (loaders) {
+                loader = loaders.get(fileExt.toLowerCase());
+            }
             if (loader != null)
                 imageData = loader.load(stream);
             else if (".TGA".equalsIgnoreCase(fileExt)) { // TGA, direct to
@@ -783,26 +917,35 @@ final public class TextureManager {
         if (texture == null)
             return false;
 
-        Collection<TextureKey> c = m_tCache.keySet();
-        Iterator<TextureKey> it = c.iterator();
-        TextureKey key;
-        Texture next;
-        while (it.hasNext()) {
-            key = it.next();
-            next = m_tCache.get(key);
-            if (texture.equals(next)) {
-                return releaseTexture(key);
+        synchronized (m_tCache) {
+            Iterator<CacheEntry> it = m_tCache.values().iterator();
+            while (it.hasNext()) {
+                CacheEntry entry = it.next();
+                if (texture.equals(entry.texture)) {
+                    it.remove();
+                    cacheSize -= entry.size;
+                    return true;
+                }
             }
         }
         return false;
     }
 
     public static boolean releaseTexture(TextureKey tKey) {
-        return m_tCache.remove(tKey) != null;
+        synchronized (m_tCache) {
+            CacheEntry entry = m_tCache.remove(tKey);
+            if (entry != null) {
+                cacheSize -= entry.size;
+            }
+            return entry != null;
+        }
     }
 
     public static void clearCache() {
-        m_tCache.clear();
+        synchronized (m_tCache) {
+            m_tCache.clear();
+            cacheSize = 0;
+        }
     }
 
     /**
@@ -817,20 +960,29 @@ final public class TextureManager {
      * @param handler
      */
     public static void registerHandler(String format, ImageLoader handler) {
-        loaders.put(format.toLowerCase(), handler);
+        synchronized (loaders) {
+            loaders.put(format.toLowerCase(), handler);
+        }
     }
 
     public static void unregisterHandler(String format) {
-        loaders.remove(format.toLowerCase());
+        synchronized (loaders) {
+            loaders.remove(format.toLowerCase());
+        }
     }
 
     public static void registerForCleanup(TextureKey textureKey, int textureId) {
-        Texture t = m_tCache.get(textureKey);
-        if (t != null) {
-            t.setTextureId(textureId);
+        synchronized (m_tCache) {
+            CacheEntry entry = m_tCache.get(textureKey);
+            if (entry != null) {
+                entry.texture.setTextureId(textureId);
+                updateSize(entry);
+            }
         }
 
-        cleanupStore.add(textureId);
+        synchronized (cleanupStore) {
+            cleanupStore.add(textureId);
+        }
     }
 
     public static void doTextureCleanup() {
@@ -839,7 +991,11 @@ final public class TextureManager {
             return;
         
         TextureState ts = (TextureState)Renderer.defaultStateList[RenderState.RS_TEXTURE];
-        for (Integer i : cleanupStore) {
+        ArrayList<Integer> ids;
+        synchronized (cleanupStore) {
+            ids = new ArrayList<Integer>(cleanupStore);
+        }
+        for (Integer i : ids) {
             if (i != null) {
                 try {
                     ts.deleteTextureId(i.intValue());
@@ -861,13 +1017,91 @@ final public class TextureManager {
         } // ignore.
     }
 
+    /**
+     * Remembers that the given texture uses its current texture id. Called by
+     * {@link Texture#setTextureId(int)}, so every clone sharing the card data
+     * of a texture is known and the data is not evicted while one of them is
+     * alive.
+     */
+    public static void registerTextureId(Texture t) {
+        int id = t.getTextureId();
+        if (id == 0) {
+            return;
+        }
+        synchronized (idUsers) {
+            ArrayList<WeakReference<Texture>> users = idUsers.get(id);
+            if (users == null) {
+                users = new ArrayList<WeakReference<Texture>>(2);
+                idUsers.put(id, users);
+            }
+            for (int i = users.size(); --i >= 0;) {
+                Texture user = users.get(i).get();
+                if (user == t) {
+                    return;
+                } else if (user == null || user.getTextureId() != id) {
+                    users.remove(i);
+                }
+            }
+            users.add(new WeakReference<Texture>(t));
+        }
+    }
+
+    /**
+     * @return true if a live texture other than the given one uses its
+     *         texture id.
+     */
+    private static boolean isTextureIdShared(Texture t) {
+        int id = t.getTextureId();
+        if (id == 0) {
+            return false;
+        }
+        synchronized (idUsers) {
+            ArrayList<WeakReference<Texture>> users = idUsers.get(id);
+            if (users == null) {
+                return false;
+            }
+            boolean shared = hasOtherUser(users, id, t);
+            if (users.isEmpty()) {
+                idUsers.remove(id);
+            }
+            return shared;
+        }
+    }
+
+    /**
+     * Drops the collected textures and those that moved to another id from
+     * the users of the given id, then looks for one that is not
+     * <code>except</code>.
+     */
+    private static boolean hasOtherUser(ArrayList<WeakReference<Texture>> users,
+            int id, Texture except) {
+        boolean found = false;
+        for (int i = users.size(); --i >= 0;) {
+            Texture user = users.get(i).get();
+            if (user == null || user.getTextureId() != id) {
+                users.remove(i);
+            } else if (user != except) {
+                found = true;
+            }
+        }
+        return found;
+    }
+
     public static Texture findCachedTexture(TextureKey textureKey) {
-        return m_tCache.get(textureKey);
+        synchronized (m_tCache) {
+            CacheEntry entry = m_tCache.get(textureKey);
+            return entry != null ? entry.texture : null;
+        }
     }
 
     public static void preloadCache(Renderer r) {
         TextureState ts = r.createTextureState();
-        for (Texture t : m_tCache.values()) {
+        ArrayList<CacheEntry> entries;
+        synchronized (m_tCache) {
+            entries = new ArrayList<CacheEntry>(m_tCache.values());
+        }
+        for (CacheEntry entry : entries) {
+            Texture t = entry.texture;
             if (t.getTextureKey().location != null) {
                 ts.setTexture(t);
                 ts.load(0);
@@ -882,4 +1116,73 @@ final public class TextureManager {
     public static boolean isCreateOnHeap() {
         return createOnHeap;
     }
+
+    /**
+     * A cached texture and the textures using its image and card data. The
+     * users are only weakly referenced, once they are all gone the entry can
+     * be evicted.
+     */
+    private static class CacheEntry {
+        final Texture texture;
+        final ArrayList<WeakReference<Texture>> users = new ArrayList<WeakReference<Texture>>(2);
+        long size;
+
+        CacheEntry(Texture texture) {
+            this.texture = texture;
+        }
+
+        void addUser(Texture t) {
+            for (int i = users.size(); --i >= 0;) {
+                Texture user = users.get(i).get();
+                if (user == t) {
+                    return;
+                } else if (user == null) {
+                    users.remove(i);
+                }
+            }
+            users.add(new WeakReference<Texture>(t));
+        }
+
+        boolean isReferenced() {
+            return getUser() != null;
+        }
+
+        /**
+         * @return the oldest user still alive, as new clones have always
+         *         copied the settings of the first texture loaded, or the
+         *         cached texture if there is none.
+         */
+        Texture getTemplate() {
+            Texture user = getUser();
+            return user != null ? user : texture;
+        }
+
+        private Texture getUser() {
+            while (!users.isEmpty()) {
+                Texture user = users.get(0).get();
+                if (user != null) {
+                    return user;
+                }
+                users.remove(0);
+            }
+            return null;
+        }
+
+        long computeSize() {
+            long bytes = 0;
+            Image image = texture.getImage();
+            if (image != null && image.getData() != null) {
+                for (int i = 0; i < image.getData().size(); i++) {
+                    ByteBuffer data = image.getData(i);
+                    if (data != null) {
+                        bytes += data.capacity();
+                    }
+                }
+            }
+            if (texture.getTextureId() != 0) {
+                bytes += texture.getMemoryReq();
+            }
+            return bytes;
+        }
+    }
 }
@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2003-2008 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.jme.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * <code>WorkerPool</code> is a simple Singleton wrapping a fixed pool of
+ * daemon threads that engine subsystems can use to split CPU bound work
+ * (scene updates, skinning, tree building...) across all available cores.
+ * <br>
+ * Work submitted from one of the pool's own threads through
+ * {@link #invokeAll(List)} is run directly on the calling thread, so nested
+ * parallel sections can never dead lock waiting on a saturated pool.
+ *
+ * @see GameTaskQueueManager
+ */
+public final class WorkerPool {
+    private static final Logger logger = Logger.getLogger(WorkerPool.class
+            .getName());
+
+    private static WorkerPool instance;
+    private static int requestedThreads = Runtime.getRuntime()
+            .availableProcessors();
+
+    private static final ThreadLocal<Boolean> workerThread = new ThreadLocal<Boolean>();
+
+    private final ExecutorService executor;
+    private final int threadCount;
+
+    private WorkerPool(int threads) {
+        threadCount = threads;
+        final AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(final Runnable r) {
+                Thread t = new Thread(new Runnable() {
+                    public void run() {
+                        workerThread.set(Boolean.TRUE);
+                        r.run();
+                    }
+                }, "jME Worker " + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        logger.info("WorkerPool created with " + threads + " threads.");
+    }
+
+    /**
+     * @return the shared pool, created on first use.
+     */
+    public static synchronized WorkerPool getPool() {
+        if (instance == null) {
+            instance = new WorkerPool(requestedThreads);
+        }
+        return instance;
+    }
+
+    /**
+     * Sets the number of threads used by the shared pool. If a pool is
+     * already running it is shut down and a new one is created on next use.
+     *
+     * @param threads
+     *            the number of worker threads, at least 1. Defaults to the
+     *            number of available processors.
+     */
+    public static synchronized void setThreadCount(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be >= 1: "
+                    + threads);
+        }
+        requestedThreads = threads;
+        shutdown();
+    }
+
+    /**
+     * Stops the shared pool's threads once their current tasks are done.
+     */
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.executor.shutdown();
+            instance = null;
+        }
+    }
+
+    /**
+     * @return true if the calling thread belongs to a <code>WorkerPool</code>.
+     */
+    public static boolean isWorkerThread() {
+        return workerThread.get() != null;
+    }
+
+    /**
+     * @return the number of threads of this pool.
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Queues the Callable for execution on one of the worker threads.
+     *
+     * @param callable
+     * @return a Future wrapping the Callable's result.
+     */
+    public <V> Future<V> submit(Callable<V> callable) {
+        return executor.submit(callable);
+    }
+
+    /**
+     * Queues the Runnable for execution on one of the worker threads.
+     *
+     * @param runnable
+     * @return a Future to wait on or cancel the task.
+     */
+    public Future<?> submit(Runnable runnable) {
+        return executor.submit(runnable);
+    }
+
+    /**
+     * Runs all the given tasks and returns once every one of them is done.
+     * The last task is executed on the calling thread. If called from a
+     * worker thread all tasks are simply run in order on that thread.
+     *
+     * @param tasks
+     *            the tasks to run, must not depend on each other.
+     * @throws RuntimeException
+     *             the first exception thrown by one of the tasks, after all
+     *             tasks have finished.
+     */
+    public void invokeAll(List<? extends Runnable> tasks) {
+        int size = tasks.size();
+        if (size == 0) {
+            return;
+        }
+        if (size == 1 || isWorkerThread()) {
+            for (int i = 0; i < size; i++) {
+                tasks.get(i).run();
+            }
+            return;
+        }
+
+        List<Future<?>> futures = new ArrayList<Future<?>>(size - 1);
+        for (int i = 0; i < size - 1; i++) {
+            futures.add(executor.submit(tasks.get(i)));
+        }
+
+        RuntimeException error = null;
+        try {
+            tasks.get(size - 1).run();
+        } catch (RuntimeException e) {
+            error = e;
+        }
+
+        boolean interrupted = false;
+        for (int i = 0, fSize = futures.size(); i < fSize; i++) {
+            Future<?> future = futures.get(i);
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    // keep waiting, tasks may still be touching our data
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (error == null) {
+                        Throwable cause = e.getCause();
+                        error = cause instanceof RuntimeException ? (RuntimeException) cause
+                                : new RuntimeException(cause);
+                    }
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Splits the index range [0, count) into about one slice per worker
+     * thread (never smaller than <code>minSlice</code>) and runs
+     * {@link RangeTask#run(int, int)} for each slice through
+     * {@link #invokeAll(List)}.
+     *
+     * @param count
+     *            the number of elements to process.
+     * @param minSlice
+     *            the minimum number of elements handled by one task.
+     * @param task
+     *            the work to do for each slice.
+     */
+    public void invokeRange(int count, int minSlice, final RangeTask task) {
+        if (count <= 0) {
+            return;
+        }
+        int slices = Math.min(threadCount, count / Math.max(1, minSlice));
+        if (slices <= 1 || isWorkerThread()) {
+            task.run(0, count);
+            return;
+        }
+        List<Runnable> tasks = new ArrayList<Runnable>(slices);
+        for (int i = 0; i < slices; i++) {
+            final int start = (int) ((long) count * i / slices);
+            final int end = (int) ((long) count * (i + 1) / slices);
+            tasks.add(new Runnable() {
+                public void run() {
+                    task.run(start, end);
+                }
+            });
+        }
+        invokeAll(tasks);
+    }
+
+    /**
+     * A unit of work over a slice of an index range.
+     *
+     * @see WorkerPool#invokeRange(int, int, RangeTask)
+     */
+    public interface RangeTask {
+        /**
+         * @param start
+         *            first index to process (inclusive)
+         * @param end
+         *            last index to process (exclusive)
+         */
+        void run(int start, int end);
+    }
+}
@@ -37,6 +37,8 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
@@ -141,6 +143,31 @@ import com.jme.util.export.Savable;
  * 18. "field data" - 1...X bytes representing the field data. The data length
  * is dependent on the field type and contents.
  * </p>
+ * <p>
+ * All of the above is GZIP compressed. If the exporter is set to
+ * {@link #setMappable(boolean) mappable}, the file is instead left
+ * uncompressed so that BinaryImporter can memory map it, and laid out as:
+ * </p>
+ * <p>
+ * A. "magic" - four bytes - {@link #MAPPABLE_MAGIC}.
+ * </p>
+ * <p>
+ * B. "version" - four bytes - int value {@link #MAPPABLE_VERSION}.
+ * </p>
+ * <p>
+ * C. "buffer section offset" - eight bytes - long value, the offset in the
+ * file of the buffer section (E).
+ * </p>
+ * <p>
+ * D. numbers 1 thru 18, uncompressed.
+ * </p>
+ * <p>
+ * E. "buffer section" - the contents of all the Float, Int, Short and Byte
+ * buffers, little endian, each starting on a multiple of
+ * {@link #BLOB_ALIGNMENT} bytes. In the field data of D such a buffer is
+ * written as its length followed by its offset in this section, so the
+ * importer can hand out slices of the mapping instead of copies.
+ * </p>
  * 
  * @author Joshua Slack
  */
@@ -152,6 +179,22 @@ public class BinaryExporter implements JMEExporter {
     //TODO: Provide better cleanup and reuse of this class.
 
     public static int COMPRESSION = Deflater.BEST_COMPRESSION;
+
+    /** The first bytes of a file saved in the mappable format. */
+    public static final byte[] MAPPABLE_MAGIC = { 'J', 'B', 'I', 'N' };
+
+    /** The version of the mappable format written by this exporter. */
+    public static final int MAPPABLE_VERSION = 1;
+
+    /** The alignment of buffer contents in the mappable format. */
+    public static final int BLOB_ALIGNMENT = 16;
+
+    protected boolean mappable;
+
+    // buffer contents, only used by the mappable format
+    protected ByteArrayOutputStream blobs;
+    // key - buffer written, value - offset of its contents in blobs
+    protected IdentityHashMap<Buffer, Integer> blobTable;
     
     protected int aliasCount = 1;
     protected int idCount = 1;
@@ -174,15 +217,43 @@ public class BinaryExporter implements JMEExporter {
         return new BinaryExporter();
     }
 
+    /**
+     * Sets if this exporter writes the uncompressed, mappable variant of the
+     * format instead of the default GZIP compressed one. Mappable files are
+     * larger, but load faster and with far less heap, as the importer memory
+     * maps them and serves their buffers directly from the mapping.
+     * 
+     * @param mappable
+     *            true to write the mappable format.
+     */
+    public void setMappable(boolean mappable) {
+        this.mappable = mappable;
+    }
+
+    /**
+     * @return true if this exporter writes the mappable format.
+     * @see #setMappable(boolean)
+     */
+    public boolean isMappable() {
+        return mappable;
+    }
+
     public boolean save(Savable object, OutputStream os) throws IOException {
         classes = new HashMap<String, BinaryClassObject>();
         contentTable = new IdentityHashMap<Savable, BinaryIdContentPair>();
         locationTable = new HashMap<Integer, Integer>();
-        GZIPOutputStream zos = new GZIPOutputStream(os) {
-            {
-                def.setLevel(COMPRESSION);
-            }
-        };
+        OutputStream zos;
+        if (mappable) {
+            blobs = new ByteArrayOutputStream();
+            blobTable = new IdentityHashMap<Buffer, Integer>();
+            zos = new ByteArrayOutputStream();
+        } else {
+            zos = new GZIPOutputStream(os) {
+                {
+                    def.setLevel(COMPRESSION);
+                }
+            };
+        }
         int id = processBinarySavable(object);
 
         // write out tag table
@@ -276,7 +347,13 @@ public class BinaryExporter implements JMEExporter {
         // append stream to the output stream
         out.writeTo(zos);
 
-        zos.finish();
+        if (mappable) {
+            writeMappable((ByteArrayOutputStream) zos, os);
+            blobs = null;
+            blobTable = null;
+        } else {
+            ((GZIPOutputStream) zos).finish();
+        }
         
         out = null;
         zos = null;
@@ -293,6 +370,60 @@ public class BinaryExporter implements JMEExporter {
         return true;
     }
 
+    /**
+     * Writes the preamble, the given structure and the buffer section of the
+     * mappable format to the stream.
+     */
+    protected void writeMappable(ByteArrayOutputStream structure,
+            OutputStream os) throws IOException {
+        int preamble = MAPPABLE_MAGIC.length + 4 + 8;
+        long blobOffset = preamble + structure.size();
+        int padding = (int) ((BLOB_ALIGNMENT - blobOffset % BLOB_ALIGNMENT) % BLOB_ALIGNMENT);
+        blobOffset += padding;
+
+        os.write(MAPPABLE_MAGIC);
+        os.write(ByteUtils.convertToBytes(MAPPABLE_VERSION));
+        os.write(ByteUtils.convertToBytes(blobOffset));
+        structure.writeTo(os);
+        os.write(new byte[padding]);
+        blobs.writeTo(os);
+        os.flush();
+    }
+
+    /**
+     * Returns where the contents of the given buffer were stored in the buffer
+     * section of the mappable format, if it was written before.
+     * 
+     * @param source
+     *            the buffer being written.
+     * @return the offset of its contents in the buffer section, or -1.
+     */
+    protected int findBlob(Buffer source) {
+        Integer offset = blobTable.get(source);
+        return offset != null ? offset.intValue() : -1;
+    }
+
+    /**
+     * Adds buffer contents to the buffer section of the mappable format. Only
+     * the same buffer object is stored once, buffers with equal contents are
+     * not merged as they may be modified independently after loading.
+     * 
+     * @param source
+     *            the buffer being written.
+     * @param data
+     *            the little endian contents, from 0 to its limit.
+     * @return the offset of the contents in the buffer section.
+     */
+    protected int writeBlob(Buffer source, ByteBuffer data) {
+        int padding = (BLOB_ALIGNMENT - blobs.size() % BLOB_ALIGNMENT)
+                % BLOB_ALIGNMENT;
+        blobs.write(new byte[padding], 0, padding);
+        int location = blobs.size();
+        blobs.write(data.array(), data.arrayOffset(), data.limit());
+        blobTable.put(source, location);
+        return location;
+    }
+
     protected String getChunk(BinaryIdContentPair pair) {
         return new String(pair.getContent().bytes, 0, Math.min(64, pair
                 .getContent().bytes.length));
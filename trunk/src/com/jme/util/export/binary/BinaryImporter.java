@@ -35,11 +35,21 @@ package com.jme.util.export.binary;
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.logging.Level;
@@ -51,6 +61,7 @@ import com.jme.util.export.ByteUtils;
 import com.jme.util.export.JMEImporter;
 import com.jme.util.export.ReadListener;
 import com.jme.util.export.Savable;
+import com.jme.util.geom.BufferUtils;
 
 /**
  * @author Joshua Slack
@@ -73,10 +84,36 @@ public class BinaryImporter implements JMEImporter {
     public static boolean debug = false;
 
     protected byte[] dataArray;
+    // start of the object data in dataArray
+    protected int dataOffset;
+    // the buffer section of the mappable format
+    protected ByteBuffer blobData;
     protected int aliasWidth;
+    // whether files in the mappable format are mapped or read
+    private boolean mapFiles = true;
+
+    private static final int PREAMBLE_SIZE = 16;
     
     public BinaryImporter() {
     }
+
+    /**
+     * Sets whether files in the mappable format are memory mapped by
+     * {@link #load(File)}. A mapping is only released once all buffers loaded
+     * from it have been garbage collected; until then the file stays open,
+     * and on Windows it can not be deleted, renamed or replaced. Without
+     * mapping, the buffer section is read into memory like from a stream.
+     * 
+     * @param mapFiles
+     *            true (the default) to map files, false to read them.
+     */
+    public void setMapFiles(boolean mapFiles) {
+        this.mapFiles = mapFiles;
+    }
+
+    public boolean isMapFiles() {
+        return mapFiles;
+    }
     
     public static BinaryImporter getInstance() {
         return new BinaryImporter();
@@ -87,9 +124,44 @@ public class BinaryImporter implements JMEImporter {
     }
 
     public Savable load(InputStream is, ReadListener listener) throws IOException {
+        if (!is.markSupported()) {
+            is = new BufferedInputStream(is);
+        }
+        is.mark(BinaryExporter.MAPPABLE_MAGIC.length);
+        boolean mappable = readMagic(is);
+        is.reset();
+        if (mappable) {
+            return loadMappable(is, listener);
+        }
+
         contentTable = new HashMap<Integer, Savable>();
         GZIPInputStream zis = new GZIPInputStream(is);
         BufferedInputStream bis = new BufferedInputStream(zis);
+        int id = readHeader(bis, listener);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        int size = -1;
+        byte[] cache = new byte[4096];
+        while((size = bis.read(cache)) != -1) {
+            baos.write(cache, 0, size);
+            if (listener != null) listener.readBytes(size);
+        }
+        bis = null;
+
+        dataArray = baos.toByteArray();
+        dataOffset = 0;
+        baos = null;
+        
+        return readRoot(id);
+    }
+
+    /**
+     * Reads the class and location tables.
+     * 
+     * @return the id of the root object.
+     */
+    protected int readHeader(InputStream bis, ReadListener listener)
+            throws IOException {
         int numClasses = ByteUtils.readInt(bis);
         int bytes = 4;
         aliasWidth = ((int)FastMath.log(numClasses, 256) + 1);
@@ -140,28 +212,206 @@ public class BinaryImporter implements JMEImporter {
         int id = ByteUtils.readInt(bis);
         bytes += 8;
         if (listener != null) listener.readBytes(bytes);
+        return id;
+    }
+
+    private Savable readRoot(int id) {
+        Savable rVal = readObject(id);
+        if (debug) {
+            logger.info("Importer Stats: ");
+            logger.info("Tags: "+classes.size());
+            logger.info("Objects: "+locationTable.size());
+            logger.info("Data Size: "+(dataArray.length - dataOffset));
+            if (blobData != null) {
+                logger.info("Buffer Data Size: "+blobData.capacity());
+            }
+        }
+        dataArray = null;
+        blobData = null;
+        return rVal;
+    }
+
+    /**
+     * @return true if the next bytes of the stream are the magic of the
+     *         mappable format.
+     */
+    private static boolean readMagic(InputStream is) throws IOException {
+        for (int i = 0; i < BinaryExporter.MAPPABLE_MAGIC.length; i++) {
+            if (is.read() != BinaryExporter.MAPPABLE_MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the preamble of the mappable format, after the magic.
+     * 
+     * @return the offset of the buffer section.
+     */
+    private static long readPreamble(byte[] preamble) throws IOException {
+        int version = ByteUtils.convertIntFromBytes(preamble, 4);
+        if (version != BinaryExporter.MAPPABLE_VERSION) {
+            throw new IOException("Unsupported mappable binary version: "
+                    + version);
+        }
+        return ByteUtils.convertLongFromBytes(preamble, 8);
+    }
+
+    /**
+     * Loads a stream in the mappable format. As it can not be mapped, the
+     * buffer section is read into a single direct buffer instead, that the
+     * loaded buffers are slices of.
+     */
+    protected Savable loadMappable(InputStream is, ReadListener listener)
+            throws IOException {
+        DataInputStream dis = new DataInputStream(is);
+        byte[] preamble = new byte[PREAMBLE_SIZE];
+        dis.readFully(preamble);
+        long blobOffset = readPreamble(preamble);
+
+        byte[] structure = new byte[(int) (blobOffset - PREAMBLE_SIZE)];
+        dis.readFully(structure);
+        if (listener != null) listener.readBytes(structure.length);
 
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         int size = -1;
         byte[] cache = new byte[4096];
-        while((size = bis.read(cache)) != -1) {
+        while((size = dis.read(cache)) != -1) {
             baos.write(cache, 0, size);
             if (listener != null) listener.readBytes(size);
         }
-        bis = null;
-
-        dataArray = baos.toByteArray();
+        ByteBuffer blobs = ByteBuffer.allocateDirect(baos.size());
+        blobs.put(baos.toByteArray());
         baos = null;
-        
-        Savable rVal = readObject(id);
-        if (debug) {
-            logger.info("Importer Stats: ");
-            logger.info("Tags: "+numClasses);
-            logger.info("Objects: "+numLocs);
-            logger.info("Data Size: "+dataArray.length);
+        blobs.clear();
+
+        return loadStructure(structure, blobs, listener);
+    }
+
+    /**
+     * Loads a file in the mappable format. The Float, Int, Short and Byte
+     * buffers of the loaded objects are slices of one buffer holding the
+     * buffer section, only the rest of the data is read into the heap. The
+     * buffers can always be written to, changes never reach the file.
+     * 
+     * @param map
+     *            true to map the buffer section copy-on-write, which needs a
+     *            channel open for writing, false to read it into a direct
+     *            buffer.
+     */
+    protected Savable loadMapped(FileChannel channel, boolean map,
+            ReadListener listener) throws IOException {
+        ByteBuffer preamble = ByteBuffer.allocate(PREAMBLE_SIZE);
+        while (preamble.hasRemaining()) {
+            if (channel.read(preamble, preamble.position()) == -1) {
+                throw new EOFException();
+            }
         }
-        dataArray = null;
-        return rVal;
+        long blobOffset = readPreamble(preamble.array());
+
+        byte[] structure = new byte[(int) (blobOffset - PREAMBLE_SIZE)];
+        ByteBuffer structureBuffer = ByteBuffer.wrap(structure);
+        while (structureBuffer.hasRemaining()) {
+            if (channel.read(structureBuffer, PREAMBLE_SIZE
+                    + structureBuffer.position()) == -1) {
+                throw new EOFException();
+            }
+        }
+        if (listener != null) listener.readBytes(structure.length);
+
+        long blobSize = channel.size() - blobOffset;
+        ByteBuffer blobs;
+        if (map) {
+            blobs = channel.map(FileChannel.MapMode.PRIVATE, blobOffset,
+                    blobSize);
+        } else {
+            blobs = ByteBuffer.allocateDirect((int) blobSize);
+            while (blobs.hasRemaining()) {
+                if (channel.read(blobs, blobOffset + blobs.position()) == -1) {
+                    throw new EOFException();
+                }
+            }
+            blobs.clear();
+            if (listener != null) listener.readBytes((int) blobSize);
+        }
+        return loadStructure(structure, blobs, listener);
+    }
+
+    private Savable loadStructure(byte[] structure, ByteBuffer blobs,
+            ReadListener listener) throws IOException {
+        contentTable = new HashMap<Integer, Savable>();
+        ByteArrayInputStream bais = new ByteArrayInputStream(structure);
+        int id = readHeader(bais, listener);
+        dataArray = structure;
+        dataOffset = structure.length - bais.available();
+        blobData = blobs;
+        return readRoot(id);
+    }
+
+    /**
+     * @return a slice of the buffer section of a mappable file as a
+     *         FloatBuffer, or a copy if the platform is not little endian.
+     */
+    protected FloatBuffer getBlobFloatBuffer(int offset, int length) {
+        ByteBuffer slice = getBlob(offset, length * 4);
+        if (slice.order() == ByteOrder.nativeOrder()) {
+            return slice.asFloatBuffer();
+        }
+        FloatBuffer copy = BufferUtils.createFloatBuffer(length);
+        copy.put(slice.asFloatBuffer());
+        copy.rewind();
+        return copy;
+    }
+
+    /**
+     * @see #getBlobFloatBuffer(int, int)
+     */
+    protected IntBuffer getBlobIntBuffer(int offset, int length) {
+        ByteBuffer slice = getBlob(offset, length * 4);
+        if (slice.order() == ByteOrder.nativeOrder()) {
+            return slice.asIntBuffer();
+        }
+        IntBuffer copy = BufferUtils.createIntBuffer(length);
+        copy.put(slice.asIntBuffer());
+        copy.rewind();
+        return copy;
+    }
+
+    /**
+     * @see #getBlobFloatBuffer(int, int)
+     */
+    protected ShortBuffer getBlobShortBuffer(int offset, int length) {
+        ByteBuffer slice = getBlob(offset, length * 2);
+        if (slice.order() == ByteOrder.nativeOrder()) {
+            return slice.asShortBuffer();
+        }
+        ShortBuffer copy = BufferUtils.createShortBuffer(length);
+        copy.put(slice.asShortBuffer());
+        copy.rewind();
+        return copy;
+    }
+
+    /**
+     * @see #getBlobFloatBuffer(int, int)
+     */
+    protected ByteBuffer getBlobByteBuffer(int offset, int length) {
+        return getBlob(offset, length).order(ByteOrder.nativeOrder());
+    }
+
+    private ByteBuffer getBlob(int offset, int length) {
+        ByteBuffer blob = blobData.duplicate();
+        blob.position(offset);
+        blob.limit(offset + length);
+        return blob.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * @return true if the loaded data is in the mappable format, whose
+     *         buffers are stored apart from the rest of the data.
+     */
+    protected boolean isMappable() {
+        return blobData != null;
     }
     
     public Savable load(URL f) throws IOException {
@@ -169,6 +419,17 @@ public class BinaryImporter implements JMEImporter {
     }
     
     public Savable load(URL f, ReadListener listener) throws IOException {
+        if ("file".equals(f.getProtocol())) {
+            File file = null;
+            try {
+                file = new File(f.toURI());
+            } catch (Exception e) {
+                // not a plain file URL, fall back to a stream
+            }
+            if (file != null && file.isFile()) {
+                return load(file, listener);
+            }
+        }
         InputStream is = f.openStream();
         Savable rVal = load(is, listener);
         is.close();
@@ -181,9 +442,27 @@ public class BinaryImporter implements JMEImporter {
     
     public Savable load(File f, ReadListener listener) throws IOException {
         FileInputStream fis = new FileInputStream(f);
-        Savable rVal = load(fis, listener);
-        fis.close();
-        return rVal;
+        try {
+            // files in the mappable format are mapped rather than read
+            FileChannel channel = fis.getChannel();
+            ByteBuffer magic = ByteBuffer
+                    .allocate(BinaryExporter.MAPPABLE_MAGIC.length);
+            channel.read(magic, 0);
+            if (!Arrays.equals(magic.array(), BinaryExporter.MAPPABLE_MAGIC)) {
+                return load(fis, listener);
+            }
+        } finally {
+            fis.close();
+        }
+        // a private mapping needs a writable channel, even if nothing is
+        // ever written back, read only files are read instead
+        boolean map = mapFiles && f.canWrite();
+        RandomAccessFile raf = new RandomAccessFile(f, map ? "rw" : "r");
+        try {
+            return loadMapped(raf.getChannel(), map, listener);
+        } finally {
+            raf.close();
+        }
     }
 
     public Savable load(byte[] data) throws IOException {
@@ -222,7 +501,7 @@ public class BinaryImporter implements JMEImporter {
         }
         
         try {
-            int loc = locationTable.get(id);
+            int loc = locationTable.get(id) + dataOffset;
             
             String alias = readString(aliasWidth, loc);
             loc+=aliasWidth;
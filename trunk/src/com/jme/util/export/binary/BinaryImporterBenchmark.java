@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2003-2008 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors 
+ *   may be used to endorse or promote products derived from this software 
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.jme.util.export.binary;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.FloatBuffer;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.jme.scene.Node;
+import com.jme.scene.TriMesh;
+import com.jme.scene.shape.Sphere;
+
+/**
+ * <code>BinaryImporterBenchmark</code> saves a scene of large spheres with
+ * {@link BinaryExporter}, once in the default GZIP format and once in the
+ * mappable format, and compares the time and the peak heap used to load
+ * each file. It also checks that both files load the same vertex data.
+ * <p>
+ * Usage: <code>BinaryImporterBenchmark [spheres] [samples] [loads]</code>
+ */
+public class BinaryImporterBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        Logger.getLogger("").setLevel(Level.WARNING);
+        int spheres = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int samples = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+        int loads = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        Node scene = new Node("scene");
+        for (int i = 0; i < spheres; i++) {
+            scene.attachChild(new Sphere("sphere" + i, samples, samples,
+                    1 + i));
+        }
+
+        File gzip = File.createTempFile("benchmark", ".jme");
+        File mapped = File.createTempFile("benchmark", ".jbin");
+        gzip.deleteOnExit();
+        mapped.deleteOnExit();
+        BinaryExporter exporter = new BinaryExporter();
+        exporter.save(scene, gzip);
+        exporter.setMappable(true);
+        exporter.save(scene, mapped);
+        scene = null;
+        System.out.println("Files: GZIP " + gzip.length() / 1024
+                + " KB, mappable " + mapped.length() / 1024 + " KB");
+
+        // warm up
+        for (int i = 0; i < 2; i++) {
+            load(gzip);
+            load(mapped);
+        }
+
+        long gzipTime = 0, mappedTime = 0;
+        long gzipPeak = 0, mappedPeak = 0;
+        Node a = null, b = null;
+        for (int i = 0; i < loads; i++) {
+            a = b = null;
+            resetPeak();
+            long start = System.nanoTime();
+            a = load(gzip);
+            gzipTime += System.nanoTime() - start;
+            gzipPeak = Math.max(gzipPeak, getPeak());
+
+            a = null;
+            resetPeak();
+            start = System.nanoTime();
+            b = load(mapped);
+            mappedTime += System.nanoTime() - start;
+            mappedPeak = Math.max(mappedPeak, getPeak());
+        }
+        a = load(gzip);
+
+        System.out.println("load: GZIP " + gzipTime / loads / 1000000
+                + " ms, peak heap " + gzipPeak / 1024 + " KB");
+        System.out.println("load: mappable " + mappedTime / loads / 1000000
+                + " ms, peak heap " + mappedPeak / 1024 + " KB");
+        System.out.println("same data: " + sameData(a, b));
+    }
+
+    private static Node load(File file) throws IOException {
+        return (Node) BinaryImporter.getInstance().load(file);
+    }
+
+    private static boolean sameData(Node a, Node b) {
+        if (a.getQuantity() != b.getQuantity()) {
+            return false;
+        }
+        for (int i = 0; i < a.getQuantity(); i++) {
+            TriMesh meshA = (TriMesh) a.getChild(i);
+            TriMesh meshB = (TriMesh) b.getChild(i);
+            FloatBuffer vertsA = meshA.getVertexBuffer();
+            FloatBuffer vertsB = meshB.getVertexBuffer();
+            vertsA.rewind();
+            vertsB.rewind();
+            if (!vertsA.equals(vertsB)) {
+                return false;
+            }
+            meshA.getIndexBuffer().rewind();
+            meshB.getIndexBuffer().rewind();
+            if (!meshA.getIndexBuffer().equals(meshB.getIndexBuffer())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void resetPeak() {
+        System.gc();
+        List<MemoryPoolMXBean> pools = ManagementFactory.getMemoryPoolMXBeans();
+        for (int i = 0; i < pools.size(); i++) {
+            pools.get(i).resetPeakUsage();
+        }
+    }
+
+    /**
+     * @return the sum of the peak usage of the heap memory pools since the
+     *         last {@link #resetPeak()}.
+     */
+    private static long getPeak() {
+        long peak = 0;
+        List<MemoryPoolMXBean> pools = ManagementFactory.getMemoryPoolMXBeans();
+        for (int i = 0; i < pools.size(); i++) {
+            MemoryPoolMXBean pool = pools.get(i);
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
@@ -1189,6 +1189,8 @@ public class BinaryInputCapsule implements InputCapsule {
         int length = readInt(content);
         if (length == BinaryOutputCapsule.NULL_OBJECT)
             return null;
+        if (importer.isMappable())
+            return importer.getBlobFloatBuffer(readInt(content), length);
         FloatBuffer value = BufferUtils.createFloatBuffer(length);
         for (int x = 0; x < length; x++) {
             value.put(readFloat(content));
@@ -1203,6 +1205,8 @@ public class BinaryInputCapsule implements InputCapsule {
         int length = readInt(content);
         if (length == BinaryOutputCapsule.NULL_OBJECT)
             return null;
+        if (importer.isMappable())
+            return importer.getBlobIntBuffer(readInt(content), length);
         IntBuffer value = BufferUtils.createIntBuffer(length);
         for (int x = 0; x < length; x++) {
             value.put(readInt(content));
@@ -1217,6 +1221,8 @@ public class BinaryInputCapsule implements InputCapsule {
         int length = readInt(content);
         if (length == BinaryOutputCapsule.NULL_OBJECT)
             return null;
+        if (importer.isMappable())
+            return importer.getBlobByteBuffer(readInt(content), length);
         ByteBuffer value = BufferUtils.createByteBuffer(length);
         for (int x = 0; x < length; x++) {
             value.put(readByte(content));
@@ -1231,6 +1237,8 @@ public class BinaryInputCapsule implements InputCapsule {
         int length = readInt(content);
         if (length == BinaryOutputCapsule.NULL_OBJECT)
             return null;
+        if (importer.isMappable())
+            return importer.getBlobShortBuffer(readInt(content), length);
         ShortBuffer value = BufferUtils.createShortBuffer(length);
         for (int x = 0; x < length; x++) {
             value.put(readShort(content));
@@ -35,6 +35,7 @@ package com.jme.util.export.binary;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.nio.ShortBuffer;
@@ -812,6 +813,18 @@ public class BinaryOutputCapsule implements OutputCapsule {
         value.rewind();
         int length = value.limit();
         write(length);
+        if (exporter.isMappable()) {
+            int blob = exporter.findBlob(value);
+            if (blob < 0) {
+                ByteBuffer data = ByteBuffer.allocate(length * 4).order(
+                        ByteOrder.LITTLE_ENDIAN);
+                data.asFloatBuffer().put(value);
+                value.rewind();
+                blob = exporter.writeBlob(value, data);
+            }
+            write(blob);
+            return;
+        }
         for (int x = 0; x < length; x++) {
             write(value.get());
         }
@@ -828,6 +841,18 @@ public class BinaryOutputCapsule implements OutputCapsule {
         value.rewind();
         int length = value.limit();
         write(length);
+        if (exporter.isMappable()) {
+            int blob = exporter.findBlob(value);
+            if (blob < 0) {
+                ByteBuffer data = ByteBuffer.allocate(length * 4).order(
+                        ByteOrder.LITTLE_ENDIAN);
+                data.asIntBuffer().put(value);
+                value.rewind();
+                blob = exporter.writeBlob(value, data);
+            }
+            write(blob);
+            return;
+        }
         for (int x = 0; x < length; x++) {
             write(value.get());
         }
@@ -844,6 +869,18 @@ public class BinaryOutputCapsule implements OutputCapsule {
         value.rewind();
         int length = value.limit();
         write(length);
+        if (exporter.isMappable()) {
+            int blob = exporter.findBlob(value);
+            if (blob < 0) {
+                ByteBuffer data = ByteBuffer.allocate(length);
+                data.put(value);
+                data.flip();
+                value.rewind();
+                blob = exporter.writeBlob(value, data);
+            }
+            write(blob);
+            return;
+        }
         for (int x = 0; x < length; x++) {
             write(value.get());
         }
@@ -860,6 +897,18 @@ public class BinaryOutputCapsule implements OutputCapsule {
         value.rewind();
         int length = value.limit();
         write(length);
+        if (exporter.isMappable()) {
+            int blob = exporter.findBlob(value);
+            if (blob < 0) {
+                ByteBuffer data = ByteBuffer.allocate(length * 2).order(
+                        ByteOrder.LITTLE_ENDIAN);
+                data.asShortBuffer().put(value);
+                value.rewind();
+                blob = exporter.writeBlob(value, data);
+            }
+            write(blob);
+            return;
+        }
         for (int x = 0; x < length; x++) {
             write(value.get());
         }
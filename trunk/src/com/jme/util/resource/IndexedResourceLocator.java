@@ -0,0 +1,381 @@
+/*
+ * Copyright (c) 2003-2008 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors 
+ *   may be used to endorse or promote products derived from this software 
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme.util.resource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.JarURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A locator with the same lookup rules as {@link SimpleResourceLocator}, but
+ * which scans its base directory or jar once into an in-memory name index
+ * instead of opening a stream for every candidate path. A lookup is a handful
+ * of hash lookups (one per trimmed form of the requested path) and never
+ * touches the filesystem. Names that match no resource exactly are looked up
+ * again ignoring case, as the probing finds them on Windows.
+ * <p>
+ * Base URIs that are neither <code>file:</code> directories nor
+ * <code>jar:</code> entries can not be listed and fall back to probing like
+ * {@link SimpleResourceLocator}.
+ * <p>
+ * Since the index is a snapshot, resources added or removed after the first
+ * lookup are only seen after {@link #refresh()}, or automatically when a watch
+ * interval has been set with {@link #setWatchInterval(long)}. Either way
+ * {@link #indexChanged()} is called, which by default clears the lookup cache
+ * of {@link ResourceLocatorTool}.
+ */
+public class IndexedResourceLocator implements ResourceLocator {
+    private static final Logger logger = Logger
+            .getLogger(IndexedResourceLocator.class.getName());
+
+    private static Timer watchTimer;
+
+    protected URI baseDir;
+
+    /** relative path (always '/' separated) to resource URL */
+    private volatile Map<String, URL> index;
+    /** lower-cased relative path to resource URL, published before index */
+    private volatile Map<String, URL> lowerCaseIndex;
+    /** directory or jar file to last modified time, used for watching */
+    private Map<File, Long> stamps;
+    private SimpleResourceLocator fallback;
+    private TimerTask watchTask;
+    private long watchInterval;
+
+    public IndexedResourceLocator(URI baseDir) {
+        if (baseDir == null) {
+            throw new NullPointerException("baseDir can not be null.");
+        }
+        this.baseDir = baseDir;
+    }
+
+    public IndexedResourceLocator(URL baseDir) throws URISyntaxException {
+        if (baseDir == null) {
+            throw new NullPointerException("baseDir can not be null.");
+        }
+        this.baseDir = baseDir.toURI();
+    }
+
+    public URL locateResource(String resourceName) {
+        Map<String, URL> idx = getIndex();
+        if (idx == null) {
+            return fallback.locateResource(resourceName);
+        }
+
+        String name = resourceName.replace('\\', '/');
+        // Trim off any prepended local dir.
+        while (name.startsWith("./") && name.length() > 2) {
+            name = name.substring(2);
+        }
+
+        URL rVal = lookup(idx, name);
+        if (rVal == null) {
+            rVal = lookup(lowerCaseIndex, name.toLowerCase());
+        }
+        return rVal;
+    }
+
+    /**
+     * Tries the name as is, then successively drops leading path components.
+     */
+    private static URL lookup(Map<String, URL> idx, String name) {
+        while (name != null) {
+            URL rVal = idx.get(name);
+            if (rVal != null) {
+                return rVal;
+            }
+            int firstSlashIndex = name.indexOf('/');
+            if (firstSlashIndex >= 0 && firstSlashIndex < name.length() - 1) {
+                name = name.substring(firstSlashIndex + 1);
+            } else {
+                name = null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of resources in the index, scanning it first if
+     *         needed, or -1 if the base URI can not be indexed.
+     */
+    public int getIndexSize() {
+        Map<String, URL> idx = getIndex();
+        return idx != null ? idx.size() : -1;
+    }
+
+    /**
+     * Discards the current index and scans the base directory or jar again.
+     */
+    public void refresh() {
+        synchronized (this) {
+            scan();
+        }
+        indexChanged();
+    }
+
+    /**
+     * Called after the index has been rebuilt by {@link #refresh()} or by the
+     * watcher. The default implementation clears the lookup cache of
+     * {@link ResourceLocatorTool}; locators registered with another registry
+     * should override this to invalidate that one instead.
+     */
+    protected void indexChanged() {
+        ResourceLocatorTool.clearCache();
+    }
+
+    /**
+     * Sets how often the indexed directories (or the jar file) are checked for
+     * added, removed or renamed resources. The check only compares directory
+     * modification times and runs on a shared daemon thread.
+     *
+     * @param millis
+     *            the polling interval in milliseconds, or 0 to stop watching
+     *            (the default)
+     */
+    public synchronized void setWatchInterval(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("millis can not be negative.");
+        }
+        if (watchTask != null) {
+            watchTask.cancel();
+            watchTask = null;
+        }
+        watchInterval = millis;
+        if (millis == 0) {
+            return;
+        }
+        watchTask = new TimerTask() {
+            public void run() {
+                if (isModified()) {
+                    logger.fine("Resources changed under " + baseDir
+                            + ", rebuilding index.");
+                    refresh();
+                }
+            }
+        };
+        getWatchTimer().schedule(watchTask, millis, millis);
+    }
+
+    public synchronized long getWatchInterval() {
+        return watchInterval;
+    }
+
+    private static synchronized Timer getWatchTimer() {
+        if (watchTimer == null) {
+            watchTimer = new Timer("IndexedResourceLocator watcher", true);
+        }
+        return watchTimer;
+    }
+
+    private Map<String, URL> getIndex() {
+        Map<String, URL> idx = index;
+        if (idx == null && fallback == null) {
+            synchronized (this) {
+                if (index == null && fallback == null) {
+                    scan();
+                }
+                idx = index;
+            }
+        }
+        return idx;
+    }
+
+    private synchronized boolean isModified() {
+        if (stamps == null) {
+            return false;
+        }
+        for (Map.Entry<File, Long> e : stamps.entrySet()) {
+            if (e.getKey().lastModified() != e.getValue().longValue()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void scan() {
+        Map<String, URL> idx = new HashMap<String, URL>();
+        Map<File, Long> newStamps = new HashMap<File, Long>();
+        try {
+            if ("file".equals(baseDir.getScheme())) {
+                File dir = new File(baseDir);
+                if (dir.isDirectory()) {
+                    scanDirectory(dir, "", idx, newStamps);
+                } else {
+                    // an empty index, but notice when the directory appears
+                    newStamps.put(dir, Long.valueOf(dir.lastModified()));
+                }
+            } else if ("jar".equals(baseDir.getScheme())) {
+                scanJar(idx, newStamps);
+            } else {
+                idx = null;
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to index " + baseDir
+                    + ", falling back to probing.", e);
+            idx = null;
+        } catch (IllegalArgumentException e) {
+            logger.log(Level.WARNING, "Unable to index " + baseDir
+                    + ", falling back to probing.", e);
+            idx = null;
+        }
+
+        if (idx == null) {
+            fallback = new SimpleResourceLocator(baseDir);
+            stamps = null;
+        } else {
+            fallback = null;
+            stamps = newStamps;
+            Map<String, URL> lower = new HashMap<String, URL>(idx.size() * 2);
+            for (Map.Entry<String, URL> e : idx.entrySet()) {
+                String key = e.getKey().toLowerCase();
+                if (!lower.containsKey(key)) {
+                    lower.put(key, e.getValue());
+                }
+            }
+            lowerCaseIndex = lower;
+        }
+        index = idx;
+    }
+
+    private void scanDirectory(File dir, String prefix, Map<String, URL> idx,
+            Map<File, Long> newStamps) throws IOException {
+        newStamps.put(dir, Long.valueOf(dir.lastModified()));
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File f : files) {
+            String name = prefix + f.getName();
+            if (f.isDirectory()) {
+                scanDirectory(f, name + "/", idx, newStamps);
+            } else {
+                idx.put(name, f.toURI().toURL());
+            }
+        }
+    }
+
+    private void scanJar(Map<String, URL> idx, Map<File, Long> newStamps)
+            throws IOException {
+        URL base = baseDir.toURL();
+        String spec = base.toString();
+        int bang = spec.indexOf("!/");
+        if (bang < 0) {
+            throw new IOException("Not a jar URL: " + base);
+        }
+        // connect to the jar root, jars often have no entries for directories
+        URLConnection conn = new URL(spec.substring(0, bang + 2))
+                .openConnection();
+        if (!(conn instanceof JarURLConnection)) {
+            throw new IOException("Not a jar URL: " + base);
+        }
+        JarURLConnection jarConn = (JarURLConnection) conn;
+        URL jarFileURL = jarConn.getJarFileURL();
+        String prefix = URLDecoder.decode(spec.substring(bang + 2), "UTF-8");
+        if (prefix.length() > 0 && !prefix.endsWith("/")) {
+            prefix += "/";
+        }
+
+        // don't share (and then close) the JVM wide cached JarFile
+        jarConn.setUseCaches(false);
+        JarFile jar = jarConn.getJarFile();
+        try {
+            Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (entry.isDirectory() || !name.startsWith(prefix)) {
+                    continue;
+                }
+                name = name.substring(prefix.length());
+                idx.put(name, new URL(base, encodePath(name)));
+            }
+        } finally {
+            jar.close();
+        }
+
+        if ("file".equals(jarFileURL.getProtocol())) {
+            try {
+                File f = new File(jarFileURL.toURI());
+                newStamps.put(f, Long.valueOf(f.lastModified()));
+            } catch (URISyntaxException e) {
+                // can't watch it, the index itself is still valid
+            }
+        }
+    }
+
+    private static String encodePath(String path)
+            throws UnsupportedEncodingException {
+        StringBuilder sb = new StringBuilder(path.length() + 16);
+        int start = 0;
+        while (true) {
+            int slash = path.indexOf('/', start);
+            String part = slash < 0 ? path.substring(start) : path.substring(
+                    start, slash);
+            // the file and jar handlers do not decode "+" to spaces
+            sb.append(URLEncoder.encode(part, "UTF-8").replace("+", "%20"));
+            if (slash < 0) {
+                return sb.toString();
+            }
+            sb.append('/');
+            start = slash + 1;
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof IndexedResourceLocator) {
+            return baseDir.equals(((IndexedResourceLocator) obj).baseDir);
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return baseDir.hashCode();
+    }
+}
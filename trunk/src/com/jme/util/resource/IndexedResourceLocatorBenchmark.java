@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2003-2008 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors 
+ *   may be used to endorse or promote products derived from this software 
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme.util.resource;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Compares lookup throughput of {@link SimpleResourceLocator} and
+ * {@link IndexedResourceLocator} on a generated directory tree and the same
+ * tree packed into a jar, and of {@link ResourceLocatorTool} with its lookup
+ * cache in front of the indexed locator. The lookups mix names relative to the
+ * base, names carrying a foreign absolute prefix that has to be trimmed (as
+ * exported models usually reference their textures) and misses.
+ * <p>
+ * Usage: <code>IndexedResourceLocatorBenchmark [dirs] [filesPerDir]</code>
+ */
+public class IndexedResourceLocatorBenchmark {
+    // misses are logged by ResourceLocatorTool, keep the logger referenced
+    private static final Logger toolLogger = Logger
+            .getLogger(ResourceLocatorTool.class.getName());
+
+    public static void main(String[] args) throws Exception {
+        int dirs = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int files = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        toolLogger.setLevel(Level.SEVERE);
+
+        File root = File.createTempFile("jmeres", "");
+        if (!root.delete() || !root.mkdir()) {
+            throw new IOException("Unable to create " + root);
+        }
+        File base = new File(root, "data");
+        File jar = new File(root, "data.jar");
+        try {
+            createTree(base, jar, dirs, files);
+            String[] names = createNames(dirs, files, 4000);
+
+            URI dirURI = base.toURI();
+            URI jarURI = new URI("jar:" + jar.toURI() + "!/data/");
+            System.out.println(dirs * files + " resources, " + names.length
+                    + " distinct lookups");
+
+            run("simple, directory", new SimpleResourceLocator(dirURI), names);
+            run("indexed, directory", new IndexedResourceLocator(dirURI), names);
+            run("simple, jar", new SimpleResourceLocator(jarURI), names);
+            run("indexed, jar", new IndexedResourceLocator(jarURI), names);
+
+            ResourceLocatorTool.addResourceLocator("benchmark",
+                    new IndexedResourceLocator(dirURI));
+            run("tool + indexed, directory", new ResourceLocator() {
+                public URL locateResource(String resourceName) {
+                    return ResourceLocatorTool.locateResource("benchmark",
+                            resourceName);
+                }
+            }, names);
+        } finally {
+            delete(root);
+        }
+    }
+
+    private static void run(String label, ResourceLocator locator,
+            String[] names) {
+        long start = System.nanoTime();
+        int found = lookup(locator, names);
+        long first = System.nanoTime() - start;
+
+        // repeat until roughly half a second has passed
+        int rounds = 0;
+        start = System.nanoTime();
+        long elapsed;
+        do {
+            lookup(locator, names);
+            rounds++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < 500000000L);
+
+        double perSecond = (double) rounds * names.length * 1e9 / elapsed;
+        System.out.println(label + ": first pass " + (first / 1000000)
+                + " ms, " + (long) perSecond + " lookups/s, " + found
+                + " found");
+    }
+
+    private static int lookup(ResourceLocator locator, String[] names) {
+        int found = 0;
+        for (String name : names) {
+            if (locator.locateResource(name) != null) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    private static String[] createNames(int dirs, int files, int count) {
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            int d = (i * 7) % dirs;
+            int f = (i * 13) % files;
+            switch (i % 4) {
+                case 0:
+                    names[i] = "textures/d" + d + "/tex " + f + ".png";
+                    break;
+                case 1:
+                    names[i] = "C:/Users/artist/project/export/textures/d" + d
+                            + "/tex " + f + ".png";
+                    break;
+                case 2:
+                    names[i] = "./textures/d" + d + "/tex " + f + ".jpg";
+                    break;
+                default:
+                    names[i] = "/home/artist/models/tex " + f + ".png";
+                    break;
+            }
+        }
+        return names;
+    }
+
+    private static void createTree(File base, File jar, int dirs, int files)
+            throws IOException {
+        byte[] data = new byte[64];
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+        try {
+            for (int d = 0; d < dirs; d++) {
+                File dir = new File(base, "textures/d" + d);
+                if (!dir.mkdirs()) {
+                    throw new IOException("Unable to create " + dir);
+                }
+                for (int f = 0; f < files; f++) {
+                    String name = "tex " + f + ".png";
+                    FileOutputStream fos = new FileOutputStream(new File(dir,
+                            name));
+                    fos.write(data);
+                    fos.close();
+                    out.putNextEntry(new JarEntry("data/textures/d" + d + "/"
+                            + name));
+                    out.write(data);
+                    out.closeEntry();
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void delete(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File c : children) {
+                delete(c);
+            }
+        }
+        f.delete();
+    }
+}
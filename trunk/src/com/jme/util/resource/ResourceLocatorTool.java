@@ -36,11 +36,16 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Manager class for locator utility classes used to find various assets. (XXX: Needs more documentation)
+ * <p>
+ * Results of {@link #locateResource(String, String)}, including failed
+ * lookups, are cached per type and name until a locator is added or removed
+ * or {@link #clearCache()} is called.
  * 
  * @author Joshua Slack
  */
@@ -57,10 +62,36 @@ public class ResourceLocatorTool {
 
     private static final Map<String, ArrayList<ResourceLocator>> locatorMap = new HashMap<String, ArrayList<ResourceLocator>>();
 
+    /** marks a cached failed lookup, the map can't hold nulls */
+    private static final Object NOT_FOUND = new Object();
+
+    private static volatile ConcurrentHashMap<String, Object> lookupCache = new ConcurrentHashMap<String, Object>();
+
     public static URL locateResource(String resourceType, String resourceName) {
         if (resourceName == null) {
             return null;
         }
+        // A lookup racing with clearCache() stores into the discarded map.
+        ConcurrentHashMap<String, Object> cache = lookupCache;
+        String key = resourceType + '\0' + resourceName;
+        Object cached = cache.get(key);
+        if (cached != null) {
+            return cached != NOT_FOUND ? (URL) cached : null;
+        }
+        URL rVal = findResource(resourceType, resourceName);
+        cache.put(key, rVal != null ? rVal : NOT_FOUND);
+        return rVal;
+    }
+
+    /**
+     * Forgets all cached lookups, e.g. after resources have been written to a
+     * directory that a locator has already been asked about.
+     */
+    public static void clearCache() {
+        lookupCache = new ConcurrentHashMap<String, Object>();
+    }
+
+    private static URL findResource(String resourceType, String resourceName) {
         synchronized (locatorMap) {
             ArrayList<ResourceLocator> bases = locatorMap.get(resourceType);
             if (bases != null) {
@@ -100,6 +131,7 @@ public class ResourceLocatorTool {
 
             if (!bases.contains(locator)) {
                 bases.add(locator);
+                clearCache();
             }
         }
     }
@@ -111,7 +143,11 @@ public class ResourceLocatorTool {
             if (bases == null) {
                 return false;
             }
-            return bases.remove(locator);
+            if (bases.remove(locator)) {
+                clearCache();
+                return true;
+            }
+            return false;
         }
     }
 }
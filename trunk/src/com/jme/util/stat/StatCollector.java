@@ -32,6 +32,11 @@
 
 package com.jme.util.stat;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -40,7 +45,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Stack;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Logger;
 
 import com.jme.util.NanoTimer;
@@ -49,7 +54,18 @@ import com.jme.util.NanoTimer;
  * This class acts as a centralized data store for statistics. As data is added
  * to the collector, a sum total is kept as well as the total number of data
  * samples given for the particular stat.
- * 
+ * <p>
+ * Stats may be added and timed from any thread. Every thread records into its
+ * own buffer without locking, and keeps its own stack of timed stats, so
+ * nested timings of different threads do not mix. The buffers are merged into
+ * the current sample on each call to {@link #update()}, which should be made
+ * once per frame by the rendering thread. Time not covered by any timed stat
+ * is only tallied as {@link StatType#STAT_UNSPECIFIED_TIMER} for that thread.
+ * <p>
+ * With {@link #setTraceFrames(int)} the timed stats of the last frames are
+ * also kept per thread and can be written to a trace file with
+ * {@link #exportTrace(Writer)}.
+ *
  * @author Joshua Slack
  */
 public class StatCollector {
@@ -69,7 +85,7 @@ public class StatCollector {
      * Our map of current stat values. Current means values that have been
      * collected within the current time sample. For example, if sampleRate =
      * 1.0, then current will hold values collected since the last 1 second
-     * ping.
+     * ping. Only accessed while merging in update().
      */
     protected static HashMap<StatType, StatValue> current = new HashMap<StatType, StatValue>();
 
@@ -82,30 +98,63 @@ public class StatCollector {
     protected static double sampleRateMS = 1000;
 
     protected static double lastSampleTime = 0;
-    
-    protected static double lastTimeCheckMS = 0;
 
     protected static ArrayList<WeakReference<StatListener>> listeners = new ArrayList<WeakReference<StatListener>>();
 
     protected static double startOffset = 0;
 
-    protected static boolean ignoreStats = false;
-    
-    protected static Stack<StatType> timeStatStack = new Stack<StatType>();
-    
+    protected static volatile boolean ignoreStats = false;
+
     protected static HashSet<StatType> timedStats = new HashSet<StatType>();
-    
+
     protected static NanoTimer timer = new NanoTimer();
 
-    private static long pausedTime;
+    /**
+     * Number of events each thread can record between two calls to update()
+     * before further events are dropped. Applies to threads that record their
+     * first stat after it was set.
+     */
+    protected static int eventBufferSize = 8192;
+
+    private static volatile long pausedTime;
 
     private static long pausedStartTime;
 
+    /** StatType.id to type, and whether it is in timedStats */
+    private static volatile StatType[] typesById = new StatType[0];
+    private static volatile boolean[] timedById = new boolean[0];
+    private static final HashMap<StatType, Integer> typeIds = new HashMap<StatType, Integer>();
+
+    /** StatType.id to its value in current */
+    private static StatValue[] valuesById = new StatValue[0];
+
+    private static final CopyOnWriteArrayList<StatRecorder> recorders = new CopyOnWriteArrayList<StatRecorder>();
+    private static final List<String> threadNames = Collections
+            .synchronizedList(new ArrayList<String>());
+    private static final ThreadLocal<StatRecorder> recorder = new ThreadLocal<StatRecorder>() {
+        @Override
+        protected StatRecorder initialValue() {
+            StatRecorder r;
+            synchronized (threadNames) {
+                Thread t = Thread.currentThread();
+                r = new StatRecorder(threadNames.size(), t, eventBufferSize);
+                threadNames.add(t.getName());
+            }
+            recorders.add(r);
+            return r;
+        }
+    };
+
+    /** the recorder of the thread calling update() */
+    private static StatRecorder updateRecorder;
+
+    private static StatTrace trace;
+
     protected StatCollector() { }
-    
+
     /**
      * Construct a new StatCollector.
-     * 
+     *
      * @param sampleRateMS
      *            The amount of time between aggregated samples in milliseconds.
      */
@@ -115,78 +164,94 @@ public class StatCollector {
     }
 
     public static void addStat(final StatType type, double statValue) {
-        if (ignoreStats) return;
-        
-        synchronized (current) {
-            StatValue val = current.get(type);
-            if (val == null) {
-                val = new StatValue(0,0);
-                current.put(type, val);
-            }
-            val.val += statValue;
-            val.iterations++;
-        }
+        // null types were tolerated before, they are simply not recorded
+        if (ignoreStats || type == null) return;
+
+        recorder.get().record(StatRecorder.ADD, getId(type),
+                Double.doubleToRawLongBits(statValue));
     }
 
     public static void startStat(final StatType type) {
-        if (ignoreStats || !timedStats.contains(type)) return;
-
-        synchronized (current) {
-            StatType top = !timeStatStack.isEmpty() ? timeStatStack.peek() : null;
-
-            double timeMS = timer.getTime() * TO_MS;
-            if (top != null) {
-                // tally timer and include in stats.
-                StatValue val = current.get(top);
-                val.val += (timeMS - lastTimeCheckMS);
-            } else {
-                StatValue val = current.get(StatType.STAT_UNSPECIFIED_TIMER);
-                if (val == null) {
-                    val = new StatValue(0,1);
-                    current.put(StatType.STAT_UNSPECIFIED_TIMER, val);
-                }
-                val.val += (timeMS - lastTimeCheckMS);
-            }
-
-            lastTimeCheckMS = timeMS;
-            timeStatStack.push(type);
+        if (ignoreStats || !isTimed(type)) return;
 
-            if (type != null) {
-                StatValue val = current.get(type);
-                if (val == null) {
-                    val = new StatValue(0,0);
-                    current.put(type, val);
-                }
-                val.iterations++;
-            }
-        }
+        recorder.get().record(StatRecorder.START, type.id, timer.getTime());
     }
 
     public static void endStat(final StatType type) {
-        if (ignoreStats || !timedStats.contains(type)) return;
+        if (ignoreStats || !isTimed(type)) return;
 
-        synchronized (current) {
-            // This will throw error if called out of turn.
-            StatType top = timeStatStack.pop();
+        recorder.get().record(StatRecorder.END, type.id, timer.getTime());
+    }
 
-            double timeMS = timer.getTime() * TO_MS;
+    private static boolean isTimed(StatType type) {
+        if (type == null) {
+            return false;
+        }
+        int id = getId(type);
+        boolean[] timed = timedById;
+        return id < timed.length && timed[id];
+    }
 
-            // tally timer and include in stats.
-            StatValue val = current.get(top);
-            val.val += (timeMS - lastTimeCheckMS);
+    private static int getId(StatType type) {
+        int id = type.id;
+        if (id < 0) {
+            id = register(type);
+        }
+        return id;
+    }
 
-            lastTimeCheckMS = timeMS;
+    private static int register(StatType type) {
+        synchronized (typeIds) {
+            Integer id = typeIds.get(type);
+            if (id == null) {
+                StatType[] types = new StatType[typesById.length + 1];
+                System.arraycopy(typesById, 0, types, 0, typesById.length);
+                id = typesById.length;
+                types[id] = type;
+                typeIds.put(type, id);
+                typesById = types;
+                updateTimed();
+            }
+            type.id = id;
+            return id;
+        }
+    }
 
-            // Pop until we find our stat type
-            while (!top.equals(type)) {
-                logger.warning("Mismatched endStat, found "+top+".  Expected '"+type+"'");
-                top = timeStatStack.pop();
+    private static void updateTimed() {
+        synchronized (typeIds) {
+            StatType[] types = typesById;
+            boolean[] timed = new boolean[types.length];
+            synchronized (timedStats) {
+                for (int i = 0; i < types.length; i++) {
+                    timed[i] = timedStats.contains(types[i]);
+                }
             }
+            timedById = timed;
         }
     }
 
     public static synchronized void update() {
-        double timeMS = timer.getTime() * TO_MS;
+        long now = timer.getTime();
+        StatRecorder self = recorder.get();
+        updateRecorder = self;
+
+        int dropped = 0;
+        for (StatRecorder r : recorders) {
+            merge(r);
+            dropped += r.takeDropped();
+            if (r != self && !r.isAlive() && r.getHead() == r.getTail()) {
+                recorders.remove(r);
+            }
+        }
+        if (dropped > 0) {
+            logger.warning("Dropped " + dropped
+                    + " stat events, consider raising eventBufferSize.");
+        }
+        if (trace != null) {
+            trace.markFrame(self.threadId, now);
+        }
+
+        double timeMS = now * TO_MS;
         double elapsed = timeMS - lastSampleTime;
 
         // Only continue if we've gone past our sample time threshold
@@ -194,54 +259,38 @@ public class StatCollector {
             return;
         }
 
-        synchronized (current) {
-            // Check if we have a timed stat in tracking... if so, add it in
-            if (!timeStatStack.isEmpty()) {
-                // tally timer and include in stats.
-                StatValue val = current.get(timeStatStack.peek());
-                val.val += (timeMS - lastTimeCheckMS);
-                lastTimeCheckMS = timeMS;
-                // reset iterations of all stack to 0
-                for (int x = timeStatStack.size(); --x >= 0; ) {
-                    StatValue val2 = current.get(timeStatStack.get(x));
-                    if (val2 != null) {
-                        val2.iterations = 0;
-                    }
-                }
-                
-                // current iterations is 1 (for the current call.)
-                val.iterations = 1;
-            } else {
-                StatValue val = current.get(StatType.STAT_UNSPECIFIED_TIMER);
-                if (val != null) {
-                    val.val += (timeMS - lastTimeCheckMS);
-                    lastTimeCheckMS = timeMS;
-                    val.iterations = 1;
-                }
-            }
+        // Tally the timed stats still running in each thread up to now
+        for (StatRecorder r : recorders) {
+            tally(r, now);
+        }
+        StatValue val = current.get(StatType.STAT_UNSPECIFIED_TIMER);
+        if (val != null) {
+            val.iterations = 1;
+            val.val -= (pausedTime * TO_MS);
+        }
 
-            StatValue val = current.get(StatType.STAT_UNSPECIFIED_TIMER);
-            if (val != null) {
-                val.val -= (pausedTime * TO_MS);
-            }
-            
-            // Add "current" hash into historical stat list
-            MultiStatSample sample = MultiStatSample.createNew(current);
-            sample.actualTime = elapsed - (pausedTime * TO_MS);
-            historical.add(sample); // adds onto tail
-
-            // reset the "current" hash... basically set things to 0 to decrease
-            // object recreation
-            for (StatValue value : current.values()) {
-                value.iterations = 0;
-                value.val = 0;
+        // Add "current" hash into historical stat list
+        MultiStatSample sample = MultiStatSample.createNew(current);
+        sample.actualTime = elapsed - (pausedTime * TO_MS);
+        historical.add(sample); // adds onto tail
+
+        // reset the "current" hash... basically set things to 0 to decrease
+        // object recreation
+        for (StatValue value : current.values()) {
+            value.iterations = 0;
+            value.val = 0;
+        }
+        // stats still running count once for the next sample
+        for (StatRecorder r : recorders) {
+            for (int x = r.depth; --x >= 0; ) {
+                getValue(r.stack[x]).iterations = 1;
             }
         }
 
         // reset startOffset
         startOffset = 0;
         pausedTime = 0;
-        
+
         // stat list should drop old stats from list when greater than a certain
         // threshold.
         while (historical.size() > maxSamples) {
@@ -255,10 +304,102 @@ public class StatCollector {
         fireActionEvent();
     }
 
+    /**
+     * Replays the events recorded by a thread since the last update into the
+     * current values.
+     */
+    private static void merge(StatRecorder r) {
+        long head = r.getHead();
+        for (long i = r.getTail(); i < head; i++) {
+            int code = r.getCode(i);
+            long data = r.getData(i);
+            int kind = code >>> StatRecorder.KIND_SHIFT;
+            int id = code & StatRecorder.ID_MASK;
+            switch (kind) {
+                case StatRecorder.ADD: {
+                    StatValue val = getValue(id);
+                    val.val += Double.longBitsToDouble(data);
+                    val.iterations++;
+                    break;
+                }
+                case StatRecorder.START:
+                    tally(r, data);
+                    r.push(id);
+                    getValue(id).iterations++;
+                    if (trace != null) {
+                        trace.add(r.threadId, code, data);
+                    }
+                    break;
+                case StatRecorder.END:
+                    if (r.depth == 0) {
+                        logger.warning("endStat without startStat for '"
+                                + typesById[id].getStatName() + "' in "
+                                + r.threadName);
+                        break;
+                    }
+                    tally(r, data);
+                    // Pop until we find our stat type
+                    int top = r.stack[--r.depth];
+                    while (top != id && r.depth > 0) {
+                        logger.warning("Mismatched endStat, found "
+                                + typesById[top].getStatName()
+                                + ".  Expected '"
+                                + typesById[id].getStatName() + "'");
+                        top = r.stack[--r.depth];
+                    }
+                    if (trace != null) {
+                        trace.add(r.threadId, code, data);
+                    }
+                    break;
+                default:
+                    r.depth = 0;
+                    break;
+            }
+        }
+        r.consumed(head);
+    }
+
+    /**
+     * Adds the time since the last check of a thread to the timed stat on
+     * top of its stack.
+     */
+    private static void tally(StatRecorder r, long time) {
+        if (r.lastCheck >= 0 && time > r.lastCheck) {
+            double ms = (time - r.lastCheck) * TO_MS;
+            if (r.depth > 0) {
+                getValue(r.stack[r.depth - 1]).val += ms;
+            } else if (r == updateRecorder) {
+                getValue(getId(StatType.STAT_UNSPECIFIED_TIMER)).val += ms;
+            }
+        }
+        if (time > r.lastCheck) {
+            r.lastCheck = time;
+        }
+    }
+
+    private static StatValue getValue(int id) {
+        if (id >= valuesById.length) {
+            StatValue[] values = new StatValue[typesById.length];
+            System.arraycopy(valuesById, 0, values, 0, valuesById.length);
+            valuesById = values;
+        }
+        StatValue val = valuesById[id];
+        if (val == null) {
+            StatType type = typesById[id];
+            val = current.get(type);
+            if (val == null) {
+                val = new StatValue(0,0);
+                current.put(type, val);
+            }
+            valuesById[id] = val;
+        }
+        return val;
+    }
+
     /**
      * Add a listener to the pool of listeners that are notified when a new
      * stats aggregate is created (at the end of each time sample).
-     * 
+     *
      * @param listener
      *            the listener to add
      */
@@ -269,7 +410,7 @@ public class StatCollector {
     /**
      * Removes a listener from the pool of listeners that are notified when a
      * new stats aggregate is created (at the end of each time sample).
-     * 
+     *
      * @param listener
      *            the listener to remove
      */
@@ -287,23 +428,32 @@ public class StatCollector {
     /**
      * Add a type to the set of stat types that are paid attention to when doing
      * timed stat checking.
-     * 
+     *
      * @param type
      *            the listener to add
      */
     public static void addTimedStat(final StatType type) {
-        timedStats.add(type);
+        synchronized (timedStats) {
+            timedStats.add(type);
+        }
+        getId(type);
+        updateTimed();
     }
 
     /**
      * Removes a type from the set of stat types that are paid attention to when
      * doing timed stat checking.
-     * 
+     *
      * @param type
      *            the listener to remove
      */
     public static boolean removeTimedStat(final StatType type) {
-        return timedStats.remove(type);
+        boolean removed;
+        synchronized (timedStats) {
+            removed = timedStats.remove(type);
+        }
+        updateTimed();
+        return removed;
     }
 
     /**
@@ -311,7 +461,10 @@ public class StatCollector {
      * checking.
      */
     public static void removeAllTimedStats() {
-        timedStats.clear();
+        synchronized (timedStats) {
+            timedStats.clear();
+        }
+        updateTimed();
     }
 
     /**
@@ -350,6 +503,14 @@ public class StatCollector {
         return maxSamples;
     }
 
+    public static void setEventBufferSize(int events) {
+        StatCollector.eventBufferSize = events;
+    }
+
+    public static int getEventBufferSize() {
+        return eventBufferSize;
+    }
+
     public static List<MultiStatSample> getHistorical() {
         return historical;
     }
@@ -371,14 +532,58 @@ public class StatCollector {
 
     /**
      * Call this if you've caught an error, etc and you need to reset timed
-     * stats collecting. 
-     * 
+     * stats collecting. Only the timed stack of the calling thread is reset.
+     *
      * NOTE: You must ensure you are not inside a START/END
-     * timed block, (or you recreate any necessary start calls) otherwise when
-     * endStat is called a stack exception will occur.
+     * timed block, (or you recreate any necessary start calls) otherwise a
+     * mismatched endStat will be logged.
      */
     public static void resetTimedStack() {
-        timeStatStack.clear();
+        recorder.get().record(StatRecorder.RESET, 0, 0);
+    }
+
+    /**
+     * Keeps the timed stats of the last frames (calls to update()) for
+     * {@link #exportTrace(Writer)}. Off by default.
+     *
+     * @param frames
+     *            the number of frames to keep, or 0 to stop tracing
+     */
+    public static synchronized void setTraceFrames(int frames) {
+        if (frames < 0) {
+            throw new IllegalArgumentException("frames can not be negative.");
+        }
+        trace = frames > 0 ? new StatTrace(frames, 1024) : null;
+    }
+
+    public static synchronized int getTraceFrames() {
+        return trace != null ? trace.getFrames() : 0;
+    }
+
+    /**
+     * Writes the timed stats of the last frames kept since
+     * {@link #setTraceFrames(int)}, one track per thread, in the Trace Event
+     * JSON format (as read by chrome://tracing, among others). Frame
+     * boundaries are written as instant events.
+     */
+    public static synchronized void exportTrace(Writer out) throws IOException {
+        if (trace == null) {
+            throw new IllegalStateException("Tracing is not enabled, see setTraceFrames.");
+        }
+        List<String> names;
+        synchronized (threadNames) {
+            names = new ArrayList<String>(threadNames);
+        }
+        trace.write(out, names, typesById);
+    }
+
+    public static void exportTrace(File file) throws IOException {
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            exportTrace(out);
+        } finally {
+            out.close();
+        }
     }
 
     /**
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2003-2008 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors 
+ *   may be used to endorse or promote products derived from this software 
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme.util.stat;
+
+import java.io.File;
+
+/**
+ * Measures the cost of timed and added stats while one to
+ * <code>maxThreads</code> threads record at the same time and the main thread
+ * merges them once per simulated frame. The trace of the last frames of the
+ * final run is written to <code>traceFile</code> if given.
+ * <p>
+ * Usage: <code>StatCollectorBenchmark [maxThreads] [traceFile]</code>
+ */
+public class StatCollectorBenchmark {
+
+    private static final StatType OUTER = new StatType("benchOuter");
+    private static final StatType INNER = new StatType("benchInner");
+    private static final StatType COUNT = new StatType("benchCount");
+
+    private static final int CALLS = 2000000;
+
+    public static void main(String[] args) throws Exception {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        StatCollector.addTimedStat(OUTER);
+        StatCollector.addTimedStat(INNER);
+        StatCollector.setSampleRate(100);
+        StatCollector.setEventBufferSize(1 << 20);
+        StatCollector.setTraceFrames(args.length > 1 ? 10 : 0);
+
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            run(threads);
+        }
+
+        if (args.length > 1) {
+            File file = new File(args[1]);
+            StatCollector.exportTrace(file);
+            System.out.println("trace written to " + file);
+        }
+    }
+
+    private static void run(int threads) throws InterruptedException {
+        final int calls = CALLS / threads;
+        Thread[] workers = new Thread[threads];
+        final long[] nanos = new long[threads];
+        for (int t = 0; t < threads; t++) {
+            final int index = t;
+            workers[t] = new Thread("worker " + t) {
+                @Override
+                public void run() {
+                    long start = System.nanoTime();
+                    for (int i = 0; i < calls; i++) {
+                        StatCollector.startStat(OUTER);
+                        StatCollector.startStat(INNER);
+                        StatCollector.addStat(COUNT, 1);
+                        StatCollector.endStat(INNER);
+                        StatCollector.endStat(OUTER);
+                    }
+                    nanos[index] = System.nanoTime() - start;
+                }
+            };
+        }
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        boolean running = true;
+        while (running) {
+            // a frame worth of merging, as a render loop would do
+            StatCollector.update();
+            Thread.sleep(1);
+            running = false;
+            for (Thread worker : workers) {
+                running |= worker.isAlive();
+            }
+        }
+        StatCollector.update();
+
+        long total = 0;
+        for (long n : nanos) {
+            total += n;
+        }
+        // five calls per iteration
+        double perCall = (double) total / ((long) calls * threads * 5);
+        System.out.println(threads + " thread(s): " + (float) perCall
+                + " ns per call (wall clock per thread)");
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2003-2008 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors 
+ *   may be used to endorse or promote products derived from this software 
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme.util.stat;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Per thread event buffer of {@link StatCollector}. The owning thread appends
+ * events to a fixed size ring of primitives without locking or allocating,
+ * and the thread calling {@link StatCollector#update()} consumes them. Events
+ * that do not fit because the consumer fell behind are dropped and counted;
+ * room is always kept for ending the timed stats already started, and the end
+ * of a dropped start is dropped as well, so the stack stays balanced.
+ */
+final class StatRecorder {
+
+    static final int ADD = 0;
+    static final int START = 1;
+    static final int END = 2;
+    static final int RESET = 3;
+
+    static final int KIND_SHIFT = 28;
+    static final int ID_MASK = (1 << KIND_SHIFT) - 1;
+
+    final int threadId;
+    final String threadName;
+    private final WeakReference<Thread> thread;
+
+    /** event time in nanos, or the raw bits of the value for ADD */
+    private final long[] data;
+    /** kind << KIND_SHIFT | stat type id */
+    private final int[] codes;
+    private final int mask;
+
+    /** only written by the owning thread */
+    private volatile long head;
+    /** only written by the consumer */
+    private volatile long tail;
+    private volatile int dropped;
+    /** only used by the owning thread */
+    private int openStarts;
+    private int skippedStarts;
+
+    // replay state, only used by the consumer
+    int[] stack = new int[16];
+    int depth;
+    long lastCheck = -1;
+
+    StatRecorder(int threadId, Thread owner, int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1;
+        this.threadId = threadId;
+        this.threadName = owner.getName();
+        thread = new WeakReference<Thread>(owner);
+        data = new long[size];
+        codes = new int[size];
+        mask = size - 1;
+    }
+
+    void record(int kind, int id, long value) {
+        long h = head;
+        long free = mask + 1 - (h - tail);
+        switch (kind) {
+            case START:
+                if (skippedStarts > 0 || free <= openStarts + 1) {
+                    skippedStarts++;
+                    dropped++;
+                    return;
+                }
+                openStarts++;
+                break;
+            case END:
+                if (skippedStarts > 0) {
+                    skippedStarts--;
+                    dropped++;
+                    return;
+                }
+                if (openStarts > 0) {
+                    openStarts--;
+                }
+                break;
+            case RESET:
+                openStarts = 0;
+                skippedStarts = 0;
+                if (free <= 0) {
+                    dropped++;
+                    return;
+                }
+                break;
+            default:
+                if (free <= openStarts) {
+                    dropped++;
+                    return;
+                }
+                break;
+        }
+        int i = (int) h & mask;
+        data[i] = value;
+        codes[i] = kind << KIND_SHIFT | id;
+        // publishes the event to the consumer
+        head = h + 1;
+    }
+
+    long getHead() {
+        return head;
+    }
+
+    long getTail() {
+        return tail;
+    }
+
+    int getCode(long index) {
+        return codes[(int) index & mask];
+    }
+
+    long getData(long index) {
+        return data[(int) index & mask];
+    }
+
+    void consumed(long index) {
+        tail = index;
+    }
+
+    int takeDropped() {
+        int d = dropped;
+        if (d != 0) {
+            // racy with the owner, a drop may be counted in the next sample
+            dropped = 0;
+        }
+        return d;
+    }
+
+    void push(int id) {
+        if (depth == stack.length) {
+            int[] tmp = new int[depth * 2];
+            System.arraycopy(stack, 0, tmp, 0, depth);
+            stack = tmp;
+        }
+        stack[depth++] = id;
+    }
+
+    boolean isAlive() {
+        Thread t = thread.get();
+        return t != null && t.isAlive();
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2003-2008 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors 
+ *   may be used to endorse or promote products derived from this software 
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme.util.stat;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Keeps the timed stat events of the last frames, as merged by
+ * {@link StatCollector#update()}, and writes them in the Trace Event JSON
+ * format that chrome://tracing and other trace viewers open.
+ */
+final class StatTrace {
+
+    private final long[] times;
+    private final int[] codes;
+    private final int[] threads;
+    private long count;
+
+    private final long[] frameTimes;
+    private final int[] frameThreads;
+    private long frameCount;
+
+    StatTrace(int frames, int eventsPerFrame) {
+        int size = frames * eventsPerFrame;
+        times = new long[size];
+        codes = new int[size];
+        threads = new int[size];
+        frameTimes = new long[frames];
+        frameThreads = new int[frames];
+    }
+
+    int getFrames() {
+        return frameTimes.length;
+    }
+
+    void add(int thread, int code, long time) {
+        int i = (int) (count++ % times.length);
+        times[i] = time;
+        codes[i] = code;
+        threads[i] = thread;
+    }
+
+    void markFrame(int thread, long time) {
+        int i = (int) (frameCount++ % frameTimes.length);
+        frameTimes[i] = time;
+        frameThreads[i] = thread;
+    }
+
+    void write(Writer out, List<String> threadNames, StatType[] types)
+            throws IOException {
+        int frames = (int) Math.min(frameCount, frameTimes.length);
+        long from = frames > 0 ? frameTimes[(int) ((frameCount - frames) % frameTimes.length)]
+                : Long.MIN_VALUE;
+
+        out.write("{\"traceEvents\":[\n");
+        boolean first = true;
+        for (int t = 0; t < threadNames.size(); t++) {
+            first = separate(out, first);
+            out.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":");
+            out.write(Integer.toString(t));
+            out.write(",\"args\":{\"name\":");
+            writeString(out, threadNames.get(t));
+            out.write("}}");
+        }
+        for (long f = frameCount - frames; f < frameCount; f++) {
+            int i = (int) (f % frameTimes.length);
+            first = separate(out, first);
+            out.write("{\"name\":\"frame\",\"ph\":\"i\",\"s\":\"p\",\"pid\":1,\"tid\":");
+            out.write(Integer.toString(frameThreads[i]));
+            out.write(",\"ts\":");
+            writeTime(out, frameTimes[i]);
+            out.write('}');
+        }
+        for (long e = Math.max(0, count - times.length); e < count; e++) {
+            int i = (int) (e % times.length);
+            if (times[i] < from) {
+                continue;
+            }
+            int kind = codes[i] >>> StatRecorder.KIND_SHIFT;
+            int id = codes[i] & StatRecorder.ID_MASK;
+            first = separate(out, first);
+            out.write("{\"name\":");
+            writeString(out, id < types.length ? types[id].getStatName() : "?");
+            out.write(kind == StatRecorder.START ? ",\"ph\":\"B\"" : ",\"ph\":\"E\"");
+            out.write(",\"pid\":1,\"tid\":");
+            out.write(Integer.toString(threads[i]));
+            out.write(",\"ts\":");
+            writeTime(out, times[i]);
+            out.write('}');
+        }
+        out.write("\n]}\n");
+        out.flush();
+    }
+
+    private static boolean separate(Writer out, boolean first)
+            throws IOException {
+        if (!first) {
+            out.write(",\n");
+        }
+        return false;
+    }
+
+    /** nanos to the microseconds of the format */
+    private static void writeTime(Writer out, long nanos) throws IOException {
+        out.write(Long.toString(nanos / 1000));
+        out.write('.');
+        String frac = Long.toString(nanos % 1000 + 1000);
+        out.write(frac, 1, 3);
+    }
+
+    private static void writeString(Writer out, String s) throws IOException {
+        out.write('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.write('\\');
+                out.write(c);
+            } else if (c < 0x20) {
+                String hex = Integer.toHexString(c);
+                out.write("\\u");
+                out.write("0000", 0, 4 - hex.length());
+                out.write(hex);
+            } else {
+                out.write(c);
+            }
+        }
+        out.write('"');
+    }
+}
@@ -47,6 +47,10 @@ public class StatType implements Comparable<StatType> {
     public static final StatType STAT_GEOM_COUNT = new StatType("_geomCount");
     public static final StatType STAT_TEXTURE_BINDS = new StatType("_texBind");
     public static final StatType STAT_SHADER_BINDS = new StatType("_shaderBind");
+    public static final StatType STAT_STATE_CHANGES_AVOIDED = new StatType("_stateChangesAvoided");
+    public static final StatType STAT_TEXTURE_CACHE_HITS = new StatType("_texCacheHit");
+    public static final StatType STAT_TEXTURE_CACHE_MISSES = new StatType("_texCacheMiss");
+    public static final StatType STAT_TEXTURE_CACHE_EVICTIONS = new StatType("_texCacheEvict");
 
     public static final StatType STAT_UNSPECIFIED_TIMER = new StatType("_timedOther");
     public static final StatType STAT_RENDER_TIMER = new StatType("_timedRenderer");
@@ -58,6 +62,9 @@ public class StatType implements Comparable<StatType> {
     
     private String statName = "-unknown-";
 
+    /** index assigned by StatCollector, -1 until first used */
+    int id = -1;
+
     public StatType(String name) {
         statName = name;
     }
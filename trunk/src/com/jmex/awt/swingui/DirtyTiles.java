@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2003-2008 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.jmex.awt.swingui;
+
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * Keeps track of the tiles of an image that were painted since its last upload. Separate painted areas are uploaded
+ * as separate regions instead of their common bounding rectangle: dirty tiles are coalesced into horizontal runs, and
+ * runs covering the same columns in consecutive tile rows are merged.
+ * <p>
+ * Shared by an {@link ImageGraphicsBaseImpl} and the graphics created from it, access is synchronized on their dirty
+ * rectangle.
+ */
+class DirtyTiles {
+    /**
+     * edge length of a tile in pixels
+     */
+    static final int TILE_SIZE = 64;
+    /**
+     * when coalescing yields more regions, the bounding rectangle is uploaded in one go
+     */
+    static final int MAX_REGIONS = 16;
+
+    private final int columns;
+    private final int rows;
+    private final boolean[] tiles;
+
+    private final Rectangle[] regions = new Rectangle[MAX_REGIONS];
+    private final int[] regionColumn0 = new int[MAX_REGIONS];
+    private final int[] regionColumn1 = new int[MAX_REGIONS];
+    private final int[] regionRow0 = new int[MAX_REGIONS];
+    private final int[] regionRow1 = new int[MAX_REGIONS];
+    private int regionCount;
+
+    /**
+     * true if the image data was not updated with the last uploads
+     */
+    private boolean imageStale;
+
+    DirtyTiles( int width, int height ) {
+        columns = Math.max( 1, ( width + TILE_SIZE - 1 ) / TILE_SIZE );
+        rows = Math.max( 1, ( height + TILE_SIZE - 1 ) / TILE_SIZE );
+        tiles = new boolean[columns * rows];
+        for ( int i = 0; i < regions.length; i++ ) {
+            regions[i] = new Rectangle();
+        }
+        mark( 0, 0, width, height );
+    }
+
+    /**
+     * Mark the tiles touched by a rectangle of pixels dirty.
+     */
+    void mark( int x, int y, int width, int height ) {
+        if ( width <= 0 || height <= 0 ) {
+            return;
+        }
+        int column0 = Math.max( 0, x / TILE_SIZE );
+        int column1 = Math.min( columns - 1, ( x + width - 1 ) / TILE_SIZE );
+        int row0 = Math.max( 0, y / TILE_SIZE );
+        int row1 = Math.min( rows - 1, ( y + height - 1 ) / TILE_SIZE );
+        for ( int row = row0; row <= row1; row++ ) {
+            for ( int column = column0, i = row * columns + column0; column <= column1; column++, i++ ) {
+                tiles[i] = true;
+            }
+        }
+    }
+
+    void clear() {
+        for ( int i = 0; i < tiles.length; i++ ) {
+            tiles[i] = false;
+        }
+    }
+
+    /**
+     * Compute the dirty regions within the given bounds.
+     *
+     * @param bounds bounding rectangle of all dirty areas
+     * @return number of regions, see {@link #getRegion(int)}
+     */
+    int coalesce( Rectangle bounds ) {
+        regionCount = 0;
+        if ( bounds.isEmpty() ) {
+            return 0;
+        }
+        int row0 = Math.max( 0, bounds.y / TILE_SIZE );
+        int row1 = Math.min( rows - 1, ( bounds.y + bounds.height - 1 ) / TILE_SIZE );
+        int column0 = Math.max( 0, bounds.x / TILE_SIZE );
+        int column1 = Math.min( columns - 1, ( bounds.x + bounds.width - 1 ) / TILE_SIZE );
+        int count = 0;
+        for ( int row = row0; row <= row1; row++ ) {
+            int column = column0;
+            while ( column <= column1 ) {
+                if ( !tiles[row * columns + column] ) {
+                    column++;
+                    continue;
+                }
+                int start = column;
+                while ( column <= column1 && tiles[row * columns + column] ) {
+                    column++;
+                }
+                // extend a region of the previous row covering the same columns
+                int r = 0;
+                while ( r < count && ( regionRow1[r] != row || regionColumn0[r] != start
+                        || regionColumn1[r] != column ) ) {
+                    r++;
+                }
+                if ( r < count ) {
+                    regionRow1[r] = row + 1;
+                }
+                else if ( count == MAX_REGIONS ) {
+                    return bounds( bounds );
+                }
+                else {
+                    regionColumn0[count] = start;
+                    regionColumn1[count] = column;
+                    regionRow0[count] = row;
+                    regionRow1[count] = row + 1;
+                    count++;
+                }
+            }
+        }
+
+        long area = 0;
+        for ( int r = 0; r < count; r++ ) {
+            Rectangle region = regions[regionCount];
+            region.setBounds( regionColumn0[r] * TILE_SIZE, regionRow0[r] * TILE_SIZE,
+                    ( regionColumn1[r] - regionColumn0[r] ) * TILE_SIZE,
+                    ( regionRow1[r] - regionRow0[r] ) * TILE_SIZE );
+            Rectangle2D.intersect( region, bounds, region );
+            if ( !region.isEmpty() ) {
+                area += (long) region.width * region.height;
+                regionCount++;
+            }
+        }
+        if ( regionCount > 1 && area * 4 >= (long) bounds.width * bounds.height * 3 ) {
+            // the gaps are not worth the additional uploads
+            return bounds( bounds );
+        }
+        return regionCount;
+    }
+
+    private int bounds( Rectangle bounds ) {
+        regions[0].setBounds( bounds );
+        regionCount = 1;
+        return 1;
+    }
+
+    /**
+     * @param index index of the region, less than the value returned by the last {@link #coalesce(Rectangle)}
+     * @return the region in pixels
+     */
+    Rectangle getRegion( int index ) {
+        return regions[index];
+    }
+
+    boolean isImageStale() {
+        return imageStale;
+    }
+
+    void setImageStale( boolean imageStale ) {
+        this.imageStale = imageStale;
+    }
+}
@@ -39,12 +39,19 @@ import com.jme.image.Texture;
 import com.jme.system.DisplaySystem;
 import com.jme.system.jogl.JOGLDisplaySystem;
 import com.jme.system.lwjgl.LWJGLDisplaySystem;
+import com.jme.util.stat.StatType;
 
 /**
  * This abstract class provides methods to paint on a {@link com.jme.image.Image} via the awt {@link Graphics2D}.
  */
 public abstract class ImageGraphics extends Graphics2D {
 
+    /**
+     * Number of bytes uploaded to textures by {@link #update(Texture)}, reported to the
+     * {@link com.jme.util.stat.StatCollector}.
+     */
+    public static final StatType STAT_UPLOADED_BYTES = new StatType( "_imageGraphicsUploadBytes" );
+
     /**
      * @param width of the image
      * @param height of the image
@@ -70,6 +77,11 @@ public abstract class ImageGraphics extends Graphics2D {
      */
     protected final com.jme.image.Image image;
 
+    /**
+     * number of bytes uploaded to textures so far.
+     */
+    protected long uploadedBytes;
+
     /**
      * Protected ctor for subclasses.
      *
@@ -113,6 +125,14 @@ public abstract class ImageGraphics extends Graphics2D {
      */
     public abstract void update();
 
+    /**
+     * @return number of bytes uploaded to textures by {@link #update(Texture)} since this instance was created, sample
+     *         it once per frame to get the upload rate
+     */
+    public long getUploadedBytes() {
+        return uploadedBytes;
+    }
+
     /**
      * @return true if image/texture needs update
      */
@@ -33,6 +33,8 @@
 package com.jmex.awt.swingui;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
 import java.awt.image.ImageObserver;
 import java.awt.image.BufferedImageOp;
 import java.awt.image.RenderedImage;
@@ -58,11 +60,13 @@ import java.text.AttributedCharacterIterator;
 import java.util.Map;
 import java.util.logging.Logger;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.IntBuffer;
 
 import com.jme.image.Image;
 import com.jme.util.geom.BufferUtils;
 import com.jme.math.FastMath;
+import com.jme.util.stat.StatCollector;
 
 public abstract class ImageGraphicsBaseImpl extends ImageGraphics {
     protected static final Logger logger = Logger.getLogger(ImageGraphics.class.getName());
@@ -70,6 +74,10 @@ public abstract class ImageGraphicsBaseImpl extends ImageGraphics {
     protected final Graphics2D delegate;
     protected final byte[] data;
     protected final Rectangle dirty;
+    /**
+     * dirty tiles within {@link #dirty}, shared like it
+     */
+    protected final DirtyTiles tiles;
     protected final Point translation = new Point();
     protected ByteBuffer tmp_byteBuffer;
     protected final Color TRANSPARENT = new Color( 0, 0, 0, 0 );
@@ -81,11 +89,12 @@ public abstract class ImageGraphicsBaseImpl extends ImageGraphics {
     private Rectangle imageBounds;
     private Rectangle clip = new Rectangle();
     private Rectangle tmp_dirty = new Rectangle();
+    private int[] rowPixels;
     protected float scaleX = 1;
     protected float scaleY = 1;
 
     protected ImageGraphicsBaseImpl( BufferedImage awtImage, byte[] data, Graphics2D delegate,
-                                com.jme.image.Image image, Rectangle dirty,
+                                com.jme.image.Image image, Rectangle dirty, DirtyTiles tiles,
                                 int translationX, int translationY,
                                 float scaleX, float scaleY, int mipMapCount,
                                 ImageGraphicsBaseImpl mipMapChild, int mipMapLevel ) {
@@ -94,6 +103,7 @@ public abstract class ImageGraphicsBaseImpl extends ImageGraphics {
         this.data = data;
         this.delegate = delegate;
         this.dirty = dirty;
+        this.tiles = tiles;
         translation.x = translationX;
         translation.y = translationY;
         this.scaleX = scaleX;
@@ -125,6 +135,7 @@ public abstract class ImageGraphicsBaseImpl extends ImageGraphics {
 
         delegate = (Graphics2D) awtImage.getGraphics();
         dirty = new Rectangle( 0, 0, width, height );
+        tiles = new DirtyTiles( width, height );
 
         this.mipMapLevel = mipMapLevel;
         scale( scale, scale );
@@ -192,6 +203,8 @@ public abstract class ImageGraphicsBaseImpl extends ImageGraphics {
                 rectangle.translate( translation.x, translation.y );
                 Rectangle2D.intersect( rectangle, getImageBounds(), rectangle );
                 if ( !rectangle.isEmpty() ) {
+                    // grown like the dirty area before updating
+                    tiles.mark( rectangle.x - 2, rectangle.y - 2, rectangle.width + 4, rectangle.height + 4 );
                     if ( !dirty.isEmpty() ) {
                         dirty.add( rectangle );
                     }
@@ -745,27 +758,88 @@ public abstract class ImageGraphicsBaseImpl extends ImageGraphics {
     }
 
     public void update() {
-        synchronized (dirty) {
-            if (dirty == null) {
-                awtImage.getRaster().getDataElements(0, 0, awtImage.getWidth(),
-                        awtImage.getHeight(), data);
-                ByteBuffer scratch = getImage().getData(0);
-                scratch.clear();
-                scratch.put(data);
-                scratch.flip();
-            } else {
-                awtImage.getRaster().getDataElements(dirty.x, dirty.y,
-                        dirty.width, dirty.height, data);
-                ByteBuffer scratch = getImage().getData(0);
-                int pixLen = awtImage.getRaster().getNumDataElements();
-                for (int dirtyRow = 0; dirtyRow < dirty.height; ++dirtyRow) {
-                    scratch
-                            .position(((image.getWidth() * (dirty.y + dirtyRow)) + dirty.x)
-                                    * pixLen);
-                    scratch.put(data, dirty.width * dirtyRow * pixLen,
-                            dirty.width * pixLen);
-                }
+        synchronized ( dirty ) {
+            updateRegions();
+        }
+    }
+
+    /**
+     * Copies the dirty regions of the awt image to the image data, or the whole image if the data was not updated
+     * with the last uploads. Must be called with the lock on {@link #dirty}.
+     *
+     * @return number of dirty regions, see {@link DirtyTiles#getRegion(int)}
+     */
+    protected int updateRegions() {
+        ByteBuffer scratch = getImage().getData( 0 );
+        int width = image.getWidth();
+        int count = tiles.coalesce( dirty );
+        if ( tiles.isImageStale() ) {
+            copyRegion( getImageBounds(), scratch, 0, width );
+            tiles.setImageStale( false );
+        }
+        else {
+            for ( int i = 0; i < count; i++ ) {
+                Rectangle region = tiles.getRegion( i );
+                copyRegion( region, scratch, ( region.y * width + region.x ) * 4, width );
+            }
+        }
+        scratch.clear();
+        return count;
+    }
+
+    /**
+     * Copies pixels from the raster of the awt image to a buffer in RGBA order, without going through
+     * an intermediate array.
+     *
+     * @param region      area of the awt image to copy
+     * @param target      buffer to copy to
+     * @param offset      byte offset of the first pixel in target
+     * @param rowLength   number of pixels from one row to the next in target
+     */
+    protected void copyRegion( Rectangle region, ByteBuffer target, int offset, int rowLength ) {
+        byte[] pixels = ( (DataBufferByte) awtImage.getRaster().getDataBuffer() ).getData();
+        int scanline = ( (ComponentSampleModel) awtImage.getSampleModel() ).getScanlineStride();
+        ByteBuffer dstBytes = target.duplicate();
+        dstBytes.clear();
+        // written as little endian ints the pixels are RGBA in memory
+        IntBuffer dst = dstBytes.order( ByteOrder.LITTLE_ENDIAN ).asIntBuffer();
+        if ( rowPixels == null || rowPixels.length < region.width ) {
+            rowPixels = new int[awtImage.getWidth()];
+        }
+        int[] rowPixels = this.rowPixels;
+        for ( int row = 0; row < region.height; row++ ) {
+            // the raster stores ABGR bytes
+            for ( int x = 0, i = ( region.y + row ) * scanline + region.x * 4; x < region.width; x++, i += 4 ) {
+                rowPixels[x] = pixels[i] << 24 | ( pixels[i + 1] & 0xff ) << 16
+                        | ( pixels[i + 2] & 0xff ) << 8 | ( pixels[i + 3] & 0xff );
             }
+            dst.position( offset / 4 + row * rowLength );
+            dst.put( rowPixels, 0, region.width );
+        }
+    }
+
+    /**
+     * Counts bytes uploaded to a texture.
+     *
+     * @param bytes number of bytes
+     */
+    protected void uploaded( int bytes ) {
+        uploadedBytes += bytes;
+        StatCollector.addStat( STAT_UPLOADED_BYTES, bytes );
+    }
+
+    @Override
+    public long getUploadedBytes() {
+        return mipMapChild != null ? uploadedBytes + mipMapChild.getUploadedBytes() : uploadedBytes;
+    }
+
+    /**
+     * Marks the whole area clean.
+     */
+    protected void clean() {
+        synchronized ( dirty ) {
+            dirty.width = 0;
+            tiles.clear();
         }
     }
 }
@@ -482,22 +482,39 @@ public class JMEDesktop extends Quad {
         }
     }
 
+    /**
+     * Mouse moves are not waited for, moves following each other before the swing thread handles them are sent as one
+     * event. Buttons, wheel and keys still wait, so they are handled after the preceding move.
+     */
     public void onMove( int xDelta, int yDelta, final int newX, final int newY ) {
         convert( newX, newY, location );
-        final int awtX = (int) location.x;
-        final int awtY = (int) location.y;
-        try {
-            SwingUtilities.invokeAndWait( new Runnable() {
-                public void run() {
-                    sendAWTMouseEvent( awtX, awtY, false, MouseEvent.NOBUTTON );
-                }
-            } );
-        } catch ( InterruptedException e ) {
-            logger.logp(Level.SEVERE, this.getClass().toString(),
-                    "onMove(xDelta, yDelta, newX, newY)", "Exception", e);
-        } catch ( InvocationTargetException e ) {
-            logger.logp(Level.SEVERE, this.getClass().toString(),
-                    "onMove(xDelta, yDelta, newX, newY)", "Exception", e);
+        synchronized ( moveRunnable ) {
+            moveRunnable.x = (int) location.x;
+            moveRunnable.y = (int) location.y;
+            if ( moveRunnable.pending ) {
+                return;
+            }
+            moveRunnable.pending = true;
+        }
+        SwingUtilities.invokeLater( moveRunnable );
+    }
+
+    private final MoveRunnable moveRunnable = new MoveRunnable();
+
+    private class MoveRunnable implements Runnable {
+        private int x;
+        private int y;
+        private boolean pending;
+
+        public void run() {
+            int awtX;
+            int awtY;
+            synchronized ( this ) {
+                awtX = x;
+                awtY = y;
+                pending = false;
+            }
+            sendAWTMouseEvent( awtX, awtY, false, MouseEvent.NOBUTTON );
         }
     }
 
@@ -1077,7 +1094,18 @@ public class JMEDesktop extends Quad {
 
     private final LockRunnable paintLockRunnable = new LockRunnable();
 
+    private long lastUploadedBytes;
+
+    /**
+     * @return number of bytes uploaded to the texture by the last {@link #draw(Renderer)}
+     * @see ImageGraphics#STAT_UPLOADED_BYTES
+     */
+    public long getLastUploadedBytes() {
+        return lastUploadedBytes;
+    }
+
     public void draw( Renderer r ) {
+        lastUploadedBytes = 0;
         if ( graphics.isDirty() ) {
             final boolean synchronizingThreadsOnUpdate = this.synchronizingThreadsOnUpdate;
             if ( synchronizingThreadsOnUpdate ) {
@@ -1093,7 +1121,9 @@ public class JMEDesktop extends Quad {
             }
             try {
                 if ( graphics != null && texture.getTextureId() > 0) {
+                    long uploaded = graphics.getUploadedBytes();
                     graphics.update( texture );
+                    lastUploadedBytes = graphics.getUploadedBytes() - uploaded;
                 }
             } finally {
 
@@ -51,11 +51,11 @@ import com.jme.system.DisplaySystem;
  */
 class JOGLImageGraphics extends ImageGraphicsBaseImpl {
     private JOGLImageGraphics( BufferedImage awtImage, byte[] data, Graphics2D delegate,
-                               com.jme.image.Image image, Rectangle dirty,
+                               com.jme.image.Image image, Rectangle dirty, DirtyTiles tiles,
                                int translationX, int translationY,
                                float scaleX, float scaleY, int mipMapCount,
                                ImageGraphicsBaseImpl mipMapChild, int mipMapLevel ) {
-        super( awtImage, data, delegate, image, dirty, translationX, translationY, scaleX, scaleY,
+        super( awtImage, data, delegate, image, dirty, tiles, translationX, translationY, scaleX, scaleY,
                 mipMapCount, mipMapChild, mipMapLevel );
     }
 
@@ -98,9 +98,9 @@ class JOGLImageGraphics extends ImageGraphicsBaseImpl {
 
                 boolean hasMipMaps = texture.getMinificationFilter().usesMipMapLevels();
 
-                update();
                 if ( !glTexSubImage2DSupported || ( hasMipMaps && paintedMipMapCount == 0 ) ) {
 
+                    update();
                     if ( !hasMipMaps ) {
                         DisplaySystem.getDisplaySystem().getRenderer()
                                 .updateTextureSubImage(texture, 0, 0, image, 0,
@@ -128,16 +128,22 @@ class JOGLImageGraphics extends ImageGraphicsBaseImpl {
                       // Rebind previous texture.
                       gl.glBindTexture(GL.GL_TEXTURE_2D, oldTex);
                     }
+                    uploaded( image.getWidth() * image.getHeight() * 4 );
                     //debug: check if texture operations caused an error
                     final int errorCode3 = gl.glGetError();
                     if ( errorCode3 != GL.GL_NO_ERROR ) {
                         throw new GLException( glu.gluErrorString( errorCode3 ) );
                     }
                 } else {
-                    DisplaySystem.getDisplaySystem().getRenderer()
-                            .updateTextureSubImage(texture, dirty.x, dirty.y,
-                                    image, dirty.x, dirty.y, dirty.width,
-                                    dirty.height);
+                    int regions = updateRegions();
+                    for ( int i = 0; i < regions; i++ ) {
+                        Rectangle region = tiles.getRegion( i );
+                        DisplaySystem.getDisplaySystem().getRenderer()
+                                .updateTextureSubImage(texture, region.x, region.y,
+                                        image, region.x, region.y, region.width,
+                                        region.height);
+                        uploaded( region.width * region.height * 4 );
+                    }
                     final int errorCode2 = gl.glGetError();
                     if ( errorCode2 != GL.GL_NO_ERROR ) {
 
@@ -179,12 +185,12 @@ class JOGLImageGraphics extends ImageGraphicsBaseImpl {
             mipMapChild.update( texture, clean );
         }
         if ( clean ) {
-            this.dirty.width = 0;
+            clean();
         }
     }
 
     public Graphics create() {
-        return new JOGLImageGraphics( awtImage, data, (Graphics2D) delegate.create(), image, dirty,
+        return new JOGLImageGraphics( awtImage, data, (Graphics2D) delegate.create(), image, dirty, tiles,
                 translation.x, translation.y, scaleX, scaleY, paintedMipMapCount,
                 mipMapChild != null && mipMapLevel < paintedMipMapCount - 1
                         ? (JOGLImageGraphics) mipMapChild.create() : null, mipMapLevel );
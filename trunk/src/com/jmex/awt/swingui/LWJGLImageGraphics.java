@@ -38,27 +38,38 @@ import java.awt.Rectangle;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 
+import org.lwjgl.opengl.ARBBufferObject;
+import org.lwjgl.opengl.ARBPixelBufferObject;
 import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GLContext;
 import org.lwjgl.opengl.OpenGLException;
 import org.lwjgl.opengl.Util;
 import org.lwjgl.util.glu.GLU;
 
 import com.jme.image.Texture;
 import com.jme.system.DisplaySystem;
+import com.jme.util.geom.BufferUtils;
 
 
 /**
  * LWJGL implementation of {@link ImageGraphics}.
  */
 class LWJGLImageGraphics extends ImageGraphicsBaseImpl {
+    private static final int PIXEL_BUFFERS = 2;
+
+    protected boolean pixelBuffersSupported = true;
+    private IntBuffer pixelBuffers;
+    private final ByteBuffer[] mappedPixelBuffers = new ByteBuffer[PIXEL_BUFFERS];
+    private int pixelBufferIndex;
 
     private LWJGLImageGraphics( BufferedImage awtImage, byte[] data, Graphics2D delegate,
-                                com.jme.image.Image image, Rectangle dirty,
+                                com.jme.image.Image image, Rectangle dirty, DirtyTiles tiles,
                                 int translationX, int translationY,
                                 float scaleX, float scaleY, int mipMapCount,
                                 ImageGraphicsBaseImpl mipMapChild, int mipMapLevel ) {
-        super( awtImage, data, delegate, image, dirty, translationX, translationY, scaleX, scaleY,
+        super( awtImage, data, delegate, image, dirty, tiles, translationX, translationY, scaleX, scaleY,
                 mipMapCount, mipMapChild, mipMapLevel );
     }
 
@@ -99,9 +110,9 @@ class LWJGLImageGraphics extends ImageGraphicsBaseImpl {
 
                 boolean hasMipMaps = texture.getMinificationFilter().usesMipMapLevels();
 
-                update();
                 if ( !glTexSubImage2DSupported || ( hasMipMaps && paintedMipMapCount == 0 ) ) {
 
+                    update();
                     if ( !hasMipMaps ) {
                         DisplaySystem.getDisplaySystem().getRenderer()
                                 .updateTextureSubImage(texture, 0, 0, image, 0,
@@ -129,22 +140,39 @@ class LWJGLImageGraphics extends ImageGraphicsBaseImpl {
                       // Rebind previous texture.
                       GL11.glBindTexture(GL11.GL_TEXTURE_2D, oldTex);
                     }
+                    uploaded( image.getWidth() * image.getHeight() * 4 );
                     //debug: check if texture operations caused an error
                     Util.checkGLError();
                 }
                 else {
-                    DisplaySystem.getDisplaySystem().getRenderer()
-                            .updateTextureSubImage(texture, dirty.x, dirty.y,
-                                    image, dirty.x, dirty.y, dirty.width,
-                                    dirty.height);
+                    boolean streamed = streamRegions( texture );
+                    if ( !streamed ) {
+                        int regions = updateRegions();
+                        for ( int i = 0; i < regions; i++ ) {
+                            Rectangle region = tiles.getRegion( i );
+                            DisplaySystem.getDisplaySystem().getRenderer()
+                                    .updateTextureSubImage(texture, region.x, region.y,
+                                            image, region.x, region.y, region.width,
+                                            region.height);
+                            uploaded( region.width * region.height * 4 );
+                        }
+                    }
                     try {
                         //debug: check if texture operations caused an error to print more info
                         Util.checkGLError();
                     } catch ( OpenGLException e ) {
-                        logger.warning("Error updating dirty region: " + dirty
-                                + " - "
-                                + "falling back to updating whole image!");
-                        glTexSubImage2DSupported = false;
+                        if ( streamed ) {
+                            logger.warning("Error streaming dirty region: " + dirty
+                                    + " - "
+                                    + "falling back to uploading from client memory!");
+                            pixelBuffersSupported = false;
+                        }
+                        else {
+                            logger.warning("Error updating dirty region: " + dirty
+                                    + " - "
+                                    + "falling back to updating whole image!");
+                            glTexSubImage2DSupported = false;
+                        }
                         update( texture, clean );
                     }
                     updateChildren = mipMapChild != null;
@@ -179,12 +207,81 @@ class LWJGLImageGraphics extends ImageGraphicsBaseImpl {
             mipMapChild.update( texture, clean );
         }
         if ( clean ) {
-            this.dirty.width = 0;
+            clean();
+        }
+    }
+
+    /**
+     * Uploads the dirty regions through a pixel buffer object: they are copied from the awt image into the mapped
+     * buffer and the driver transfers them to the texture asynchronously. Two buffers are used in turn, so filling one
+     * does not wait for the transfer from the other. The image data is not updated, the next {@link #update()} copies
+     * the whole image.
+     *
+     * @param texture texture to be updated
+     * @return false if pixel buffer objects are not supported, or for painted mipmap levels
+     */
+    private boolean streamRegions( Texture texture ) {
+        if ( !pixelBuffersSupported || mipMapLevel != 0 ) {
+            return false;
+        }
+        if ( pixelBuffers == null ) {
+            if ( !GLContext.getCapabilities().GL_ARB_pixel_buffer_object ) {
+                pixelBuffersSupported = false;
+                return false;
+            }
+            pixelBuffers = BufferUtils.createIntBuffer( PIXEL_BUFFERS );
+            ARBBufferObject.glGenBuffersARB( pixelBuffers );
         }
+
+        int size = image.getWidth() * image.getHeight() * 4;
+        pixelBufferIndex = ( pixelBufferIndex + 1 ) % PIXEL_BUFFERS;
+        ARBBufferObject.glBindBufferARB( ARBPixelBufferObject.GL_PIXEL_UNPACK_BUFFER_ARB,
+                pixelBuffers.get( pixelBufferIndex ) );
+        // orphan the previous contents instead of waiting until they are transferred
+        ARBBufferObject.glBufferDataARB( ARBPixelBufferObject.GL_PIXEL_UNPACK_BUFFER_ARB, size,
+                ARBBufferObject.GL_STREAM_DRAW_ARB );
+        ByteBuffer mapped = ARBBufferObject.glMapBufferARB( ARBPixelBufferObject.GL_PIXEL_UNPACK_BUFFER_ARB,
+                ARBBufferObject.GL_WRITE_ONLY_ARB, mappedPixelBuffers[pixelBufferIndex] );
+        if ( mapped == null ) {
+            ARBBufferObject.glBindBufferARB( ARBPixelBufferObject.GL_PIXEL_UNPACK_BUFFER_ARB, 0 );
+            pixelBuffersSupported = false;
+            return false;
+        }
+        mappedPixelBuffers[pixelBufferIndex] = mapped;
+
+        int regions = tiles.coalesce( dirty );
+        int offset = 0;
+        for ( int i = 0; i < regions; i++ ) {
+            Rectangle region = tiles.getRegion( i );
+            copyRegion( region, mapped, offset, region.width );
+            offset += region.width * region.height * 4;
+        }
+        ARBBufferObject.glUnmapBufferARB( ARBPixelBufferObject.GL_PIXEL_UNPACK_BUFFER_ARB );
+
+        // Remember what was previously bound.
+        idBuff.clear();
+        GL11.glGetInteger( GL11.GL_TEXTURE_BINDING_2D, idBuff );
+        int oldTex = idBuff.get();
+        GL11.glBindTexture( GL11.GL_TEXTURE_2D, texture.getTextureId() );
+
+        offset = 0;
+        for ( int i = 0; i < regions; i++ ) {
+            Rectangle region = tiles.getRegion( i );
+            GL11.glTexSubImage2D( GL11.GL_TEXTURE_2D, 0, region.x, region.y, region.width, region.height,
+                    GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, offset );
+            int bytes = region.width * region.height * 4;
+            uploaded( bytes );
+            offset += bytes;
+        }
+
+        ARBBufferObject.glBindBufferARB( ARBPixelBufferObject.GL_PIXEL_UNPACK_BUFFER_ARB, 0 );
+        GL11.glBindTexture( GL11.GL_TEXTURE_2D, oldTex );
+        tiles.setImageStale( true );
+        return true;
     }
 
     public Graphics create() {
-        return new LWJGLImageGraphics( awtImage, data, (Graphics2D) delegate.create(), image, dirty,
+        return new LWJGLImageGraphics( awtImage, data, (Graphics2D) delegate.create(), image, dirty, tiles,
                 translation.x, translation.y, scaleX, scaleY, paintedMipMapCount,
                 mipMapChild != null && mipMapLevel < paintedMipMapCount - 1
                         ? (ImageGraphicsBaseImpl) mipMapChild.create() : null, mipMapLevel );
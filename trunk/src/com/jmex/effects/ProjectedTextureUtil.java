@@ -32,19 +32,10 @@
 
 package com.jmex.effects;
 
-import java.nio.FloatBuffer;
-import java.nio.IntBuffer;
-
-import org.lwjgl.opengl.GL11;
-import org.lwjgl.util.glu.GLU;
-
 import com.jme.image.Texture;
 import com.jme.math.FastMath;
 import com.jme.math.Matrix4f;
 import com.jme.math.Vector3f;
-import com.jme.scene.state.lwjgl.records.RendererRecord;
-import com.jme.system.DisplaySystem;
-import com.jme.util.geom.BufferUtils;
 
 /**
  * <code>ProjectedTextureUtil</code>
@@ -102,76 +93,60 @@ public class ProjectedTextureUtil {
     }
 
     // UTILS
-    private static final FloatBuffer tmp_FloatBuffer = BufferUtils
-            .createFloatBuffer(16);
+    // The matrices below are the ones gluLookAt, gluPerspective and glFrustum
+    // build, laid out the way jME multiplies them (the transpose of OpenGL's).
+    // They used to be read back from the driver, which stalls the pipeline.
     private static Vector3f localDir = new Vector3f();
     private static Vector3f localLeft = new Vector3f();
     private static Vector3f localUp = new Vector3f();
 
-    private static IntBuffer matrixModeBuffer = BufferUtils.createIntBuffer(16);
-    private static int savedMatrixMode = 0;
-
-    private static void saveMatrixMode() {
-        matrixModeBuffer.rewind();
-        GL11.glGetInteger(GL11.GL_MATRIX_MODE, matrixModeBuffer);
-        savedMatrixMode = matrixModeBuffer.get(0);
-    }
-
-    private static void restoreMatrixMode() {
-        RendererRecord matRecord = (RendererRecord) DisplaySystem
-                .getDisplaySystem().getCurrentContext().getRendererRecord();
-        matRecord.switchMode(savedMatrixMode);
-    }
-
     public static void matrixLookAt(Vector3f location, Vector3f at,
             Vector3f up, Matrix4f result) {
         localDir.set(at).subtractLocal(location).normalizeLocal();
         localDir.cross(up, localLeft);
         localLeft.cross(localDir, localUp);
 
-        saveMatrixMode();
-
-        // set view matrix
-        RendererRecord matRecord = (RendererRecord) DisplaySystem
-                .getDisplaySystem().getCurrentContext().getRendererRecord();
-        matRecord.switchMode(GL11.GL_MODELVIEW);
-        GL11.glPushMatrix();
-        GL11.glLoadIdentity();
-        GLU.gluLookAt(location.x, location.y, location.z, at.x, at.y, at.z,
-                localUp.x, localUp.y, localUp.z);
-
-        if (result != null) {
-            tmp_FloatBuffer.rewind();
-            GL11.glGetFloat(GL11.GL_MODELVIEW_MATRIX, tmp_FloatBuffer);
-            tmp_FloatBuffer.rewind();
-            result.readFloatBuffer(tmp_FloatBuffer);
+        if (result == null) {
+            return;
         }
 
-        GL11.glPopMatrix();
-        restoreMatrixMode();
+        // side and up vectors as gluLookAt computes them
+        localDir.cross(localUp, localLeft).normalizeLocal();
+        localLeft.cross(localDir, localUp);
+
+        result.m00 = localLeft.x;
+        result.m10 = localLeft.y;
+        result.m20 = localLeft.z;
+        result.m30 = -localLeft.dot(location);
+        result.m01 = localUp.x;
+        result.m11 = localUp.y;
+        result.m21 = localUp.z;
+        result.m31 = -localUp.dot(location);
+        result.m02 = -localDir.x;
+        result.m12 = -localDir.y;
+        result.m22 = -localDir.z;
+        result.m32 = localDir.dot(location);
+        result.m03 = 0;
+        result.m13 = 0;
+        result.m23 = 0;
+        result.m33 = 1;
     }
 
     public static void matrixPerspective(float fovY, float aspect, float near,
             float far, Matrix4f result) {
-        saveMatrixMode();
-
-        // set view matrix
-        RendererRecord matRecord = (RendererRecord) DisplaySystem
-                .getDisplaySystem().getCurrentContext().getRendererRecord();
-        matRecord.switchMode(GL11.GL_MODELVIEW);
-        GL11.glPushMatrix();
-        GL11.glLoadIdentity();
-        GLU.gluPerspective(fovY, aspect, near, far);
-
-        if (result != null) {
-            tmp_FloatBuffer.rewind();
-            GL11.glGetFloat(GL11.GL_MODELVIEW_MATRIX, tmp_FloatBuffer);
-            tmp_FloatBuffer.rewind();
-            result.readFloatBuffer(tmp_FloatBuffer);
+        if (result == null) {
+            return;
         }
-
-        GL11.glPopMatrix();
-        restoreMatrixMode();
+        float radians = fovY / 2 * FastMath.DEG_TO_RAD;
+        float cotangent = FastMath.cos(radians) / FastMath.sin(radians);
+        float deltaZ = far - near;
+
+        result.zero();
+        result.m00 = cotangent / aspect;
+        result.m11 = cotangent;
+        result.m22 = -(far + near) / deltaZ;
+        result.m23 = -1;
+        result.m32 = -2 * near * far / deltaZ;
     }
 
     public static void matrixProjection(float fovY, float aspect, float near,
@@ -185,46 +160,26 @@ public class ProjectedTextureUtil {
         float frustumNear = near;
         float frustumFar = far;
 
-        saveMatrixMode();
-        RendererRecord matRecord = (RendererRecord) DisplaySystem
-                .getDisplaySystem().getCurrentContext().getRendererRecord();
-        matRecord.switchMode(GL11.GL_PROJECTION);
-        GL11.glPushMatrix();
-        GL11.glLoadIdentity();
-        GL11.glFrustum(frustumLeft, frustumRight, frustumBottom, frustumTop,
-                frustumNear, frustumFar);
-
-        if (result != null) {
-            tmp_FloatBuffer.rewind();
-            GL11.glGetFloat(GL11.GL_PROJECTION_MATRIX, tmp_FloatBuffer);
-            tmp_FloatBuffer.rewind();
-            result.readFloatBuffer(tmp_FloatBuffer);
-        }
-
-        GL11.glPopMatrix();
-        restoreMatrixMode();
+        matrixFrustum(frustumLeft, frustumRight, frustumBottom, frustumTop,
+                frustumNear, frustumFar, result);
     }
 
     public static void matrixFrustum(float frustumLeft, float frustumRight,
             float frustumBottom, float frustumTop, float frustumNear,
             float frustumFar, Matrix4f result) {
-        saveMatrixMode();
-        RendererRecord matRecord = (RendererRecord) DisplaySystem
-                .getDisplaySystem().getCurrentContext().getRendererRecord();
-        matRecord.switchMode(GL11.GL_PROJECTION);
-        GL11.glPushMatrix();
-        GL11.glLoadIdentity();
-        GL11.glFrustum(frustumLeft, frustumRight, frustumBottom, frustumTop,
-                frustumNear, frustumFar);
-
-        if (result != null) {
-            tmp_FloatBuffer.rewind();
-            GL11.glGetFloat(GL11.GL_PROJECTION_MATRIX, tmp_FloatBuffer);
-            tmp_FloatBuffer.rewind();
-            result.readFloatBuffer(tmp_FloatBuffer);
+        if (result == null) {
+            return;
         }
-
-        GL11.glPopMatrix();
-        restoreMatrixMode();
+        result.zero();
+        result.m00 = 2 * frustumNear / (frustumRight - frustumLeft);
+        result.m11 = 2 * frustumNear / (frustumTop - frustumBottom);
+        result.m20 = (frustumRight + frustumLeft)
+                / (frustumRight - frustumLeft);
+        result.m21 = (frustumTop + frustumBottom)
+                / (frustumTop - frustumBottom);
+        result.m22 = -(frustumFar + frustumNear) / (frustumFar - frustumNear);
+        result.m23 = -1;
+        result.m32 = -2 * frustumFar * frustumNear
+                / (frustumFar - frustumNear);
     }
 }
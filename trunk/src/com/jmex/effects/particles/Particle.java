@@ -380,6 +380,36 @@ public class Particle implements Savable {
         return currentAge;
     }
 
+    void setCurrentAge(int age) {
+        currentAge = age;
+    }
+
+    /**
+     * @return the life span of the particle in ms
+     */
+    float getLifeSpan() {
+        return lifeSpan;
+    }
+
+    void setLifeSpan(float lifeSpan) {
+        this.lifeSpan = lifeSpan;
+    }
+
+    int getCurrentTexIndex() {
+        return currentTexIndex;
+    }
+
+    void setCurrentTexIndex(int index) {
+        currentTexIndex = index;
+    }
+
+    /**
+     * @return size, spin and mass, indexed by the VAL_CURRENT_* constants
+     */
+    float[] getValues() {
+        return values;
+    }
+
     /**
      * @return the current position of the particle in space
      */
@@ -0,0 +1,611 @@
+/*
+ * Copyright (c) 2003-2008 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors 
+ *   may be used to endorse or promote products derived from this software 
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.jmex.effects.particles;
+
+import java.nio.FloatBuffer;
+
+import com.jme.math.FastMath;
+import com.jme.math.Quaternion;
+import com.jme.math.Triangle;
+import com.jme.math.Vector3f;
+import com.jme.renderer.Camera;
+import com.jme.renderer.ColorRGBA;
+import com.jme.scene.Geometry;
+import com.jmex.effects.particles.ParticleSystem.ParticleType;
+
+/**
+ * <code>ParticleArrays</code> holds the state of all particles of a
+ * {@link ParticleSystem} in primitive arrays (structure of arrays) instead of
+ * one {@link Particle} object per particle. The controller updates all
+ * particles in a few tight loops and the results are copied into the vertex
+ * and color buffers of the particle geometry in one bulk put each.
+ * <p>
+ * Vectors are stored as consecutive x, y, z values (index * 3), colors as r,
+ * g, b, a (index * 4). Velocities are in units per ms like
+ * {@link Particle#getVelocity()}.
+ * 
+ * @see ParticleSystem#setUseParticleArrays(boolean)
+ * @see ParticleInfluence#apply(float, ParticleArrays)
+ */
+public class ParticleArrays {
+
+    private final ParticleSystem system;
+    private final Particle[] source;
+    private final int count;
+    private final int verts;
+
+    private final float[] positions;
+    private final float[] velocities;
+    private final float[] colors;
+    private final float[] sizes;
+    private final float[] spins;
+    private final float[] masses;
+    private final float[] lifeSpans;
+    private final int[] ages;
+    private final int[] texIndices;
+    private final Particle.Status[] status;
+
+    // copies of the geometry buffers, written back by flush()
+    private final float[] vertexData;
+    private final float[] colorData;
+    private boolean verticesDirty, colorsDirty;
+
+    // temporary variables to avoid object creation
+    private final ColorRGBA tmpColor = new ColorRGBA();
+    private final float[] tmpValues = new float[3];
+    private final Quaternion tmpQuat = new Quaternion();
+    private final Vector3f tmpVec = new Vector3f();
+
+    /**
+     * Creates the arrays for the current particles of the given system and
+     * loads their state.
+     * 
+     * @param system
+     *            the particle system
+     */
+    public ParticleArrays(ParticleSystem system) {
+        this.system = system;
+        this.source = system.particles;
+        count = source.length;
+        verts = ParticleSystem.getVertsForParticleType(system
+                .getParticleType());
+        positions = new float[count * 3];
+        velocities = new float[count * 3];
+        colors = new float[count * 4];
+        sizes = new float[count];
+        spins = new float[count];
+        masses = new float[count];
+        lifeSpans = new float[count];
+        ages = new int[count];
+        texIndices = new int[count];
+        status = new Particle.Status[count];
+        vertexData = new float[count * verts * 3];
+        colorData = new float[count * verts * 4];
+        load();
+    }
+
+    /**
+     * @return true if these arrays were created for the given particles.
+     */
+    boolean isFor(Particle[] particles) {
+        return source == particles;
+    }
+
+    /**
+     * Copies the state of all {@link Particle} objects and the current
+     * geometry buffers into the arrays.
+     */
+    public void load() {
+        for (int i = 0; i < count; i++) {
+            load(i);
+        }
+        Geometry geom = system.getParticleGeometry();
+        FloatBuffer vertices = geom.getVertexBuffer();
+        vertices.rewind();
+        vertices.get(vertexData, 0, Math.min(vertexData.length, vertices
+                .remaining()));
+        vertices.rewind();
+        FloatBuffer colorBuffer = geom.getColorBuffer();
+        colorBuffer.rewind();
+        colorBuffer.get(colorData, 0, Math.min(colorData.length, colorBuffer
+                .remaining()));
+        colorBuffer.rewind();
+        verticesDirty = false;
+        colorsDirty = false;
+    }
+
+    /**
+     * Copies the state of the particle object at the given index into the
+     * arrays.
+     */
+    public void load(int i) {
+        Particle p = source[i];
+        Vector3f position = p.getPosition();
+        positions[i * 3] = position.x;
+        positions[i * 3 + 1] = position.y;
+        positions[i * 3 + 2] = position.z;
+        loadVelocity(i);
+        ColorRGBA color = p.getCurrentColor();
+        colors[i * 4] = color.r;
+        colors[i * 4 + 1] = color.g;
+        colors[i * 4 + 2] = color.b;
+        colors[i * 4 + 3] = color.a;
+        float[] values = p.getValues();
+        sizes[i] = values[Particle.VAL_CURRENT_SIZE];
+        spins[i] = values[Particle.VAL_CURRENT_SPIN];
+        masses[i] = values[Particle.VAL_CURRENT_MASS];
+        lifeSpans[i] = p.getLifeSpan();
+        ages[i] = p.getCurrentAge();
+        texIndices[i] = p.getCurrentTexIndex();
+        status[i] = p.getStatus();
+    }
+
+    private void loadVelocity(int i) {
+        Vector3f velocity = source[i].getVelocity();
+        velocities[i * 3] = velocity.x;
+        velocities[i * 3 + 1] = velocity.y;
+        velocities[i * 3 + 2] = velocity.z;
+    }
+
+    /**
+     * Copies the state of the particle at the given index into its
+     * {@link Particle} object.
+     * 
+     * @return the updated particle object
+     */
+    public Particle store(int i) {
+        Particle p = source[i];
+        p.getPosition().set(positions[i * 3], positions[i * 3 + 1],
+                positions[i * 3 + 2]);
+        p.getVelocity().set(velocities[i * 3], velocities[i * 3 + 1],
+                velocities[i * 3 + 2]);
+        p.getCurrentColor().set(colors[i * 4], colors[i * 4 + 1],
+                colors[i * 4 + 2], colors[i * 4 + 3]);
+        float[] values = p.getValues();
+        values[Particle.VAL_CURRENT_SIZE] = sizes[i];
+        values[Particle.VAL_CURRENT_SPIN] = spins[i];
+        values[Particle.VAL_CURRENT_MASS] = masses[i];
+        p.setLifeSpan(lifeSpans[i]);
+        p.setCurrentAge(ages[i]);
+        p.setCurrentTexIndex(texIndices[i]);
+        p.setStatus(status[i]);
+        return p;
+    }
+
+    /**
+     * Copies the state of all particles into their {@link Particle} objects.
+     */
+    public void storeAll() {
+        for (int i = 0; i < count; i++) {
+            store(i);
+        }
+    }
+
+    /**
+     * @return the number of particles.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return true if the particle at the given index is alive.
+     */
+    public boolean isAlive(int i) {
+        return status[i] == Particle.Status.Alive;
+    }
+
+    public Particle.Status getStatus(int i) {
+        return status[i];
+    }
+
+    public void setStatus(int i, Particle.Status status) {
+        this.status[i] = status;
+    }
+
+    /**
+     * @return particle positions, x, y, z per particle.
+     */
+    public float[] getPositions() {
+        return positions;
+    }
+
+    /**
+     * @return particle velocities in units per ms, x, y, z per particle.
+     */
+    public float[] getVelocities() {
+        return velocities;
+    }
+
+    /**
+     * @return current particle colors, r, g, b, a per particle.
+     */
+    public float[] getColors() {
+        return colors;
+    }
+
+    public float[] getSizes() {
+        return sizes;
+    }
+
+    public float[] getSpins() {
+        return spins;
+    }
+
+    public float[] getMasses() {
+        return masses;
+    }
+
+    /**
+     * @return the life span of each particle in ms.
+     */
+    public float[] getLifeSpans() {
+        return lifeSpans;
+    }
+
+    /**
+     * @return the age of each particle in ms.
+     */
+    public int[] getAges() {
+        return ages;
+    }
+
+    /**
+     * Same as {@link Particle#updateAndCheck(float)} for all particles: ages
+     * and moves the living particles, applies the appearance ramp and texture
+     * animation and kills particles that exceeded their life span.
+     * 
+     * @param secondsPassed
+     *            number of seconds passed since last update.
+     */
+    public void updateAndCheck(float secondsPassed) {
+        float msPassed = secondsPassed * 1000f;
+        ParticleAppearanceRamp ramp = system.getRamp();
+        boolean simpleRamp = ramp.entries.isEmpty();
+        ColorRGBA startColor = system.getStartColor();
+        ColorRGBA endColor = system.getEndColor();
+        float startMass = system.getStartMass(), endMass = system.getEndMass();
+        float startSize = system.getStartSize(), endSize = system.getEndSize();
+        float startSpin = system.getStartSpin(), endSpin = system.getEndSpin();
+        TexAnimation texAnimation = system.getTexAnimation();
+        boolean animateTex = system.getParticleType() == ParticleType.Quad;
+
+        for (int i = 0; i < count; i++) {
+            if (status[i] != Particle.Status.Alive) {
+                continue;
+            }
+            ages[i] += msPassed;
+            int age = ages[i];
+            float lifeSpan = lifeSpans[i];
+            if (age > lifeSpan) {
+                kill(i);
+                continue;
+            }
+
+            int i3 = i * 3;
+            positions[i3] += msPassed * velocities[i3];
+            positions[i3 + 1] += msPassed * velocities[i3 + 1];
+            positions[i3 + 2] += msPassed * velocities[i3 + 2];
+
+            int i4 = i * 4;
+            if (simpleRamp) {
+                float ratio = age / lifeSpan;
+                float inv = 1 - ratio;
+                colors[i4] = inv * startColor.r + ratio * endColor.r;
+                colors[i4 + 1] = inv * startColor.g + ratio * endColor.g;
+                colors[i4 + 2] = inv * startColor.b + ratio * endColor.b;
+                colors[i4 + 3] = inv * startColor.a + ratio * endColor.a;
+                masses[i] = inv * startMass + ratio * endMass;
+                sizes[i] = inv * startSize + ratio * endSize;
+                spins[i] = inv * startSpin + ratio * endSpin;
+            } else {
+                ramp.getValuesAtAge(age, lifeSpan, tmpColor, tmpValues, system);
+                colors[i4] = tmpColor.r;
+                colors[i4 + 1] = tmpColor.g;
+                colors[i4 + 2] = tmpColor.b;
+                colors[i4 + 3] = tmpColor.a;
+                masses[i] = tmpValues[Particle.VAL_CURRENT_MASS];
+                sizes[i] = tmpValues[Particle.VAL_CURRENT_SIZE];
+                spins[i] = tmpValues[Particle.VAL_CURRENT_SPIN];
+            }
+            setColorData(i);
+
+            if (animateTex) {
+                int texIndex = texAnimation.getTexIndexAtAge(age, lifeSpan,
+                        system);
+                if (texIndex != texIndices[i]) {
+                    texIndices[i] = texIndex;
+                    updateTexCoords(i, texIndex);
+                }
+            }
+        }
+    }
+
+    private void setColorData(int i) {
+        int i4 = i * 4;
+        float r = colors[i4], g = colors[i4 + 1], b = colors[i4 + 2], a = colors[i4 + 3];
+        for (int v = i * verts * 4, end = v + verts * 4; v < end; v += 4) {
+            colorData[v] = r;
+            colorData[v + 1] = g;
+            colorData[v + 2] = b;
+            colorData[v + 3] = a;
+        }
+        colorsDirty = true;
+    }
+
+    private void updateTexCoords(int i, int texIndex) {
+        // determine side
+        float side = FastMath.sqrt(system.getTexQuantity());
+        if (texIndex >= system.getTexQuantity()) {
+            texIndex %= system.getTexQuantity();
+        }
+        // figure row / col
+        float row = side - (int) (texIndex / side) - 1;
+        float col = texIndex % side;
+        // set texcoords
+        float sU = col / side, eU = (col + 1) / side;
+        float sV = row / side, eV = (row + 1) / side;
+        FloatBuffer texs = system.getParticleGeometry().getTextureCoords(0).coords;
+        int index = i * verts * 2;
+        texs.put(index, sU).put(index + 1, sV);
+        texs.put(index + 2, sU).put(index + 3, eV);
+        texs.put(index + 4, eU).put(index + 5, sV);
+        texs.put(index + 6, eU).put(index + 7, eV);
+    }
+
+    /**
+     * Same as {@link Particle#killParticle()}: marks the particle dead, makes
+     * it transparent and collapses its vertices.
+     */
+    public void kill(int i) {
+        status[i] = Particle.Status.Dead;
+        colors[i * 4 + 3] = 0;
+        setColorData(i);
+        int start = i * verts * 3;
+        float x = vertexData[start], y = vertexData[start + 1], z = vertexData[start + 2];
+        for (int v = start + 3, end = start + verts * 3; v < end; v += 3) {
+            vertexData[v] = x;
+            vertexData[v + 1] = y;
+            vertexData[v + 2] = z;
+        }
+        verticesDirty = true;
+    }
+
+    /**
+     * Same as {@link Particle#recreateParticle(float)} followed by placing
+     * the particle with {@link ParticleSystem#initParticleLocation(int)} and
+     * {@link ParticleSystem#resetParticleVelocity(int)}: the particle is reset
+     * to its start values and becomes alive.
+     * 
+     * @param lifeSpan
+     *            the recreated particle's new lifespan
+     */
+    public void respawn(int i, float lifeSpan) {
+        lifeSpans[i] = lifeSpan;
+        ColorRGBA startColor = system.getStartColor();
+        colors[i * 4] = startColor.r;
+        colors[i * 4 + 1] = startColor.g;
+        colors[i * 4 + 2] = startColor.b;
+        colors[i * 4 + 3] = startColor.a;
+        setColorData(i);
+        sizes[i] = system.getStartSize();
+        ages[i] = 0;
+        masses[i] = 1;
+        status[i] = Particle.Status.Alive;
+
+        // the emitter shapes work on vectors, so let the particle object do it
+        Particle p = source[i];
+        system.initParticleLocation(i);
+        system.resetParticleVelocity(i);
+        Vector3f position = p.getPosition();
+        positions[i * 3] = position.x;
+        positions[i * 3 + 1] = position.y;
+        positions[i * 3 + 2] = position.z;
+        loadVelocity(i);
+        updateVerts(i, null);
+    }
+
+    /**
+     * Places the particle at a new emitter location without changing its
+     * other values, see {@link ParticleSystem#initAllParticlesLocation()}.
+     */
+    void relocate(int i) {
+        system.initParticleLocation(i);
+        Vector3f position = source[i].getPosition();
+        positions[i * 3] = position.x;
+        positions[i * 3 + 1] = position.y;
+        positions[i * 3 + 2] = position.z;
+        updateVerts(i, null);
+    }
+
+    /**
+     * Same as {@link Particle#updateVerts(Camera)} for all living particles.
+     * 
+     * @param cam
+     *            Camera to use in determining viewer aspect. If null, or if
+     *            the system is not set to camera facing, the system's left
+     *            and up vectors are used.
+     */
+    public void updateVerts(Camera cam) {
+        for (int i = 0; i < count; i++) {
+            if (status[i] == Particle.Status.Alive) {
+                updateVerts(i, cam);
+            }
+        }
+        flush();
+    }
+
+    private void updateVerts(int i, Camera cam) {
+        ParticleType type = system.getParticleType();
+        float orient = system.getParticleOrientation() + spins[i];
+        float size = sizes[i];
+        int i3 = i * 3;
+        float px = positions[i3], py = positions[i3 + 1], pz = positions[i3 + 2];
+        float xx = 0, xy = 0, xz = 0, yx = 0, yy = 0, yz = 0;
+
+        if (type == ParticleType.GeomMesh || type == ParticleType.Point) {
+            ; // nothing to do
+        } else if (cam != null && system.isCameraFacing()) {
+            Vector3f left = cam.getLeft(), up = cam.getUp();
+            if (system.isVelocityAligned()) {
+                xx = velocities[i3];
+                xy = velocities[i3 + 1];
+                xz = velocities[i3 + 2];
+                float length = FastMath.sqrt(xx * xx + xy * xy + xz * xz);
+                if (length != 0) {
+                    float scale = size / length;
+                    xx *= scale;
+                    xy *= scale;
+                    xz *= scale;
+                }
+                Vector3f dir = cam.getDirection();
+                yx = dir.y * xz - dir.z * xy;
+                yy = dir.z * xx - dir.x * xz;
+                yz = dir.x * xy - dir.y * xx;
+                length = FastMath.sqrt(yx * yx + yy * yy + yz * yz);
+                if (length != 0) {
+                    float scale = size / length;
+                    yx *= scale;
+                    yy *= scale;
+                    yz *= scale;
+                }
+            } else if (orient == 0) {
+                xx = left.x * size;
+                xy = left.y * size;
+                xz = left.z * size;
+                yx = up.x * size;
+                yy = up.y * size;
+                yz = up.z * size;
+            } else {
+                float cA = FastMath.cos(orient) * size;
+                float sA = FastMath.sin(orient) * size;
+                xx = left.x * cA + up.x * sA;
+                xy = left.y * cA + up.y * sA;
+                xz = left.z * cA + up.z * sA;
+                yx = up.x * cA - left.x * sA;
+                yy = up.y * cA - left.y * sA;
+                yz = up.z * cA - left.z * sA;
+            }
+        } else {
+            Vector3f left = system.getLeftVector(), up = system.getUpVector();
+            xx = left.x * size;
+            xy = left.y * size;
+            xz = left.z * size;
+            yx = up.x * size;
+            yy = up.y * size;
+            yz = up.z * size;
+        }
+
+        float[] data = vertexData;
+        int v = i * verts * 3;
+        switch (type) {
+            case Quad:
+                data[v] = px + xx - yx;
+                data[v + 1] = py + xy - yy;
+                data[v + 2] = pz + xz - yz;
+                data[v + 3] = px + xx + yx;
+                data[v + 4] = py + xy + yy;
+                data[v + 5] = pz + xz + yz;
+                data[v + 6] = px - xx - yx;
+                data[v + 7] = py - xy - yy;
+                data[v + 8] = pz - xz - yz;
+                data[v + 9] = px - xx + yx;
+                data[v + 10] = py - xy + yy;
+                data[v + 11] = pz - xz + yz;
+                break;
+            case Triangle:
+                data[v] = px + xx - yx;
+                data[v + 1] = py + xy - yy;
+                data[v + 2] = pz + xz - yz;
+                data[v + 3] = px + xx + 3 * yx;
+                data[v + 4] = py + xy + 3 * yy;
+                data[v + 5] = pz + xz + 3 * yz;
+                data[v + 6] = px - 3 * xx - yx;
+                data[v + 7] = py - 3 * xy - yy;
+                data[v + 8] = pz - 3 * xz - yz;
+                break;
+            case Line:
+                data[v] = px - xx;
+                data[v + 1] = py - xy;
+                data[v + 2] = pz - xz;
+                data[v + 3] = px + xx;
+                data[v + 4] = py + xy;
+                data[v + 5] = pz + xz;
+                break;
+            case Point:
+                data[v] = px;
+                data[v + 1] = py;
+                data[v + 2] = pz;
+                break;
+            case GeomMesh: {
+                Triangle triModel = source[i].getTriangleModel();
+                if (orient != 0) {
+                    tmpQuat.fromAngleNormalAxis(orient, triModel.getNormal());
+                }
+                for (int x = 0; x < 3; x++, v += 3) {
+                    if (orient != 0) {
+                        tmpQuat.mult(triModel.get(x), tmpVec);
+                    } else {
+                        tmpVec.set(triModel.get(x));
+                    }
+                    data[v] = tmpVec.x * size + px;
+                    data[v + 1] = tmpVec.y * size + py;
+                    data[v + 2] = tmpVec.z * size + pz;
+                }
+                break;
+            }
+        }
+        verticesDirty = true;
+    }
+
+    /**
+     * Copies changed vertex and color data into the particle geometry.
+     */
+    public void flush() {
+        Geometry geom = system.getParticleGeometry();
+        if (verticesDirty) {
+            FloatBuffer vertices = geom.getVertexBuffer();
+            vertices.rewind();
+            vertices.put(vertexData);
+            vertices.rewind();
+            verticesDirty = false;
+        }
+        if (colorsDirty) {
+            FloatBuffer colorBuffer = geom.getColorBuffer();
+            colorBuffer.rewind();
+            colorBuffer.put(colorData);
+            colorBuffer.rewind();
+            colorsDirty = false;
+        }
+    }
+}
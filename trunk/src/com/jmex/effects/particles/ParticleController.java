@@ -183,9 +183,44 @@ public class ParticleController extends Controller {
             
             // opposite of above boolean, but tracked seperately
             boolean anyAlive = false;
+
+            ParticleArrays arrays = particles.getParticleArrays();
+            if (arrays != null) {
+                // Same as below, but each step is done for all particles at
+                // once, so random numbers are drawn in a different order
+                if (influences != null) {
+                    for (int x = 0; x < influences.size(); x++) {
+                        ParticleInfluence inf = influences.get(x);
+                        if (inf.isEnabled())
+                            inf.apply(timePassed, arrays);
+                    }
+                }
+                arrays.updateAndCheck(timePassed);
+
+                for (int count = arrays.getCount(); i < count; i++) {
+                    boolean reuse = !arrays.isAlive(i);
+                    if (reuse && (!controlFlow || particlesToCreate > 0)) {
+                        if (arrays.getStatus(i) != Particle.Status.Dead
+                                || getRepeatType() != RT_CLAMP) {
+                            dead = false;
+                            if (controlFlow) {
+                                particlesToCreate--;
+                            }
+                            arrays.respawn(i, particles.getRandomLifeSpan());
+                        }
+                    } else if (!reuse || (controlFlow && particles.getReleaseRate() > 0)) {
+                        dead = false;
+                    }
+
+                    if (arrays.isAlive(i)) {
+                        anyAlive = true;
+                    }
+                }
+                arrays.flush();
+            }
             
             // i is index through all particles
-            while (i < particles.getNumParticles()) {
+            while (arrays == null && i < particles.getNumParticles()) {
                 // Current particle
                 Particle p = particles.getParticle(i);
                 
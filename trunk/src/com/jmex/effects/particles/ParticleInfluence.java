@@ -93,6 +93,33 @@ public abstract class ParticleInfluence implements Savable {
      *            for adding small steady amounts of variation, or remembering information.
      */
     public abstract void apply(float dt, Particle particle, int index);
+
+    /**
+     * Apply the influence defined by this class on all living particles of a
+     * system using {@link ParticleArrays}. The default implementation copies
+     * each particle into its Particle object, calls
+     * {@link #apply(float, Particle, int)} and copies the whole particle back,
+     * killing it in the arrays too if the influence killed it. Override this
+     * to work on the arrays directly.
+     * 
+     * @param dt
+     *            amount of time since last apply call in ms.
+     * @param particles
+     *            the particles to apply the influence to.
+     */
+    public void apply(float dt, ParticleArrays particles) {
+        for (int i = 0, count = particles.getCount(); i < count; i++) {
+            if (!particles.isAlive(i)) {
+                continue;
+            }
+            apply(dt, particles.store(i), i);
+            particles.load(i);
+            if (particles.getStatus(i) == Particle.Status.Dead) {
+                // the particle object only hid itself in the geometry buffers
+                particles.kill(i);
+            }
+        }
+    }
     
     public void write(JMEExporter e) throws IOException {
         OutputCapsule capsule = e.getCapsule(this);
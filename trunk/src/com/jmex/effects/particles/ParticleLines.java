@@ -3,7 +3,6 @@ package com.jmex.effects.particles;
 import com.jme.intersection.CollisionResults;
 import com.jme.math.Vector2f;
 import com.jme.math.Vector3f;
-import com.jme.renderer.Camera;
 import com.jme.renderer.Renderer;
 import com.jme.scene.Line;
 import com.jme.scene.Spatial;
@@ -96,13 +95,7 @@ public class ParticleLines extends ParticleSystem {
     }
 
     public void draw(Renderer r) {
-        Camera camera = r.getCamera();
-        for (int i = 0; i < particles.length; i++) {
-            Particle particle = particles[i];
-            if (particle.getStatus() == Particle.Status.Alive) {
-                particle.updateVerts(camera);
-            }
-        }
+        updateParticleVerts(r.getCamera());
 
         if (!particlesInWorldCoords) {
         	getParticleGeometry().getWorldTranslation().set(getWorldTranslation());
@@ -35,7 +35,6 @@ import java.io.IOException;
 
 import com.jme.math.Vector2f;
 import com.jme.math.Vector3f;
-import com.jme.renderer.Camera;
 import com.jme.renderer.Renderer;
 import com.jme.scene.TexCoords;
 import com.jme.scene.TriMesh;
@@ -191,13 +190,7 @@ public class ParticleMesh extends ParticleSystem {
     }
 
     public void draw(Renderer r) {
-        Camera camera = r.getCamera();
-        for (int i = 0; i < particles.length; i++) {
-            Particle particle = particles[i];
-            if (particle.getStatus() == Particle.Status.Alive) {
-                particle.updateVerts(camera);
-            }
-        }
+        updateParticleVerts(r.getCamera());
 
         if (!particlesInWorldCoords) {
         	getParticleGeometry().getWorldTranslation().set(getWorldTranslation());
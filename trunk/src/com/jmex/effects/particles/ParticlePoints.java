@@ -2,7 +2,6 @@ package com.jmex.effects.particles;
 
 import com.jme.math.Vector2f;
 import com.jme.math.Vector3f;
-import com.jme.renderer.Camera;
 import com.jme.renderer.Renderer;
 import com.jme.scene.Point;
 import com.jme.scene.TexCoords;
@@ -81,13 +80,7 @@ public class ParticlePoints extends ParticleSystem {
     }
 
     public void draw(Renderer r) {
-        Camera camera = r.getCamera();
-        for (int i = 0; i < particles.length; i++) {
-            Particle particle = particles[i];
-            if (particle.getStatus() == Particle.Status.Alive) {
-                particle.updateVerts(camera);
-            }
-        }
+        updateParticleVerts(r.getCamera());
 
         if (!particlesInWorldCoords) {
         	getParticleGeometry().getWorldTranslation().set(getWorldTranslation());
@@ -45,6 +45,7 @@ import com.jme.math.TransformMatrix;
 import com.jme.math.Triangle;
 import com.jme.math.Vector2f;
 import com.jme.math.Vector3f;
+import com.jme.renderer.Camera;
 import com.jme.renderer.ColorRGBA;
 import com.jme.scene.Controller;
 import com.jme.scene.Geometry;
@@ -126,6 +127,8 @@ public abstract class ParticleSystem extends Node {
     protected Vector3f invScale;
 
     protected Particle particles[];
+    protected boolean useParticleArrays = false;
+    protected ParticleArrays particleArrays;
 
     // protected Vector3f particleSpeed;
     protected int releaseRate; // particles per second
@@ -204,6 +207,9 @@ public abstract class ParticleSystem extends Node {
             particles[i].updateAndCheck(1);
             particles[i].setStatus(Particle.Status.Available);
         }
+        if (particleArrays != null) {
+            particleArrays.load();
+        }
 
         if (controller != null) {
             controller.setActive(true);
@@ -777,9 +783,38 @@ public abstract class ParticleSystem extends Node {
     }
 
     public void initAllParticlesLocation() {
+        ParticleArrays arrays = getParticleArrays();
         for (int i = particles.length; --i >= 0;) {
-            initParticleLocation(i);
-            particles[i].updateVerts(null);
+            if (arrays != null) {
+                arrays.relocate(i);
+            } else {
+                initParticleLocation(i);
+                particles[i].updateVerts(null);
+            }
+        }
+        if (arrays != null) {
+            arrays.flush();
+        }
+    }
+
+    /**
+     * Updates the vertices of all living particles, see
+     * {@link Particle#updateVerts(Camera)}.
+     * 
+     * @param camera
+     *            the camera the particles should face, may be null
+     */
+    protected void updateParticleVerts(Camera camera) {
+        ParticleArrays arrays = getParticleArrays();
+        if (arrays != null) {
+            arrays.updateVerts(camera);
+            return;
+        }
+        for (int i = 0; i < particles.length; i++) {
+            Particle particle = particles[i];
+            if (particle.getStatus() == Particle.Status.Alive) {
+                particle.updateVerts(camera);
+            }
         }
     }
 
@@ -850,10 +885,70 @@ public abstract class ParticleSystem extends Node {
         this.velocityAligned = velocityAligned;
     }
 
+    /**
+     * @param i
+     *            index of the particle
+     * @return the particle object at the given index. If particle arrays are
+     *         used the returned object is a snapshot of the particle, changes
+     *         to it are not applied to the particle system.
+     * @see #setUseParticleArrays(boolean)
+     */
     public Particle getParticle(int i) {
+        if (particleArrays != null) {
+            return particleArrays.store(i);
+        }
         return particles[i];
     }
 
+    /**
+     * @return true if the particles are simulated in primitive arrays.
+     * @see #setUseParticleArrays(boolean)
+     */
+    public boolean isUseParticleArrays() {
+        return useParticleArrays;
+    }
+
+    /**
+     * Choose between one {@link Particle} object per particle (default) and
+     * {@link ParticleArrays} holding the state of all particles in primitive
+     * arrays. The latter is a lot faster for large systems, especially with
+     * the standard influences, which are applied in batches. Custom
+     * influences still see Particle objects, which are synchronized with the
+     * arrays for each call.
+     * <p>
+     * Each step of an update is done for all particles before the next one:
+     * the influences are applied to every particle, then all particles are
+     * aged, then dead ones are respawned. The object path does all three for
+     * one particle before moving on to the next, so influences using random
+     * numbers (like a random {@link SimpleParticleInfluenceFactory.BasicWind})
+     * and respawns draw them in a different order, and the two paths give
+     * different, though equally distributed, results.
+     * 
+     * @param useParticleArrays
+     *            true to simulate the particles in primitive arrays
+     */
+    public void setUseParticleArrays(boolean useParticleArrays) {
+        if (!useParticleArrays && particleArrays != null) {
+            particleArrays.storeAll();
+            particleArrays = null;
+        }
+        this.useParticleArrays = useParticleArrays;
+    }
+
+    /**
+     * @return the particle arrays or null if particle objects are used.
+     * @see #setUseParticleArrays(boolean)
+     */
+    public ParticleArrays getParticleArrays() {
+        if (!useParticleArrays || particles == null) {
+            return null;
+        }
+        if (particleArrays == null || !particleArrays.isFor(particles)) {
+            particleArrays = new ParticleArrays(this);
+        }
+        return particleArrays;
+    }
+
     public boolean isActive() {
         return controller.isActive();
     }
@@ -1117,6 +1212,7 @@ public abstract class ParticleSystem extends Node {
         capsule.write(particlesInWorldCoords, "particlesInWorldCoords", true);
         capsule.write(ramp, "ramp", new ParticleAppearanceRamp());
         capsule.write(texAnimation, "texAnimation", new TexAnimation());
+        capsule.write(useParticleArrays, "useParticleArrays", false);
     }
 
     public void read(JMEImporter e) throws IOException {
@@ -1178,6 +1274,8 @@ public abstract class ParticleSystem extends Node {
                 new ParticleAppearanceRamp());
         texAnimation = (TexAnimation) capsule.readSavable("texAnimation",
                 new TexAnimation());
+        useParticleArrays = capsule.readBoolean("useParticleArrays", false);
+        particleArrays = null;
 
         invScale = new Vector3f();
         upXemit = new Vector3f();
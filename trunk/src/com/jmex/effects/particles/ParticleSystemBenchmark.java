@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2003-2008 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors 
+ *   may be used to endorse or promote products derived from this software 
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.jmex.effects.particles;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.jme.math.Vector3f;
+import com.jme.renderer.AbstractCamera;
+import com.jme.renderer.Camera;
+import com.jme.system.DisplaySystem;
+import com.jme.system.dummy.DummySystemProvider;
+
+/**
+ * <code>ParticleSystemBenchmark</code> compares the number of particles
+ * updated per ms by {@link ParticleController} with one {@link Particle}
+ * object per particle and with {@link ParticleArrays}. Each frame runs the
+ * controller with gravity, wind and drag influences and builds the camera
+ * facing quads, like drawing the system would.
+ * <p>
+ * Usage: <code>ParticleSystemBenchmark [particles] [frames]</code>
+ */
+public class ParticleSystemBenchmark {
+
+    public static void main(String[] args) {
+        Logger.getLogger("").setLevel(Level.WARNING);
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        DisplaySystem.setSystemProvider(new DummySystemProvider());
+
+        Camera camera = new AbstractCamera(true) {
+            private static final long serialVersionUID = 1L;
+
+            public int getWidth() {
+                return 640;
+            }
+
+            public int getHeight() {
+                return 480;
+            }
+
+            public void apply() {
+            }
+
+            public void resize(int width, int height) {
+            }
+
+            public void onViewPortChange() {
+            }
+        };
+        camera.setFrame(new Vector3f(0, 10, 100), new Vector3f(-1, 0, 0),
+                new Vector3f(0, 1, 0), new Vector3f(0, 0, -1));
+
+        System.out.println(count + " particles, " + frames + " frames");
+        for (int round = 0; round < 2; round++) {
+            // the first round warms up the JIT
+            double objects = run(count, frames, false, camera);
+            double arrays = run(count, frames, true, camera);
+            if (round == 1) {
+                System.out.println("Particle objects: "
+                        + format(count * frames / objects)
+                        + " particles/ms");
+                System.out.println("ParticleArrays:   "
+                        + format(count * frames / arrays) + " particles/ms");
+            }
+        }
+    }
+
+    /**
+     * @return time in ms
+     */
+    private static double run(int count, int frames, boolean useArrays,
+            Camera camera) {
+        ParticleMesh mesh = ParticleFactory.buildParticles("particles", count);
+        mesh.setEmissionDirection(new Vector3f(0, 1, 0));
+        mesh.setMaximumAngle(0.5f);
+        mesh.setInitialVelocity(0.02f);
+        mesh.setMinimumLifeTime(1000);
+        mesh.setMaximumLifeTime(3000);
+        mesh.setStartSize(0.5f);
+        mesh.setEndSize(0.1f);
+        mesh.addInfluence(SimpleParticleInfluenceFactory.createBasicGravity(
+                new Vector3f(0, -0.00001f, 0), false));
+        mesh.addInfluence(SimpleParticleInfluenceFactory.createBasicWind(
+                0.00001f, new Vector3f(1, 0, 0), true, false));
+        mesh.addInfluence(SimpleParticleInfluenceFactory
+                .createBasicDrag(0.0001f));
+        mesh.setUseParticleArrays(useArrays);
+        mesh.updateGeometricState(0, true);
+        ParticleController controller = mesh.getParticleController();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < frames; i++) {
+            controller.update(0.016f);
+            mesh.updateParticleVerts(camera);
+        }
+        return (System.nanoTime() - start) / 1000000.0;
+    }
+
+    private static String format(double value) {
+        return String.valueOf(Math.round(value * 10) / 10.0);
+    }
+}
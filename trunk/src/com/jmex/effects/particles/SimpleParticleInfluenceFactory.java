@@ -110,6 +110,18 @@ public final class SimpleParticleInfluenceFactory {
             float tStr = (random ? FastMath.nextRandomFloat() * strength : strength);
             p.getVelocity().scaleAdd(tStr * dt, vector, p.getVelocity());
         }
+
+        public void apply(float dt, ParticleArrays particles) {
+            float[] velocities = particles.getVelocities();
+            for (int i = 0, count = particles.getCount(); i < count; i++) {
+                if (particles.isAlive(i)) {
+                    float tStr = (random ? FastMath.nextRandomFloat() * strength : strength) * dt;
+                    velocities[i * 3] += tStr * vector.x;
+                    velocities[i * 3 + 1] += tStr * vector.y;
+                    velocities[i * 3 + 2] += tStr * vector.z;
+                }
+            }
+        }
         
         public void write(JMEExporter e) throws IOException {
             super.write(e);
@@ -174,6 +186,18 @@ public final class SimpleParticleInfluenceFactory {
         public void apply(float dt, Particle p, int index) {
             p.getVelocity().scaleAdd(dt, vector, p.getVelocity());
         }
+
+        public void apply(float dt, ParticleArrays particles) {
+            float[] velocities = particles.getVelocities();
+            float x = dt * vector.x, y = dt * vector.y, z = dt * vector.z;
+            for (int i = 0, count = particles.getCount(); i < count; i++) {
+                if (particles.isAlive(i)) {
+                    velocities[i * 3] += x;
+                    velocities[i * 3 + 1] += y;
+                    velocities[i * 3 + 2] += z;
+                }
+            }
+        }
     
         public void write(JMEExporter e) throws IOException {
             super.write(e);
@@ -219,6 +243,23 @@ public final class SimpleParticleInfluenceFactory {
             velocity.set(p.getVelocity());
             p.getVelocity().addLocal(velocity.multLocal(-dragCoefficient * dt * p.getInvMass()));
         }
+
+        public void apply(float dt, ParticleArrays particles) {
+            float[] velocities = particles.getVelocities();
+            float[] masses = particles.getMasses();
+            for (int i = 0, count = particles.getCount(); i < count; i++) {
+                if (particles.isAlive(i)) {
+                    // same as Particle.getInvMass() for regular masses
+                    float mass = masses[i];
+                    float invMass = mass == 0 ? Float.POSITIVE_INFINITY
+                            : mass == Float.POSITIVE_INFINITY ? 0 : 1f / mass;
+                    float factor = -dragCoefficient * dt * invMass;
+                    velocities[i * 3] += velocities[i * 3] * factor;
+                    velocities[i * 3 + 1] += velocities[i * 3 + 1] * factor;
+                    velocities[i * 3 + 2] += velocities[i * 3 + 2] * factor;
+                }
+            }
+        }
     
         public void write(JMEExporter e) throws IOException {
             super.write(e);
@@ -250,6 +291,7 @@ public final class SimpleParticleInfluenceFactory {
             v3 = new Vector3f();
         private Quaternion rot = new Quaternion();
         private Line line = new Line();
+        private Vector3f position = new Vector3f(), velocity = new Vector3f();
         
         public BasicVortex() {
         }
@@ -344,7 +386,29 @@ public final class SimpleParticleInfluenceFactory {
         public void apply(float dt, Particle p, int index) {
             float dtStr = dt * strength *
                 (random ? FastMath.nextRandomFloat() : 1f);
-            p.getPosition().subtract(line.getOrigin(), v1);
+            apply(dtStr, p.getPosition(), p.getVelocity());
+        }
+
+        public void apply(float dt, ParticleArrays particles) {
+            float[] positions = particles.getPositions();
+            float[] velocities = particles.getVelocities();
+            for (int i = 0, count = particles.getCount(); i < count; i++) {
+                if (!particles.isAlive(i)) {
+                    continue;
+                }
+                float dtStr = dt * strength *
+                    (random ? FastMath.nextRandomFloat() : 1f);
+                position.set(positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2]);
+                velocity.set(velocities[i * 3], velocities[i * 3 + 1], velocities[i * 3 + 2]);
+                apply(dtStr, position, velocity);
+                velocities[i * 3] = velocity.x;
+                velocities[i * 3 + 1] = velocity.y;
+                velocities[i * 3 + 2] = velocity.z;
+            }
+        }
+
+        private void apply(float dtStr, Vector3f position, Vector3f velocity) {
+            position.subtract(line.getOrigin(), v1);
             line.getDirection().cross(v1, v2);
             if (v2.length() == 0) { // particle is on the axis
                 return;
@@ -352,14 +416,14 @@ public final class SimpleParticleInfluenceFactory {
             v2.normalizeLocal();
             if (type == VT_CYLINDER) {
                 rot.multLocal(v2);
-                p.getVelocity().scaleAdd(dtStr, v2, p.getVelocity());
+                velocity.scaleAdd(dtStr, v2, velocity);
                 return;
             }
             v2.cross(line.getDirection(), v1);
             v1.multLocal(radius);
             v1.scaleAdd(height, line.getDirection(), v1);
             v1.addLocal(line.getOrigin());
-            v1.subtractLocal(p.getPosition());
+            v1.subtractLocal(position);
             if (v1.length() == 0) { // particle is on the ring
                 return;
             }
@@ -367,7 +431,7 @@ public final class SimpleParticleInfluenceFactory {
             v1.cross(v2, v3);
             rot.fromAngleAxis(-divergence, v2);
             rot.multLocal(v3);
-            p.getVelocity().scaleAdd(dtStr, v3, p.getVelocity());
+            velocity.scaleAdd(dtStr, v3, velocity);
         }
     
         public void write(JMEExporter e) throws IOException {
@@ -46,12 +46,19 @@ import com.jme.renderer.Renderer;
 import com.jme.scene.TexCoords;
 import com.jme.scene.TriMesh;
 import com.jme.util.Timer;
+import com.jme.util.WorkerPool;
 import com.jme.util.geom.BufferUtils;
 import com.jmex.effects.ProjectedTextureUtil;
 
 /**
  * <code>ProjectedGrid</code>
  * Projected grid mesh
+ * <p>
+ * The vertices, texture coordinates and normals are evaluated in row bands on
+ * the <code>WorkerPool</code> (see {@link #setParallelUpdate(boolean)}), so the
+ * <code>HeightGenerator</code> must allow calls from several threads at once.
+ * Rebuilding can be skipped while the camera and time stay within the
+ * tolerances set by {@link #setUpdateTolerance(float, float, float)}.
  *
  * @author Rikard Herlitz (MrCoder)
  */
@@ -100,8 +107,6 @@ public class ProjectedGrid extends TriMesh {
 	private Vector3f camloc = new Vector3f();
 	private Vector3f camdir = new Vector3f();
 	private Quaternion pointFinal = new Quaternion();
-	private Quaternion pointTop = new Quaternion();
-	private Quaternion pointBottom = new Quaternion();
 	private Vector3f realPoint = new Vector3f();
 
 	public boolean freezeProjector = false;
@@ -117,6 +122,37 @@ public class ProjectedGrid extends TriMesh {
 	private float[] vertBufArray;
 	private float[] normBufArray;
 	private float[] texBufArray;
+
+	//top and bottom edge points (x, z, w) of each grid column
+	private float[] columnArray;
+	private float updateTime;
+	private boolean parallelUpdate = true;
+
+	//camera and time of the last rebuild, and how far they may drift
+	private boolean updated = false;
+	private Vector3f lastCamLocation = new Vector3f();
+	private Vector3f lastCamDirection = new Vector3f();
+	private Vector3f lastCamUp = new Vector3f();
+	private Matrix4f lastProjection = new Matrix4f();
+	private float lastTime;
+	private float moveTolerance = 0;
+	private float turnTolerance = 0;
+	private float timeTolerance = 0;
+
+	//rows below which an update is not split across threads
+	private static final int MIN_ROWS_PER_TASK = 8;
+
+	private final WorkerPool.RangeTask vertexTask = new WorkerPool.RangeTask() {
+		public void run( int start, int end ) {
+			buildVertexRows( start, end );
+		}
+	};
+
+	private final WorkerPool.RangeTask normalTask = new WorkerPool.RangeTask() {
+		public void run( int start, int end ) {
+			buildNormalRows( start, end );
+		}
+	};
 	
 	public ProjectedGrid( String name, Camera cam, int sizeX, int sizeY, float texureScale, HeightGenerator heightGenerator ) {
 		super( name );
@@ -138,6 +174,7 @@ public class ProjectedGrid extends TriMesh {
 		vertBufArray = new float[getVertexCount()*3];
 		normBufArray = new float[getVertexCount()*3];
 		texBufArray = new float[getVertexCount()*2];
+		columnArray = new float[sizeX*6];
 
 		buildVertices();
 		buildTextureCoordinates();
@@ -158,11 +195,12 @@ public class ProjectedGrid extends TriMesh {
 
 		float time = timer.getTimeInSeconds();
 
+		AbstractCamera camera = (AbstractCamera) cam;
+		if( !needsRebuild( camera, time ) ) return;
+
 		camloc.set( cam.getLocation() );
 		camdir.set( cam.getDirection() );
 
-		AbstractCamera camera = (AbstractCamera) cam;
-
 		viewPortWidth = camera.getWidth();
 		viewPortHeight = camera.getHeight();
 		viewPortLeft = camera.getViewPortLeft();
@@ -207,48 +245,97 @@ public class ProjectedGrid extends TriMesh {
 		source.set( 1, 0 );
 		getWorldIntersection( source, modelViewProjectionInverse, intersectBottomRight );
 
-		vertBuf.rewind();
+		//the grid's top and bottom edges, shared by all rows
 		float du = 1.0f / (float) (sizeX - 1);
+		for( int x = 0, i = 0; x < sizeX; x++ ) {
+			float u = x * du;
+			columnArray[i++] = (1 - u) * intersectTopLeft.x + u * intersectTopRight.x;
+			columnArray[i++] = (1 - u) * intersectTopLeft.z + u * intersectTopRight.z;
+			columnArray[i++] = (1 - u) * intersectTopLeft.w + u * intersectTopRight.w;
+			columnArray[i++] = (1 - u) * intersectBottomLeft.x + u * intersectBottomRight.x;
+			columnArray[i++] = (1 - u) * intersectBottomLeft.z + u * intersectBottomRight.z;
+			columnArray[i++] = (1 - u) * intersectBottomLeft.w + u * intersectBottomRight.w;
+		}
+		updateTime = time;
+
+		//normals need the neighbouring rows, so all vertices come first
+		if( parallelUpdate ) {
+			WorkerPool.getPool().invokeRange( sizeY, MIN_ROWS_PER_TASK, vertexTask );
+			WorkerPool.getPool().invokeRange( sizeY, MIN_ROWS_PER_TASK, normalTask );
+		}
+		else {
+			buildVertexRows( 0, sizeY );
+			buildNormalRows( 0, sizeY );
+		}
+	}
+
+	/**
+	 * Decides whether the camera or time moved enough since the last rebuild,
+	 * and if so remembers them for the next call.
+	 */
+	private boolean needsRebuild( AbstractCamera camera, float time ) {
+		if( updated
+				&& Math.abs( time - lastTime ) <= timeTolerance
+				&& lastCamLocation.distanceSquared( camera.getLocation() ) <= moveTolerance * moveTolerance
+				&& withinTurn( lastCamDirection, camera.getDirection() )
+				&& withinTurn( lastCamUp, camera.getUp() )
+				&& lastProjection.equals( camera.getProjectionMatrix() ) ) {
+			return false;
+		}
+		updated = true;
+		lastTime = time;
+		lastCamLocation.set( camera.getLocation() );
+		lastCamDirection.set( camera.getDirection() );
+		lastCamUp.set( camera.getUp() );
+		lastProjection.set( camera.getProjectionMatrix() );
+		return true;
+	}
+
+	private boolean withinTurn( Vector3f last, Vector3f current ) {
+		if( last.equals( current ) ) {
+			return true;
+		}
+		return turnTolerance > 0
+				&& last.dot( current ) >= FastMath.cos( turnTolerance );
+	}
+
+	/**
+	 * Evaluates the vertices and texture coordinates of the rows
+	 * <code>start</code> (inclusive) to <code>end</code> (exclusive) into the
+	 * backing arrays.
+	 */
+	private void buildVertexRows( int start, int end ) {
 		float dv = 1.0f / (float) (sizeY - 1);
-		float u = 0, v = 0;
-		int index = 0;
-		for( int y = 0; y < sizeY; y++ ) {
-			for( int x = 0; x < sizeX; x++ ) {
-				interpolate( intersectTopLeft, intersectTopRight, u, pointTop );
-				interpolate( intersectBottomLeft, intersectBottomRight, u, pointBottom );
-				interpolate( pointTop, pointBottom, v, pointFinal );
-				pointFinal.x /= pointFinal.w;
-				pointFinal.z /= pointFinal.w;
-				realPoint.set( pointFinal.x,
-							   heightGenerator.getHeight( pointFinal.x, pointFinal.z, time ),
-							   pointFinal.z );
-
-				vertBufArray[index++] = realPoint.x;
-				vertBufArray[index++] = realPoint.y;
-				vertBufArray[index++] = realPoint.z;
-
-				u += du;
+		float time = updateTime;
+		int index = start * sizeX * 3;
+		int texIndex = start * sizeX * 2;
+		for( int y = start; y < end; y++ ) {
+			float v = y * dv;
+			for( int x = 0, i = 0; x < sizeX; x++, i += 6 ) {
+				float w = (1 - v) * columnArray[i + 2] + v * columnArray[i + 5];
+				float pointX = ((1 - v) * columnArray[i] + v * columnArray[i + 3]) / w;
+				float pointZ = ((1 - v) * columnArray[i + 1] + v * columnArray[i + 4]) / w;
+
+				vertBufArray[index++] = pointX;
+				vertBufArray[index++] = heightGenerator.getHeight( pointX, pointZ, time );
+				vertBufArray[index++] = pointZ;
+
+				texBufArray[texIndex++] = pointX * textureScale;
+				texBufArray[texIndex++] = pointZ * textureScale;
 			}
-			v += dv;
-			u = 0;
 		}
-		vertBuf.put( vertBufArray );
+	}
 
-		texs.rewind();
-		for( int i = 0; i < getVertexCount(); i++ ) {
-			texBufArray[i*2] = vertBufArray[i*3] * textureScale;
-			texBufArray[i*2+1] = vertBufArray[i*3+2] * textureScale;
-		}
-		texs.put( texBufArray );
-
-		normBuf.rewind();
-		oppositePoint.set( 0, 0, 0 );
-		adjacentPoint.set( 0, 0, 0 );
-		rootPoint.set( 0, 0, 0 );
-		tempNorm.set( 0, 0, 0 );
-		int adj = 0, opp = 0, normalIndex = 0;
-		for( int row = 0; row < sizeY; row++ ) {
+	/**
+	 * Computes the normals of the rows <code>start</code> (inclusive) to
+	 * <code>end</code> (exclusive) from the vertex array, and copies the rows
+	 * of all three arrays into the mesh's buffers.
+	 */
+	private void buildNormalRows( int start, int end ) {
+		int adj, opp;
+		for( int row = start; row < end; row++ ) {
 			for( int col = 0; col < sizeX; col++ ) {
+				int normalIndex = row * sizeX + col;
 				if( row == sizeY - 1 ) {
 					if( col == sizeX - 1 ) { // last row, last col
 						// up cross left
@@ -273,21 +360,88 @@ public class ProjectedGrid extends TriMesh {
 						opp = normalIndex + 1;
 					}
 				}
-				rootPoint.set(vertBufArray[normalIndex*3],vertBufArray[normalIndex*3+1],vertBufArray[normalIndex*3+2]);
-				adjacentPoint.set(vertBufArray[adj*3],vertBufArray[adj*3+1],vertBufArray[adj*3+2]);
-				oppositePoint.set(vertBufArray[opp*3],vertBufArray[opp*3+1],vertBufArray[opp*3+2]);
-				tempNorm.set( adjacentPoint ).subtractLocal( rootPoint )
-						.crossLocal( oppositePoint.subtractLocal( rootPoint ) )
-						.normalizeLocal();
-
-				normBufArray[normalIndex*3] = tempNorm.x;
-				normBufArray[normalIndex*3+1] = tempNorm.y;
-				normBufArray[normalIndex*3+2] = tempNorm.z;
-
-				normalIndex++;
+				int root = normalIndex * 3;
+				adj *= 3;
+				opp *= 3;
+				float ax = vertBufArray[adj] - vertBufArray[root];
+				float ay = vertBufArray[adj + 1] - vertBufArray[root + 1];
+				float az = vertBufArray[adj + 2] - vertBufArray[root + 2];
+				float ox = vertBufArray[opp] - vertBufArray[root];
+				float oy = vertBufArray[opp + 1] - vertBufArray[root + 1];
+				float oz = vertBufArray[opp + 2] - vertBufArray[root + 2];
+				float nx = ay * oz - az * oy;
+				float ny = az * ox - ax * oz;
+				float nz = ax * oy - ay * ox;
+				float length = FastMath.sqrt( nx * nx + ny * ny + nz * nz );
+				if( length != 0 ) {
+					nx /= length;
+					ny /= length;
+					nz /= length;
+				}
+
+				normBufArray[root] = nx;
+				normBufArray[root + 1] = ny;
+				normBufArray[root + 2] = nz;
 			}
 		}
-		normBuf.put( normBufArray );
+
+		//each band writes its own part of the buffers
+		int first = start * sizeX, count = (end - start) * sizeX;
+		FloatBuffer out = vertBuf.duplicate();
+		out.position( first * 3 );
+		out.put( vertBufArray, first * 3, count * 3 );
+		out = normBuf.duplicate();
+		out.position( first * 3 );
+		out.put( normBufArray, first * 3, count * 3 );
+		out = texs.duplicate();
+		out.position( first * 2 );
+		out.put( texBufArray, first * 2, count * 2 );
+	}
+
+	/**
+	 * @param parallel
+	 *            true (the default) to evaluate the grid in row bands on the
+	 *            <code>WorkerPool</code>, false to evaluate it on the calling
+	 *            thread only, e.g. for a height generator that is not thread
+	 *            safe.
+	 */
+	public void setParallelUpdate( boolean parallel ) {
+		this.parallelUpdate = parallel;
+	}
+
+	public boolean isParallelUpdate() {
+		return parallelUpdate;
+	}
+
+	/**
+	 * Lets <code>update</code> keep the current grid while the camera and time
+	 * stay close to those of the last rebuild. Any change of the projection
+	 * always rebuilds the grid. All tolerances default to 0, which rebuilds
+	 * whenever anything changed.
+	 *
+	 * @param move
+	 *            the distance the camera may move.
+	 * @param turn
+	 *            the angle, in radians, the camera may turn.
+	 * @param time
+	 *            the seconds the height generator's time may advance.
+	 */
+	public void setUpdateTolerance( float move, float turn, float time ) {
+		this.moveTolerance = move;
+		this.turnTolerance = turn;
+		this.timeTolerance = time;
+	}
+
+	public float getMoveTolerance() {
+		return moveTolerance;
+	}
+
+	public float getTurnTolerance() {
+		return turnTolerance;
+	}
+
+	public float getTimeTolerance() {
+		return timeTolerance;
 	}
 
 	private Matrix4f getMinMax( Vector3f fakeLoc, Vector3f fakePoint, Camera cam ) {
@@ -364,13 +518,6 @@ public class ProjectedGrid extends TriMesh {
 		return rangeMatrix;
 	}
 
-	private void interpolate( Quaternion beginVec, Quaternion finalVec, float changeAmnt, Quaternion resultVec ) {
-		resultVec.x = (1 - changeAmnt) * beginVec.x + changeAmnt * finalVec.x;
-//		resultVec.y = (1 - changeAmnt) * beginVec.y + changeAmnt * finalVec.y;
-		resultVec.z = (1 - changeAmnt) * beginVec.z + changeAmnt * finalVec.z;
-		resultVec.w = (1 - changeAmnt) * beginVec.w + changeAmnt * finalVec.w;
-	}
-
 	private void interpolate( Vector3f beginVec, Vector3f finalVec, float changeAmnt, Vector3f resultVec ) {
 		resultVec.x = (1 - changeAmnt) * beginVec.x + changeAmnt * finalVec.x;
 		resultVec.y = (1 - changeAmnt) * beginVec.y + changeAmnt * finalVec.y;
@@ -585,55 +732,14 @@ public class ProjectedGrid extends TriMesh {
 	 * <code>buildNormals</code> calculates the normals of each vertex that
 	 * makes up the block of terrain.
 	 */
-	Vector3f oppositePoint = new Vector3f();
-	Vector3f adjacentPoint = new Vector3f();
-	Vector3f rootPoint = new Vector3f();
-	Vector3f tempNorm = new Vector3f();
-
 	private void buildNormals() {
 		normBuf = BufferUtils.createVector3Buffer( normBuf, getVertexCount() );
 		setNormalBuffer( normBuf );
 
-		oppositePoint.set( 0, 0, 0 );
-		adjacentPoint.set( 0, 0, 0 );
-		rootPoint.set( 0, 0, 0 );
-		tempNorm.set( 0, 0, 0 );
-		int adj = 0, opp = 0, normalIndex = 0;
-		for( int row = 0; row < sizeY; row++ ) {
-			for( int col = 0; col < sizeX; col++ ) {
-				BufferUtils.populateFromBuffer( rootPoint, vertBuf, normalIndex );
-				if( row == sizeY - 1 ) {
-					if( col == sizeX - 1 ) { // last row, last col
-						// up cross left
-						adj = normalIndex - sizeX;
-						opp = normalIndex - 1;
-					}
-					else { // last row, except for last col
-						// right cross up
-						adj = normalIndex + 1;
-						opp = normalIndex - sizeX;
-					}
-				}
-				else {
-					if( col == sizeY - 1 ) { // last column except for last row
-						// left cross down
-						adj = normalIndex - 1;
-						opp = normalIndex + sizeX;
-					}
-					else { // most cases
-						// down cross right
-						adj = normalIndex + sizeX;
-						opp = normalIndex + 1;
-					}
-				}
-				BufferUtils.populateFromBuffer( adjacentPoint, vertBuf, adj );
-				BufferUtils.populateFromBuffer( oppositePoint, vertBuf, opp );
-				tempNorm.set( adjacentPoint ).subtractLocal( rootPoint )
-						.crossLocal( oppositePoint.subtractLocal( rootPoint ) )
-						.normalizeLocal();
-				BufferUtils.setInBuffer( tempNorm, normBuf, normalIndex );
-				normalIndex++;
-			}
-		}
+		vertBuf.rewind();
+		vertBuf.get( vertBufArray );
+		texs.rewind();
+		texs.get( texBufArray );
+		buildNormalRows( 0, sizeY );
 	}
 }
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2003-2008 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors 
+ *   may be used to endorse or promote products derived from this software 
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jmex.effects.water;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.jme.math.Vector3f;
+import com.jme.renderer.AbstractCamera;
+import com.jme.system.DisplaySystem;
+import com.jme.system.dummy.DummySystemProvider;
+import com.jme.util.WorkerPool;
+
+/**
+ * <code>ProjectedGridBenchmark</code> reports the average time of
+ * {@link ProjectedGrid#update()} for a range of grid sizes, evaluated on the
+ * calling thread only and in parallel on the <code>WorkerPool</code>, and
+ * with an update tolerance that skips rebuilds for a slowly moving camera.
+ * <p>
+ * Usage: <code>ProjectedGridBenchmark [frames]</code>
+ */
+public class ProjectedGridBenchmark {
+
+    public static void main(String[] args) {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        Logger.getLogger("").setLevel(Level.WARNING);
+        DisplaySystem.setSystemProvider(new DummySystemProvider());
+        DisplaySystem.getDisplaySystem();
+
+        DataCamera cam = new DataCamera();
+        WaterHeightGenerator generator = new WaterHeightGenerator();
+        System.out.println(WorkerPool.getPool().getThreadCount()
+                + " worker threads");
+
+        for (int size = 64; size <= 512; size *= 2) {
+            ProjectedGrid grid = new ProjectedGrid("grid", cam, size, size,
+                    0.01f, generator);
+            grid.setParallelUpdate(false);
+            float serial = run(grid, cam, frames);
+            grid.setParallelUpdate(true);
+            float parallel = run(grid, cam, frames);
+            // 5 cm or 0.1 degree of camera movement, 1/30 s of animation
+            grid.setUpdateTolerance(0.05f, 0.0017f, 1 / 30f);
+            float tolerant = run(grid, cam, frames);
+            System.out.println(size + "x" + size + ": serial "
+                    + String.format("%.3f", serial) + " ms, parallel "
+                    + String.format("%.3f", parallel)
+                    + " ms, parallel with tolerance "
+                    + String.format("%.3f", tolerant) + " ms");
+        }
+        WorkerPool.shutdown();
+    }
+
+    /**
+     * @return the average update time in milliseconds, after a warm up.
+     */
+    private static float run(ProjectedGrid grid, DataCamera cam, int frames) {
+        long total = 0;
+        for (int i = -frames / 4; i < frames; i++) {
+            // creep forward about 1 cm per frame
+            cam.setLocation(new Vector3f(0, 10, i * 0.01f));
+            cam.update();
+            long start = System.nanoTime();
+            grid.update();
+            if (i >= 0) {
+                total += System.nanoTime() - start;
+            }
+        }
+        return total / 1e6f / frames;
+    }
+
+    /** a camera without a display, only its data is used */
+    private static class DataCamera extends AbstractCamera {
+        private static final long serialVersionUID = 1L;
+
+        DataCamera() {
+            super(true);
+            setFrustumPerspective(45, 4 / 3f, 1, 1000);
+            setFrame(new Vector3f(0, 10, 0), new Vector3f(-1, 0, 0),
+                    new Vector3f(0, 0.96f, 0.28f), new Vector3f(0, -0.28f,
+                            0.96f));
+            update();
+        }
+
+        @Override
+        public int getHeight() {
+            return 768;
+        }
+
+        @Override
+        public int getWidth() {
+            return 1024;
+        }
+
+        public void apply() {
+        }
+
+        public void resize(int width, int height) {
+        }
+
+        public void onViewPortChange() {
+        }
+    }
+}
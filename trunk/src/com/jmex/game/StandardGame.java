@@ -99,6 +99,13 @@ public final class StandardGame extends AbstractGame implements Runnable {
     private Canvas canvas;
 
     private Lock updateLock;
+
+    private int fixedUpdateRate;
+    private Thread updateThread;
+    private volatile boolean fixedUpdating;
+    private TransformInterpolator interpolator;
+    private volatile float logicRate;
+    private volatile float renderRate;
     
     public StandardGame(String gameName) {
         this(gameName, GameType.GRAPHICAL, null);
@@ -207,8 +214,14 @@ public final class StandardGame extends AbstractGame implements Runnable {
             preferredTicksPerFrame = Math.round((float)timer.getResolution() / (float)preferredFPS);
         }
 
+        if (fixedUpdateRate > 0) {
+            startFixedUpdates();
+        }
+
         // Main game loop
         float tpf;
+        long rateStart = System.nanoTime();
+        int renderedFrames = 0;
         started = true;
         while ((!finished) && (!display.isClosing())) {
             // Fixed framerate Start
@@ -219,13 +232,37 @@ public final class StandardGame extends AbstractGame implements Runnable {
             timer.update();
             tpf = timer.getTimePerFrame();
 
-            if (type == GameType.GRAPHICAL) {
-                InputSystem.update();
+            if (fixedUpdateRate > 0) {
+                lock();
+                try {
+                    if (type == GameType.GRAPHICAL) {
+                        InputSystem.update();
+                    }
+                    updateTasks();
+                    interpolator.apply(interpolator.getAlpha(System.nanoTime(),
+                            1000000000L / fixedUpdateRate));
+                    render(tpf);
+                    interpolator.restore();
+                } finally {
+                    unlock();
+                }
+            } else {
+                if (type == GameType.GRAPHICAL) {
+                    InputSystem.update();
+                }
+                update(tpf);
+                render(tpf);
             }
-            update(tpf);
-            render(tpf);
             display.getRenderer().displayBackBuffer();
 
+            renderedFrames++;
+            long rateTime = System.nanoTime() - rateStart;
+            if (rateTime >= 1000000000L) {
+                renderRate = renderedFrames * 1e9f / rateTime;
+                renderedFrames = 0;
+                rateStart += rateTime;
+            }
+
             // Fixed framerate End
             if (preferredTicksPerFrame >= 0) {
                 frames++;
@@ -247,10 +284,90 @@ public final class StandardGame extends AbstractGame implements Runnable {
             if (THREAD_FRIENDLY) Thread.yield();
         }
         started = false;
+        stopFixedUpdates();
         cleanup();
         quit();
     }
 
+    private void startFixedUpdates() {
+        fixedUpdating = true;
+        updateThread = new Thread(new Runnable() {
+            public void run() {
+                runFixedUpdates();
+            }
+        });
+        updateThread.setName("Fixed Update");
+        updateThread.setUncaughtExceptionHandler(exceptionHandler);
+        // the OpenGL thread holds the lock from the start of run()
+        unlock();
+        updateThread.start();
+    }
+
+    private void stopFixedUpdates() {
+        if (updateThread == null) {
+            return;
+        }
+        fixedUpdating = false;
+        if (Thread.currentThread() != updateThread) {
+            try {
+                updateThread.join();
+            } catch (InterruptedException exc) {
+                logger.log(Level.SEVERE, "Interrupted while waiting for the fixed update thread", exc);
+            }
+        }
+        updateThread = null;
+        lock();
+    }
+
+    /**
+     * Main loop of the fixed update thread: steps the GameStates at the fixed
+     * update rate, between frames, and captures the transforms of the tracked
+     * spatials after every step. When a step takes longer than its interval
+     * the following steps run back to back; more than a few steps behind, the
+     * backlog is dropped instead of letting the updates spiral.
+     */
+    private void runFixedUpdates() {
+        long step = 1000000000L / fixedUpdateRate;
+        float tpf = 1f / fixedUpdateRate;
+        long next = System.nanoTime();
+        long rateStart = next;
+        int steps = 0;
+        interpolator.capture(next);
+        while (fixedUpdating && !finished) {
+            long now = System.nanoTime();
+            if (now < next) {
+                long wait = next - now;
+                try {
+                    Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+                } catch (InterruptedException exc) {
+                    logger.log(Level.SEVERE, "Interrupted while waiting for the next update step", exc);
+                }
+                continue;
+            }
+
+            lock();
+            try {
+                GameStateManager.getInstance().update(tpf);
+                interpolator.capture(now);
+            } finally {
+                unlock();
+            }
+
+            next += step;
+            if (now - next > 5 * step) {
+                next = now;
+            }
+            steps++;
+            long rateTime = now - rateStart;
+            if (rateTime >= 1000000000L) {
+                logicRate = steps * 1e9f / rateTime;
+                steps = 0;
+                rateStart = now;
+            }
+            if (THREAD_FRIENDLY) Thread.yield();
+        }
+    }
+
     protected void initSystem() {
         if (type == GameType.GRAPHICAL) {
 
@@ -346,11 +463,19 @@ public final class StandardGame extends AbstractGame implements Runnable {
         unlock();
         lock();
 
-        // Execute updateQueue item
-        GameTaskQueueManager.getManager().getQueue(GameTaskQueue.UPDATE).execute();
+        updateTasks();
 
         // Update the GameStates
         GameStateManager.getInstance().update(interpolation);
+    }
+
+    /**
+     * The part of the update that stays in the OpenGL thread when the
+     * GameStates are updated at a fixed rate.
+     */
+    private void updateTasks() {
+        // Execute updateQueue item
+        GameTaskQueueManager.getManager().getQueue(GameTaskQueue.UPDATE).execute();
 
         if (type == GameType.GRAPHICAL) {
 
@@ -576,6 +701,82 @@ public final class StandardGame extends AbstractGame implements Runnable {
         updateLock.unlock();
     }
 
+    /**
+     * Updates the GameStates at a fixed rate, independent of the frame rate,
+     * instead of once per frame. Must be called before start().
+     * <p>
+     * The fixed rate updates are interleaved with the frames, they never run
+     * at the same time as rendering: the GameStates share the scene graph
+     * with the renderer, so an update step and a frame each hold the update
+     * lock for their whole duration. The steps are run by a separate
+     * "Fixed Update" thread, which only lets them fill the time the OpenGL
+     * thread spends swapping buffers or waiting for the vertical sync or the
+     * preferred frame rate; a step that takes longer than that delays the
+     * next frame. As the lock is fair a backlog of steps alternates with
+     * frames instead of starving them.
+     * <p>
+     * The OpenGL thread keeps polling input, executing the update and render
+     * queues, updating audio and rendering, so everything submitted through
+     * GameTaskQueueManager still runs in the OpenGL thread. GameStates get the
+     * fixed step as their tpf. Spatials registered with
+     * getTransformInterpolator() are rendered between their last two updated
+     * transforms, which hides the rate difference at the cost of one step of
+     * latency. Cameras are not interpolated.
+     * 
+     * @param stepsPerSecond
+     *            the update rate, or 0 (the default) to update the
+     *            GameStates once per frame
+     */
+    public void setFixedUpdateRate(int stepsPerSecond) {
+        if (gameThread != null) {
+            throw new IllegalStateException("The update rate must be set before the game is started.");
+        }
+        if (stepsPerSecond < 0) {
+            throw new IllegalArgumentException("stepsPerSecond can not be negative.");
+        }
+        fixedUpdateRate = stepsPerSecond;
+        if (stepsPerSecond > 0 && interpolator == null) {
+            interpolator = new TransformInterpolator();
+        }
+    }
+
+    public int getFixedUpdateRate() {
+        return fixedUpdateRate;
+    }
+
+    /**
+     * @return the interpolator blending the transforms of the fixed rate
+     *         updates for rendering, or null if no fixed update rate has been
+     *         set.
+     * @see #setFixedUpdateRate(int)
+     */
+    public TransformInterpolator getTransformInterpolator() {
+        return interpolator;
+    }
+
+    /**
+     * @return the number of GameState updates per second over the last
+     *         second. Without a fixed update rate this equals the render rate.
+     */
+    public float getLogicRate() {
+        return fixedUpdateRate > 0 ? logicRate : renderRate;
+    }
+
+    /**
+     * @return the number of frames rendered per second over the last second.
+     */
+    public float getRenderRate() {
+        return renderRate;
+    }
+
+    /**
+     * @return true if the current thread is the thread running the fixed
+     *         rate updates.
+     */
+    public boolean inFixedUpdateThread() {
+        return updateThread != null && Thread.currentThread() == updateThread;
+    }
+
     public void setIcons( Image[] icons) {
         this.icons = icons;
     }
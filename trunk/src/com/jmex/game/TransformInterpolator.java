@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2003-2008 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors 
+ *   may be used to endorse or promote products derived from this software 
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jmex.game;
+
+import java.util.ArrayList;
+
+import com.jme.math.Quaternion;
+import com.jme.math.Vector3f;
+import com.jme.scene.Node;
+import com.jme.scene.Spatial;
+
+/**
+ * <code>TransformInterpolator</code> keeps the last two snapshots of the world
+ * transforms of a set of tracked spatials, as captured after each fixed rate
+ * update, and blends between them when rendering at a different rate.
+ * <p>
+ * {@link #capture(long)} is called after every update step and writes the
+ * transforms into the older of its two buffers, which then becomes the
+ * current one. {@link #apply(float)} saves the world transforms of the
+ * tracked spatials and sets them (and those of their children, including
+ * world bounds) to the blend of the previous and the current snapshot, and
+ * {@link #restore()} puts back the saved ones, so changes made to the scene
+ * after the last capture are kept. The methods do not synchronize with the
+ * scene graph, the caller has to make sure no update step runs between
+ * capture, apply and restore ({@link StandardGame} holds its update lock
+ * around all of them).
+ * <p>
+ * Spatials may be tracked or untracked from any thread; the change shows up
+ * with the next capture and that first snapshot is not interpolated.
+ */
+public class TransformInterpolator {
+
+    /** floats per spatial: translation, rotation, scale */
+    private static final int STRIDE = 10;
+
+    private final ArrayList<Spatial> tracked = new ArrayList<Spatial>();
+    private boolean trackedChanged;
+
+    private Snapshot previous = new Snapshot();
+    private Snapshot current = new Snapshot();
+
+    private Spatial[] applied = new Spatial[0];
+    private float[] saved = new float[0];
+
+    private final Quaternion q1 = new Quaternion();
+    private final Quaternion q2 = new Quaternion();
+
+    private static class Snapshot {
+        Spatial[] spatials = new Spatial[0];
+        float[] data = new float[0];
+        long time;
+    }
+
+    /**
+     * Adds a spatial whose rendered transform is interpolated between
+     * update steps. Children of a tracked node follow it.
+     */
+    public synchronized void track(Spatial spatial) {
+        if (!tracked.contains(spatial)) {
+            tracked.add(spatial);
+            trackedChanged = true;
+        }
+    }
+
+    public synchronized void untrack(Spatial spatial) {
+        if (tracked.remove(spatial)) {
+            trackedChanged = true;
+        }
+    }
+
+    public synchronized int getTrackedCount() {
+        return tracked.size();
+    }
+
+    /**
+     * Publishes the current world transforms of the tracked spatials as the
+     * newest snapshot.
+     *
+     * @param time
+     *            the time stamp of the snapshot, in the units later passed
+     *            to {@link #getAlpha(long, long)}
+     */
+    public void capture(long time) {
+        Snapshot s = previous;
+        synchronized (this) {
+            if (trackedChanged || s.spatials.length != tracked.size()) {
+                s.spatials = tracked.toArray(new Spatial[tracked.size()]);
+                trackedChanged = false;
+            } else if (s.spatials != current.spatials) {
+                System.arraycopy(current.spatials, 0, s.spatials, 0,
+                        s.spatials.length);
+            }
+        }
+        Spatial[] spatials = s.spatials;
+        if (s.data.length != spatials.length * STRIDE) {
+            s.data = new float[spatials.length * STRIDE];
+        }
+        store(spatials, s.data);
+        s.time = time;
+        previous = current;
+        current = s;
+    }
+
+    /**
+     * @return how far <code>now</code> lies past the newest snapshot, as a
+     *         fraction of <code>step</code> clamped to [0, 1].
+     */
+    public float getAlpha(long now, long step) {
+        if (step <= 0) {
+            return 1;
+        }
+        float alpha = (float) (now - current.time) / step;
+        return alpha < 0 ? 0 : alpha > 1 ? 1 : alpha;
+    }
+
+    /**
+     * Sets the tracked spatials to the transforms blended between the two
+     * newest snapshots. An alpha of 0 shows the previous snapshot, 1 the
+     * newest one. Spatials that were not part of both snapshots are set to
+     * the newest one. The transforms the spatials had before are saved for
+     * {@link #restore()}.
+     */
+    public void apply(float alpha) {
+        Snapshot p = previous, c = current;
+        boolean blend = alpha < 1 && p.spatials.length == c.spatials.length
+                && p.data.length == c.data.length;
+        Spatial[] spatials = c.spatials;
+        float[] cd = c.data, pd = p.data;
+        if (saved.length != cd.length) {
+            saved = new float[cd.length];
+        }
+        applied = spatials;
+        store(spatials, saved);
+        for (int i = 0, o = 0; i < spatials.length; i++, o += STRIDE) {
+            Spatial s = spatials[i];
+            if ((s.getLocks() & Spatial.LOCKED_TRANSFORMS) != 0) {
+                continue;
+            }
+            Vector3f t = s.getWorldTranslation();
+            Quaternion r = s.getWorldRotation();
+            Vector3f sc = s.getWorldScale();
+            if (blend && p.spatials[i] == s) {
+                float b = 1 - alpha;
+                t.set(pd[o] * b + cd[o] * alpha, pd[o + 1] * b + cd[o + 1]
+                        * alpha, pd[o + 2] * b + cd[o + 2] * alpha);
+                q1.set(pd[o + 3], pd[o + 4], pd[o + 5], pd[o + 6]);
+                q2.set(cd[o + 3], cd[o + 4], cd[o + 5], cd[o + 6]);
+                r.slerp(q1, q2, alpha);
+                sc.set(pd[o + 7] * b + cd[o + 7] * alpha, pd[o + 8] * b
+                        + cd[o + 8] * alpha, pd[o + 9] * b + cd[o + 9] * alpha);
+            } else {
+                set(s, cd, o);
+            }
+            update(s);
+        }
+    }
+
+    /**
+     * Sets the spatials of the last {@link #apply(float)} back to the
+     * transforms they had before it, including changes made after the newest
+     * snapshot was captured.
+     */
+    public void restore() {
+        Spatial[] spatials = applied;
+        float[] data = saved;
+        for (int i = 0, o = 0; i < spatials.length; i++, o += STRIDE) {
+            Spatial s = spatials[i];
+            if ((s.getLocks() & Spatial.LOCKED_TRANSFORMS) != 0) {
+                continue;
+            }
+            set(s, data, o);
+            update(s);
+        }
+        applied = new Spatial[0];
+    }
+
+    private static void store(Spatial[] spatials, float[] data) {
+        for (int i = 0, o = 0; i < spatials.length; i++, o += STRIDE) {
+            Vector3f t = spatials[i].getWorldTranslation();
+            Quaternion r = spatials[i].getWorldRotation();
+            Vector3f sc = spatials[i].getWorldScale();
+            data[o] = t.x;
+            data[o + 1] = t.y;
+            data[o + 2] = t.z;
+            data[o + 3] = r.x;
+            data[o + 4] = r.y;
+            data[o + 5] = r.z;
+            data[o + 6] = r.w;
+            data[o + 7] = sc.x;
+            data[o + 8] = sc.y;
+            data[o + 9] = sc.z;
+        }
+    }
+
+    private static void set(Spatial s, float[] data, int o) {
+        s.getWorldTranslation().set(data[o], data[o + 1], data[o + 2]);
+        s.getWorldRotation().set(data[o + 3], data[o + 4], data[o + 5],
+                data[o + 6]);
+        s.getWorldScale().set(data[o + 7], data[o + 8], data[o + 9]);
+    }
+
+    private void update(Spatial s) {
+        updateChildren(s);
+        if ((s.getLocks() & Spatial.LOCKED_BOUNDS) == 0) {
+            s.updateWorldBound();
+            s.propagateBoundToRoot();
+        }
+    }
+
+    private void updateChildren(Spatial spatial) {
+        if (!(spatial instanceof Node)) {
+            return;
+        }
+        Node node = (Node) spatial;
+        for (int i = 0, n = node.getQuantity(); i < n; i++) {
+            Spatial child = node.getChild(i);
+            child.updateWorldVectors();
+            updateChildren(child);
+            if ((child.getLocks() & Spatial.LOCKED_BOUNDS) == 0) {
+                child.updateWorldBound();
+            }
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2003-2008 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors 
+ *   may be used to endorse or promote products derived from this software 
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.jmex.model.collada;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.jme.scene.Node;
+import com.jme.scene.Spatial;
+import com.jme.scene.TriMesh;
+import com.jme.system.DisplaySystem;
+import com.jme.system.dummy.DummySystemProvider;
+
+/**
+ * <code>ColladaImporterBenchmark</code> compares load time and peak heap use
+ * of {@link ColladaImporter} and {@link ColladaStreamImporter} on the same
+ * file. Without a file argument a document with a number of textured grid
+ * meshes is generated in the temp directory. Direct buffers live outside the
+ * heap and are not part of the peak figure for either importer.
+ * <br>
+ * ColladaImporter's geometry optimization is turned off, as its run time
+ * grows with the square of the vertex count and would hide the parsing cost.
+ * <p>
+ * Usage: <code>ColladaImporterBenchmark [file.dae | geometries gridSize] [runs]</code>
+ */
+public class ColladaImporterBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        Logger.getLogger("").setLevel(Level.SEVERE);
+        DisplaySystem.setSystemProvider(new DummySystemProvider());
+        DisplaySystem.getDisplaySystem();
+
+        File file;
+        int runs;
+        if (args.length > 0 && args[0].toLowerCase().endsWith(".dae")) {
+            file = new File(args[0]);
+            runs = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        } else {
+            int geometries = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+            int gridSize = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+            runs = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+            file = File.createTempFile("collada-benchmark", ".dae");
+            file.deleteOnExit();
+            writeGrids(file, geometries, gridSize);
+        }
+        System.out.println(file + ": " + (file.length() / 1024) + " kB, "
+                + runs + " runs");
+        ColladaImporter.OPTIMIZE_GEOMETRY = false;
+        ColladaImporter.squelchErrors(true);
+
+        for (int round = 0; round < 2; round++) {
+            // the first round warms up the JIT
+            long legacyTime = Long.MAX_VALUE, streamTime = Long.MAX_VALUE;
+            long legacyHeap = 0, streamHeap = 0;
+            Node legacy = null, stream = null;
+            for (int i = 0; i < runs; i++) {
+                legacy = null;
+                resetPeaks();
+                long start = System.nanoTime();
+                InputStream in = open(file);
+                ColladaImporter.load(in, "legacy");
+                legacy = ColladaImporter.getModel();
+                ColladaImporter.cleanUp();
+                in.close();
+                legacyTime = Math.min(legacyTime, System.nanoTime() - start);
+                legacyHeap = Math.max(legacyHeap, peakHeap());
+
+                stream = null;
+                resetPeaks();
+                start = System.nanoTime();
+                in = open(file);
+                stream = new ColladaStreamImporter().load(in, "stream");
+                in.close();
+                streamTime = Math.min(streamTime, System.nanoTime() - start);
+                streamHeap = Math.max(streamHeap, peakHeap());
+            }
+            if (round == 1) {
+                print("ColladaImporter:       ", legacyTime, legacyHeap,
+                        legacy);
+                print("ColladaStreamImporter: ", streamTime, streamHeap,
+                        stream);
+            }
+        }
+    }
+
+    private static InputStream open(File file) throws IOException {
+        return new BufferedInputStream(new FileInputStream(file), 64 * 1024);
+    }
+
+    private static void print(String label, long time, long heap, Node model) {
+        int[] counts = new int[2];
+        count(model, counts);
+        System.out.println(label + (time / 1000000) + " ms, peak heap "
+                + (heap / (1024 * 1024)) + " MB, " + counts[0]
+                + " triangles, " + counts[1] + " vertices");
+    }
+
+    private static void count(Spatial spatial, int[] counts) {
+        if (spatial instanceof TriMesh) {
+            counts[0] += ((TriMesh) spatial).getTriangleCount();
+            counts[1] += ((TriMesh) spatial).getVertexCount();
+        } else if (spatial instanceof Node && ((Node) spatial).getChildren() != null) {
+            List<Spatial> children = ((Node) spatial).getChildren();
+            for (int i = 0; i < children.size(); i++) {
+                count(children.get(i), counts);
+            }
+        }
+    }
+
+    private static void resetPeaks() {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    /**
+     * Writes a document with <code>geometries</code> grids of
+     * <code>size</code> x <code>size</code> quads, each with positions,
+     * normals and texture coordinates indexed separately, the way most
+     * exporters write them.
+     */
+    private static void writeGrids(File file, int geometries, int size)
+            throws IOException {
+        Writer out = new BufferedWriter(new FileWriter(file));
+        out.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+        out.write("<COLLADA xmlns=\"http://www.collada.org/2005/11/COLLADASchema\" version=\"1.4.1\">\n");
+        out.write("<library_effects><effect id=\"grid-fx\"><profile_COMMON><technique sid=\"common\"><phong>"
+                + "<diffuse><color>0.8 0.6 0.4 1</color></diffuse>"
+                + "<shininess><float>20</float></shininess>"
+                + "</phong></technique></profile_COMMON></effect></library_effects>\n");
+        out.write("<library_materials><material id=\"grid-mat\"><instance_effect url=\"#grid-fx\"/></material></library_materials>\n");
+        out.write("<library_geometries>\n");
+        int verts = (size + 1) * (size + 1);
+        for (int g = 0; g < geometries; g++) {
+            String id = "grid" + g;
+            out.write("<geometry id=\"" + id + "\"><mesh>\n");
+            out.write("<source id=\"" + id + "-pos\"><float_array id=\"" + id
+                    + "-pos-array\" count=\"" + (verts * 3) + "\">");
+            for (int y = 0; y <= size; y++) {
+                for (int x = 0; x <= size; x++) {
+                    out.write(x * 0.5f + " " + (float) Math.sin(x * 0.1 + y * 0.2 + g) + " " + y * 0.5f + " ");
+                }
+            }
+            out.write("</float_array><technique_common><accessor source=\"#" + id
+                    + "-pos-array\" count=\"" + verts
+                    + "\" stride=\"3\"/></technique_common></source>\n");
+            out.write("<source id=\"" + id + "-nrm\"><float_array id=\"" + id
+                    + "-nrm-array\" count=\"3\">0 1 0</float_array>"
+                    + "<technique_common><accessor source=\"#" + id
+                    + "-nrm-array\" count=\"1\" stride=\"3\"/></technique_common></source>\n");
+            out.write("<source id=\"" + id + "-uv\"><float_array id=\"" + id
+                    + "-uv-array\" count=\"" + (verts * 2) + "\">");
+            for (int y = 0; y <= size; y++) {
+                for (int x = 0; x <= size; x++) {
+                    out.write((float) x / size + " " + (float) y / size + " ");
+                }
+            }
+            out.write("</float_array><technique_common><accessor source=\"#" + id
+                    + "-uv-array\" count=\"" + verts
+                    + "\" stride=\"2\"/></technique_common></source>\n");
+            out.write("<vertices id=\"" + id + "-vtx\"><input semantic=\"POSITION\" source=\"#"
+                    + id + "-pos\"/></vertices>\n");
+            out.write("<triangles material=\"grid\" count=\"" + (size * size * 2) + "\">"
+                    + "<input semantic=\"VERTEX\" source=\"#" + id + "-vtx\" offset=\"0\"/>"
+                    + "<input semantic=\"NORMAL\" source=\"#" + id + "-nrm\" offset=\"1\"/>"
+                    + "<input semantic=\"TEXCOORD\" source=\"#" + id + "-uv\" offset=\"2\" set=\"0\"/><p>");
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size; x++) {
+                    int i0 = y * (size + 1) + x, i1 = i0 + 1;
+                    int i2 = i0 + size + 1, i3 = i2 + 1;
+                    out.write(i0 + " 0 " + i0 + " " + i2 + " 0 " + i2 + " " + i1 + " 0 " + i1 + " ");
+                    out.write(i1 + " 0 " + i1 + " " + i2 + " 0 " + i2 + " " + i3 + " 0 " + i3 + " ");
+                }
+            }
+            out.write("</p></triangles>\n</mesh></geometry>\n");
+        }
+        out.write("</library_geometries>\n");
+        out.write("<library_visual_scenes><visual_scene id=\"scene\">\n");
+        for (int g = 0; g < geometries; g++) {
+            out.write("<node id=\"node" + g + "\"><matrix>1 0 0 " + (g * size * 0.5f)
+                    + " 0 1 0 0 0 0 1 0 0 0 0 1</matrix><instance_geometry url=\"#grid" + g
+                    + "\"><bind_material><technique_common><instance_material symbol=\"grid\" target=\"#grid-mat\"/>"
+                    + "</technique_common></bind_material></instance_geometry></node>\n");
+        }
+        out.write("</visual_scene></library_visual_scenes>\n");
+        out.write("<scene><instance_visual_scene url=\"#scene\"/></scene>\n</COLLADA>\n");
+        out.close();
+    }
+}
@@ -0,0 +1,1097 @@
+/*
+ * Copyright (c) 2003-2008 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors 
+ *   may be used to endorse or promote products derived from this software 
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.jmex.model.collada;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.jme.bounding.BoundingBox;
+import com.jme.image.Image;
+import com.jme.image.Texture;
+import com.jme.image.Texture.WrapAxis;
+import com.jme.math.FastMath;
+import com.jme.math.Matrix3f;
+import com.jme.math.Quaternion;
+import com.jme.math.Vector3f;
+import com.jme.renderer.ColorRGBA;
+import com.jme.renderer.Renderer;
+import com.jme.scene.Node;
+import com.jme.scene.SharedNode;
+import com.jme.scene.Spatial;
+import com.jme.scene.TexCoords;
+import com.jme.scene.TriMesh;
+import com.jme.scene.state.MaterialState;
+import com.jme.scene.state.RenderState;
+import com.jme.scene.state.ShadeState;
+import com.jme.scene.state.TextureState;
+import com.jme.system.DisplaySystem;
+import com.jme.util.IntList;
+import com.jme.util.TextureManager;
+import com.jme.util.WorkerPool;
+import com.jme.util.geom.BufferUtils;
+import com.jme.util.resource.ResourceLocatorTool;
+import com.jmex.model.util.NumberParser;
+
+/**
+ * <code>ColladaStreamImporter</code> loads the geometry, materials and node
+ * hierarchy of a COLLADA 1.4 document in a single SAX pass, without building
+ * the DOM tree {@link ColladaImporter} works on. The contents of
+ * <code>&lt;float_array&gt;</code>, <code>&lt;vcount&gt;</code> and
+ * <code>&lt;p&gt;</code> elements are parsed straight from the parser's
+ * character buffers into direct buffers, so no intermediate Strings or
+ * Vector3f arrays are created for vertex data.
+ * <br>
+ * Once the document is read, every geometry is turned into jME meshes
+ * independently, using the {@link WorkerPool} when there is more than one.
+ * Corners sharing the same index tuple are welded into a single vertex while
+ * doing so.
+ * <br>
+ * Unlike <code>ColladaImporter</code> this class holds no static state: all
+ * parse state lives in the call to {@link #load(InputStream, String)}, so
+ * several threads may load models through one importer at the same time.
+ * <br>
+ * Skins, animations, cameras, lights, physics, instanced library nodes and
+ * extra plugins are not read; models that need them must still go through
+ * <code>ColladaImporter</code>.
+ */
+public class ColladaStreamImporter {
+    private static final Logger logger = Logger
+            .getLogger(ColladaStreamImporter.class.getName());
+
+    private volatile boolean squelch;
+    private volatile boolean parallel = true;
+
+    /**
+     * @param squelch
+     *            true to silence warnings about unsupported or invalid
+     *            content.
+     */
+    public void setSquelchErrors(boolean squelch) {
+        this.squelch = squelch;
+    }
+
+    public boolean isSquelchErrors() {
+        return squelch;
+    }
+
+    /**
+     * @param parallel
+     *            true (the default) to build the geometries of a document on
+     *            the shared {@link WorkerPool}, false to build them on the
+     *            loading thread.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * Reads a COLLADA document and builds its scene.
+     * 
+     * @param source
+     *            the document to read. The stream is not closed.
+     * @param name
+     *            the name of the returned node.
+     * @return a node holding the visual scenes instanced by the document's
+     *         <code>&lt;scene&gt;</code> element.
+     * @throws IOException
+     *             if the stream can not be read or is not well formed XML.
+     */
+    public Node load(InputStream source, String name) throws IOException {
+        Document doc = new Document();
+        try {
+            SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.newSAXParser().parse(new InputSource(source), doc);
+        } catch (SAXException e) {
+            IOException ex = new IOException("Unable to parse COLLADA file: "
+                    + e.getMessage());
+            ex.initCause(e);
+            throw ex;
+        } catch (ParserConfigurationException e) {
+            IOException ex = new IOException("Unable to create SAX parser");
+            ex.initCause(e);
+            throw ex;
+        }
+        return buildScene(doc, name);
+    }
+
+    /**
+     * Turns the parsed document into the final scene graph. Materials are
+     * created first on the calling thread, as they need the renderer, then
+     * all geometries are built, then instanced by the visual scene nodes.
+     */
+    private Node buildScene(final Document doc, String name) {
+        final Map<String, ColladaMaterial> materials = new HashMap<String, ColladaMaterial>();
+        for (Map.Entry<String, String> entry : doc.materials.entrySet()) {
+            EffectData effect = doc.effects.get(entry.getValue());
+            if (effect != null) {
+                materials.put(entry.getKey(), buildMaterial(doc, effect));
+            } else if (!squelch) {
+                logger.warning("Material " + entry.getKey()
+                        + " references missing effect " + entry.getValue());
+            }
+        }
+
+        List<Runnable> tasks = new ArrayList<Runnable>(doc.geometries.size());
+        for (final GeometryData geom : doc.geometries.values()) {
+            tasks.add(new Runnable() {
+                public void run() {
+                    geom.result = buildGeometry(doc, geom);
+                }
+            });
+        }
+        if (parallel && tasks.size() > 1) {
+            WorkerPool.getPool().invokeAll(tasks);
+        } else {
+            for (int i = 0; i < tasks.size(); i++) {
+                tasks.get(i).run();
+            }
+        }
+
+        for (int i = 0; i < doc.instances.size(); i++) {
+            GeometryInstance instance = doc.instances.get(i);
+            GeometryData geom = doc.geometries.get(instance.url);
+            if (geom == null || geom.result == null) {
+                if (!squelch) {
+                    logger.warning("Instance " + instance.url
+                            + " does not exist.");
+                }
+                continue;
+            }
+            Node node = geom.result.getParent() == null ? geom.result
+                    : new SharedNode(instance.url, geom.result);
+            bindMaterials(node, geom, instance.symbols, materials);
+            instance.parent.attachChild(node);
+        }
+
+        Node model = new Node(name);
+        for (int i = 0; i < doc.sceneUrls.size(); i++) {
+            Node scene = doc.visualScenes.get(doc.sceneUrls.get(i));
+            if (scene != null) {
+                model.attachChild(scene);
+            }
+        }
+        return model;
+    }
+
+    private ColladaMaterial buildMaterial(Document doc, EffectData effect) {
+        Renderer renderer = DisplaySystem.getDisplaySystem().getRenderer();
+        ColladaMaterial mat = new ColladaMaterial();
+        mat.minFilter = effect.minFilter;
+        mat.magFilter = effect.magFilter;
+        mat.wrapS = effect.wrapS;
+        mat.wrapT = effect.wrapT;
+
+        if ("lambert".equals(effect.shading)) {
+            ShadeState ss = renderer.createShadeState();
+            ss.setShadeMode(ShadeState.ShadeMode.Flat);
+            mat.setState(ss);
+        }
+        MaterialState ms = renderer.createMaterialState();
+        if (effect.ambient != null) {
+            ms.setAmbient(effect.ambient);
+        }
+        if (effect.diffuse != null) {
+            ms.setDiffuse(effect.diffuse);
+        }
+        if (effect.emission != null) {
+            ms.setEmissive(effect.emission);
+        }
+        if (effect.specular != null) {
+            ms.setSpecular(effect.specular);
+        }
+        if (effect.shininess >= 0) {
+            ms.setShininess(effect.shininess);
+        }
+        mat.setState(ms);
+
+        if (effect.diffuseTexture != null) {
+            // sampler -> surface -> image, some exporters skip the params and
+            // reference the image directly.
+            String key = effect.diffuseTexture;
+            String surface = effect.params.get(key);
+            if (surface != null) {
+                String image = effect.params.get(surface);
+                key = image != null ? image : surface;
+            }
+            String filename = doc.images.get(key);
+            if (filename != null) {
+                URL textureURL = ResourceLocatorTool.locateResource(
+                        ResourceLocatorTool.TYPE_TEXTURE, filename);
+                if (textureURL != null) {
+                    Texture t0 = TextureManager.loadTexture(textureURL, mat
+                            .getMinFilterConstant(), mat
+                            .getMagFilterConstant(),
+                            Image.Format.GuessNoCompression, 0, true);
+                    t0.setWrap(WrapAxis.S, mat.getWrapSConstant());
+                    t0.setWrap(WrapAxis.T, mat.getWrapTConstant());
+                    TextureState ts = renderer.createTextureState();
+                    ts.setTexture(t0, effect.diffuseUnit);
+                    mat.setState(ts);
+                } else if (!squelch) {
+                    logger.warning("Invalid or missing texture: \""
+                            + filename + "\"");
+                }
+            }
+        }
+        return mat;
+    }
+
+    /**
+     * Builds a node holding one TriMesh per primitive list of the geometry.
+     * Materials are bound later, per instance. Called from worker threads, so
+     * only touches the given geometry and read only document data.
+     */
+    private Node buildGeometry(Document doc, GeometryData geom) {
+        Node node = new Node(geom.id);
+        for (int i = 0; i < geom.primitives.size(); i++) {
+            PrimitiveData prim = geom.primitives.get(i);
+            TriMesh mesh = new TriMesh(geom.id);
+            if (prim.material != null) {
+                mesh.setName(geom.id + "-" + prim.material);
+            }
+            if (buildMesh(doc, prim, mesh)) {
+                mesh.updateModelBound();
+                node.attachChild(mesh);
+                geom.meshMaterials.add(prim.material);
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Sets the states of the materials an instance binds to the meshes of its
+     * copy of the geometry. Symbols the instance does not bind are looked up
+     * as material ids.
+     */
+    private void bindMaterials(Node node, GeometryData geom,
+            Map<String, String> symbols, Map<String, ColladaMaterial> materials) {
+        for (int i = 0; i < node.getQuantity(); i++) {
+            String symbol = geom.meshMaterials.get(i);
+            if (symbol == null) {
+                continue;
+            }
+            String target = symbols.get(symbol);
+            ColladaMaterial cm = materials.get(target != null ? target
+                    : symbol);
+            Spatial mesh = node.getChild(i);
+            // states are shared between all meshes using the material, shared
+            // meshes start out with those of the first instance
+            for (int s = 0; s < RenderState.RS_MAX_STATE; s++) {
+                if (cm != null && cm.getState(s) != null) {
+                    mesh.setRenderState(cm.getState(s));
+                } else {
+                    mesh.clearRenderState(s);
+                }
+            }
+        }
+    }
+
+    private boolean buildMesh(Document doc, PrimitiveData prim, TriMesh mesh) {
+        List<InputData> inputs = resolveInputs(doc, prim);
+        if (inputs.isEmpty() || prim.indices == null) {
+            return false;
+        }
+        int stride = prim.stride;
+        int tuples = prim.indices.limit() / stride;
+        IntBuffer corners = triangulate(prim, tuples);
+
+        // weld corners with identical index tuples into a single vertex
+        int[] remap = new int[tuples];
+        IntList vertexTuples = new IntList(Math.max(16, tuples / 2));
+        int tableSize = Integer.highestOneBit(Math.max(tuples, 8) * 2) * 2;
+        int[] table = new int[tableSize];
+        java.util.Arrays.fill(table, -1);
+        IntBuffer p = prim.indices;
+        for (int t = 0; t < tuples; t++) {
+            int base = t * stride;
+            int hash = 0;
+            for (int k = 0; k < stride; k++) {
+                hash = hash * 31 + p.get(base + k);
+            }
+            int slot = (hash ^ (hash >>> 16)) & (tableSize - 1);
+            while (true) {
+                int vert = table[slot];
+                if (vert < 0) {
+                    vert = vertexTuples.size();
+                    vertexTuples.add(t);
+                    table[slot] = vert;
+                    remap[t] = vert;
+                    break;
+                }
+                int other = vertexTuples.get(vert) * stride;
+                boolean same = true;
+                for (int k = 0; k < stride && same; k++) {
+                    same = p.get(other + k) == p.get(base + k);
+                }
+                if (same) {
+                    remap[t] = vert;
+                    break;
+                }
+                slot = (slot + 1) & (tableSize - 1);
+            }
+        }
+        for (int i = 0, max = corners.limit(); i < max; i++) {
+            corners.put(i, remap[corners.get(i)]);
+        }
+        mesh.setIndexBuffer(corners);
+
+        int vertCount = vertexTuples.size();
+        mesh.setVertexCount(vertCount);
+        for (int i = 0; i < inputs.size(); i++) {
+            InputData input = inputs.get(i);
+            SourceData src = doc.sources.get(input.source);
+            if (src == null || src.data == null) {
+                if (!squelch) {
+                    logger.warning("Invalid source: " + input.source);
+                }
+                continue;
+            }
+            if ("POSITION".equals(input.semantic)) {
+                mesh.setVertexBuffer(gather(src, p, vertexTuples, stride,
+                        input.offset, 3, 3, 0));
+            } else if ("NORMAL".equals(input.semantic)) {
+                mesh.setNormalBuffer(gather(src, p, vertexTuples, stride,
+                        input.offset, 3, 3, 0));
+            } else if ("TEXCOORD".equals(input.semantic)) {
+                int unit = input.set == 0 ? 0 : input.set - 1;
+                mesh.setTextureCoords(new TexCoords(gather(src, p,
+                        vertexTuples, stride, input.offset, 2, 2, 0), 2),
+                        unit);
+            } else if ("COLOR".equals(input.semantic)) {
+                mesh.setColorBuffer(gather(src, p, vertexTuples, stride,
+                        input.offset, Math.min(src.stride, 4), 4, 1));
+            }
+        }
+        if (mesh.getVertexBuffer() == null) {
+            return false;
+        }
+        mesh.setModelBound(new BoundingBox());
+        return true;
+    }
+
+    /**
+     * Copies one attribute of every welded vertex out of its source.
+     * 
+     * @param read
+     *            components read per element from the source.
+     * @param write
+     *            components written per vertex, missing ones are filled with
+     *            <code>pad</code>.
+     */
+    private static FloatBuffer gather(SourceData src, IntBuffer p,
+            IntList vertexTuples, int stride, int offset, int read,
+            int write, float pad) {
+        int vertCount = vertexTuples.size();
+        FloatBuffer out = BufferUtils.createFloatBuffer(vertCount * write);
+        FloatBuffer data = src.data;
+        int limit = data.limit();
+        read = Math.min(read, src.stride);
+        for (int v = 0; v < vertCount; v++) {
+            int index = p.get(vertexTuples.get(v) * stride + offset);
+            int base = index * src.stride;
+            int c = 0;
+            if (index >= 0 && base + read <= limit) {
+                for (; c < read; c++) {
+                    out.put(data.get(base + c));
+                }
+            }
+            for (; c < write; c++) {
+                out.put(pad);
+            }
+        }
+        out.flip();
+        return out;
+    }
+
+    /**
+     * @return the triangle corners as index tuple numbers, fanning out
+     *         polygons of more than three corners.
+     */
+    private static IntBuffer triangulate(PrimitiveData prim, int tuples) {
+        if (prim.vcount == null) {
+            IntBuffer corners = BufferUtils.createIntBuffer(tuples - tuples
+                    % 3);
+            for (int i = 0, max = corners.capacity(); i < max; i++) {
+                corners.put(i);
+            }
+            corners.flip();
+            return corners;
+        }
+        IntList vcount = prim.vcount;
+        int triangles = 0;
+        for (int i = 0; i < vcount.size(); i++) {
+            triangles += Math.max(0, vcount.get(i) - 2);
+        }
+        IntBuffer corners = BufferUtils.createIntBuffer(triangles * 3);
+        int first = 0;
+        for (int i = 0; i < vcount.size(); i++) {
+            int count = vcount.get(i);
+            if (first + count > tuples) {
+                break;
+            }
+            for (int k = 2; k < count; k++) {
+                corners.put(first).put(first + k - 1).put(first + k);
+            }
+            first += count;
+        }
+        corners.flip();
+        return corners;
+    }
+
+    /**
+     * Expands VERTEX inputs into the inputs of the referenced
+     * <code>&lt;vertices&gt;</code> element.
+     */
+    private static List<InputData> resolveInputs(Document doc,
+            PrimitiveData prim) {
+        List<InputData> inputs = new ArrayList<InputData>(prim.inputs.size() + 1);
+        for (int i = 0; i < prim.inputs.size(); i++) {
+            InputData input = prim.inputs.get(i);
+            if ("VERTEX".equals(input.semantic)) {
+                List<InputData> vertices = doc.vertices.get(input.source);
+                if (vertices != null) {
+                    for (int j = 0; j < vertices.size(); j++) {
+                        InputData vInput = vertices.get(j);
+                        inputs.add(new InputData(vInput.semantic,
+                                vInput.source, input.offset, input.set));
+                    }
+                }
+            } else {
+                inputs.add(input);
+            }
+        }
+        return inputs;
+    }
+
+    private static String stripHash(String url) {
+        if (url != null && url.startsWith("#")) {
+            return url.substring(1);
+        }
+        return url;
+    }
+
+    private static int intAttribute(Attributes atts, String name, int def) {
+        String value = atts.getValue(name);
+        if (value == null) {
+            return def;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+
+    /**
+     * Splits whitespace separated numbers, which may be cut across several
+     * <code>characters</code> calls, and writes them to the current target.
+     */
+    private static final class NumberReader {
+        private char[] token = new char[64];
+        private int length;
+        private FloatBuffer floats;
+        private IntBuffer ints;
+        private IntList intList;
+        private int depth = -1;
+
+        void start(FloatBuffer target, int depth) {
+            reset(depth);
+            floats = target;
+        }
+
+        void start(IntBuffer target, int depth) {
+            reset(depth);
+            ints = target;
+        }
+
+        void start(IntList target, int depth) {
+            reset(depth);
+            intList = target;
+        }
+
+        private void reset(int depth) {
+            this.depth = depth;
+            length = 0;
+            floats = null;
+            ints = null;
+            intList = null;
+        }
+
+        boolean isActive() {
+            return depth >= 0;
+        }
+
+        int getDepth() {
+            return depth;
+        }
+
+        void read(char[] ch, int start, int count) {
+            for (int i = start, end = start + count; i < end; i++) {
+                char c = ch[i];
+                if (c <= ' ') {
+                    if (length > 0) {
+                        emit();
+                    }
+                } else {
+                    if (length == token.length) {
+                        // long, but valid, numbers are parsed by
+                        // Float.parseFloat
+                        char[] grown = new char[length * 2];
+                        System.arraycopy(token, 0, grown, 0, length);
+                        token = grown;
+                    }
+                    token[length++] = c;
+                }
+            }
+        }
+
+        void finish() {
+            if (length > 0) {
+                emit();
+            }
+            if (floats != null) {
+                floats.flip();
+            } else if (ints != null) {
+                ints.flip();
+            }
+            reset(-1);
+        }
+
+        private void emit() {
+            if (floats != null) {
+                if (floats.hasRemaining()) {
+                    floats.put(NumberParser.parseFloat(token, length));
+                }
+            } else if (ints != null) {
+                if (ints.hasRemaining()) {
+                    ints.put(NumberParser.parseInt(token, length));
+                }
+            } else {
+                intList.add(NumberParser.parseInt(token, length));
+            }
+            length = 0;
+        }
+    }
+
+    private static final class SourceData {
+        FloatBuffer data;
+        int stride = 1;
+    }
+
+    private static final class InputData {
+        final String semantic;
+        final String source;
+        final int offset;
+        final int set;
+
+        InputData(String semantic, String source, int offset, int set) {
+            this.semantic = semantic;
+            this.source = source;
+            this.offset = offset;
+            this.set = set;
+        }
+    }
+
+    private static final class PrimitiveData {
+        final String type;
+        final String material;
+        final int count;
+        final List<InputData> inputs = new ArrayList<InputData>(4);
+        int stride;
+        IntList vcount;
+        IntBuffer indices;
+        IntList polygonIndices;
+
+        PrimitiveData(String type, String material, int count) {
+            this.type = type;
+            this.material = material;
+            this.count = count;
+        }
+    }
+
+    private static final class GeometryData {
+        final String id;
+        final List<PrimitiveData> primitives = new ArrayList<PrimitiveData>(2);
+        /** material symbol of each child of result, or null */
+        final List<String> meshMaterials = new ArrayList<String>(2);
+        Node result;
+
+        GeometryData(String id) {
+            this.id = id;
+        }
+    }
+
+    private static final class GeometryInstance {
+        final Node parent;
+        final String url;
+        /** material symbols bound by this instance, symbol to material id */
+        final Map<String, String> symbols = new HashMap<String, String>();
+
+        GeometryInstance(Node parent, String url) {
+            this.parent = parent;
+            this.url = url;
+        }
+    }
+
+    private static final class EffectData {
+        final Map<String, String> params = new HashMap<String, String>();
+        String shading;
+        ColorRGBA ambient, diffuse, emission, specular;
+        float shininess = -1;
+        String diffuseTexture;
+        int diffuseUnit;
+        String minFilter, magFilter, wrapS, wrapT;
+    }
+
+    /**
+     * SAX handler collecting everything needed to build the scene. One
+     * instance is used per document.
+     */
+    private final class Document extends DefaultHandler {
+        final Map<String, String> images = new HashMap<String, String>();
+        final Map<String, String> materials = new HashMap<String, String>();
+        final Map<String, EffectData> effects = new HashMap<String, EffectData>();
+        final Map<String, SourceData> sources = new HashMap<String, SourceData>();
+        final Map<String, List<InputData>> vertices = new HashMap<String, List<InputData>>();
+        final Map<String, GeometryData> geometries = new LinkedHashMap<String, GeometryData>();
+        final Map<String, Node> visualScenes = new HashMap<String, Node>();
+        final List<GeometryInstance> instances = new ArrayList<GeometryInstance>();
+        final List<String> sceneUrls = new ArrayList<String>(1);
+
+        private final ArrayList<String> stack = new ArrayList<String>();
+        private final ArrayList<Node> nodes = new ArrayList<Node>();
+        private final NumberReader numbers = new NumberReader();
+        private final StringBuilder text = new StringBuilder();
+        private int textDepth = -1;
+
+        private final float[] values = new float[16];
+        private final FloatBuffer valueBuffer = FloatBuffer.wrap(values);
+
+        private String imageId;
+        private String materialId;
+        private String paramSid;
+        private EffectData effect;
+        private GeometryData geometry;
+        private SourceData source;
+        private String verticesId;
+        private PrimitiveData primitive;
+        private GeometryInstance instance;
+        private Quaternion rotation;
+
+        private String parent() {
+            int size = stack.size();
+            return size < 2 ? null : stack.get(size - 2);
+        }
+
+        private boolean inside(String element) {
+            for (int i = stack.size() - 2; i >= 0; i--) {
+                if (element.equals(stack.get(i))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void collectText() {
+            text.setLength(0);
+            textDepth = stack.size();
+        }
+
+        private void readValues() {
+            valueBuffer.clear();
+            numbers.start(valueBuffer, stack.size());
+        }
+
+        public void startElement(String uri, String localName, String qName,
+                Attributes atts) throws SAXException {
+            stack.add(qName);
+            String parent = parent();
+
+            if ("float_array".equals(qName)) {
+                if (source != null) {
+                    source.data = BufferUtils.createFloatBuffer(intAttribute(
+                            atts, "count", 0));
+                    numbers.start(source.data, stack.size());
+                }
+            } else if ("p".equals(qName)) {
+                if (primitive != null && !"ph".equals(parent)) {
+                    startIndices();
+                }
+            } else if ("input".equals(qName)) {
+                String semantic = atts.getValue("semantic");
+                String src = stripHash(atts.getValue("source"));
+                if (primitive != null) {
+                    InputData input = new InputData(semantic, src,
+                            intAttribute(atts, "offset", 0), intAttribute(
+                                    atts, "set", 0));
+                    primitive.inputs.add(input);
+                    primitive.stride = Math.max(primitive.stride,
+                            input.offset + 1);
+                } else if (verticesId != null) {
+                    vertices.get(verticesId).add(
+                            new InputData(semantic, src, 0, 0));
+                }
+            } else if ("source".equals(qName)) {
+                if ("mesh".equals(parent)) {
+                    source = new SourceData();
+                    sources.put(atts.getValue("id"), source);
+                } else if ("sampler2D".equals(parent)) {
+                    collectText();
+                }
+            } else if ("accessor".equals(qName)) {
+                if (source != null) {
+                    source.stride = Math.max(1, intAttribute(atts, "stride", 1));
+                }
+            } else if ("triangles".equals(qName) || "polylist".equals(qName)
+                    || "polygons".equals(qName)) {
+                if (geometry != null) {
+                    primitive = new PrimitiveData(qName, atts
+                            .getValue("material"), intAttribute(atts,
+                            "count", 0));
+                    geometry.primitives.add(primitive);
+                }
+            } else if ("vcount".equals(qName)) {
+                if (primitive != null) {
+                    primitive.vcount = new IntList(Math.max(1, primitive.count));
+                    numbers.start(primitive.vcount, stack.size());
+                }
+            } else if ("vertices".equals(qName)) {
+                if (geometry != null) {
+                    verticesId = atts.getValue("id");
+                    vertices.put(verticesId, new ArrayList<InputData>(2));
+                }
+            } else if ("geometry".equals(qName)) {
+                String id = atts.getValue("id");
+                geometry = new GeometryData(id != null ? id : atts
+                        .getValue("name"));
+                geometries.put(geometry.id, geometry);
+            } else if ("node".equals(qName)) {
+                if (!nodes.isEmpty()) {
+                    String name = atts.getValue("id");
+                    if (name == null) {
+                        name = atts.getValue("sid");
+                    }
+                    if (name == null) {
+                        name = atts.getValue("name");
+                    }
+                    Node node = new Node(name);
+                    nodes.get(nodes.size() - 1).attachChild(node);
+                    nodes.add(node);
+                    rotation = null;
+                }
+            } else if ("translate".equals(qName) || "rotate".equals(qName)
+                    || "scale".equals(qName) || "matrix".equals(qName)) {
+                if ("node".equals(parent) && !nodes.isEmpty()) {
+                    readValues();
+                }
+            } else if ("instance_geometry".equals(qName)) {
+                if (!nodes.isEmpty()) {
+                    instance = new GeometryInstance(nodes
+                            .get(nodes.size() - 1), stripHash(atts
+                            .getValue("url")));
+                    instances.add(instance);
+                }
+            } else if ("instance_material".equals(qName)) {
+                if (instance != null) {
+                    instance.symbols.put(atts.getValue("symbol"),
+                            stripHash(atts.getValue("target")));
+                }
+            } else if ("visual_scene".equals(qName)) {
+                Node scene = new Node(atts.getValue("id"));
+                visualScenes.put(scene.getName(), scene);
+                nodes.add(scene);
+            } else if ("instance_visual_scene".equals(qName)) {
+                sceneUrls.add(stripHash(atts.getValue("url")));
+            } else if ("image".equals(qName)) {
+                imageId = atts.getValue("id");
+            } else if ("init_from".equals(qName)) {
+                collectText();
+            } else if ("material".equals(qName)) {
+                if ("library_materials".equals(parent)) {
+                    materialId = atts.getValue("id");
+                }
+            } else if ("instance_effect".equals(qName)) {
+                if (materialId != null) {
+                    materials.put(materialId, stripHash(atts.getValue("url")));
+                }
+            } else if ("effect".equals(qName)) {
+                effect = new EffectData();
+                effects.put(atts.getValue("id"), effect);
+            } else if (effect != null) {
+                startEffectElement(qName, parent, atts);
+            }
+        }
+
+        private void startEffectElement(String qName, String parent,
+                Attributes atts) {
+            if ("newparam".equals(qName)) {
+                paramSid = atts.getValue("sid");
+            } else if ("phong".equals(qName) || "blinn".equals(qName)
+                    || "lambert".equals(qName) || "constant".equals(qName)) {
+                effect.shading = qName;
+            } else if ("color".equals(qName)) {
+                readValues();
+                values[3] = 1;
+            } else if ("float".equals(qName)) {
+                if ("shininess".equals(parent)) {
+                    collectText();
+                }
+            } else if ("texture".equals(qName)) {
+                if ("diffuse".equals(parent)) {
+                    effect.diffuseTexture = atts.getValue("texture");
+                    String channel = atts.getValue("texcoord");
+                    if (channel != null && channel.contains("CHANNEL")) {
+                        try {
+                            effect.diffuseUnit = Math.max(0, Integer
+                                    .parseInt(channel.substring(channel
+                                            .indexOf("CHANNEL") + 7)) - 1);
+                        } catch (NumberFormatException e) {
+                            effect.diffuseUnit = 0;
+                        }
+                    }
+                }
+            } else if ("minfilter".equals(qName)
+                    || "magfilter".equals(qName) || "wrap_s".equals(qName)
+                    || "wrap_t".equals(qName)) {
+                collectText();
+            }
+        }
+
+        private void startIndices() {
+            int stride = Math.max(1, primitive.stride);
+            primitive.stride = stride;
+            if ("triangles".equals(primitive.type)) {
+                primitive.indices = BufferUtils.createIntBuffer(primitive.count
+                        * 3 * stride);
+                numbers.start(primitive.indices, stack.size());
+            } else if ("polylist".equals(primitive.type)) {
+                int corners = 0;
+                if (primitive.vcount != null) {
+                    for (int i = 0; i < primitive.vcount.size(); i++) {
+                        corners += primitive.vcount.get(i);
+                    }
+                }
+                primitive.indices = BufferUtils.createIntBuffer(corners
+                        * stride);
+                numbers.start(primitive.indices, stack.size());
+            } else {
+                // polygons have one <p> per polygon, the corner count is only
+                // known once each of them is read.
+                if (primitive.polygonIndices == null) {
+                    primitive.polygonIndices = new IntList(Math.max(16,
+                            primitive.count * 4 * stride));
+                    primitive.vcount = new IntList(Math.max(1,
+                            primitive.count));
+                }
+                primitive.vcount.add(primitive.polygonIndices.size());
+                numbers.start(primitive.polygonIndices, stack.size());
+            }
+        }
+
+        public void characters(char[] ch, int start, int length)
+                throws SAXException {
+            if (numbers.isActive()) {
+                numbers.read(ch, start, length);
+            } else if (textDepth >= 0) {
+                text.append(ch, start, length);
+            }
+        }
+
+        public void endElement(String uri, String localName, String qName)
+                throws SAXException {
+            int depth = stack.size();
+            if (numbers.getDepth() == depth) {
+                numbers.finish();
+                endValues(qName);
+            } else if (textDepth == depth) {
+                textDepth = -1;
+                endText(qName, text.toString().trim());
+            }
+
+            if ("triangles".equals(qName) || "polylist".equals(qName)
+                    || "polygons".equals(qName)) {
+                if (primitive != null && primitive.polygonIndices != null) {
+                    int size = primitive.polygonIndices.size();
+                    IntBuffer indices = BufferUtils.createIntBuffer(size);
+                    for (int i = 0; i < size; i++) {
+                        indices.put(primitive.polygonIndices.get(i));
+                    }
+                    indices.flip();
+                    primitive.indices = indices;
+                    primitive.polygonIndices = null;
+                }
+                primitive = null;
+            } else if ("source".equals(qName)) {
+                if ("mesh".equals(parent())) {
+                    source = null;
+                }
+            } else if ("vertices".equals(qName)) {
+                verticesId = null;
+            } else if ("geometry".equals(qName)) {
+                geometry = null;
+            } else if ("instance_geometry".equals(qName)) {
+                instance = null;
+            } else if ("node".equals(qName) || "visual_scene".equals(qName)) {
+                if (!nodes.isEmpty()) {
+                    nodes.remove(nodes.size() - 1);
+                }
+            } else if ("material".equals(qName)) {
+                materialId = null;
+            } else if ("effect".equals(qName)) {
+                effect = null;
+            } else if ("newparam".equals(qName)) {
+                paramSid = null;
+            } else if ("image".equals(qName)) {
+                imageId = null;
+            }
+            stack.remove(depth - 1);
+        }
+
+        private void endValues(String qName) {
+            if ("p".equals(qName)) {
+                if (primitive != null && primitive.polygonIndices != null) {
+                    int last = primitive.vcount.size() - 1;
+                    int first = primitive.vcount.get(last);
+                    primitive.vcount.set(last,
+                            (primitive.polygonIndices.size() - first)
+                                    / primitive.stride);
+                }
+            } else if ("color".equals(qName)) {
+                ColorRGBA color = new ColorRGBA(values[0], values[1],
+                        values[2], values[3]);
+                String parent = parent();
+                if ("ambient".equals(parent)) {
+                    effect.ambient = color;
+                } else if ("diffuse".equals(parent)) {
+                    effect.diffuse = color;
+                } else if ("emission".equals(parent)) {
+                    effect.emission = color;
+                } else if ("specular".equals(parent)) {
+                    effect.specular = color;
+                }
+            } else if (!nodes.isEmpty()) {
+                endTransform(qName, nodes.get(nodes.size() - 1));
+            }
+        }
+
+        private void endTransform(String qName, Node node) {
+            if ("translate".equals(qName)) {
+                node.setLocalTranslation(new Vector3f(values[0], values[1],
+                        values[2]));
+            } else if ("scale".equals(qName)) {
+                node.setLocalScale(new Vector3f(values[0], values[1],
+                        values[2]));
+            } else if ("rotate".equals(qName)) {
+                Vector3f axis = new Vector3f(values[0], values[1], values[2])
+                        .normalizeLocal();
+                Quaternion temp = new Quaternion().fromAngleNormalAxis(
+                        values[3] * FastMath.DEG_TO_RAD, axis);
+                if (rotation == null) {
+                    rotation = temp;
+                } else {
+                    rotation.multLocal(temp);
+                }
+                node.setLocalRotation(rotation);
+            } else if ("matrix".equals(qName)) {
+                // collada matrices are in row order.
+                node.setLocalTranslation(new Vector3f(values[3], values[7],
+                        values[11]));
+                float scaleX = new Vector3f(values[0], values[4], values[8])
+                        .length();
+                float scaleY = new Vector3f(values[1], values[5], values[9])
+                        .length();
+                float scaleZ = new Vector3f(values[2], values[6], values[10])
+                        .length();
+                node.setLocalScale(new Vector3f(scaleX, scaleY, scaleZ));
+                Matrix3f rm = new Matrix3f(values[0] / scaleX, values[1]
+                        / scaleY, values[2] / scaleZ, values[4] / scaleX,
+                        values[5] / scaleY, values[6] / scaleZ, values[8]
+                                / scaleX, values[9] / scaleY, values[10]
+                                / scaleZ);
+                node.setLocalRotation(new Quaternion().fromRotationMatrix(rm));
+            }
+        }
+
+        private void endText(String qName, String value) {
+            if ("init_from".equals(qName)) {
+                if (imageId != null && "image".equals(parent())) {
+                    images.put(imageId, value);
+                } else if (effect != null && paramSid != null
+                        && "surface".equals(parent())) {
+                    effect.params.put(paramSid, value);
+                }
+            } else if ("source".equals(qName)) {
+                if (effect != null && paramSid != null) {
+                    effect.params.put(paramSid, value);
+                }
+            } else if ("float".equals(qName)) {
+                try {
+                    effect.shininess = Float.parseFloat(value);
+                } catch (NumberFormatException e) {
+                    if (!squelch) {
+                        logger.warning("Invalid shininess: " + value);
+                    }
+                }
+            } else if ("minfilter".equals(qName)) {
+                effect.minFilter = value;
+            } else if ("magfilter".equals(qName)) {
+                effect.magFilter = value;
+            } else if ("wrap_s".equals(qName)) {
+                effect.wrapS = value;
+            } else if ("wrap_t".equals(qName)) {
+                effect.wrapT = value;
+            }
+        }
+    }
+}
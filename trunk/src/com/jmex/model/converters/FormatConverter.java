@@ -39,6 +39,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.HashMap;
+import java.util.TreeMap;
 import java.util.logging.Logger;
 
 /**
@@ -121,4 +122,24 @@ abstract public class FormatConverter {
     public void clearProperty(String key){
         properties.remove(key);
     }
+
+    /**
+     * Returns a String that changes whenever the output of this converter
+     * for the same input may change: the converter class, its
+     * {@link #getVersion() version} and its properties.
+     * @return Key identifying this converter's output, used by caches
+     */
+    public String getConversionKey() {
+        return getClass().getName() + "#" + getVersion() + " "
+                + new TreeMap<String, Object>(properties);
+    }
+
+    /**
+     * Converters increase this whenever a change alters what they write for
+     * the same input, so cached conversions are redone.
+     * @return The version of this converter's output, 1 by default
+     */
+    protected int getVersion() {
+        return 1;
+    }
 }
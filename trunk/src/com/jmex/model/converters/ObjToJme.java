@@ -33,22 +33,29 @@
 package com.jmex.model.converters;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.logging.Logger;
 
 import com.jme.bounding.BoundingBox;
 import com.jme.image.Image;
 import com.jme.image.Texture;
 import com.jme.image.Texture2D;
-import com.jme.math.Vector2f;
 import com.jme.math.Vector3f;
 import com.jme.renderer.ColorRGBA;
 import com.jme.renderer.Renderer;
@@ -61,11 +68,13 @@ import com.jme.scene.state.MaterialState;
 import com.jme.scene.state.TextureState;
 import com.jme.system.DisplaySystem;
 import com.jme.system.dummy.DummyDisplaySystem;
+import com.jme.util.IntList;
 import com.jme.util.TextureKey;
 import com.jme.util.TextureManager;
+import com.jme.util.WorkerPool;
 import com.jme.util.export.binary.BinaryExporter;
 import com.jme.util.geom.BufferUtils;
-import com.jme.util.geom.GeometryTool;
+import com.jmex.model.util.NumberParser;
 
 /**
  * Started Date: Jul 17, 2004<br>
@@ -78,6 +87,13 @@ import com.jme.util.geom.GeometryTool;
  * Textures will be loaded from the directory indicated in the model unless you
  * specify a directory to load them from via setting a property: eg.
  * setProperty("texdir", new File("c:/my texdir/").toURL());
+ * <p>
+ * Use {@link #load(File)} or {@link #load(URL)} to get the model as a scene
+ * without going through the binary format. Local files are memory mapped.
+ * The data is split into line aligned chunks that are parsed in parallel on
+ * the {@link WorkerPool} without allocating per vertex or per face, then each
+ * material's mesh is built in parallel with corners sharing the same
+ * vertex/texture/normal indices welded into one vertex.
  * 
  * @author Jack Lindamood
  * @author Joshua Slack - revamped to improve speed
@@ -85,16 +101,14 @@ import com.jme.util.geom.GeometryTool;
 public class ObjToJme extends FormatConverter {
     private static final Logger logger = Logger.getLogger(ObjToJme.class
             .getName());
-    
-    private BufferedReader inFile;
-    /** Every vertex in the file */
-    private ArrayList<Vector3f> vertexList = new ArrayList<Vector3f>();
-    /** Every texture coordinate in the file */
-    private ArrayList<Vector2f> textureList = new ArrayList<Vector2f>();
-    /** Every normal in the file */
-    private ArrayList<Vector3f> normalList = new ArrayList<Vector3f>();
-    /** Generated normals */
-    private ArrayList<Vector3f> genNormalList = new ArrayList<Vector3f>();
+
+    /** Chunks smaller than this are not worth a task of their own */
+    private static final int MIN_CHUNK_SIZE = 256 * 1024;
+    /** Marks a relative (negative) index, see {@link Chunk#parseIndex} */
+    private static final int RELATIVE = 1 << 30;
+    /** Marks a missing texture or normal index */
+    private static final int MISSING = Integer.MIN_VALUE;
+
     /** Last 'material' flag in the file */
     private MaterialGrouping curGroup;
     /** Last 'Object' name in the file */
@@ -103,8 +117,8 @@ public class ObjToJme extends FormatConverter {
     private MaterialGrouping defaultMaterialGroup;
     /** Maps material names to the actual material object * */
     private HashMap<String, MaterialGrouping> materialNames = new HashMap<String, MaterialGrouping>();
-    /** Maps Materials to their vertex usage * */
-    private HashMap<MaterialGrouping, ArraySet> materialSets = new HashMap<MaterialGrouping, ArraySet>();
+    /** Maps Materials to their faces * */
+    private LinkedHashMap<MaterialGrouping, ArraySet> materialSets = new LinkedHashMap<MaterialGrouping, ArraySet>();
     /** Reference to the renderer for creating RenderState objects **/
     private Renderer renderer;
     private boolean generateMissingNormals = true;
@@ -136,90 +150,186 @@ public class ObjToJme extends FormatConverter {
     @Override
     public void convert(InputStream format, OutputStream jMEFormat)
             throws IOException {
+        BinaryExporter.getInstance().save(load(readFully(format)), jMEFormat);
+    }
+
+    /**
+     * Loads an .obj file straight into a scene. The file is memory mapped
+     * while parsing.
+     * 
+     * @param file
+     *            The .obj file.
+     * @return The TriMesh or Node that represents the .obj file.
+     * @throws IOException
+     *             If anything bad happens.
+     */
+    public Spatial load(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            return load(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel
+                    .size()));
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Loads an .obj file straight into a scene. file: URLs are memory mapped,
+     * other URLs are read into memory first.
+     * 
+     * @param url
+     *            The location of the .obj file.
+     * @return The TriMesh or Node that represents the .obj file.
+     * @throws IOException
+     *             If anything bad happens.
+     */
+    public Spatial load(URL url) throws IOException {
+        if ("file".equals(url.getProtocol())) {
+            try {
+                File file = new File(url.toURI());
+                if (file.isFile()) {
+                    return load(file);
+                }
+            } catch (URISyntaxException e) {
+                // not a plain file path, read it as a stream
+            } catch (IllegalArgumentException e) {
+                // not a plain file path, read it as a stream
+            }
+        }
+        InputStream in = url.openStream();
+        try {
+            return load(readFully(in));
+        } finally {
+            in.close();
+        }
+    }
+
+    private static ByteBuffer readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+
+    private Spatial load(ByteBuffer data) throws IOException {
         renderer = DisplaySystem.getDisplaySystem().getRenderer();
-        defaultMaterialGroup = new MaterialGrouping();
-        vertexList.clear();
-        textureList.clear();
-        normalList.clear();
-        genNormalList.clear();
         materialSets.clear();
         materialNames.clear();
-        inFile = new BufferedReader(new InputStreamReader(format));
-        String in;
+        curObjectName = null;
+        defaultMaterialGroup = new MaterialGrouping();
         curGroup = defaultMaterialGroup;
         materialSets.put(defaultMaterialGroup, new ArraySet());
-        while ((in = inFile.readLine()) != null) {
-            processLine(in);
+        try {
+            Chunk[] chunks = parseChunks(data);
+            ObjData obj = new ObjData(chunks);
+            // material, group and object lines are replayed in file order to
+            // find the material of every face.
+            for (int i = 0; i < chunks.length; i++) {
+                Chunk chunk = chunks[i];
+                int face = 0;
+                for (int c = 0; c < chunk.commands.size(); c++) {
+                    int commandFace = chunk.commandFaces.get(c);
+                    addFaces(chunk, face, commandFace);
+                    face = commandFace;
+                    processLine(chunk.commands.get(c));
+                }
+                addFaces(chunk, face, chunk.faceCount());
+            }
+            return buildStructure(obj);
+        } catch (NumberFormatException e) {
+            IOException ex = new IOException("Invalid .obj data: "
+                    + e.getMessage());
+            ex.initCause(e);
+            throw ex;
+        } finally {
+            nullAll();
         }
-        BinaryExporter.getInstance().save(buildStructure(),jMEFormat);
-        nullAll();
+    }
+
+    /**
+     * Splits the data into line aligned chunks and parses them in parallel.
+     */
+    private Chunk[] parseChunks(final ByteBuffer data) {
+        int size = data.limit();
+        int count = Math.max(1, Math.min(size / MIN_CHUNK_SIZE, WorkerPool
+                .getPool().getThreadCount() * 4));
+        Chunk[] chunks = new Chunk[count];
+        int start = 0;
+        for (int i = 0; i < count; i++) {
+            int end = i == count - 1 ? size : (int) ((long) size * (i + 1) / count);
+            while (end < size && data.get(end - 1) != '\n') {
+                end++;
+            }
+            chunks[i] = new Chunk(data, start, Math.max(start, end));
+            start = Math.max(start, end);
+        }
+        if (count > 1) {
+            List<Runnable> tasks = new ArrayList<Runnable>(count);
+            for (int i = 0; i < count; i++) {
+                tasks.add(chunks[i]);
+            }
+            WorkerPool.getPool().invokeAll(tasks);
+        } else {
+            chunks[0].run();
+        }
+        return chunks;
+    }
+
+    private void addFaces(Chunk chunk, int start, int end) {
+        if (start >= end) {
+            return;
+        }
+        ArraySet thisMat = materialSets.get(curGroup);
+        if (thisMat.objName == null && curObjectName != null)
+            thisMat.objName = curObjectName;
+        thisMat.ranges.add(new FaceRange(chunk, start, end));
     }
 
     /**
      * Nulls all to let the gc do its job.
-     * 
-     * @throws IOException
      */
-    private void nullAll() throws IOException {
-        vertexList.clear();
-        textureList.clear();
-        normalList.clear();
-        genNormalList.clear();
+    private void nullAll() {
         curGroup = null;
         materialSets.clear();
         materialNames.clear();
-        inFile.close();
-        inFile = null;
         defaultMaterialGroup = null;
         renderer = null;
     }
 
     /**
-     * Converts the structures of the .obj file to a scene to write
+     * Converts the structures of the .obj file to a scene. The meshes of all
+     * materials are built in parallel.
      * 
      * @return The TriMesh or Node that represents the .obj file.
      */
-    private Spatial buildStructure() {
+    private Spatial buildStructure(final ObjData obj) {
         Node toReturn = new Node("obj file");
-        Object[] o = materialSets.keySet().toArray();
-        for (int i = 0; i < o.length; i++) {
-            MaterialGrouping thisGroup = (MaterialGrouping) o[i];
-            ArraySet thisSet = materialSets.get(thisGroup);
-            if (thisSet.indexes.size() < 3)
+        final ArrayList<MaterialGrouping> groups = new ArrayList<MaterialGrouping>(
+                materialSets.keySet());
+        final TriMesh[] meshes = new TriMesh[groups.size()];
+        List<Runnable> tasks = new ArrayList<Runnable>(groups.size());
+        for (int i = 0; i < groups.size(); i++) {
+            final int index = i;
+            final ArraySet thisSet = materialSets.get(groups.get(i));
+            if (thisSet.ranges.isEmpty())
                 continue;
-            TriMesh thisMesh = new TriMesh(thisSet.objName == null ? "temp" + i
-                    : thisSet.objName);
-            Vector3f[] vert = new Vector3f[thisSet.sets.size()];
-            Vector3f[] norm = new Vector3f[vert.length];
-            Vector2f[] text = new Vector2f[vert.length];
-            boolean hasNorm = false, hasTex = false;
-
-            int j = 0;
-            for (IndexSet set : thisSet.sets) {
-                vert[j] = vertexList.get(set.vIndex);
-                if (set.nIndex >= 0) {
-                    norm[j] = normalList.get(set.nIndex);
-                    hasNorm = true;
-                } else if (set.nIndex < -1) {
-                    norm[j] = genNormalList.get((-1*set.nIndex)-2);
-                    hasNorm = true;
-                }
-                if (set.tIndex >= 0) {
-                    text[j] = textureList.get(set.tIndex);
-                    hasTex = true;
+            tasks.add(new Runnable() {
+                public void run() {
+                    meshes[index] = buildMesh(obj, thisSet, index);
                 }
-                j++;
-            }
-            
-            int[] indexes = new int[thisSet.indexes.size()];
-            for (j = 0; j < thisSet.indexes.size(); j++)
-                indexes[j] = thisSet.indexes.get(j);
-            
-            thisMesh.reconstruct(BufferUtils.createFloatBuffer(vert),
-                    hasNorm ? BufferUtils.createFloatBuffer(norm) : null, 
-                    null,
-                    hasTex ? TexCoords.makeNew(text) : null,
-                    BufferUtils.createIntBuffer(indexes));
+            });
+        }
+        WorkerPool.getPool().invokeAll(tasks);
+
+        for (int i = 0; i < meshes.length; i++) {
+            TriMesh thisMesh = meshes[i];
+            if (thisMesh == null)
+                continue;
+            MaterialGrouping thisGroup = groups.get(i);
             if (properties.get("sillycolors") != null)
                 thisMesh.setRandomColors();
             if (thisGroup.ts != null)
@@ -231,7 +341,6 @@ public class ObjToJme extends FormatConverter {
             }
             thisMesh.setModelBound(new BoundingBox());
             thisMesh.updateModelBound();
-            GeometryTool.minimizeVerts(thisMesh, GeometryTool.MV_SAME_COLORS | GeometryTool.MV_SAME_NORMALS | GeometryTool.MV_SAME_TEXS);
             toReturn.attachChild(thisMesh);
         }
         if (toReturn.getQuantity() == 1)
@@ -241,7 +350,94 @@ public class ObjToJme extends FormatConverter {
     }
 
     /**
-     * Processes a line of text in the .obj file.
+     * Builds the TriMesh of one material. Polygons are fanned into triangles,
+     * corners without a normal get the flat normal of their triangle if
+     * {@link #isGenerateMissingNormals()}.
+     * 
+     * @return the mesh, or null if the material has no valid triangle.
+     */
+    private TriMesh buildMesh(ObjData obj, ArraySet thisSet, int i) {
+        CornerTable corners = new CornerTable(1024);
+        IntList indexes = new IntList(1024);
+        FloatArray genNormals = new FloatArray(64);
+        int[] tri = new int[9];
+        Vector3f v = new Vector3f(), w = new Vector3f();
+        int invalid = 0;
+        for (int r = 0; r < thisSet.ranges.size(); r++) {
+            FaceRange range = thisSet.ranges.get(r);
+            Chunk chunk = range.chunk;
+            for (int f = range.start; f < range.end; f++) {
+                int first = chunk.faceStarts.get(f);
+                int last = chunk.faceStarts.get(f + 1);
+                for (int c = first + 6; c < last; c += 3) {
+                    if (!obj.decode(chunk, first, tri, 0)
+                            || !obj.decode(chunk, c - 3, tri, 3)
+                            || !obj.decode(chunk, c, tri, 6)) {
+                        invalid++;
+                        continue;
+                    }
+                    if (generateMissingNormals
+                            && (tri[2] == -1 || tri[5] == -1 || tri[8] == -1)) {
+                        // Generate flat face normal.  TODO: Smoothed normals?
+                        int genIndex = (-1 * (genNormals.size / 3)) - 2;
+                        obj.faceNormal(tri, genNormals, v, w);
+                        for (int k = 2; k < 9; k += 3) {
+                            if (tri[k] == -1)
+                                tri[k] = genIndex;
+                        }
+                    }
+                    indexes.add(corners.find(tri[0], tri[1], tri[2]));
+                    indexes.add(corners.find(tri[3], tri[4], tri[5]));
+                    indexes.add(corners.find(tri[6], tri[7], tri[8]));
+                }
+            }
+        }
+        if (invalid > 0) {
+            logger.warning(invalid + " triangles with invalid indices skipped.");
+        }
+        if (indexes.size() < 3)
+            return null;
+
+        int vertCount = corners.size();
+        FloatBuffer vert = BufferUtils.createVector3Buffer(vertCount);
+        FloatBuffer norm = corners.hasNormals ? BufferUtils
+                .createVector3Buffer(vertCount) : null;
+        FloatBuffer text = corners.hasTexCoords ? BufferUtils
+                .createVector2Buffer(vertCount) : null;
+        int[] keys = corners.getKeys();
+        for (int j = 0; j < vertCount; j++) {
+            int vIndex = keys[j * 3], tIndex = keys[j * 3 + 1], nIndex = keys[j * 3 + 2];
+            vert.put(obj.vertices, vIndex * 3, 3);
+            if (norm != null) {
+                if (nIndex >= 0) {
+                    norm.put(obj.normals, nIndex * 3, 3);
+                } else if (nIndex < -1) {
+                    norm.put(genNormals.data, ((-1 * nIndex) - 2) * 3, 3);
+                } else {
+                    norm.put(0).put(0).put(0);
+                }
+            }
+            if (text != null) {
+                if (tIndex >= 0) {
+                    text.put(obj.texCoords, tIndex * 2, 2);
+                } else {
+                    text.put(0).put(0);
+                }
+            }
+        }
+        vert.flip();
+
+        TriMesh thisMesh = new TriMesh(thisSet.objName == null ? "temp" + i
+                : thisSet.objName);
+        thisMesh.reconstruct(vert, norm, null, text != null ? new TexCoords(
+                text, 2) : null, BufferUtils.createIntBuffer(indexes
+                .toArray(null)));
+        return thisMesh;
+    }
+
+    /**
+     * Processes a line of text that is not vertex or face data, from the .obj
+     * file or its .mtl libraries.
      * 
      * @param s
      *            The line of text in the file.
@@ -257,16 +453,7 @@ public class ObjToJme extends FormatConverter {
         if (parts.length == 0) return;
         if (parts[0].charAt(0) == '#')
             return;
-        if ("v".equals(parts[0])) {
-            addVertextoList(parts);
-            return;
-        } else if ("vt".equals(parts[0])) {
-            addTextoList(parts);
-            return;
-        } else if ("vn".equals(parts[0])) {
-            addNormalToList(parts);
-            return;
-        } else if ("g".equals(parts[0])) {
+        if ("g".equals(parts[0])) {
             // see what the material name is if there isn't a name, assume its
             // the default group
             if (parts.length >= 2 && materialNames.get(parts[1]) != null
@@ -275,9 +462,6 @@ public class ObjToJme extends FormatConverter {
             else
                 setDefaultGroup();
             return;
-        } else if ("f".equals(parts[0])) {
-            addFaces(parts);
-            return;
         } else if ("mtllib".equals(parts[0])) {
             loadMaterials(parts);
             return;
@@ -393,73 +577,10 @@ public class ObjToJme extends FormatConverter {
         }
     }
 
-    private void addFaces(String[] parts) {
-        ArraySet thisMat = materialSets.get(curGroup);
-        if (thisMat.objName == null && curObjectName != null)
-            thisMat.objName = curObjectName;
-        IndexSet first = new IndexSet(parts[1]);
-        int firstIndex = thisMat.findSet(first);
-        IndexSet second = new IndexSet(parts[2]);
-        int secondIndex = thisMat.findSet(second);
-        for (int i = 3; i < parts.length; i++) {
-            IndexSet third = new IndexSet();
-            third.parseStringArray(parts[i]);
-            int thirdIndex = thisMat.findSet(third);
-            thisMat.indexes.add(firstIndex);
-            thisMat.indexes.add(secondIndex);
-            thisMat.indexes.add(thirdIndex);
-            if (first.nIndex == -1 || second.nIndex == -1 || third.nIndex == -1) {
-                // Generate flat face normal.  TODO: Smoothed normals?
-                Vector3f v = new Vector3f(vertexList.get(second.vIndex));
-                Vector3f w = new Vector3f(vertexList.get(third.vIndex));
-                v.subtractLocal(vertexList.get(first.vIndex));
-                w.subtractLocal(vertexList.get(first.vIndex));
-                v.crossLocal(w);
-                v.normalizeLocal();
-                genNormalList.add(v);
-                int genIndex = (-1 * (genNormalList.size() - 1)) - 2;
-                if (first.nIndex == -1) {
-                    first.nIndex = genIndex;
-                }
-                if (second.nIndex == -1) {
-                    second.nIndex = genIndex;
-                }
-                if (third.nIndex == -1) {
-                    third.nIndex = genIndex;
-                }
-            }
-            secondIndex = thirdIndex; // The second will be the same as the
-                                        // last third
-        }
-    }
-
     private void setDefaultGroup() {
         curGroup = defaultMaterialGroup;
     }
 
-    private void addNormalToList(String[] parts) {
-        Vector3f norm = new Vector3f(Float.parseFloat(parts[1]), Float
-                .parseFloat(parts[2]), Float.parseFloat(parts[3]));
-        normalList.add(norm);
-
-    }
-
-    private void addTextoList(String[] parts) {
-        float u = Float.parseFloat(parts[1]);
-        float v = 0;
-        //float w = 0; (3d coordinate possible)
-        
-        if (parts.length > 2)
-            v = Float.parseFloat(parts[2]);
-        
-        textureList.add(new Vector2f(u,v));
-    }
-
-    private void addVertextoList(String[] parts) {
-        vertexList.add(new Vector3f(Float.parseFloat(parts[1]), Float
-                .parseFloat(parts[2]), Float.parseFloat(parts[3])));
-    }
-
     private class MaterialGrouping {
         public MaterialGrouping() {
             m = renderer.createMaterialState();
@@ -487,96 +608,405 @@ public class ObjToJme extends FormatConverter {
     }
 
     /**
-     * Stores the indexes of a vertex/texture/normal triplet set that is to be
-     * indexed by the TriMesh.
+     * The faces of one material, which will become a renderable trimesh. Each
+     * material has it's own trimesh.
+     */
+    private static class ArraySet {
+        private String objName = null;
+        private ArrayList<FaceRange> ranges = new ArrayList<FaceRange>();
+    }
+
+    /**
+     * A run of consecutive faces of a chunk using the same material.
+     */
+    private static class FaceRange {
+        final Chunk chunk;
+        final int start, end;
+
+        FaceRange(Chunk chunk, int start, int end) {
+            this.chunk = chunk;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Parses the vertex and face lines of a line aligned part of the file.
+     * Every other line is kept as a String, together with the number of faces
+     * read before it, to be run through {@link ObjToJme#processLine(String)}
+     * in file order afterwards.
+     * <p>
+     * Face corners are stored as three ints (vertex, texture, normal). Indices
+     * counted from the start of the file are stored zero based. Negative
+     * indices, relative to the end of the lists, can't be resolved before
+     * the previous chunks are done, so they are stored as the index
+     * relative to the chunk's first element minus {@link ObjToJme#RELATIVE}.
      */
-    private class IndexSet {
-        int vIndex, nIndex, tIndex;
-        int index;
-        public IndexSet() {
+    private static class Chunk implements Runnable {
+        final ByteBuffer data;
+        final int start, end;
+        final FloatArray vertices = new FloatArray(1024);
+        final FloatArray texCoords = new FloatArray(1024);
+        final FloatArray normals = new FloatArray(1024);
+        final IntList faceStarts = new IntList(1024);
+        final IntList corners = new IntList(4096);
+        final ArrayList<String> commands = new ArrayList<String>();
+        final IntList commandFaces = new IntList();
+        /** index of this chunk's first element in the whole file */
+        int vertexBase, texCoordBase, normalBase;
+        private int pos;
+        private char[] token = new char[32];
+
+        Chunk(ByteBuffer data, int start, int end) {
+            this.data = data;
+            this.start = start;
+            this.end = end;
         }
 
-        public IndexSet(String parts) {
-            parseStringArray(parts);
+        int faceCount() {
+            return faceStarts.size() - 1;
         }
 
-        public void parseStringArray(String parts) {
-            String[] triplet = parts.split("/");
-            vIndex = Integer.parseInt(triplet[0]);
-            if (vIndex < 0) {
-                vIndex += vertexList.size();
-            } else {
-                vIndex--;  // obj starts at 1 not 0
+        public void run() {
+            faceStarts.add(0);
+            int p = start;
+            while (p < end) {
+                byte c = data.get(p);
+                if (c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+                    p++;
+                    continue;
+                }
+                int lineEnd = p;
+                while (lineEnd < end && data.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                byte c1 = p + 1 < lineEnd ? data.get(p + 1) : (byte) '\n';
+                byte c2 = p + 2 < lineEnd ? data.get(p + 2) : (byte) '\n';
+                if (c == 'v' && isBlank(c1)) {
+                    pos = p + 1;
+                    vertices.add(readFloat(lineEnd, true));
+                    vertices.add(readFloat(lineEnd, true));
+                    vertices.add(readFloat(lineEnd, true));
+                } else if (c == 'v' && c1 == 't' && isBlank(c2)) {
+                    pos = p + 2;
+                    texCoords.add(readFloat(lineEnd, true));
+                    texCoords.add(readFloat(lineEnd, false));
+                } else if (c == 'v' && c1 == 'n' && isBlank(c2)) {
+                    pos = p + 2;
+                    normals.add(readFloat(lineEnd, true));
+                    normals.add(readFloat(lineEnd, true));
+                    normals.add(readFloat(lineEnd, true));
+                } else if (c == 'f' && isBlank(c1)) {
+                    pos = p + 1;
+                    readFace(lineEnd);
+                } else if (c != '#') {
+                    byte[] line = new byte[lineEnd - p];
+                    for (int i = 0; i < line.length; i++) {
+                        line[i] = data.get(p + i);
+                    }
+                    commands.add(new String(line));
+                    commandFaces.add(faceCount());
+                }
+                p = lineEnd + 1;
             }
-            
-            if (triplet.length < 2 || triplet[1] == null
-                    || triplet[1].equals("")) {
-                tIndex = -1;
-            } else {
-                tIndex = Integer.parseInt(triplet[1]);
-                if (tIndex < 0) {
-                    tIndex += textureList.size();
-                } else {
-                    tIndex--;  // obj starts at 1 not 0
+        }
+
+        private static boolean isBlank(byte c) {
+            return c == ' ' || c == '\t';
+        }
+
+        private static boolean isSeparator(byte c) {
+            return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+        }
+
+        private void readFace(int lineEnd) {
+            int vertexCount = vertices.size / 3;
+            int texCount = texCoords.size / 2;
+            int normalCount = normals.size / 3;
+            while (true) {
+                while (pos < lineEnd && isSeparator(data.get(pos))) {
+                    pos++;
+                }
+                if (pos >= lineEnd) {
+                    break;
+                }
+                int v = parseIndex(lineEnd, vertexCount);
+                int t = MISSING, n = MISSING;
+                if (pos < lineEnd && data.get(pos) == '/') {
+                    pos++;
+                    if (pos < lineEnd && data.get(pos) != '/'
+                            && !isSeparator(data.get(pos))) {
+                        t = parseIndex(lineEnd, texCount);
+                    }
+                    if (pos < lineEnd && data.get(pos) == '/') {
+                        pos++;
+                        if (pos < lineEnd && !isSeparator(data.get(pos))) {
+                            n = parseIndex(lineEnd, normalCount);
+                        }
+                    }
                 }
+                corners.add(v);
+                corners.add(t);
+                corners.add(n);
             }
-            
-            if (triplet.length != 3 || triplet[2] == null
-                    || triplet[2].equals("")) {
-                nIndex = -1;
-            } else {
-                nIndex = Integer.parseInt(triplet[2]);
-                if (nIndex < 0) {
-                    nIndex += normalList.size();
-                } else {
-                    nIndex--;  // obj starts at 1 not 0
+            faceStarts.add(corners.size());
+        }
+
+        private int parseIndex(int lineEnd, int localCount) {
+            int s = pos;
+            boolean negative = false;
+            if (pos < lineEnd && (data.get(pos) == '-' || data.get(pos) == '+')) {
+                negative = data.get(pos) == '-';
+                pos++;
+            }
+            int value = 0;
+            int digits = 0;
+            for (; pos < lineEnd; pos++) {
+                byte c = data.get(pos);
+                if (c < '0' || c > '9') {
+                    break;
                 }
+                value = value * 10 + (c - '0');
+                digits++;
+            }
+            if (digits == 0 || digits > 9) {
+                while (pos < lineEnd && data.get(pos) != '/'
+                        && !isSeparator(data.get(pos))) {
+                    pos++;
+                }
+                throw new NumberFormatException("Invalid index: "
+                        + text(s, pos));
+            }
+            if (value == 0) {
+                return MISSING;
+            }
+            return negative ? localCount - value - RELATIVE : value - 1;
+        }
 
+        /**
+         * Reads the next float of the line, see
+         * {@link NumberParser#parseFloat(char[], int)}.
+         */
+        private float readFloat(int lineEnd, boolean required) {
+            while (pos < lineEnd && isSeparator(data.get(pos))) {
+                pos++;
+            }
+            int s = pos;
+            while (pos < lineEnd && !isSeparator(data.get(pos))) {
+                pos++;
             }
+            int e = pos;
+            if (s == e) {
+                if (required) {
+                    throw new NumberFormatException("Missing value in line: "
+                            + text(s, lineEnd));
+                }
+                return 0;
+            }
+            int length = e - s;
+            if (length > token.length) {
+                token = new char[Math.max(length, token.length * 2)];
+            }
+            for (int i = 0; i < length; i++) {
+                token[i] = (char) (data.get(s + i) & 0xff);
+            }
+            return NumberParser.parseFloat(token, length);
         }
-        
-        @Override
-        public boolean equals(Object obj) {
-            if (!(obj instanceof IndexSet)) return false;
-            
-            IndexSet other = (IndexSet)obj;
-            if (other.nIndex != this.nIndex) return false;
-            if (other.tIndex != this.tIndex) return false;
-            if (other.vIndex != this.vIndex) return false;
-            return true;
+
+        private String text(int s, int e) {
+            byte[] bytes = new byte[e - s];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = data.get(s + i);
+            }
+            return new String(bytes).trim();
         }
-        
-        @Override
-        public int hashCode() {
-            int hash = 37;
-            hash += 37 * hash + vIndex;
-            hash += 37 * hash + nIndex;
-            hash += 37 * hash + tIndex;
-            return hash;
+    }
+
+    /**
+     * The vertex, texture and normal lists of the whole file, merged from
+     * all chunks.
+     */
+    private static class ObjData {
+        final float[] vertices, texCoords, normals;
+        final int vertexCount, texCount, normalCount;
+
+        ObjData(Chunk[] chunks) {
+            int v = 0, t = 0, n = 0;
+            for (int i = 0; i < chunks.length; i++) {
+                chunks[i].vertexBase = v / 3;
+                chunks[i].texCoordBase = t / 2;
+                chunks[i].normalBase = n / 3;
+                v += chunks[i].vertices.size;
+                t += chunks[i].texCoords.size;
+                n += chunks[i].normals.size;
+            }
+            vertices = new float[v];
+            texCoords = new float[t];
+            normals = new float[n];
+            vertexCount = v / 3;
+            texCount = t / 2;
+            normalCount = n / 3;
+            for (int i = 0; i < chunks.length; i++) {
+                Chunk chunk = chunks[i];
+                System.arraycopy(chunk.vertices.data, 0, vertices,
+                        chunk.vertexBase * 3, chunk.vertices.size);
+                System.arraycopy(chunk.texCoords.data, 0, texCoords,
+                        chunk.texCoordBase * 2, chunk.texCoords.size);
+                System.arraycopy(chunk.normals.data, 0, normals,
+                        chunk.normalBase * 3, chunk.normals.size);
+            }
+        }
+
+        /**
+         * Resolves the corner starting at <code>corner</code> into file wide
+         * indices, stored in <code>store</code> at <code>offset</code>.
+         * Missing texture or normal indices are stored as -1.
+         * 
+         * @return false if one of the indices is out of range.
+         */
+        boolean decode(Chunk chunk, int corner, int[] store, int offset) {
+            int v = resolve(chunk.corners.get(corner), chunk.vertexBase,
+                    vertexCount);
+            int t = resolve(chunk.corners.get(corner + 1),
+                    chunk.texCoordBase, texCount);
+            int n = resolve(chunk.corners.get(corner + 2), chunk.normalBase,
+                    normalCount);
+            store[offset] = v;
+            store[offset + 1] = t;
+            store[offset + 2] = n;
+            return v >= 0 && t >= -1 && n >= -1;
+        }
+
+        private static int resolve(int value, int base, int count) {
+            if (value == MISSING) {
+                return -1;
+            }
+            int index = value >= 0 ? value : base + value + RELATIVE;
+            return index >= 0 && index < count ? index : -2;
+        }
+
+        /**
+         * Adds the flat normal of the decoded triangle to <code>store</code>.
+         */
+        void faceNormal(int[] tri, FloatArray store, Vector3f v, Vector3f w) {
+            int a = tri[0] * 3, b = tri[3] * 3, c = tri[6] * 3;
+            v.set(vertices[b] - vertices[a], vertices[b + 1]
+                    - vertices[a + 1], vertices[b + 2] - vertices[a + 2]);
+            w.set(vertices[c] - vertices[a], vertices[c + 1]
+                    - vertices[a + 1], vertices[c + 2] - vertices[a + 2]);
+            v.crossLocal(w);
+            v.normalizeLocal();
+            store.add(v.x);
+            store.add(v.y);
+            store.add(v.z);
         }
     }
 
     /**
-     * An array of information that will become a renderable trimesh. Each
-     * material has it's own trimesh.
+     * Open addressing hash from vertex/texture/normal index triples to
+     * vertex numbers, in order of first use.
      */
-    private class ArraySet {
-        private String objName = null;
-        private LinkedHashSet<IndexSet> sets = new LinkedHashSet<IndexSet>();
-        private HashMap<IndexSet, Integer> index = new HashMap<IndexSet, Integer>();
-        private ArrayList<Integer> indexes = new ArrayList<Integer>();
+    private static class CornerTable {
+        private int[] keys;
+        private int[] table;
+        private int size;
+        boolean hasNormals, hasTexCoords;
+
+        CornerTable(int capacity) {
+            keys = new int[capacity * 3];
+            table = new int[Integer.highestOneBit(capacity) * 4];
+            Arrays.fill(table, -1);
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] getKeys() {
+            return keys;
+        }
 
-        public int findSet(IndexSet v) {
-            if (sets.contains(v)) {
-                return index.get(v);
+        int find(int v, int t, int n) {
+            int mask = table.length - 1;
+            int slot = hash(v, t, n) & mask;
+            while (true) {
+                int index = table[slot];
+                if (index < 0) {
+                    break;
+                }
+                int k = index * 3;
+                if (keys[k] == v && keys[k + 1] == t && keys[k + 2] == n) {
+                    return index;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (size * 3 == keys.length) {
+                int[] newKeys = new int[keys.length * 2];
+                System.arraycopy(keys, 0, newKeys, 0, keys.length);
+                keys = newKeys;
             }
+            int index = size++;
+            keys[index * 3] = v;
+            keys[index * 3 + 1] = t;
+            keys[index * 3 + 2] = n;
+            hasTexCoords |= t >= 0;
+            hasNormals |= n != -1;
+            table[slot] = index;
+            if (size * 2 > table.length) {
+                rehash();
+            }
+            return index;
+        }
+
+        private static int hash(int v, int t, int n) {
+            int h = v * 0x9E3779B1 + t * 0x85EBCA6B + n * 0xC2B2AE35;
+            return h ^ (h >>> 15);
+        }
 
-            sets.add(v);
-            index.put(v, sets.size()-1);
-            return sets.size()-1;
+        private void rehash() {
+            table = new int[table.length * 2];
+            Arrays.fill(table, -1);
+            int mask = table.length - 1;
+            for (int i = 0; i < size; i++) {
+                int slot = hash(keys[i * 3], keys[i * 3 + 1], keys[i * 3 + 2])
+                        & mask;
+                while (table[slot] >= 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = i;
+            }
         }
     }
 
+    /**
+     * A growable float array.
+     */
+    private static class FloatArray {
+        float[] data;
+        int size;
+
+        FloatArray(int capacity) {
+            data = new float[capacity];
+        }
+
+        void add(float value) {
+            if (size == data.length) {
+                float[] newData = new float[data.length * 2];
+                System.arraycopy(data, 0, newData, 0, size);
+                data = newData;
+            }
+            data[size++] = value;
+        }
+    }
+
+    /**
+     * Version 2 parses in parallel and no longer runs minimizeVerts.
+     */
+    @Override
+    protected int getVersion() {
+        return 2;
+    }
+
     /**
      * @return true if the loader will generate missing face normals (default is true)
      */
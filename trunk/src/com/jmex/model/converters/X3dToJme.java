@@ -1901,6 +1901,7 @@ public class X3dToJme extends FormatConverter {
         Texture cachedTexture = TextureManager.findCachedTexture(tKey);
         if (cachedTexture != null) {
             texture = cachedTexture.createSimpleClone();
+            TextureManager.addCacheUser(texture);
             if (texture.getCombineFuncRGB() == Texture.CombinerFunctionRGB.Dot3RGB) {
                 createBumpController = true;
             }
@@ -0,0 +1,628 @@
+/*
+ * Copyright (c) 2003-2008 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors 
+ *   may be used to endorse or promote products derived from this software 
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.jmex.model.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.jme.image.Image;
+import com.jme.image.Texture;
+import com.jme.image.Texture2D;
+import com.jme.scene.Node;
+import com.jme.scene.Spatial;
+import com.jme.scene.state.RenderState;
+import com.jme.scene.state.TextureState;
+import com.jme.system.DisplaySystem;
+import com.jme.util.GameTaskQueueManager;
+import com.jme.util.TextureKey;
+import com.jme.util.TextureManager;
+import com.jme.util.export.binary.BinaryImporter;
+import com.jmex.model.converters.AseToJme;
+import com.jmex.model.converters.FormatConverter;
+import com.jmex.model.converters.MaxToJme;
+import com.jmex.model.converters.Md2ToJme;
+import com.jmex.model.converters.Md3ToJme;
+import com.jmex.model.converters.MilkToJme;
+import com.jmex.model.converters.ObjToJme;
+
+/**
+ * <code>AssetStreamer</code> loads models and textures in the background.
+ * The slow part of a load (reading the file, running the
+ * {@link FormatConverter}, {@link BinaryImporter} or image decoding) is done
+ * on a pool of daemon threads, highest priority requests first. Only the
+ * last step, uploading textures to the card and handing the asset to the
+ * scene, is queued to the OpenGL thread through
+ * {@link GameTaskQueueManager#render(Callable)}. Those uploads are limited to
+ * a time budget per frame (see {@link #setUploadBudget(float)}), the rest
+ * waits for the next frame.
+ * <p>
+ * Decoding may load textures through the {@link TextureManager}, its cache
+ * and image loaders are safe to use from the streamer threads.
+ * <p>
+ * Each load returns a {@link Request}: a Future of the asset that can be
+ * cancelled, holding a placeholder that can be put in the scene right away.
+ * An optional {@link AssetListener} is told on the OpenGL thread when the
+ * asset arrived.
+ * <p>
+ * The game must execute both the update and the render GameTaskQueues each
+ * frame, as StandardGame and BaseSimpleGame do.
+ */
+public class AssetStreamer {
+    private static final Logger logger = Logger.getLogger(AssetStreamer.class
+            .getName());
+
+    /** Priority of requests that do not give one. */
+    public static final int NORMAL_PRIORITY = 0;
+
+    private static AssetStreamer instance;
+
+    private final ThreadPoolExecutor executor;
+    private final PriorityBlockingQueue<Request<?>> uploads = new PriorityBlockingQueue<Request<?>>();
+    private final AtomicBoolean uploadScheduled = new AtomicBoolean();
+    private final AtomicLong sequence = new AtomicLong();
+    private volatile long uploadBudget = 4000000;
+    private TextureState uploadState;
+
+    private final Callable<Object> uploadTask = new Callable<Object>() {
+        public Object call() {
+            upload();
+            return null;
+        }
+    };
+
+    private final Callable<Object> scheduleTask = new Callable<Object>() {
+        public Object call() {
+            GameTaskQueueManager.getManager().render(uploadTask);
+            return null;
+        }
+    };
+
+    /**
+     * @param threads
+     *            the number of threads decoding assets, at least 1.
+     */
+    public AssetStreamer(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be >= 1: "
+                    + threads);
+        }
+        final AtomicInteger count = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0,
+                TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "jME Asset Streamer "
+                                + count.incrementAndGet());
+                        t.setDaemon(true);
+                        t.setPriority(Thread.NORM_PRIORITY - 1);
+                        return t;
+                    }
+                });
+    }
+
+    /**
+     * @return the shared streamer, created on first use with one thread less
+     *         than the number of available processors (at least one).
+     */
+    public static synchronized AssetStreamer getStreamer() {
+        if (instance == null) {
+            instance = new AssetStreamer(Math.max(1, Runtime.getRuntime()
+                    .availableProcessors() - 1));
+        }
+        return instance;
+    }
+
+    /**
+     * Sets the time the OpenGL thread may spend on uploads per frame. At
+     * least one upload is done in every frame that has some waiting.
+     * 
+     * @param milliseconds
+     *            the budget, 4 ms by default.
+     */
+    public void setUploadBudget(float milliseconds) {
+        uploadBudget = (long) (milliseconds * 1000000);
+    }
+
+    /**
+     * @return the time the OpenGL thread may spend on uploads per frame, in
+     *         milliseconds.
+     */
+    public float getUploadBudget() {
+        return uploadBudget / 1000000f;
+    }
+
+    /**
+     * @return the number of requests waiting to be decoded.
+     */
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Stops the decoding threads once their current requests are done.
+     * Queued requests are not decoded anymore.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Loads a texture. The returned request's placeholder is the Texture
+     * itself: until the image arrived it shows the default texture, then it
+     * is filled in through
+     * {@link TextureManager#loadTexture(Texture, TextureKey, Image, Texture.MinificationFilter, Texture.MagnificationFilter, float)}
+     * and uploaded. Only 2D textures are supported.
+     */
+    public Request<Texture> loadTexture(URL file,
+            Texture.MinificationFilter minFilter,
+            Texture.MagnificationFilter magFilter, int priority,
+            AssetListener<Texture> listener) {
+        return loadTexture(new TextureKey(file, true,
+                TextureManager.COMPRESS_BY_DEFAULT ? Image.Format.Guess
+                        : Image.Format.GuessNoCompression), minFilter,
+                magFilter, 0.0f, priority, listener);
+    }
+
+    /**
+     * @see #loadTexture(URL, Texture.MinificationFilter,
+     *      Texture.MagnificationFilter, int, AssetListener)
+     */
+    public Request<Texture> loadTexture(TextureKey key,
+            Texture.MinificationFilter minFilter,
+            Texture.MagnificationFilter magFilter, float anisoLevel,
+            int priority, AssetListener<Texture> listener) {
+        Texture placeholder = new Texture2D();
+        Texture defaultTexture = TextureState.getDefaultTexture();
+        if (defaultTexture != null) {
+            defaultTexture.createSimpleClone(placeholder);
+        }
+        placeholder.setMinificationFilter(minFilter);
+        placeholder.setMagnificationFilter(magFilter);
+        return submit(new TextureRequest(key, minFilter, magFilter,
+                anisoLevel, placeholder, priority, listener));
+    }
+
+    /**
+     * Loads a model, converting it first if it is not in the jME binary
+     * format (.jme or .jbin). The model is attached to the request's
+     * placeholder, an empty Node, when it arrives.
+     */
+    public Request<Spatial> loadModel(final URL model, int priority,
+            AssetListener<Spatial> listener) {
+        String file = model.getFile();
+        return loadModel(new Callable<Spatial>() {
+            public Spatial call() throws Exception {
+                return convertModel(model);
+            }
+        }, new Node(file.substring(file.lastIndexOf('/') + 1)), priority,
+                listener);
+    }
+
+    /**
+     * Loads a model through the given decoder, run on one of the streamer's
+     * threads. Once decoded the model's textures are uploaded, then it is
+     * attached to <code>placeholder</code> and handed to the listener.
+     * 
+     * @param placeholder
+     *            the Node to attach the model to, or null to leave this to
+     *            the listener.
+     */
+    public Request<Spatial> loadModel(Callable<? extends Spatial> decoder,
+            Node placeholder, int priority, AssetListener<Spatial> listener) {
+        return submit(new ModelRequest(decoder, placeholder, priority,
+                listener));
+    }
+
+    /**
+     * Reads a model, through the FormatConverter matching its extension if
+     * it is not in the jME binary format.
+     * 
+     * @throws IllegalArgumentException
+     *             if there is no converter for the extension.
+     */
+    public static Spatial convertModel(URL model) throws Exception {
+        String file = model.getFile();
+        String format = file.substring(file.lastIndexOf('.') + 1)
+                .toLowerCase();
+        if (format.equals("jme") || format.equals("jbin")) {
+            return (Spatial) BinaryImporter.getInstance().load(model);
+        }
+
+        FormatConverter converter;
+        if (format.equals("3ds")) {
+            converter = new MaxToJme();
+        } else if (format.equals("md2")) {
+            converter = new Md2ToJme();
+        } else if (format.equals("md3")) {
+            converter = new Md3ToJme();
+        } else if (format.equals("ms3d")) {
+            converter = new MilkToJme();
+        } else if (format.equals("ase")) {
+            converter = new AseToJme();
+        } else if (format.equals("obj")) {
+            ObjToJme obj = new ObjToJme();
+            obj.setProperty("mtllib", model);
+            return obj.load(model);
+        } else {
+            throw new IllegalArgumentException("Unknown model format: "
+                    + file);
+        }
+
+        ByteArrayOutputStream bo = new ByteArrayOutputStream();
+        InputStream is = model.openStream();
+        try {
+            converter.convert(is, bo);
+        } finally {
+            is.close();
+        }
+        return (Spatial) BinaryImporter.getInstance().load(
+                new ByteArrayInputStream(bo.toByteArray()));
+    }
+
+    private <T> Request<T> submit(Request<T> request) {
+        request.streamer = this;
+        request.sequence = sequence.getAndIncrement();
+        executor.execute(request);
+        return request;
+    }
+
+    private void decoded(Request<?> request) {
+        uploads.add(request);
+        if (uploadScheduled.compareAndSet(false, true)) {
+            GameTaskQueueManager.getManager().render(uploadTask);
+        }
+    }
+
+    /**
+     * Runs waiting uploads until the budget is spent. Called on the OpenGL
+     * thread.
+     */
+    private void upload() {
+        long start = System.nanoTime();
+        do {
+            Request<?> request = uploads.poll();
+            if (request == null) {
+                break;
+            }
+            request.upload();
+        } while (System.nanoTime() - start < uploadBudget);
+
+        uploadScheduled.set(false);
+        if (!uploads.isEmpty() && uploadScheduled.compareAndSet(false, true)) {
+            // go through the update queue so the next uploads are done in
+            // the next frame, even if the render queue executes all its tasks
+            GameTaskQueueManager.getManager().update(scheduleTask);
+        }
+    }
+
+    /**
+     * Uploads the textures of the state that are not on the card yet.
+     */
+    private static void uploadTextures(TextureState state) {
+        for (int i = 0, size = state.getNumberOfSetTextures(); i < size; i++) {
+            Texture texture = state.getTexture(i);
+            if (texture != null && texture.getTextureId() == 0
+                    && texture.getImage() != null) {
+                state.load(i);
+            }
+        }
+    }
+
+    private static void uploadTextures(Spatial spatial) {
+        TextureState state = (TextureState) spatial
+                .getRenderState(RenderState.RS_TEXTURE);
+        if (state != null) {
+            uploadTextures(state);
+        }
+        if (spatial instanceof Node) {
+            Node node = (Node) spatial;
+            for (int i = 0, size = node.getQuantity(); i < size; i++) {
+                uploadTextures(node.getChild(i));
+            }
+        }
+    }
+
+    private static boolean canUpload() {
+        DisplaySystem display = DisplaySystem.getDisplaySystem();
+        return display != null && display.isCreated()
+                && display.getRenderer() != null;
+    }
+
+    /**
+     * Told on the OpenGL thread about the outcome of a {@link Request}.
+     */
+    public interface AssetListener<T> {
+        /**
+         * @param asset
+         *            the loaded and uploaded asset.
+         */
+        void assetLoaded(Request<T> request, T asset);
+
+        /**
+         * @param cause
+         *            what went wrong while decoding or uploading.
+         */
+        void assetFailed(Request<T> request, Throwable cause);
+    }
+
+    /**
+     * A pending load. Its Future is done once the asset was uploaded, so
+     * waiting on it from the OpenGL thread blocks forever: use an
+     * {@link AssetListener} or {@link #isDone()} there instead.
+     */
+    public static abstract class Request<T> implements Future<T>, Runnable,
+            Comparable<Request<?>> {
+        private static final int QUEUED = 0, DECODING = 1, DECODED = 2,
+                DONE = 3, CANCELLED = 4;
+
+        private final int priority;
+        private final T placeholder;
+        private final AssetListener<T> listener;
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+        private final CountDownLatch done = new CountDownLatch(1);
+        private AssetStreamer streamer;
+        private long sequence;
+        private volatile T result;
+        private volatile Throwable error;
+
+        protected Request(T placeholder, int priority,
+                AssetListener<T> listener) {
+            this.placeholder = placeholder;
+            this.priority = priority;
+            this.listener = listener;
+        }
+
+        /**
+         * Reads the asset, on one of the streamer's threads.
+         */
+        protected abstract void decode() throws Exception;
+
+        /**
+         * Finishes the asset, on the OpenGL thread.
+         * 
+         * @return the asset.
+         */
+        protected abstract T finish() throws Exception;
+
+        /**
+         * @return the object standing in for the asset until it arrived.
+         */
+        public T getPlaceholder() {
+            return placeholder;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        public void run() {
+            if (!state.compareAndSet(QUEUED, DECODING)) {
+                return;
+            }
+            try {
+                decode();
+            } catch (Throwable t) {
+                error = t;
+            }
+            if (state.compareAndSet(DECODING, DECODED)) {
+                streamer.decoded(this);
+            }
+        }
+
+        private void upload() {
+            if (state.get() != DECODED) {
+                return;
+            }
+            if (error == null) {
+                try {
+                    result = finish();
+                } catch (Throwable t) {
+                    error = t;
+                }
+            }
+            if (!state.compareAndSet(DECODED, DONE)) {
+                return;
+            }
+            done.countDown();
+            if (error != null) {
+                logger.log(Level.WARNING, "Could not load asset.", error);
+                if (listener != null) {
+                    listener.assetFailed(this, error);
+                }
+            } else if (listener != null) {
+                listener.assetLoaded(this, result);
+            }
+        }
+
+        /**
+         * Removes the request from the queue, or drops its result if it was
+         * already decoding. The placeholder stays as it is.
+         */
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            while (true) {
+                int current = state.get();
+                if (current == DONE || current == CANCELLED) {
+                    return false;
+                }
+                if (state.compareAndSet(current, CANCELLED)) {
+                    break;
+                }
+            }
+            streamer.executor.remove(this);
+            streamer.uploads.remove(this);
+            done.countDown();
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        public boolean isDone() {
+            int current = state.get();
+            return current == DONE || current == CANCELLED;
+        }
+
+        public T get() throws InterruptedException, ExecutionException {
+            done.await();
+            return getResult();
+        }
+
+        public T get(long timeout, TimeUnit unit) throws InterruptedException,
+                ExecutionException, TimeoutException {
+            if (!done.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+            return getResult();
+        }
+
+        private T getResult() throws ExecutionException {
+            if (state.get() == CANCELLED) {
+                throw new CancellationException();
+            }
+            if (error != null) {
+                throw new ExecutionException(error);
+            }
+            return result;
+        }
+
+        public int compareTo(Request<?> other) {
+            if (priority != other.priority) {
+                return priority > other.priority ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1
+                    : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+
+    private class TextureRequest extends Request<Texture> {
+        private final TextureKey key;
+        private final Texture.MinificationFilter minFilter;
+        private final Texture.MagnificationFilter magFilter;
+        private final float anisoLevel;
+        private Image image;
+
+        TextureRequest(TextureKey key, Texture.MinificationFilter minFilter,
+                Texture.MagnificationFilter magFilter, float anisoLevel,
+                Texture placeholder, int priority,
+                AssetListener<Texture> listener) {
+            super(placeholder, priority, listener);
+            this.key = key;
+            this.minFilter = minFilter;
+            this.magFilter = magFilter;
+            this.anisoLevel = anisoLevel;
+        }
+
+        @Override
+        protected void decode() {
+            image = TextureManager.loadImage(key);
+        }
+
+        @Override
+        protected Texture finish() {
+            Texture texture = getPlaceholder();
+            texture.setTextureId(0);
+            texture.setImage(null);
+            Texture loaded = TextureManager.loadTexture(texture, key, image,
+                    minFilter, magFilter, anisoLevel);
+            image = null;
+            if (loaded != texture) {
+                // failed, the manager gave the default texture instead
+                throw new IllegalStateException("Could not load texture: "
+                        + key);
+            }
+            if (texture.getTextureId() == 0 && canUpload()) {
+                if (uploadState == null) {
+                    uploadState = DisplaySystem.getDisplaySystem()
+                            .getRenderer().createTextureState();
+                }
+                uploadState.setTexture(texture, 0);
+                uploadState.load(0);
+                uploadState.clearTextures();
+            }
+            return texture;
+        }
+    }
+
+    private static class ModelRequest extends Request<Spatial> {
+        private final Callable<? extends Spatial> decoder;
+        private final Node node;
+        private Spatial model;
+
+        ModelRequest(Callable<? extends Spatial> decoder, Node placeholder,
+                int priority, AssetListener<Spatial> listener) {
+            super(placeholder, priority, listener);
+            this.decoder = decoder;
+            this.node = placeholder;
+        }
+
+        @Override
+        protected void decode() throws Exception {
+            model = decoder.call();
+            if (model == null) {
+                throw new IllegalStateException("Decoder returned no model.");
+            }
+        }
+
+        @Override
+        protected Spatial finish() {
+            if (canUpload()) {
+                uploadTextures(model);
+            }
+            if (node != null) {
+                node.attachChild(model);
+                node.updateRenderState();
+            }
+            Spatial rVal = model;
+            model = null;
+            return rVal;
+        }
+    }
+}
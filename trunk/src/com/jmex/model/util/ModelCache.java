@@ -0,0 +1,339 @@
+/*
+ * Copyright (c) 2003-2008 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors 
+ *   may be used to endorse or promote products derived from this software 
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.jmex.model.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.jme.util.export.Savable;
+import com.jme.util.export.binary.BinaryImporter;
+import com.jmex.model.converters.FormatConverter;
+
+/**
+ * <code>ModelCache</code> keeps the jME binary output of
+ * {@link FormatConverter}s on disk, so a model only has to be converted the
+ * first time it is loaded. Cache files are named after a SHA-1 hash of the
+ * source file's bytes and the converter's
+ * {@link FormatConverter#getConversionKey() conversion key}, so editing a
+ * model, updating a converter or changing its properties leads to a new
+ * conversion.
+ * <br>
+ * Files are written to a temporary file first and renamed into place, so
+ * several processes can share one cache directory and never see a partial
+ * file. When the directory grows beyond its size limit the least recently
+ * used files are deleted.
+ * <br>
+ * Cache files are memory mapped when loaded, see
+ * {@link BinaryImporter#setMapFiles(boolean)}. On Windows a file stays locked
+ * while buffers of a model loaded from it are alive, and is only deleted by a
+ * later clean up. {@link #setMapFiles(boolean)} turns mapping off.
+ * <br>
+ * Files referenced by the source, like .mtl libraries or textures, are not
+ * part of the hash.
+ */
+public class ModelCache {
+    private static final Logger logger = Logger.getLogger(ModelCache.class
+            .getName());
+
+    /** Version of the cache layout, part of every key */
+    private static final int CACHE_VERSION = 1;
+    private static final String SUFFIX = ".jbin";
+    private static final String TEMP_SUFFIX = ".tmp";
+    /** Temporary files older than this were left behind by a crash */
+    private static final long STALE_TEMP_AGE = 60 * 60 * 1000L;
+
+    private static ModelCache defaultCache;
+
+    private final File directory;
+    private volatile long maxSize;
+    private volatile boolean mapFiles = true;
+
+    /**
+     * @param directory
+     *            the cache directory, created if needed.
+     * @param maxSize
+     *            the size in bytes the directory is trimmed to after each
+     *            write.
+     */
+    public ModelCache(File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the shared cache. Its directory is taken from the system
+     * property "jme.modelcache.dir" (default: "jme-model-cache" in the
+     * temp directory), its size limit in MB from "jme.modelcache.size"
+     * (default: 256).
+     */
+    public static synchronized ModelCache getDefault() {
+        if (defaultCache == null) {
+            String dir = System.getProperty("jme.modelcache.dir");
+            File directory = dir != null ? new File(dir) : new File(System
+                    .getProperty("java.io.tmpdir"), "jme-model-cache");
+            long size = 256;
+            try {
+                size = Long.parseLong(System.getProperty(
+                        "jme.modelcache.size", "256"));
+            } catch (NumberFormatException e) {
+                logger.warning("Invalid jme.modelcache.size, using 256 MB.");
+            }
+            defaultCache = new ModelCache(directory, size * 1024 * 1024);
+        }
+        return defaultCache;
+    }
+
+    /**
+     * Replaces the shared cache.
+     */
+    public static synchronized void setDefault(ModelCache cache) {
+        defaultCache = cache;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Loads a model through the cache. On a miss the source is converted,
+     * the result is stored and then imported. If the cache can not be
+     * written the converted model is still returned.
+     * 
+     * @param source
+     *            the model file.
+     * @param converter
+     *            the converter for the model's format, with its properties
+     *            set.
+     * @return the imported model.
+     * @throws IOException
+     *             if the source can not be read or converted.
+     */
+    public Savable load(URL source, FormatConverter converter)
+            throws IOException {
+        byte[] data = readFully(source);
+        String key = getKey(data, converter);
+        File file = new File(directory, key + SUFFIX);
+
+        if (file.isFile()) {
+            try {
+                BinaryImporter importer = BinaryImporter.getInstance();
+                importer.setMapFiles(mapFiles);
+                Savable model = importer.load(file);
+                // keeps recently used files alive during clean up
+                file.setLastModified(System.currentTimeMillis());
+                return model;
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "Dropping unreadable cache file "
+                        + file, e);
+                file.delete();
+            }
+        }
+
+        ByteArrayOutputStream converted = new ByteArrayOutputStream(Math.max(
+                1024, data.length));
+        converter.convert(new ByteArrayInputStream(data), converted);
+        byte[] binary = converted.toByteArray();
+        store(file, binary);
+        return BinaryImporter.getInstance().load(binary);
+    }
+
+    /**
+     * Sets whether cache files are memory mapped when loaded, see
+     * {@link BinaryImporter#setMapFiles(boolean)}.
+     * 
+     * @param mapFiles
+     *            true (the default) to map cache files, false to read them.
+     */
+    public void setMapFiles(boolean mapFiles) {
+        this.mapFiles = mapFiles;
+    }
+
+    public boolean isMapFiles() {
+        return mapFiles;
+    }
+
+    /**
+     * @return the name of the cache file for the given source and converter,
+     *         without directory or extension.
+     */
+    public String getKey(byte[] data, FormatConverter converter) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+        digest.update(data);
+        try {
+            digest.update((CACHE_VERSION + "|" + converter.getConversionKey())
+                    .getBytes("UTF-8"));
+        } catch (java.io.UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] hash = digest.digest();
+        StringBuilder sb = new StringBuilder(hash.length * 2);
+        for (int i = 0; i < hash.length; i++) {
+            sb.append(Character.forDigit((hash[i] >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(hash[i] & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private void store(File file, byte[] binary) {
+        if (!directory.isDirectory() && !directory.mkdirs()
+                && !directory.isDirectory()) {
+            logger.warning("Can not create model cache directory "
+                    + directory);
+            return;
+        }
+        File temp = null;
+        try {
+            temp = File.createTempFile(file.getName(), TEMP_SUFFIX, directory);
+            OutputStream out = new FileOutputStream(temp);
+            try {
+                out.write(binary);
+            } finally {
+                out.close();
+            }
+            // another process may have stored the same file meanwhile, the
+            // contents are identical so either copy wins.
+            if (!temp.renameTo(file) && !file.isFile()) {
+                logger.warning("Can not move " + temp + " to " + file);
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Can not write model cache file "
+                    + file, e);
+        } finally {
+            if (temp != null && temp.exists()) {
+                temp.delete();
+            }
+        }
+        cleanUp(file);
+    }
+
+    /**
+     * Deletes the least recently used cache files until the directory is
+     * below its size limit, as well as temporary files left behind by
+     * crashed writers.
+     */
+    public synchronized void cleanUp() {
+        cleanUp(null);
+    }
+
+    private synchronized void cleanUp(File keep) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long total = 0;
+        int count = 0;
+        for (int i = 0; i < files.length; i++) {
+            File f = files[i];
+            if (f.getName().endsWith(TEMP_SUFFIX)) {
+                if (now - f.lastModified() > STALE_TEMP_AGE) {
+                    f.delete();
+                }
+            } else if (f.getName().endsWith(SUFFIX)) {
+                total += f.length();
+                files[count++] = f;
+            }
+        }
+        if (total <= maxSize) {
+            return;
+        }
+        File[] cached = new File[count];
+        System.arraycopy(files, 0, cached, 0, count);
+        final long[] times = new long[count];
+        for (int i = 0; i < count; i++) {
+            times[i] = cached[i].lastModified();
+        }
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = Integer.valueOf(i);
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                long ta = times[a.intValue()], tb = times[b.intValue()];
+                return ta < tb ? -1 : (ta == tb ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < count && total > maxSize; i++) {
+            File f = cached[order[i].intValue()];
+            if (f.equals(keep)) {
+                continue;
+            }
+            long length = f.length();
+            // files in use by another process, or still mapped by this one,
+            // may not be deletable
+            if (f.delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    private static byte[] readFully(URL source) throws IOException {
+        InputStream in = source.openStream();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2003-2008 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors 
+ *   may be used to endorse or promote products derived from this software 
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.jmex.model.util;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.jme.system.DisplaySystem;
+import com.jme.system.dummy.DummySystemProvider;
+import com.jme.util.export.binary.BinaryImporter;
+import com.jmex.model.converters.FormatConverter;
+import com.jmex.model.converters.MaxToJme;
+import com.jmex.model.converters.ObjToJme;
+
+/**
+ * <code>ModelCacheBenchmark</code> reports the time to load a model by
+ * converting it every time, the way game code did before
+ * {@link ModelCache}, through an empty cache (cold) and through a filled
+ * cache (warm). Without a file argument an .obj grid is generated in the
+ * temp directory.
+ * <p>
+ * Usage: <code>ModelCacheBenchmark [model.obj | model.3ds | gridSize] [runs]</code>
+ */
+public class ModelCacheBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        Logger.getLogger("").setLevel(Level.WARNING);
+        DisplaySystem.setSystemProvider(new DummySystemProvider());
+        DisplaySystem.getDisplaySystem();
+
+        File model;
+        if (args.length > 0 && !args[0].matches("\\d+")) {
+            model = new File(args[0]);
+        } else {
+            int size = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+            model = File.createTempFile("model-cache-benchmark", ".obj");
+            model.deleteOnExit();
+            writeGrid(model, size);
+        }
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        File dir = new File(System.getProperty("java.io.tmpdir"),
+                "model-cache-benchmark-" + System.nanoTime());
+        ModelCache cache = new ModelCache(dir, 64 * 1024 * 1024);
+        System.out.println(model + ": " + (model.length() / 1024) + " kB, "
+                + runs + " runs");
+
+        long direct = Long.MAX_VALUE, cold = Long.MAX_VALUE, warm = Long.MAX_VALUE;
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            ByteArrayOutputStream bo = new ByteArrayOutputStream();
+            InputStream in = new FileInputStream(model);
+            converter(model).convert(in, bo);
+            in.close();
+            BinaryImporter.getInstance().load(
+                    new ByteArrayInputStream(bo.toByteArray()));
+            direct = Math.min(direct, System.nanoTime() - start);
+
+            deleteFiles(dir);
+            start = System.nanoTime();
+            cache.load(model.toURI().toURL(), converter(model));
+            cold = Math.min(cold, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            cache.load(model.toURI().toURL(), converter(model));
+            warm = Math.min(warm, System.nanoTime() - start);
+        }
+        System.out.println("Convert + import:  " + (direct / 1000000) + " ms");
+        System.out.println("Cold cache:        " + (cold / 1000000) + " ms");
+        System.out.println("Warm cache:        " + (warm / 1000000) + " ms");
+        deleteFiles(dir);
+        dir.delete();
+    }
+
+    private static FormatConverter converter(File model) {
+        FormatConverter converter = model.getName().toLowerCase().endsWith(
+                ".3ds") ? new MaxToJme() : new ObjToJme();
+        return converter;
+    }
+
+    private static void deleteFiles(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                files[i].delete();
+            }
+        }
+    }
+
+    private static void writeGrid(File file, int size) throws IOException {
+        Writer out = new BufferedWriter(new FileWriter(file));
+        for (int y = 0; y <= size; y++) {
+            for (int x = 0; x <= size; x++) {
+                out.write("v " + x + " " + (float) Math.sin(x * 0.1 + y * 0.2)
+                        + " " + y + "\n");
+                out.write("vt " + (float) x / size + " " + (float) y / size
+                        + "\n");
+            }
+        }
+        out.write("vn 0 1 0\n");
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int a = y * (size + 1) + x + 1, b = a + 1;
+                int c = a + size + 1, d = c + 1;
+                out.write("f " + a + "/" + a + "/1 " + b + "/" + b + "/1 "
+                        + d + "/" + d + "/1 " + c + "/" + c + "/1\n");
+            }
+        }
+        out.close();
+    }
+}
@@ -316,9 +316,14 @@ public class ModelLoader {
             URL url = getURL();
             for( int i = 0; i < props.length; i++ )
                 converter.setProperty( props[i], url );
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            converter.convert( url.openStream(), bos );
-            Savable savable = BinaryImporter.getInstance().load( new ByteArrayInputStream( bos.toByteArray() ) );
+            Savable savable;
+            if ( converter instanceof ObjToJme ) {
+                savable = ( (ObjToJme) converter ).load( url );
+            } else {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                converter.convert( url.openStream(), bos );
+                savable = BinaryImporter.getInstance().load( new ByteArrayInputStream( bos.toByteArray() ) );
+            }
             if ( savable instanceof Node ) {
                 return (Node) savable;
             } else {
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2003-2008 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors 
+ *   may be used to endorse or promote products derived from this software 
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.jmex.model.util;
+
+/**
+ * <code>NumberParser</code> parses the decimal numbers of text model formats
+ * straight from a char buffer, without creating a String for every number.
+ * It is shared by the streaming importers; numbers outside the plain
+ * notations it handles are handed to the <code>java.lang</code> parsers.
+ */
+public final class NumberParser {
+
+    private static final double[] POWERS_OF_TEN = new double[23];
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private NumberParser() {
+    }
+
+    /**
+     * Parses a decimal float from the first <code>length</code> chars of
+     * <code>c</code>. Plain decimal and exponent notation with up to 15
+     * significant digits is handled without allocating, anything else is
+     * handed to {@link Float#parseFloat(String)}.
+     */
+    public static float parseFloat(char[] c, int length) {
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (c[0] == '-' || c[0] == '+')) {
+            negative = c[0] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean any = false;
+        for (; i < length && c[i] >= '0' && c[i] <= '9'; i++) {
+            any = true;
+            mantissa = mantissa * 10 + (c[i] - '0');
+            if (mantissa != 0) {
+                digits++;
+            }
+        }
+        if (i < length && c[i] == '.') {
+            for (i++; i < length && c[i] >= '0' && c[i] <= '9'; i++) {
+                any = true;
+                mantissa = mantissa * 10 + (c[i] - '0');
+                if (mantissa != 0) {
+                    digits++;
+                }
+                exponent--;
+            }
+        }
+        if (any && i < length && (c[i] == 'e' || c[i] == 'E')) {
+            i++;
+            boolean negativeExp = false;
+            if (i < length && (c[i] == '-' || c[i] == '+')) {
+                negativeExp = c[i] == '-';
+                i++;
+            }
+            int exp = 0;
+            boolean expDigits = false;
+            for (; i < length && c[i] >= '0' && c[i] <= '9' && exp < 1000; i++) {
+                exp = exp * 10 + (c[i] - '0');
+                expDigits = true;
+            }
+            if (!expDigits) {
+                any = false;
+            }
+            exponent += negativeExp ? -exp : exp;
+        }
+        if (!any || i != length || digits > 15
+                || exponent < -(POWERS_OF_TEN.length - 1)
+                || exponent > POWERS_OF_TEN.length - 1) {
+            return Float.parseFloat(new String(c, 0, length));
+        }
+        double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent]
+                : mantissa * POWERS_OF_TEN[exponent];
+        return (float) (negative ? -value : value);
+    }
+
+    /**
+     * Parses a decimal int from the first <code>length</code> chars of
+     * <code>c</code>.
+     */
+    public static int parseInt(char[] c, int length) {
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (c[0] == '-' || c[0] == '+')) {
+            negative = c[0] == '-';
+            i++;
+        }
+        if (i == length || length > 10) {
+            return Integer.parseInt(new String(c, 0, length));
+        }
+        int value = 0;
+        for (; i < length; i++) {
+            char ch = c[i];
+            if (ch < '0' || ch > '9') {
+                return Integer.parseInt(new String(c, 0, length));
+            }
+            value = value * 10 + (ch - '0');
+        }
+        return negative ? -value : value;
+    }
+}
@@ -619,6 +619,24 @@ public abstract class PhysicsSpace {
         return generalCollisionEventHandler;
     }
 
+    /**
+     * Allows subclasses to skip computing contact info that nobody would receive.
+     *
+     * @param node1 first node of the collision, may be null
+     * @param node2 second node of the collision, may be null
+     * @param geometry1 first geometry of the collision, may be null
+     * @param geometry2 second geometry of the collision, may be null
+     * @return true if {@link #collisionEvent(ContactInfo)} would trigger any event handler for this collision
+     */
+    protected boolean hasCollisionEventHandler( PhysicsNode node1, PhysicsNode node2,
+                                                PhysicsCollisionGeometry geometry1, PhysicsCollisionGeometry geometry2 ) {
+        return generalCollisionEventHandler != null
+                || ( node1 != null && node1.collisionEventHandler != null )
+                || ( node2 != null && node2.collisionEventHandler != null )
+                || ( geometry1 != null && geometry1.collisionEventHandler != null )
+                || ( geometry2 != null && geometry2.collisionEventHandler != null );
+    }
+
     /**
      * Called by subclasses upon each collision event that could be processed by the application.
      *
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2003-2008 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors 
+ *   may be used to endorse or promote products derived from this software 
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.jmex.physics.impl.ode;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.jme.math.FastMath;
+import com.jme.math.Vector3f;
+import com.jmex.physics.DynamicPhysicsNode;
+import com.jmex.physics.Joint;
+import com.jmex.physics.PhysicsSpace;
+import com.jmex.physics.RotationalJointAxis;
+import com.jmex.physics.StaticPhysicsNode;
+
+/**
+ * <code>OdePhysicsBenchmark</code> measures the steps per second of an {@link OdePhysicsSpace} for two typical
+ * scenes: stacks of boxes resting on a floor and a pile of ragdolls (boxes connected by joints) falling onto it.
+ * Each scene is simulated twice, without and with a general collision event handler, as contact infos are only
+ * computed if some handler would receive them.
+ * <p>
+ * Usage: <code>OdePhysicsBenchmark [steps] [stacks] [ragdolls]</code>
+ */
+public class OdePhysicsBenchmark {
+
+    private static final float STEP = 0.02f;
+
+    public static void main( String[] args ) {
+        Logger.getLogger( "" ).setLevel( Level.WARNING );
+        int steps = args.length > 0 ? Integer.parseInt( args[0] ) : 2000;
+        int stacks = args.length > 1 ? Integer.parseInt( args[1] ) : 30;
+        int ragdolls = args.length > 2 ? Integer.parseInt( args[2] ) : 20;
+
+        System.out.println( "Cores: " + Runtime.getRuntime().availableProcessors() );
+        run( "box stacks (" + stacks + " x 10 boxes)", steps, stacks, 0 );
+        run( "ragdolls (" + ragdolls + " x 10 bodies)", steps, 0, ragdolls );
+    }
+
+    private static void run( String name, int steps, int stacks, int ragdolls ) {
+        double quietRate = simulate( steps, stacks, ragdolls, false );
+        double eventRate = simulate( steps, stacks, ragdolls, true );
+        System.out.println( name + ": " + format( quietRate ) + " steps/s, with collision events "
+                + format( eventRate ) + " steps/s" );
+    }
+
+    /**
+     * @return steps per second
+     */
+    private static double simulate( int steps, int stacks, int ragdolls, boolean events ) {
+        PhysicsSpace space = new OdePhysicsSpace();
+        if ( events ) {
+            space.getCollisionEventHandler();
+        }
+        StaticPhysicsNode floor = space.createStaticNode();
+        floor.createBox( "floor" ).getLocalScale().set( 200, 1, 200 );
+        floor.getLocalTranslation().y = -0.5f;
+        floor.updateGeometricState( 0, true );
+
+        int rows = Math.max( 1, (int) FastMath.sqrt( stacks + ragdolls ) );
+        for ( int i = 0; i < stacks; i++ ) {
+            for ( int j = 0; j < 10; j++ ) {
+                createBox( space, new Vector3f( ( i % rows ) * 3, 0.5f + j, ( i / rows ) * 3 ), new Vector3f( 1, 1, 1 ) );
+            }
+        }
+        for ( int i = 0; i < ragdolls; i++ ) {
+            createRagdoll( space, new Vector3f( ( i % rows ) * 4, 3 + ( i % 3 ) * 2, ( i / rows ) * 4 ) );
+        }
+
+        // let the scene settle a little before measuring
+        int warmup = steps / 10;
+        for ( int i = 0; i < warmup; i++ ) {
+            space.update( STEP );
+        }
+        long start = System.nanoTime();
+        for ( int i = warmup; i < steps; i++ ) {
+            space.update( STEP );
+        }
+        double seconds = ( System.nanoTime() - start ) / 1000000000.0;
+
+        space.delete();
+        return ( steps - warmup ) / seconds;
+    }
+
+    private static DynamicPhysicsNode createBox( PhysicsSpace space, Vector3f position, Vector3f size ) {
+        DynamicPhysicsNode node = space.createDynamicNode();
+        node.createBox( "box" ).getLocalScale().set( size );
+        node.getLocalTranslation().set( position );
+        node.generatePhysicsGeometry();
+        node.computeMass();
+        node.updateGeometricState( 0, true );
+        return node;
+    }
+
+    /**
+     * Creates a crude ragdoll: torso, head, two two-part arms and two two-part legs connected by hinges.
+     */
+    private static void createRagdoll( PhysicsSpace space, Vector3f base ) {
+        DynamicPhysicsNode torso = createBox( space, base.add( 0, 1.5f, 0 ), new Vector3f( 0.6f, 1, 0.3f ) );
+        DynamicPhysicsNode head = createBox( space, base.add( 0, 2.3f, 0 ), new Vector3f( 0.4f, 0.4f, 0.4f ) );
+        connect( space, torso, head, base.add( 0, 2.05f, 0 ) );
+        for ( int side = -1; side <= 1; side += 2 ) {
+            DynamicPhysicsNode upperArm = createBox( space, base.add( side * 0.65f, 1.7f, 0 ),
+                    new Vector3f( 0.5f, 0.2f, 0.2f ) );
+            DynamicPhysicsNode lowerArm = createBox( space, base.add( side * 1.2f, 1.7f, 0 ),
+                    new Vector3f( 0.5f, 0.18f, 0.18f ) );
+            connect( space, torso, upperArm, base.add( side * 0.35f, 1.7f, 0 ) );
+            connect( space, upperArm, lowerArm, base.add( side * 0.92f, 1.7f, 0 ) );
+            DynamicPhysicsNode upperLeg = createBox( space, base.add( side * 0.17f, 0.7f, 0 ),
+                    new Vector3f( 0.22f, 0.6f, 0.22f ) );
+            DynamicPhysicsNode lowerLeg = createBox( space, base.add( side * 0.17f, 0.1f, 0 ),
+                    new Vector3f( 0.2f, 0.6f, 0.2f ) );
+            connect( space, torso, upperLeg, base.add( side * 0.17f, 1, 0 ) );
+            connect( space, upperLeg, lowerLeg, base.add( side * 0.17f, 0.4f, 0 ) );
+        }
+    }
+
+    private static void connect( PhysicsSpace space, DynamicPhysicsNode a, DynamicPhysicsNode b, Vector3f anchor ) {
+        Joint joint = space.createJoint();
+        RotationalJointAxis axis = joint.createRotationalAxis();
+        axis.setDirection( Vector3f.UNIT_X );
+        axis.setPositionMinimum( -FastMath.HALF_PI );
+        axis.setPositionMaximum( FastMath.HALF_PI );
+        joint.attach( a, b );
+        joint.setAnchor( anchor.subtractLocal( a.getLocalTranslation() ) );
+    }
+
+    private static String format( double value ) {
+        return String.valueOf( Math.round( value * 10 ) / 10.0 );
+    }
+}
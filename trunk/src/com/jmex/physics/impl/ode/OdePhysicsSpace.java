@@ -910,10 +910,10 @@ public class OdePhysicsSpace extends PhysicsSpace {
 //                        }
                     }
 
-                    if ( ( obj1 != previous1 ) || ( obj2 != previous2 ) ) {
+                    if ( ( ( obj1 != previous1 ) || ( obj2 != previous2 ) )
+                            && hasCollisionEventHandler( obj1, obj2, geom1.getGeometry(), geom2.getGeometry() ) ) {
                         // compute collision velocity (must be done before
-                        // returning contact)
-                        // todo: this takes quite some time - could be skipped if not needed
+                        // returning contact) - skipped if no handler would receive the event
                         Vector3f actualBounceVel = tmpBounceVel.set( 0, 0, 0 );
                         if ( obj1 != null && !obj1.isStatic() ) {
                             actualBounceVel.subtractLocal( ( (DynamicPhysicsNode) obj1 )
@@ -34,7 +34,9 @@ package com.jmex.terrain;
 
 import java.io.IOException;
 import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 
+import com.jme.bounding.CollisionTreeManager;
 import com.jme.math.FastMath;
 import com.jme.math.Vector2f;
 import com.jme.math.Vector3f;
@@ -87,6 +89,19 @@ public class TerrainBlock extends TriMesh {
 
     private float[] oldHeightMap;
 
+    // geometric error of each lod level, built on first use
+    private transient float[] lodErrors;
+
+    private transient int lodLevel;
+
+    private transient int lodEdges;
+
+    /**
+     * the index buffer built for this block, kept while a shared level of
+     * detail buffer is in use
+     */
+    private transient IntBuffer ownIndexBuffer;
+
     private static Vector3f calcVec1 = new Vector3f();
 
     private static Vector3f calcVec2 = new Vector3f();
@@ -500,6 +515,104 @@ public class TerrainBlock extends TriMesh {
         }
     }
 
+    /**
+     * Returns the coarsest level of detail this block can be drawn at. Level
+     * <i>l</i> uses every 2<sup><i>l</i></sup>-th row and column of the
+     * height map; level 0 is full resolution.
+     * 
+     * @return the coarsest level of detail.
+     */
+    public int getMaxLodLevel() {
+        return TerrainLodIndices.getMaxLevel(size);
+    }
+
+    /**
+     * @return the level of detail the block is currently drawn at.
+     */
+    public int getLodLevel() {
+        return lodLevel;
+    }
+
+    /**
+     * <code>setLodLevel</code> switches the block to another level of detail
+     * by swapping in a shared, precomputed index buffer. The vertex data is
+     * left untouched. A cached collision tree refers to the triangles of the
+     * previous index buffer, so it is removed and built again on demand.
+     * 
+     * @param level
+     *            the level of detail, from 0 to {@link #getMaxLodLevel()}.
+     * @param coarserEdges
+     *            bit mask of the edges (1 left, 2 right, 4 top, 8 bottom; left
+     *            and top being the lowest x and z) that border a block drawn
+     *            one level coarser and have to be stitched to it.
+     */
+    public void setLodLevel(int level, int coarserEdges) {
+        if (level == lodLevel && coarserEdges == lodEdges) {
+            return;
+        }
+        lodLevel = level;
+        lodEdges = coarserEdges;
+        if (ownIndexBuffer == null) {
+            ownIndexBuffer = getIndexBuffer();
+        }
+        setIndexBuffer(TerrainLodIndices.get(size, level, coarserEdges));
+        if (getVBOInfo() != null) {
+            getVBOInfo().setVBOIndexID(-1);
+        }
+        CollisionTreeManager.getInstance().removeCollisionTree(this);
+    }
+
+    /**
+     * @return the index buffer built for this block, which unlike the level
+     *         of detail buffers is not shared with other blocks.
+     */
+    IntBuffer getOwnIndexBuffer() {
+        return ownIndexBuffer != null ? ownIndexBuffer : getIndexBuffer();
+    }
+
+    /**
+     * Returns the largest vertical error, in height map units, introduced by
+     * drawing this block at each level of detail instead of at full
+     * resolution. The errors never decrease with the level.
+     * 
+     * @return the error per level, index 0 always being 0.
+     */
+    public float[] getLodErrors() {
+        if (lodErrors == null) {
+            lodErrors = computeLodErrors();
+        }
+        return lodErrors;
+    }
+
+    private float[] computeLodErrors() {
+        float[] errors = new float[getMaxLodLevel() + 1];
+        for (int level = 1; level < errors.length; level++) {
+            int step = 1 << level;
+            float max = errors[level - 1];
+            for (int z = 0; z < size; z++) {
+                int cz = Math.min(z - z % step, size - 1 - step);
+                float v = (z - cz) / (float) step;
+                for (int x = 0; x < size; x++) {
+                    int cx = Math.min(x - x % step, size - 1 - step);
+                    float u = (x - cx) / (float) step;
+                    int tl = cx + cz * size;
+                    float h00 = heightMap[tl], h10 = heightMap[tl + step];
+                    float h01 = heightMap[tl + step * size];
+                    float h11 = heightMap[tl + step + step * size];
+                    // interpolate on the same diagonal the indices use
+                    float h = u >= v ? h00 + u * (h10 - h00) + v * (h11 - h10)
+                            : h00 + v * (h01 - h00) + u * (h11 - h01);
+                    float error = FastMath.abs(heightMap[x + z * size] - h);
+                    if (error > max) {
+                        max = error;
+                    }
+                }
+            }
+            errors[level] = max;
+        }
+        return errors;
+    }
+
     /**
      * Returns the height map this terrain block is using.
      * 
@@ -625,6 +738,7 @@ public class TerrainBlock extends TriMesh {
      */
     public void setHeightMap(float[] heightMap) {
         this.heightMap = heightMap;
+        lodErrors = null;
     }
 
     /**
@@ -644,6 +758,7 @@ public class TerrainBlock extends TriMesh {
             }
         }
         buildNormals();
+        lodErrors = null;
 
         if (getVBOInfo() != null) {
             getVBOInfo().setVBOVertexID(-1);
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2003-2008 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors 
+ *   may be used to endorse or promote products derived from this software 
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jmex.terrain;
+
+import java.nio.IntBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.jme.util.geom.BufferUtils;
+
+/**
+ * <code>TerrainLodIndices</code> builds and caches the index buffers used by
+ * level of detail terrain blocks. The buffers only depend on the block size,
+ * so all blocks of a terrain share one set of them.
+ * <p>
+ * Level <i>l</i> connects every 2<sup><i>l</i></sup>-th vertex. Each level has
+ * sixteen variants, one per combination of edges that border a block one level
+ * coarser. On such an edge every second vertex of the level is collapsed onto
+ * its neighbour along the edge, so the edge only uses vertices the coarser
+ * block has as well and no cracks open between the two.
+ */
+final class TerrainLodIndices {
+
+    static final int EDGE_LEFT = 1;
+    static final int EDGE_RIGHT = 2;
+    static final int EDGE_TOP = 4;
+    static final int EDGE_BOTTOM = 8;
+
+    /** block size to [level * 16 + edge mask] */
+    private static final Map<Integer, IntBuffer[]> cache = new HashMap<Integer, IntBuffer[]>();
+
+    private TerrainLodIndices() {
+    }
+
+    /**
+     * @param size
+     *            the number of vertices along a side of the block (2^N + 1).
+     * @return the coarsest level for that size, which has two cells per side.
+     */
+    static int getMaxLevel(int size) {
+        int cells = size - 1, level = 0;
+        while (cells > 2) {
+            cells >>= 1;
+            level++;
+        }
+        return level;
+    }
+
+    static synchronized IntBuffer get(int size, int level, int edgeMask) {
+        IntBuffer[] buffers = cache.get(size);
+        if (buffers == null) {
+            buffers = new IntBuffer[(getMaxLevel(size) + 1) * 16];
+            cache.put(size, buffers);
+        }
+        int i = level * 16 + edgeMask;
+        if (buffers[i] == null) {
+            buffers[i] = build(size, level, edgeMask);
+        }
+        return buffers[i];
+    }
+
+    private static IntBuffer build(int size, int level, int edgeMask) {
+        int step = 1 << level;
+        int cells = (size - 1) / step;
+        int[] indices = new int[cells * cells * 6];
+        int count = 0;
+        for (int z = 0; z < size - 1; z += step) {
+            for (int x = 0; x < size - 1; x += step) {
+                // same winding and diagonal as TerrainBlock.buildVertices
+                int tl = vertex(x, z, size, step, edgeMask);
+                int tr = vertex(x + step, z, size, step, edgeMask);
+                int bl = vertex(x, z + step, size, step, edgeMask);
+                int br = vertex(x + step, z + step, size, step, edgeMask);
+                count = triangle(indices, count, tl, br, tr);
+                count = triangle(indices, count, tl, bl, br);
+            }
+        }
+        IntBuffer buf = BufferUtils.createIntBuffer(count);
+        buf.put(indices, 0, count);
+        buf.flip();
+        return buf;
+    }
+
+    private static int triangle(int[] indices, int count, int a, int b, int c) {
+        // drop triangles that collapsed on a stitched edge
+        if (a != b && b != c && a != c) {
+            indices[count++] = a;
+            indices[count++] = b;
+            indices[count++] = c;
+        }
+        return count;
+    }
+
+    private static int vertex(int x, int z, int size, int step, int edgeMask) {
+        int last = size - 1;
+        if ((x == 0 && (edgeMask & EDGE_LEFT) != 0)
+                || (x == last && (edgeMask & EDGE_RIGHT) != 0)) {
+            if ((z / step & 1) != 0) {
+                z -= step;
+            }
+        } else if ((z == 0 && (edgeMask & EDGE_TOP) != 0)
+                || (z == last && (edgeMask & EDGE_BOTTOM) != 0)) {
+            if ((x / step & 1) != 0) {
+                x -= step;
+            }
+        }
+        return x + z * size;
+    }
+}
@@ -33,20 +33,27 @@
 package com.jmex.terrain;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import com.jme.bounding.BoundingBox;
 import com.jme.bounding.BoundingVolume;
 import com.jme.math.FastMath;
 import com.jme.math.Vector2f;
 import com.jme.math.Vector3f;
+import com.jme.renderer.Camera;
 import com.jme.scene.Node;
 import com.jme.scene.Spatial;
 import com.jme.system.DisplaySystem;
 import com.jme.system.JmeException;
+import com.jme.util.Debug;
+import com.jme.util.WorkerPool;
 import com.jme.util.export.InputCapsule;
 import com.jme.util.export.JMEExporter;
 import com.jme.util.export.JMEImporter;
 import com.jme.util.export.OutputCapsule;
+import com.jme.util.stat.StatCollector;
+import com.jme.util.stat.StatType;
 
 /**
  * <code>TerrainPage</code> is used to build a quad tree of terrain blocks. The
@@ -66,6 +73,13 @@ public class TerrainPage extends Node {
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Number of triangles all blocks of level of detail terrain pages are set
+     * to draw with, counted once per frame.
+     */
+    public static final StatType STAT_TERRAIN_TRIANGLE_COUNT = new StatType(
+            "_terrainTriCount");
+
     private Vector2f offset;
 
     private int totalSize;
@@ -80,6 +94,21 @@ public class TerrainPage extends Node {
 
     private static Vector3f calcVec1 = new Vector3f();
 
+    private boolean lodEnabled;
+
+    private float lodPixelError = 2;
+
+    // the blocks of the whole quad tree laid out as a grid, x major
+    private transient TerrainBlock[] lodBlocks;
+
+    private transient int lodGridSize;
+
+    private transient int[] lodLevels;
+
+    private transient Camera lodCamera;
+
+    private transient int lodViewportHeight;
+
     /**
      * Empty Constructor to be used internally only.
      */
@@ -579,8 +608,7 @@ public class TerrainPage extends Node {
                 offsetAmount);
         block1.setQuadrant((short) 1);
         this.attachChild(block1);
-        block1.setModelBound(new BoundingBox());
-        block1.updateModelBound();
+        setBlockBound(block1);
 
         // 2 lower left
         float[] heightBlock2 = createHeightSubBlock(heightMap, 0, split - 1,
@@ -598,8 +626,7 @@ public class TerrainPage extends Node {
                 offsetAmount);
         block2.setQuadrant((short) 2);
         this.attachChild(block2);
-        block2.setModelBound(new BoundingBox());
-        block2.updateModelBound();
+        setBlockBound(block2);
 
         // 3 upper right
         float[] heightBlock3 = createHeightSubBlock(heightMap, split - 1, 0,
@@ -617,8 +644,7 @@ public class TerrainPage extends Node {
                 offsetAmount);
         block3.setQuadrant((short) 3);
         this.attachChild(block3);
-        block3.setModelBound(new BoundingBox());
-        block3.updateModelBound();
+        setBlockBound(block3);
 
         // 4 lower right
         float[] heightBlock4 = createHeightSubBlock(heightMap, split - 1,
@@ -636,8 +662,28 @@ public class TerrainPage extends Node {
                 offsetAmount);
         block4.setQuadrant((short) 4);
         this.attachChild(block4);
-        block4.setModelBound(new BoundingBox());
-        block4.updateModelBound();
+        setBlockBound(block4);
+    }
+
+    /**
+     * Gives the block the same bounding box updateModelBound() would compute,
+     * but straight from its height map instead of walking the vertex buffer.
+     */
+    private static void setBlockBound(TerrainBlock block) {
+        float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+        for (float h : block.getHeightMap()) {
+            if (h < min) min = h;
+            if (h > max) max = h;
+        }
+        Vector3f step = block.getStepScale();
+        float minY = Math.min(min * step.y, max * step.y);
+        float maxY = Math.max(min * step.y, max * step.y);
+        float xExtent = FastMath.abs((block.getSize() - 1) * step.x * 0.5f);
+        float zExtent = FastMath.abs((block.getSize() - 1) * step.z * 0.5f);
+        block.setModelBound(new BoundingBox(new Vector3f(
+                (block.getSize() - 1) * step.x * 0.5f, (minY + maxY) * 0.5f,
+                (block.getSize() - 1) * step.z * 0.5f), xExtent,
+                (maxY - minY) * 0.5f, zExtent));
     }
 
     /**
@@ -746,6 +792,235 @@ public class TerrainPage extends Node {
         this.offsetAmount = offsetAmount;
     }
 
+    /**
+     * <code>setLodEnabled</code> turns level of detail on or off for the
+     * terrain below this page, which should be the root page. With it on, each
+     * update every block picks the coarsest precomputed level whose geometric
+     * error, seen from the camera set with
+     * {@link #setLodCamera(Camera, int)}, projects to at most
+     * {@link #getLodPixelError()} pixels on screen, neighbouring blocks are
+     * kept within one level of each other and their shared edges are stitched
+     * so no cracks appear.
+     * 
+     * @param enabled
+     *            true to draw distant blocks with fewer triangles.
+     */
+    public void setLodEnabled(boolean enabled) {
+        lodEnabled = enabled;
+        lodBlocks = null;
+        if (!enabled) {
+            List<TerrainBlock> blocks = new ArrayList<TerrainBlock>();
+            collectBlocks(this, blocks);
+            for (TerrainBlock block : blocks) {
+                block.setLodLevel(0, 0);
+            }
+        }
+    }
+
+    public boolean isLodEnabled() {
+        return lodEnabled;
+    }
+
+    /**
+     * @param pixels
+     *            the largest vertical error, in pixels, a block's level of
+     *            detail may introduce. Defaults to 2.
+     */
+    public void setLodPixelError(float pixels) {
+        lodPixelError = pixels;
+    }
+
+    public float getLodPixelError() {
+        return lodPixelError;
+    }
+
+    /**
+     * <code>setLodCamera</code> sets the view the level of detail is picked
+     * for. Other cameras the terrain is drawn with, for shadow, reflection or
+     * water passes, see the same levels.
+     * 
+     * @param camera
+     *            the camera the terrain is seen from, or null to keep the
+     *            current levels.
+     * @param viewportHeight
+     *            the height of the camera's viewport in pixels.
+     */
+    public void setLodCamera(Camera camera, int viewportHeight) {
+        lodCamera = camera;
+        lodViewportHeight = viewportHeight;
+    }
+
+    public Camera getLodCamera() {
+        return lodCamera;
+    }
+
+    @Override
+    public void updateWorldData(float time) {
+        super.updateWorldData(time);
+        if (lodEnabled && lodCamera != null
+                && !(parent instanceof TerrainPage)) {
+            updateLod(lodCamera, lodViewportHeight);
+        }
+    }
+
+    /**
+     * <code>updateLod</code> picks the level of detail of every block below
+     * this page for the given view. It is called from
+     * {@link #updateWorldData(float)} when level of detail is enabled and a
+     * camera is set; world bounds must be up to date.
+     * 
+     * @param cam
+     *            the camera the terrain is seen from.
+     * @param viewportHeight
+     *            the height of the viewport in pixels.
+     */
+    public void updateLod(Camera cam, int viewportHeight) {
+        if (lodBlocks == null) {
+            initLod();
+        }
+        if (lodBlocks.length == 0) {
+            return;
+        }
+
+        // height in pixels of one world unit at distance one (or anywhere
+        // for parallel projection)
+        float pixelsPerUnit;
+        boolean parallel = cam.isParallelProjection();
+        if (parallel) {
+            pixelsPerUnit = viewportHeight
+                    / (cam.getFrustumTop() - cam.getFrustumBottom());
+        } else {
+            pixelsPerUnit = viewportHeight * 0.5f * cam.getFrustumNear()
+                    / cam.getFrustumTop();
+        }
+
+        for (int i = 0; i < lodBlocks.length; i++) {
+            TerrainBlock block = lodBlocks[i];
+            if (block == null) {
+                lodLevels[i] = 0;
+                continue;
+            }
+            float distance = 1;
+            if (!parallel) {
+                BoundingVolume bound = block.getWorldBound();
+                distance = bound != null ? bound.distanceToEdge(cam
+                        .getLocation()) : block.getWorldTranslation()
+                        .distance(cam.getLocation());
+                distance = Math.max(distance, cam.getFrustumNear());
+            }
+            float allowed = lodPixelError * distance
+                    / (pixelsPerUnit * block.getWorldScale().y * block
+                            .getStepScale().y);
+
+            float[] errors = block.getLodErrors();
+            int level = 0;
+            while (level + 1 < errors.length && errors[level + 1] <= allowed) {
+                level++;
+            }
+            lodLevels[i] = level;
+        }
+
+        // neighbours may only differ by one level for the stitching to work
+        int n = lodGridSize;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int x = 0; x < n; x++) {
+                for (int z = 0; z < n; z++) {
+                    int i = x * n + z;
+                    int limit = lodLevels[i];
+                    if (x > 0) limit = Math.min(limit, lodLevels[i - n] + 1);
+                    if (x < n - 1) limit = Math.min(limit, lodLevels[i + n] + 1);
+                    if (z > 0) limit = Math.min(limit, lodLevels[i - 1] + 1);
+                    if (z < n - 1) limit = Math.min(limit, lodLevels[i + 1] + 1);
+                    if (limit < lodLevels[i]) {
+                        lodLevels[i] = limit;
+                        changed = true;
+                    }
+                }
+            }
+        }
+
+        int triangles = 0;
+        for (int x = 0; x < n; x++) {
+            for (int z = 0; z < n; z++) {
+                int i = x * n + z;
+                TerrainBlock block = lodBlocks[i];
+                if (block == null) {
+                    continue;
+                }
+                int level = lodLevels[i];
+                int edges = 0;
+                if (x > 0 && lodLevels[i - n] > level)
+                    edges |= TerrainLodIndices.EDGE_LEFT;
+                if (x < n - 1 && lodLevels[i + n] > level)
+                    edges |= TerrainLodIndices.EDGE_RIGHT;
+                if (z > 0 && lodLevels[i - 1] > level)
+                    edges |= TerrainLodIndices.EDGE_TOP;
+                if (z < n - 1 && lodLevels[i + 1] > level)
+                    edges |= TerrainLodIndices.EDGE_BOTTOM;
+                block.setLodLevel(level, edges);
+                triangles += block.getTriangleCount();
+            }
+        }
+        if (Debug.stats) {
+            StatCollector.addStat(STAT_TERRAIN_TRIANGLE_COUNT, triangles);
+        }
+    }
+
+    private void initLod() {
+        List<TerrainBlock> blocks = new ArrayList<TerrainBlock>();
+        collectBlocks(this, blocks);
+        if (blocks.isEmpty()) {
+            lodBlocks = new TerrainBlock[0];
+            return;
+        }
+
+        // place the blocks by their corner relative to this page's center
+        int blockCells = blocks.get(0).getSize() - 1;
+        lodGridSize = (size - 1) / blockCells;
+        lodBlocks = new TerrainBlock[lodGridSize * lodGridSize];
+        lodLevels = new int[lodBlocks.length];
+        float half = (size - 1) * 0.5f;
+        for (TerrainBlock block : blocks) {
+            Vector3f corner = calcVec1.set(block.getLocalTranslation());
+            for (Node n = block.getParent(); n != this; n = n.getParent()) {
+                corner.addLocal(n.getLocalTranslation());
+            }
+            int x = Math.round((corner.x / stepScale.x + half) / blockCells);
+            int z = Math.round((corner.z / stepScale.z + half) / blockCells);
+            if (x < 0 || z < 0 || x >= lodGridSize || z >= lodGridSize) {
+                continue;
+            }
+            lodBlocks[x * lodGridSize + z] = block;
+        }
+
+        // compute the per level errors of all blocks up front
+        final TerrainBlock[] all = blocks.toArray(new TerrainBlock[blocks
+                .size()]);
+        WorkerPool.getPool().invokeRange(all.length, 4,
+                new WorkerPool.RangeTask() {
+                    public void run(int start, int end) {
+                        for (int i = start; i < end; i++) {
+                            all[i].getLodErrors();
+                        }
+                    }
+                });
+    }
+
+    private static void collectBlocks(Node node, List<TerrainBlock> store) {
+        if (node.getChildren() == null) {
+            return;
+        }
+        for (Spatial child : node.getChildren()) {
+            if (child instanceof TerrainBlock) {
+                store.add((TerrainBlock) child);
+            } else if (child instanceof TerrainPage) {
+                collectBlocks((TerrainPage) child, store);
+            }
+        }
+    }
+
     /*
      * Deletes the VBO for this normal buffer, if any is present.
      */
@@ -1122,6 +1397,8 @@ public class TerrainPage extends Node {
         capsule.write(stepScale, "stepScale", new Vector2f());
         capsule.write(offsetAmount, "offsetAmount", 0);
         capsule.write(quadrant, "quadrant", (short) 1);
+        capsule.write(lodEnabled, "lodEnabled", false);
+        capsule.write(lodPixelError, "lodPixelError", 2);
     }
 
     public void read(JMEImporter e) throws IOException {
@@ -1134,5 +1411,7 @@ public class TerrainPage extends Node {
         stepScale = (Vector3f) capsule.readSavable("stepScale", new Vector2f());
         offsetAmount = capsule.readFloat("offsetAmount", 0);
         quadrant = capsule.readShort("quadrant", (short) 1);
+        lodEnabled = capsule.readBoolean("lodEnabled", false);
+        lodPixelError = capsule.readFloat("lodPixelError", 2);
     }
 }
\ No newline at end of file
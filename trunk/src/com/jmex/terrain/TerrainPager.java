@@ -0,0 +1,529 @@
+/*
+ * Copyright (c) 2003-2008 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors 
+ *   may be used to endorse or promote products derived from this software 
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jmex.terrain;
+
+import java.nio.Buffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.jme.math.Vector3f;
+import com.jme.renderer.Camera;
+import com.jme.renderer.Renderer;
+import com.jme.scene.Node;
+import com.jme.scene.Spatial;
+import com.jme.scene.TexCoords;
+import com.jme.system.DisplaySystem;
+import com.jme.util.GameTaskQueueManager;
+
+/**
+ * <code>TerrainPager</code> streams an unbounded terrain made of
+ * <code>TerrainPage</code>s. It keeps the pages within
+ * {@link #getViewRadius()} pages of the camera attached. Missing pages are
+ * loaded from a {@link TerrainPageSource} and built on background threads,
+ * nearest first, and pages that fall out of range are detached and their
+ * buffers and VBOs released.
+ * <p>
+ * All work on the update thread (attaching finished pages and releasing old
+ * ones) stops for the frame once {@link #getFrameBudget()} milliseconds have
+ * been spent, so moving quickly never stalls a frame much longer than that.
+ * The VBOs of released pages are deleted through the
+ * {@link com.jme.util.GameTaskQueue#RENDER} queue, so the pager may be
+ * updated outside the OpenGL thread.
+ * <p>
+ * Page (x, z) covers x * (pageSize - 1) * stepScale.x to (x + 1) *
+ * (pageSize - 1) * stepScale.x along the pager's local x axis, and the same
+ * along z.
+ */
+public class TerrainPager extends Node {
+    private static final Logger logger = Logger.getLogger(TerrainPager.class
+            .getName());
+
+    private static final long serialVersionUID = 1L;
+
+    private final Camera cam;
+
+    private final int pageSize;
+
+    private final int blockSize;
+
+    private final Vector3f stepScale;
+
+    private final TerrainPageSource source;
+
+    private final ExecutorService executor;
+
+    private final int maxPending;
+
+    private int viewRadius = 2;
+
+    private float frameBudget = 2;
+
+    /** all pages wanted or loaded, by packed page coordinates */
+    private final Map<Long, PageEntry> pages = new HashMap<Long, PageEntry>();
+
+    /**
+     * pages dropped while their job was queued or running, by packed page
+     * coordinates; requesting one of them again takes it back instead of
+     * starting a second job for the same page
+     */
+    private final Map<Long, PageEntry> droppedPages = new HashMap<Long, PageEntry>();
+
+    /** pages built by the background threads, waiting to be attached */
+    private final ConcurrentLinkedQueue<PageEntry> built = new ConcurrentLinkedQueue<PageEntry>();
+
+    /** detached pages waiting for their buffers to be released */
+    private final List<TerrainPage> released = new ArrayList<TerrainPage>();
+
+    /** page offsets within the view radius, nearest first */
+    private int[][] ring;
+
+    private int pending;
+
+    private final Vector3f camLocal = new Vector3f();
+
+    /**
+     * @param name
+     *            the name of the node.
+     * @param cam
+     *            the camera to page around.
+     * @param pageSize
+     *            the number of height samples along a side of a page (2^N +
+     *            1).
+     * @param blockSize
+     *            the size of the terrain blocks within a page (2^N + 1).
+     * @param stepScale
+     *            the scale of the height samples.
+     * @param source
+     *            where pages come from.
+     */
+    public TerrainPager(String name, Camera cam, int pageSize, int blockSize,
+            Vector3f stepScale, TerrainPageSource source) {
+        super(name);
+        if (cam == null || stepScale == null || source == null) {
+            throw new NullPointerException(
+                    "cam, stepScale and source can not be null.");
+        }
+        this.cam = cam;
+        this.pageSize = pageSize;
+        this.blockSize = blockSize;
+        this.stepScale = stepScale;
+        this.source = source;
+
+        // not the WorkerPool: page jobs are long and would hold up the
+        // per frame work queued there
+        int threads = Math.max(1,
+                Runtime.getRuntime().availableProcessors() - 1);
+        maxPending = threads * 2;
+        final AtomicInteger count = new AtomicInteger();
+        final String threadName = name;
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "TerrainPager " + threadName + " "
+                        + count.incrementAndGet());
+                t.setDaemon(true);
+                t.setPriority(Thread.NORM_PRIORITY - 1);
+                return t;
+            }
+        });
+    }
+
+    @Override
+    public void updateWorldData(float time) {
+        updatePages();
+        super.updateWorldData(time);
+    }
+
+    /**
+     * <code>updatePages</code> attaches finished pages, releases pages out of
+     * range and queues missing ones, all within the frame budget. It is
+     * called from {@link #updateWorldData(float)}.
+     */
+    public void updatePages() {
+        long start = System.nanoTime();
+        long budget = (long) (frameBudget * 1000000);
+
+        worldToLocal(cam.getLocation(), camLocal);
+        float pageExtentX = (pageSize - 1) * stepScale.x;
+        float pageExtentZ = (pageSize - 1) * stepScale.z;
+        int camX = (int) Math.floor(camLocal.x / pageExtentX);
+        int camZ = (int) Math.floor(camLocal.z / pageExtentZ);
+
+        // attach what has been built, nearest first as that is the order
+        // pages were queued in
+        PageEntry entry;
+        while (System.nanoTime() - start < budget
+                && (entry = built.poll()) != null) {
+            pending--;
+            entry.building = false;
+            Long k = key(entry.x, entry.z);
+            if (pages.get(k) != entry) {
+                // went out of range while being built, never attached
+                if (droppedPages.get(k) == entry) {
+                    droppedPages.remove(k);
+                }
+                continue;
+            }
+            if (entry.skipped) {
+                // dropped before its job started and requested again since,
+                // queue it once more below
+                pages.remove(k);
+                continue;
+            }
+            if (entry.page != null) {
+                attachChild(entry.page);
+                entry.page.updateRenderState();
+            }
+            entry.attached = true;
+        }
+
+        // drop pages out of range; one page of hysteresis avoids thrashing
+        // at page borders
+        int dropRadius = viewRadius + 1;
+        for (Iterator<PageEntry> it = pages.values().iterator(); it.hasNext();) {
+            entry = it.next();
+            if (Math.abs(entry.x - camX) <= dropRadius
+                    && Math.abs(entry.z - camZ) <= dropRadius) {
+                continue;
+            }
+            it.remove();
+            if (entry.building) {
+                // the job skips the page if it has not started yet, and ends
+                // up in built either way
+                entry.dropped = true;
+                droppedPages.put(key(entry.x, entry.z), entry);
+            } else if (entry.page != null) {
+                detachChild(entry.page);
+                released.add(entry.page);
+            }
+        }
+        while (!released.isEmpty() && System.nanoTime() - start < budget) {
+            releasePage(released.remove(released.size() - 1), false);
+        }
+
+        // queue missing pages, nearest first
+        int[][] offsets = getRing();
+        for (int i = 0; i < offsets.length && pending < maxPending; i++) {
+            int x = camX + offsets[i][0];
+            int z = camZ + offsets[i][1];
+            Long k = key(x, z);
+            if (!pages.containsKey(k)) {
+                PageEntry old = droppedPages.remove(k);
+                if (old != null) {
+                    // its job is still queued or running
+                    old.dropped = false;
+                    pages.put(k, old);
+                    continue;
+                }
+                final PageEntry e = new PageEntry(x, z);
+                pages.put(k, e);
+                pending++;
+                e.building = true;
+                executor.submit(new Runnable() {
+                    public void run() {
+                        buildPage(e);
+                    }
+                });
+            }
+        }
+    }
+
+    private void buildPage(PageEntry entry) {
+        try {
+            if (entry.dropped) {
+                entry.skipped = true;
+                return;
+            }
+            float[] heights = source.loadPage(entry.x, entry.z, pageSize);
+            if (heights != null) {
+                TerrainPage page = new TerrainPage(getName() + "Page"
+                        + entry.x + "_" + entry.z, blockSize, pageSize,
+                        stepScale, heights);
+                page.setLocalTranslation(new Vector3f((entry.x + 0.5f)
+                        * (pageSize - 1) * stepScale.x, 0, (entry.z + 0.5f)
+                        * (pageSize - 1) * stepScale.z));
+                entry.page = page;
+            }
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Unable to build terrain page "
+                    + entry.x + ", " + entry.z, e);
+        } finally {
+            built.add(entry);
+        }
+    }
+
+    /**
+     * Deletes the VBOs of all blocks of a detached page and drops their
+     * buffers. Unless <code>now</code> is set the VBOs are deleted by the
+     * render queue, as the scene may be updated outside the OpenGL thread.
+     * 
+     * @param now
+     *            true to delete the VBOs right away, only on the OpenGL
+     *            thread
+     */
+    private void releasePage(TerrainPage page, boolean now) {
+        List<TerrainBlock> blocks = new ArrayList<TerrainBlock>();
+        collectBlocks(page, blocks);
+        final List<Buffer> vbos = new ArrayList<Buffer>();
+        for (TerrainBlock block : blocks) {
+            if (block.getVBOInfo() != null) {
+                vbos.add(block.getVertexBuffer());
+                vbos.add(block.getNormalBuffer());
+                vbos.add(block.getColorBuffer());
+                // shared level of detail indices stay, they are few and used
+                // by the other pages
+                vbos.add(block.getOwnIndexBuffer());
+                ArrayList<TexCoords> texCoords = block.getTextureCoords();
+                if (texCoords != null) {
+                    for (TexCoords tc : texCoords) {
+                        if (tc != null) {
+                            vbos.add(tc.coords);
+                        }
+                    }
+                }
+            }
+            block.setVertexBuffer(null);
+            block.setNormalBuffer(null);
+            block.setColorBuffer(null);
+            block.setTextureCoords((ArrayList<TexCoords>) null);
+            block.setHeightMap(null);
+        }
+        page.detachAllChildren();
+        if (vbos.isEmpty()) {
+            return;
+        }
+        if (now) {
+            deleteVBOs(vbos);
+        } else {
+            GameTaskQueueManager.getManager().render(new Callable<Object>() {
+                public Object call() {
+                    deleteVBOs(vbos);
+                    return null;
+                }
+            });
+        }
+    }
+
+    private static void deleteVBOs(List<Buffer> buffers) {
+        Renderer r = DisplaySystem.getDisplaySystem() != null ? DisplaySystem
+                .getDisplaySystem().getRenderer() : null;
+        if (r == null) {
+            return;
+        }
+        for (Buffer buffer : buffers) {
+            // also removes the buffer from the renderer's VBO cache
+            if (buffer != null) {
+                r.deleteVBO(buffer);
+            }
+        }
+    }
+
+    private static void collectBlocks(Node node, List<TerrainBlock> store) {
+        if (node.getChildren() == null) {
+            return;
+        }
+        for (Spatial child : node.getChildren()) {
+            if (child instanceof TerrainBlock) {
+                store.add((TerrainBlock) child);
+            } else if (child instanceof Node) {
+                collectBlocks((Node) child, store);
+            }
+        }
+    }
+
+    private int[][] getRing() {
+        if (ring == null) {
+            List<int[]> offsets = new ArrayList<int[]>();
+            for (int x = -viewRadius; x <= viewRadius; x++) {
+                for (int z = -viewRadius; z <= viewRadius; z++) {
+                    offsets.add(new int[] { x, z });
+                }
+            }
+            Collections.sort(offsets, new Comparator<int[]>() {
+                public int compare(int[] a, int[] b) {
+                    return (a[0] * a[0] + a[1] * a[1])
+                            - (b[0] * b[0] + b[1] * b[1]);
+                }
+            });
+            ring = offsets.toArray(new int[offsets.size()][]);
+        }
+        return ring;
+    }
+
+    private static Long key(int x, int z) {
+        return Long.valueOf(((long) x << 32) | (z & 0xFFFFFFFFL));
+    }
+
+    /**
+     * Returns the attached page covering a position.
+     *
+     * @param position
+     *            the position in the pager's local space.
+     * @return the page, or null if it isn't loaded (yet).
+     */
+    public TerrainPage getPage(Vector3f position) {
+        int x = (int) Math.floor(position.x / ((pageSize - 1) * stepScale.x));
+        int z = (int) Math.floor(position.z / ((pageSize - 1) * stepScale.z));
+        PageEntry entry = pages.get(key(x, z));
+        return entry != null && entry.attached ? entry.page : null;
+    }
+
+    /**
+     * Returns the terrain height at a position.
+     *
+     * @param position
+     *            the position in the pager's local space.
+     * @return the height, or NaN if the page there isn't loaded (yet).
+     */
+    public float getHeight(Vector3f position) {
+        TerrainPage page = getPage(position);
+        if (page == null) {
+            return Float.NaN;
+        }
+        Vector3f offset = page.getLocalTranslation();
+        return page.getHeight(position.x - offset.x, position.z - offset.z);
+    }
+
+    /**
+     * Stops the background threads and releases all pages. Must be called on
+     * the rendering thread.
+     */
+    public void cleanup() {
+        executor.shutdownNow();
+        for (PageEntry entry : pages.values()) {
+            if (entry.page != null) {
+                detachChild(entry.page);
+                released.add(entry.page);
+            }
+        }
+        pages.clear();
+        droppedPages.clear();
+        built.clear();
+        pending = 0;
+        while (!released.isEmpty()) {
+            releasePage(released.remove(released.size() - 1), true);
+        }
+    }
+
+    /**
+     * @param pages
+     *            the number of pages kept around the camera's page in each
+     *            direction. Defaults to 2, which keeps 5 x 5 pages.
+     */
+    public void setViewRadius(int pages) {
+        viewRadius = pages;
+        ring = null;
+    }
+
+    public int getViewRadius() {
+        return viewRadius;
+    }
+
+    /**
+     * @param millis
+     *            the time, in milliseconds, the update thread may spend on
+     *            attaching and releasing pages per frame. Defaults to 2.
+     */
+    public void setFrameBudget(float millis) {
+        frameBudget = millis;
+    }
+
+    public float getFrameBudget() {
+        return frameBudget;
+    }
+
+    /**
+     * @return the number of attached pages.
+     */
+    public int getLoadedPageCount() {
+        int count = 0;
+        for (PageEntry entry : pages.values()) {
+            if (entry.attached) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of pages queued or being built.
+     */
+    public int getPendingPageCount() {
+        return pending;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public Vector3f getStepScale() {
+        return stepScale;
+    }
+
+    public TerrainPageSource getSource() {
+        return source;
+    }
+
+    private static class PageEntry {
+        final int x, z;
+        /** written by the building thread, read after polling built */
+        volatile TerrainPage page;
+        /** set by the building thread if the page was dropped before */
+        volatile boolean skipped;
+        /** set while the page is out of range, read by the building thread */
+        volatile boolean dropped;
+        /** true from queuing the job until polling it from built */
+        boolean building;
+        boolean attached;
+
+        PageEntry(int x, int z) {
+            this.x = x;
+            this.z = z;
+        }
+    }
+}
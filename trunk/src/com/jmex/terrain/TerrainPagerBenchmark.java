@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2003-2008 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors 
+ *   may be used to endorse or promote products derived from this software 
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jmex.terrain;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.jme.math.Vector3f;
+import com.jme.renderer.AbstractCamera;
+import com.jme.system.DisplaySystem;
+import com.jme.system.dummy.DummySystemProvider;
+import com.jmex.terrain.util.GeneratedPageSource;
+
+/**
+ * <code>TerrainPagerBenchmark</code> flies a camera in a straight line across
+ * a generated world and reports how long each frame's
+ * {@link TerrainPager#updateGeometricState(float, boolean)} took on the
+ * update thread, and how many frames went over the pager's frame budget.
+ * Frames are paced to about 60 per second so the background threads get the
+ * time a real application would leave them.
+ * <p>
+ * Both wall clock and thread CPU time are reported. With fewer cores than
+ * background threads plus one, the wall clock time also includes the time the
+ * update thread was preempted by page generation.
+ * <p>
+ * Usage: <code>TerrainPagerBenchmark [kilometers] [speed m/s] [budget ms]</code>
+ */
+public class TerrainPagerBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        float distance = args.length > 0 ? Float.parseFloat(args[0]) * 1000
+                : 64000;
+        float speed = args.length > 1 ? Float.parseFloat(args[1]) : 1000;
+        float budget = args.length > 2 ? Float.parseFloat(args[2]) : 2;
+        Logger.getLogger("").setLevel(Level.WARNING);
+        DisplaySystem.setSystemProvider(new DummySystemProvider());
+        DisplaySystem.getDisplaySystem();
+
+        // 128 samples at 4 m is a 508 m page, 5 x 5 pages are kept
+        DataCamera cam = new DataCamera();
+        TerrainPager pager = new TerrainPager("benchmark", cam, 129, 33,
+                new Vector3f(4, 1, 4), new GeneratedPageSource(42));
+        pager.setFrameBudget(budget);
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        boolean cpuTime = threads.isCurrentThreadCpuTimeSupported();
+        float tpf = 1 / 60f;
+        long frameNanos = (long) (tpf * 1e9);
+        int frames = 0, overBudget = 0, cpuOverBudget = 0, maxLoaded = 0;
+        long total = 0, max = 0, cpuTotal = 0, cpuMax = 0;
+        long start = System.nanoTime();
+        for (float x = 0; x < distance; x += speed * tpf) {
+            long frameStart = System.nanoTime();
+            long cpuStart = cpuTime ? threads.getCurrentThreadCpuTime() : 0;
+            cam.getLocation().set(x, 300, 0.3f * x);
+            cam.update();
+            pager.updateGeometricState(tpf, true);
+            long t = System.nanoTime() - frameStart;
+            total += t;
+            max = Math.max(max, t);
+            if (t > budget * 1e6) {
+                overBudget++;
+            }
+            if (cpuTime) {
+                long c = threads.getCurrentThreadCpuTime() - cpuStart;
+                cpuTotal += c;
+                cpuMax = Math.max(cpuMax, c);
+                if (c > budget * 1e6) {
+                    cpuOverBudget++;
+                }
+            }
+            maxLoaded = Math.max(maxLoaded, pager.getLoadedPageCount());
+            frames++;
+
+            long sleep = frameNanos - (System.nanoTime() - frameStart);
+            if (sleep > 0) {
+                Thread.sleep(sleep / 1000000, (int) (sleep % 1000000));
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        pager.cleanup();
+
+        System.out.println((int) (distance / 1000) + " km at "
+                + (int) speed + " m/s, " + frames + " frames in "
+                + (elapsed / 1000000) + " ms");
+        System.out.println("pager update, wall clock: avg "
+                + String.format("%.3f", total / 1e6 / frames) + " ms, max "
+                + String.format("%.3f", max / 1e6) + " ms, " + overBudget
+                + " frames over the " + budget + " ms budget");
+        if (cpuTime) {
+            System.out.println("pager update, thread cpu: avg "
+                    + String.format("%.3f", cpuTotal / 1e6 / frames)
+                    + " ms, max " + String.format("%.3f", cpuMax / 1e6)
+                    + " ms, " + cpuOverBudget + " frames over the " + budget
+                    + " ms budget");
+        }
+        System.out.println("up to " + maxLoaded + " pages loaded, "
+                + Runtime.getRuntime().availableProcessors() + " cores");
+    }
+
+    /** a camera without a display, only its data is used */
+    private static class DataCamera extends AbstractCamera {
+        private static final long serialVersionUID = 1L;
+
+        DataCamera() {
+            super(true);
+            setFrustumPerspective(60, 4 / 3f, 1, 2000);
+        }
+
+        @Override
+        public int getHeight() {
+            return 768;
+        }
+
+        @Override
+        public int getWidth() {
+            return 1024;
+        }
+
+        public void apply() {
+        }
+
+        public void resize(int width, int height) {
+        }
+
+        public void onViewPortChange() {
+        }
+    }
+}
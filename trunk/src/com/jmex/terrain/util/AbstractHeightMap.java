@@ -39,6 +39,7 @@ import java.io.IOException;
 import java.util.logging.Logger;
 
 import com.jme.system.JmeException;
+import com.jme.util.WorkerPool;
 
 /**
  * <code>AbstractHeightMap</code> provides a base implementation of height
@@ -71,6 +72,9 @@ public abstract class AbstractHeightMap {
     /** The range used to normalize terrain */
     public static float NORMALIZE_RANGE = 255f;
 
+    /** Rows below which generation work is not split across threads. */
+    protected static final int MIN_ROWS_PER_TASK = 16;
+
     /**
      * <code>unloadHeightMap</code> clears the data of the height map. This
      * insures it is ready for reloading.
@@ -271,83 +275,114 @@ public abstract class AbstractHeightMap {
      * @param tempBuffer
      *            the terrain to normalize.
      */
-    public void normalizeTerrain(float[][] tempBuffer) {
-        float currentMin, currentMax;
-        float height;
-
-        currentMin = tempBuffer[0][0];
-        currentMax = tempBuffer[0][0];
-
-        //find the min/max values of the height fTemptemptempBuffer
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                if (tempBuffer[i][j] > currentMax) {
-                    currentMax = tempBuffer[i][j];
-                } else if (tempBuffer[i][j] < currentMin) {
-                    currentMin = tempBuffer[i][j];
-                }
+    public void normalizeTerrain(final float[][] tempBuffer) {
+        final float[] mins = new float[size];
+        final float[] maxs = new float[size];
+
+        //find the min/max values of each row of the height buffer
+        WorkerPool.getPool().invokeRange(size, MIN_ROWS_PER_TASK,
+                new WorkerPool.RangeTask() {
+                    public void run(int start, int end) {
+                        for (int i = start; i < end; i++) {
+                            float rowMin = tempBuffer[i][0];
+                            float rowMax = rowMin;
+                            for (int j = 1; j < size; j++) {
+                                if (tempBuffer[i][j] > rowMax) {
+                                    rowMax = tempBuffer[i][j];
+                                } else if (tempBuffer[i][j] < rowMin) {
+                                    rowMin = tempBuffer[i][j];
+                                }
+                            }
+                            mins[i] = rowMin;
+                            maxs[i] = rowMax;
+                        }
+                    }
+                });
+
+        float currentMin = mins[0];
+        float currentMax = maxs[0];
+        for (int i = 1; i < size; i++) {
+            if (maxs[i] > currentMax) {
+                currentMax = maxs[i];
+            }
+            if (mins[i] < currentMin) {
+                currentMin = mins[i];
             }
         }
 
         //find the range of the altitude
         if (currentMax <= currentMin) { return; }
 
-        height = currentMax - currentMin;
+        final float min = currentMin;
+        final float height = currentMax - currentMin;
 
         //scale the values to a range of 0-255
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                tempBuffer[i][j] = ((tempBuffer[i][j] - currentMin) / height) * NORMALIZE_RANGE;
-            }
-        }
+        WorkerPool.getPool().invokeRange(size, MIN_ROWS_PER_TASK,
+                new WorkerPool.RangeTask() {
+                    public void run(int start, int end) {
+                        for (int i = start; i < end; i++) {
+                            for (int j = 0; j < size; j++) {
+                                tempBuffer[i][j] = ((tempBuffer[i][j] - min) / height) * NORMALIZE_RANGE;
+                            }
+                        }
+                    }
+                });
     }
 
     /**
      * <code>erodeTerrain</code> is a convenience method that applies the FIR
-     * filter to a given height map. This simulates water errosion.
+     * filter to a given height map. This simulates water errosion. Rows, and
+     * then columns, are filtered in parallel on the <code>WorkerPool</code>.
      *
      * @param tempBuffer
      *            the terrain to filter.
      */
-    public void erodeTerrain(float[][] tempBuffer) {
-        //erode left to right
-        float v;
-
-        for (int i = 0; i < size; i++) {
-            v = tempBuffer[i][0];
-            for (int j = 1; j < size; j++) {
-                tempBuffer[i][j] = filter * v + (1 - filter) * tempBuffer[i][j];
-                v = tempBuffer[i][j];
-            }
-        }
-
-        //erode right to left
-        for (int i = size - 1; i >= 0; i--) {
-            v = tempBuffer[i][0];
-            for (int j = 0; j < size; j++) {
-                tempBuffer[i][j] = filter * v + (1 - filter) * tempBuffer[i][j];
-                v = tempBuffer[i][j];
-                //erodeBand(tempBuffer[size * i + size - 1], -1);
-            }
-        }
-
-        //erode top to bottom
-        for (int i = 0; i < size; i++) {
-            v = tempBuffer[0][i];
-            for (int j = 0; j < size; j++) {
-                tempBuffer[j][i] = filter * v + (1 - filter) * tempBuffer[j][i];
-                v = tempBuffer[j][i];
-            }
-        }
-
-        //erode from bottom to top
-        for (int i = size - 1; i >= 0; i--) {
-            v = tempBuffer[0][i];
-            for (int j = 0; j < size; j++) {
-                tempBuffer[j][i] = filter * v + (1 - filter) * tempBuffer[j][i];
-                v = tempBuffer[j][i];
-            }
-        }
+    public void erodeTerrain(final float[][] tempBuffer) {
+        //both horizontal passes only touch their own row
+        WorkerPool.getPool().invokeRange(size, MIN_ROWS_PER_TASK,
+                new WorkerPool.RangeTask() {
+                    public void run(int start, int end) {
+                        float v;
+                        for (int i = start; i < end; i++) {
+                            //erode left to right
+                            v = tempBuffer[i][0];
+                            for (int j = 1; j < size; j++) {
+                                tempBuffer[i][j] = filter * v + (1 - filter) * tempBuffer[i][j];
+                                v = tempBuffer[i][j];
+                            }
+
+                            //erode right to left
+                            v = tempBuffer[i][0];
+                            for (int j = 0; j < size; j++) {
+                                tempBuffer[i][j] = filter * v + (1 - filter) * tempBuffer[i][j];
+                                v = tempBuffer[i][j];
+                            }
+                        }
+                    }
+                });
+
+        //and both vertical passes only their own column
+        WorkerPool.getPool().invokeRange(size, MIN_ROWS_PER_TASK,
+                new WorkerPool.RangeTask() {
+                    public void run(int start, int end) {
+                        float v;
+                        for (int i = start; i < end; i++) {
+                            //erode top to bottom
+                            v = tempBuffer[0][i];
+                            for (int j = 0; j < size; j++) {
+                                tempBuffer[j][i] = filter * v + (1 - filter) * tempBuffer[j][i];
+                                v = tempBuffer[j][i];
+                            }
+
+                            //erode from bottom to top
+                            v = tempBuffer[0][i];
+                            for (int j = 0; j < size; j++) {
+                                tempBuffer[j][i] = filter * v + (1 - filter) * tempBuffer[j][i];
+                                v = tempBuffer[j][i];
+                            }
+                        }
+                    }
+                });
     }
 
     /**
@@ -36,6 +36,7 @@ import java.util.Random;
 import java.util.logging.Logger;
 
 import com.jme.system.JmeException;
+import com.jme.util.WorkerPool;
 
 /**
 * <code>FluidSimHeightMap</code> generates a height map based using some
@@ -176,29 +177,32 @@ public class FluidSimHeightMap extends AbstractHeightMap {
 		}
 		
 		int curBuf = 0;
-		int ind;
-		
-		float[] oldBuffer;
-		float[] newBuffer;
 		
 		// Iterate over the heightmap, applying the fluid simulation equation.
 		// Although it requires knowledge of the two previous timesteps, it only
 		// accesses one pixel of the k-1 timestep, so using a simple trick we only
 		// need to store the heightmap twice, not three times, and we can avoid
 		// copying data every iteration.
+		// Each pixel only reads its own k-1 value, so within one iteration the
+		// rows are independent and are split across the WorkerPool.
 		for (int i = 0; i < iterations; i++) {
-			oldBuffer = tempBuffer[1 - curBuf];
-			newBuffer = tempBuffer[curBuf];
+			final float[] oldBuffer = tempBuffer[1 - curBuf];
+			final float[] newBuffer = tempBuffer[curBuf];
 
-			for (int y = 1; y < size - 1; y++) {
-				for (int x = 1; x < size - 1; x++) {
-					ind = x + y * size;
-					oldBuffer[ind] = coefA * newBuffer[ind] + coefB
-							* oldBuffer[ind] + coefC * (newBuffer[ind+1]
-							+ newBuffer[ind - 1] + newBuffer[ind + size]
-							+ newBuffer[ind - size]);
+			WorkerPool.getPool().invokeRange(size - 2, MIN_ROWS_PER_TASK,
+					new WorkerPool.RangeTask() {
+				public void run(int start, int end) {
+					for (int y = start + 1; y < end + 1; y++) {
+						for (int x = 1; x < size - 1; x++) {
+							int ind = x + y * size;
+							oldBuffer[ind] = coefA * newBuffer[ind] + coefB
+									* oldBuffer[ind] + coefC * (newBuffer[ind+1]
+									+ newBuffer[ind - 1] + newBuffer[ind + size]
+									+ newBuffer[ind - size]);
+						}
+					}
 				}
-			}
+			});
 
 			curBuf = 1 - curBuf;
 		}
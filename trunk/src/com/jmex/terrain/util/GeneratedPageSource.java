@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2003-2008 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors 
+ *   may be used to endorse or promote products derived from this software 
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jmex.terrain.util;
+
+import com.jme.math.FastMath;
+import com.jmex.terrain.TerrainPageSource;
+
+/**
+ * <code>GeneratedPageSource</code> makes up an endless terrain page by page.
+ * Each page is a smooth, world wide base shape (value noise evaluated at the
+ * page's world coordinates) plus the detail of a <code>FaultFractalHeightMap</code>
+ * or <code>MidPointHeightMap</code> generated for just that page. The detail
+ * fades out towards the page edges, so neighbouring pages always meet.
+ * <p>
+ * With {@link #FAULT_FRACTAL} detail the same seed always gives the same
+ * world. <code>MidPointHeightMap</code> can not be seeded, so with
+ * {@link #MID_POINT} a page reloaded after eviction looks different unless
+ * the source is wrapped in a {@link HeightMapPageStore}.
+ */
+public class GeneratedPageSource implements TerrainPageSource {
+
+    /** Page detail from a seeded <code>FaultFractalHeightMap</code>. */
+    public static final int FAULT_FRACTAL = 0;
+
+    /** Page detail from a <code>MidPointHeightMap</code>. */
+    public static final int MID_POINT = 1;
+
+    private final long seed;
+
+    private int generator = FAULT_FRACTAL;
+
+    private float baseHeight = 256;
+
+    private float baseWavelength = 2048;
+
+    private float detailHeight = 32;
+
+    private int faultIterations = 64;
+
+    private float faultFilter = 0.3f;
+
+    private float roughness = 1.2f;
+
+    /**
+     * @param seed
+     *            the seed of the world.
+     */
+    public GeneratedPageSource(long seed) {
+        this.seed = seed;
+    }
+
+    public float[] loadPage(int pageX, int pageZ, int size) {
+        int cells = size - 1;
+        AbstractHeightMap detail = createDetail(pageX, pageZ, cells);
+
+        // sin^2 window, zero with zero slope at the page edges
+        float[] window = new float[size];
+        for (int i = 0; i < size; i++) {
+            float s = FastMath.sin(FastMath.PI * i / cells);
+            window[i] = s * s;
+        }
+
+        float scale = detailHeight / AbstractHeightMap.NORMALIZE_RANGE;
+        float[] heights = new float[size * size];
+        for (int z = 0; z < size; z++) {
+            for (int x = 0; x < size; x++) {
+                float d = detail.getTrueHeightAtPoint(x % cells, z % cells)
+                        * scale - detailHeight * 0.5f;
+                heights[x + z * size] = getBaseHeight((long) pageX * cells
+                        + x, (long) pageZ * cells + z)
+                        + d * window[x] * window[z];
+            }
+        }
+        return heights;
+    }
+
+    /**
+     * Creates the detail height map of a page. Override to use other
+     * generators.
+     *
+     * @param pageX
+     *            the page column.
+     * @param pageZ
+     *            the page row.
+     * @param size
+     *            the size of the height map, a power of two.
+     * @return the generated height map, normalised to 0 - 255.
+     */
+    protected AbstractHeightMap createDetail(int pageX, int pageZ, int size) {
+        if (generator == MID_POINT) {
+            return new MidPointHeightMap(size, roughness);
+        }
+        return new FaultFractalHeightMap(size, faultIterations, 0, 255,
+                faultFilter, hash(pageX, pageZ, -1));
+    }
+
+    /**
+     * Returns the height of the world wide base shape at a sample position.
+     *
+     * @param x
+     *            the sample column, counted from the world origin.
+     * @param z
+     *            the sample row, counted from the world origin.
+     * @return the base height.
+     */
+    public float getBaseHeight(long x, long z) {
+        double fx = x / (double) baseWavelength;
+        double fz = z / (double) baseWavelength;
+        float sum = 0, amplitude = 0.5f;
+        for (int octave = 0; octave < 5; octave++) {
+            sum += amplitude * noise(fx, fz, octave);
+            amplitude *= 0.5f;
+            fx *= 2;
+            fz *= 2;
+        }
+        return sum * baseHeight;
+    }
+
+    /** Smoothly interpolated lattice noise in -1 to 1. */
+    private float noise(double x, double z, int octave) {
+        long x0 = (long) Math.floor(x), z0 = (long) Math.floor(z);
+        float u = (float) (x - x0), v = (float) (z - z0);
+        u = u * u * (3 - 2 * u);
+        v = v * v * (3 - 2 * v);
+        float a = lattice(x0, z0, octave), b = lattice(x0 + 1, z0, octave);
+        float c = lattice(x0, z0 + 1, octave), d = lattice(x0 + 1, z0 + 1,
+                octave);
+        return FastMath.LERP(v, FastMath.LERP(u, a, b), FastMath.LERP(u, c, d));
+    }
+
+    private float lattice(long x, long z, int octave) {
+        return (hash(x, z, octave) >>> 40) / (float) (1 << 23) - 1;
+    }
+
+    private long hash(long x, long z, int salt) {
+        long h = seed + x * 0x9E3779B97F4A7C15L + z * 0xC2B2AE3D27D4EB4FL
+                + salt * 0x165667B19E3779F9L;
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @param generator
+     *            {@link #FAULT_FRACTAL} (the default) or {@link #MID_POINT}.
+     */
+    public void setGenerator(int generator) {
+        this.generator = generator;
+    }
+
+    public int getGenerator() {
+        return generator;
+    }
+
+    /**
+     * @param baseHeight
+     *            the amplitude of the world wide base shape, in height units.
+     */
+    public void setBaseHeight(float baseHeight) {
+        this.baseHeight = baseHeight;
+    }
+
+    public float getBaseHeight() {
+        return baseHeight;
+    }
+
+    /**
+     * @param baseWavelength
+     *            the size, in samples, of the largest base features.
+     */
+    public void setBaseWavelength(float baseWavelength) {
+        this.baseWavelength = baseWavelength;
+    }
+
+    public float getBaseWavelength() {
+        return baseWavelength;
+    }
+
+    /**
+     * @param detailHeight
+     *            the height range of the per page detail, in height units.
+     */
+    public void setDetailHeight(float detailHeight) {
+        this.detailHeight = detailHeight;
+    }
+
+    public float getDetailHeight() {
+        return detailHeight;
+    }
+
+    /**
+     * Sets the attributes of the <code>FaultFractalHeightMap</code> detail.
+     */
+    public void setFaultFractal(int iterations, float filter) {
+        this.faultIterations = iterations;
+        this.faultFilter = filter;
+    }
+
+    /**
+     * Sets the roughness of the <code>MidPointHeightMap</code> detail.
+     */
+    public void setRoughness(float roughness) {
+        this.roughness = roughness;
+    }
+
+    public float getRoughness() {
+        return roughness;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2003-2008 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors 
+ *   may be used to endorse or promote products derived from this software 
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jmex.terrain.util;
+
+import java.io.File;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.jme.system.JmeException;
+import com.jmex.terrain.TerrainPageSource;
+
+/**
+ * <code>HeightMapPageStore</code> keeps terrain pages as one
+ * {@link MappedHeightMap} file per page in a directory, named after the page
+ * coordinates. Pages missing from the directory are taken from an optional
+ * fallback source, typically a {@link GeneratedPageSource}, and stored for the
+ * next time.
+ */
+public class HeightMapPageStore implements TerrainPageSource {
+    private static final Logger logger = Logger
+            .getLogger(HeightMapPageStore.class.getName());
+
+    private final File directory;
+
+    private final TerrainPageSource fallback;
+
+    private int format = MappedHeightMap.FORMAT_FLOAT;
+
+    public HeightMapPageStore(File directory) {
+        this(directory, null);
+    }
+
+    /**
+     * @param directory
+     *            the directory holding the page files.
+     * @param fallback
+     *            the source of pages not stored yet, may be null.
+     */
+    public HeightMapPageStore(File directory, TerrainPageSource fallback) {
+        if (directory == null) {
+            throw new NullPointerException("directory can not be null.");
+        }
+        this.directory = directory;
+        this.fallback = fallback;
+    }
+
+    public float[] loadPage(int pageX, int pageZ, int size) {
+        File file = getPageFile(pageX, pageZ);
+        if (file.isFile()) {
+            try {
+                MappedHeightMap map = new MappedHeightMap(file);
+                if (map.getSize() == size) {
+                    return map.getHeightMap();
+                }
+                logger.warning("Page " + file + " has size " + map.getSize()
+                        + " instead of " + size);
+            } catch (JmeException e) {
+                logger.log(Level.WARNING, "Unable to read page " + file, e);
+            }
+        }
+
+        if (fallback == null) {
+            return null;
+        }
+        float[] heights = fallback.loadPage(pageX, pageZ, size);
+        if (heights != null) {
+            savePage(pageX, pageZ, heights);
+        }
+        return heights;
+    }
+
+    /**
+     * Stores (or replaces) a page.
+     *
+     * @return true if the page was written.
+     */
+    public boolean savePage(int pageX, int pageZ, float[] heights) {
+        return new MappedHeightMap(heights, getPageFile(pageX, pageZ), format)
+                .save();
+    }
+
+    public File getPageFile(int pageX, int pageZ) {
+        return new File(directory, pageX + "_" + pageZ
+                + MappedHeightMap.EXTENSION);
+    }
+
+    /**
+     * @param format
+     *            the format new pages are stored in,
+     *            <code>MappedHeightMap.FORMAT_FLOAT</code> (the default) or
+     *            <code>MappedHeightMap.FORMAT_16BIT</code>.
+     */
+    public void setFormat(int format) {
+        this.format = format;
+    }
+
+    public int getFormat() {
+        return format;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+}
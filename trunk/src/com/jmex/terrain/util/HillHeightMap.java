@@ -35,6 +35,7 @@ import java.util.Random;
 import java.util.logging.Logger;
 
 import com.jme.system.JmeException;
+import com.jme.util.WorkerPool;
 
 /**
  * <code>HillHeightMap</code> generates a height map base on the Hill
@@ -135,13 +136,29 @@ public class HillHeightMap extends AbstractHeightMap {
 			unloadHeightMap();
 		}
 		heightData = new float[size * size];
-		float[][] tempBuffer = new float[size][size];
+		final float[][] tempBuffer = new float[size][size];
 		Random random = new Random(seed);
 
-		// Add the hills
+		// Pick all hills up front, in the order the serial algorithm would,
+		// then grow them on the WorkerPool with every thread owning a band of
+		// rows. Each point still receives the hills in the same order, so the
+		// result does not depend on the number of threads.
+		final float[] hills = new float[iterations * 3];
 		for (int i = 0; i < iterations; i++) {
-			addHill(tempBuffer, random);
+			float radius = randomRange(random, minRadius, maxRadius);
+			hills[i * 3] = radius;
+			hills[i * 3 + 1] = randomRange(random, -radius, size + radius);
+			hills[i * 3 + 2] = randomRange(random, -radius, size + radius);
 		}
+		WorkerPool.getPool().invokeRange(size, MIN_ROWS_PER_TASK,
+				new WorkerPool.RangeTask() {
+			public void run(int start, int end) {
+				for (int i = 0; i < iterations; i++) {
+					addHill(tempBuffer, hills[i * 3], hills[i * 3 + 1],
+							hills[i * 3 + 2], start, end);
+				}
+			}
+		});
 
 		// Do internal normalizing and flattening
 		normalize(tempBuffer);
@@ -181,6 +198,28 @@ public class HillHeightMap extends AbstractHeightMap {
 		float x = randomRange(random, -radius, size + radius);
 		float y = randomRange(random, -radius, size + radius);
 
+		addHill(tempBuffer, radius, x, y, 0, size);
+	}
+
+	/**
+	 * Grows a hill into the rows <code>rowStart</code> (inclusive) to
+	 * <code>rowEnd</code> (exclusive) of the heightmap.
+	 * 
+	 * @param tempBuffer
+	 *            the temporary height map buffer
+	 * @param radius
+	 *            the radius of the hill
+	 * @param x
+	 *            the row of the hill's centerpoint
+	 * @param y
+	 *            the column of the hill's centerpoint
+	 * @param rowStart
+	 *            the first row to grow the hill into
+	 * @param rowEnd
+	 *            the row after the last row to grow the hill into
+	 */
+	protected void addHill(float[][] tempBuffer, float radius, float x,
+			float y, int rowStart, int rowEnd) {
 		float radiusSq = radius * radius;
 		float distSq;
 		float height;
@@ -193,14 +232,14 @@ public class HillHeightMap extends AbstractHeightMap {
 		int yMax = Math.round(y + radius + 1);
 
 		// Don't try to affect points outside the heightmap
-		if (xMin < 0)
-			xMin = 0;
-		if (xMax > size)
-			xMax = size - 1;
+		if (xMin < rowStart)
+			xMin = rowStart;
+		if (xMax >= rowEnd)
+			xMax = rowEnd - 1;
 
 		if (yMin < 0)
 			yMin = 0;
-		if (yMax > size)
+		if (yMax >= size)
 			yMax = size - 1;
 
 		for (int i = xMin; i <= xMax; i++) {
@@ -0,0 +1,463 @@
+/*
+ * Copyright (c) 2003-2008 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors 
+ *   may be used to endorse or promote products derived from this software 
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jmex.terrain.util;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.jme.math.FastMath;
+import com.jme.system.JmeException;
+
+/**
+ * <code>MappedHeightMap</code> stores height data in a binary file that is
+ * read and written with large <code>FileChannel</code> transfers, so a large
+ * map loads with a few bulk reads straight into the array handed to
+ * <code>TerrainPage</code> and <code>TerrainBlock</code>. The file is only
+ * open during a load or save.
+ * <p>
+ * The file is a 32 byte little endian header (magic, version, size, format,
+ * minimum and maximum height, two reserved ints) followed by size * size
+ * heights in the same x + z * size order as {@link #getHeightMap()}. Heights
+ * are either raw floats ({@link #FORMAT_FLOAT}) or unsigned shorts spread
+ * over the minimum to maximum range of the header ({@link #FORMAT_16BIT}).
+ * <p>
+ * Points changed through {@link #setHeightAtPoint(float, int, int)} or
+ * reported with {@link #markDirty(int, int, int, int)} are tracked as one
+ * dirty rectangle, which {@link #saveDirty()} writes back without touching
+ * the rest of the file.
+ */
+public class MappedHeightMap extends AbstractHeightMap {
+    private static final Logger logger = Logger.getLogger(MappedHeightMap.class
+            .getName());
+
+    /**
+     * Format specification for 32 bit float heights.
+     */
+    public static final int FORMAT_FLOAT = 0;
+
+    /**
+     * Format specification for 16 bit heights quantised between the minimum
+     * and maximum height of the map.
+     */
+    public static final int FORMAT_16BIT = 1;
+
+    /** The usual extension of height map files in this format. */
+    public static final String EXTENSION = ".hmap";
+
+    private static final int MAGIC = 0x4D484D4A; // "JMHM"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    /** bytes transferred per read when loading */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private File file;
+    private int format;
+    /** quantisation range of the file, only used for FORMAT_16BIT */
+    private float minHeight, maxHeight;
+
+    private int dirtyMinX, dirtyMinZ, dirtyMaxX, dirtyMaxZ;
+
+    /**
+     * Constructor loads the height map stored in the given file.
+     *
+     * @param file
+     *            the height map file.
+     * @throws JmeException
+     *             if the file is null or can't be read as a height map.
+     */
+    public MappedHeightMap(File file) {
+        if (file == null) {
+            throw new JmeException("Must supply a valid file.");
+        }
+        this.file = file;
+        if (!load()) {
+            throw new JmeException("Unable to load height map: " + file);
+        }
+    }
+
+    /**
+     * Constructor wraps existing height data that will be stored in the given
+     * file by the next call to {@link #save()} or {@link #saveDirty()}. The
+     * array is used as is, not copied.
+     *
+     * @param heightData
+     *            the square height data.
+     * @param file
+     *            the file to store the height map in.
+     * @param format
+     *            {@link #FORMAT_FLOAT} or {@link #FORMAT_16BIT}.
+     */
+    public MappedHeightMap(float[] heightData, File file, int format) {
+        if (heightData == null || file == null) {
+            throw new JmeException("Must supply valid height data and file.");
+        }
+        if (format != FORMAT_FLOAT && format != FORMAT_16BIT) {
+            throw new JmeException("Unknown height map format: " + format);
+        }
+        this.heightData = heightData;
+        this.size = (int) FastMath.sqrt(heightData.length);
+        this.file = file;
+        this.format = format;
+        clearDirty();
+        markDirty(0, 0, size, size);
+    }
+
+    /**
+     * <code>load</code> (re)reads the height data from the file. Unsaved
+     * changes are lost.
+     *
+     * @return true if the load is successful, false otherwise.
+     */
+    @Override
+    public boolean load() {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            FileChannel channel = raf.getChannel();
+            if (channel.size() < HEADER_SIZE) {
+                logger.warning("Not a height map: " + file);
+                return false;
+            }
+            ByteBuffer header = readHeader(channel);
+            if (header.getInt(0) != MAGIC || header.getInt(4) > VERSION) {
+                logger.warning("Not a height map or a newer version: " + file);
+                return false;
+            }
+            int newSize = header.getInt(8);
+            int newFormat = header.getInt(12);
+            long expected = HEADER_SIZE + (long) newSize * newSize
+                    * bytesPerHeight(newFormat);
+            if (newSize <= 0 || channel.size() < expected) {
+                logger.warning("Truncated height map: " + file);
+                return false;
+            }
+
+            size = newSize;
+            format = newFormat;
+            minHeight = header.getFloat(16);
+            maxHeight = header.getFloat(20);
+            if (heightData == null || heightData.length != size * size) {
+                heightData = new float[size * size];
+            }
+            int bpp = bytesPerHeight(format);
+            float scale = (maxHeight - minHeight) / 65535f;
+            ByteBuffer chunk = ByteBuffer.allocate(
+                    (int) Math.min(CHUNK_SIZE, expected - HEADER_SIZE)).order(
+                    ByteOrder.LITTLE_ENDIAN);
+            long position = HEADER_SIZE;
+            for (int i = 0; i < heightData.length;) {
+                int count = Math.min(chunk.capacity() / bpp, heightData.length
+                        - i);
+                chunk.clear().limit(count * bpp);
+                readFully(channel, chunk, position);
+                position += count * bpp;
+                chunk.flip();
+                if (format == FORMAT_FLOAT) {
+                    chunk.asFloatBuffer().get(heightData, i, count);
+                    i += count;
+                } else {
+                    ShortBuffer shorts = chunk.asShortBuffer();
+                    for (int end = i + count; i < end; i++) {
+                        heightData[i] = minHeight + (shorts.get() & 0xFFFF)
+                                * scale;
+                    }
+                }
+            }
+            clearDirty();
+            return true;
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Error reading height map " + file, e);
+            return false;
+        } catch (IllegalArgumentException e) {
+            logger.log(Level.WARNING, "Unknown height map format in " + file, e);
+            return false;
+        } finally {
+            close(raf);
+        }
+    }
+
+    /**
+     * <code>setHeightAtPoint</code> sets the height value for a given
+     * coordinate and marks it for the next {@link #saveDirty()}.
+     */
+    @Override
+    public void setHeightAtPoint(float height, int x, int z) {
+        super.setHeightAtPoint(height, x, z);
+        markDirty(x, z, 1, 1);
+    }
+
+    /**
+     * Marks a rectangle of the height data as changed, for edits made directly
+     * to the array returned by {@link #getHeightMap()}.
+     *
+     * @param x
+     *            the first column.
+     * @param z
+     *            the first row.
+     * @param width
+     *            the number of columns.
+     * @param depth
+     *            the number of rows.
+     */
+    public void markDirty(int x, int z, int width, int depth) {
+        int maxX = Math.min(x + width, size);
+        int maxZ = Math.min(z + depth, size);
+        x = Math.max(x, 0);
+        z = Math.max(z, 0);
+        if (x >= maxX || z >= maxZ) {
+            return;
+        }
+        dirtyMinX = Math.min(dirtyMinX, x);
+        dirtyMinZ = Math.min(dirtyMinZ, z);
+        dirtyMaxX = Math.max(dirtyMaxX, maxX);
+        dirtyMaxZ = Math.max(dirtyMaxZ, maxZ);
+    }
+
+    /**
+     * @return true if heights changed since the last load or save.
+     */
+    public boolean isDirty() {
+        return dirtyMinX < dirtyMaxX;
+    }
+
+    private void clearDirty() {
+        dirtyMinX = dirtyMinZ = Integer.MAX_VALUE;
+        dirtyMaxX = dirtyMaxZ = Integer.MIN_VALUE;
+    }
+
+    /**
+     * <code>saveDirty</code> writes only the rows and columns changed since
+     * the last load or save back into the file. The whole map is written
+     * instead if the file doesn't hold this map yet, or if a 16 bit map got
+     * heights outside its quantisation range.
+     *
+     * @return true if the save was successful, false otherwise.
+     */
+    public boolean saveDirty() {
+        if (!isDirty()) {
+            return true;
+        }
+        if (!file.isFile() || file.length() != fileLength()) {
+            return save();
+        }
+
+        if (format == FORMAT_16BIT) {
+            for (int z = dirtyMinZ; z < dirtyMaxZ; z++) {
+                for (int x = dirtyMinX; x < dirtyMaxX; x++) {
+                    float h = heightData[x + z * size];
+                    if (h < minHeight || h > maxHeight) {
+                        return save();
+                    }
+                }
+            }
+        }
+
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            FileChannel channel = raf.getChannel();
+            ByteBuffer header = readHeader(channel);
+            boolean sameMap = header.getInt(0) == MAGIC
+                    && header.getInt(8) == size && header.getInt(12) == format;
+            if (!sameMap) {
+                close(raf);
+                raf = null;
+                return save();
+            }
+
+            writeRows(channel, dirtyMinX, dirtyMinZ, dirtyMaxX, dirtyMaxZ);
+            channel.force(false);
+            logger.fine("Saved " + (dirtyMaxX - dirtyMinX) + "x"
+                    + (dirtyMaxZ - dirtyMinZ) + " heights to " + file);
+            clearDirty();
+            return true;
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Error writing height map " + file, e);
+            return false;
+        } finally {
+            close(raf);
+        }
+    }
+
+    /**
+     * <code>save</code> writes the complete height map to the file,
+     * replacing whatever it held before.
+     *
+     * @return true if the save was successful, false otherwise.
+     */
+    public boolean save() {
+        if (format == FORMAT_16BIT) {
+            minHeight = Float.MAX_VALUE;
+            maxHeight = -Float.MAX_VALUE;
+            for (float h : heightData) {
+                minHeight = Math.min(minHeight, h);
+                maxHeight = Math.max(maxHeight, h);
+            }
+        } else {
+            minHeight = maxHeight = 0;
+        }
+
+        RandomAccessFile raf = null;
+        try {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null && !parent.isDirectory()) {
+                parent.mkdirs();
+            }
+            raf = new RandomAccessFile(file, "rw");
+            if (raf.length() != fileLength()) {
+                raf.setLength(fileLength());
+            }
+            FileChannel channel = raf.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(
+                    ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(format);
+            header.putFloat(minHeight).putFloat(maxHeight).putInt(0).putInt(0);
+            header.flip();
+            writeFully(channel, header, 0);
+            writeRows(channel, 0, 0, size, size);
+            channel.force(false);
+            logger.info("Saved height map to " + file);
+            clearDirty();
+            return true;
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Error writing height map " + file, e);
+            return false;
+        } finally {
+            close(raf);
+        }
+    }
+
+    /**
+     * Writes columns minX to maxX of rows minZ to maxZ to their place in the
+     * file, one row at a time.
+     */
+    private void writeRows(FileChannel channel, int minX, int minZ, int maxX,
+            int maxZ) throws IOException {
+        int width = maxX - minX;
+        int bpp = bytesPerHeight(format);
+        ByteBuffer row = ByteBuffer.allocate(width * bpp).order(
+                ByteOrder.LITTLE_ENDIAN);
+        FloatBuffer floats = row.asFloatBuffer();
+        ShortBuffer shorts = row.asShortBuffer();
+        float range = maxHeight - minHeight;
+        float scale = range > 0 ? 65535f / range : 0;
+        for (int z = minZ; z < maxZ; z++) {
+            if (format == FORMAT_FLOAT) {
+                floats.clear();
+                floats.put(heightData, z * size + minX, width);
+            } else {
+                shorts.clear();
+                for (int x = minX; x < maxX; x++) {
+                    float h = heightData[x + z * size];
+                    shorts.put((short) Math.round((h - minHeight) * scale));
+                }
+            }
+            row.clear();
+            writeFully(channel, row, HEADER_SIZE
+                    + ((long) z * size + minX) * bpp);
+        }
+    }
+
+    private static ByteBuffer readHeader(FileChannel channel)
+            throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(
+                ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, header, 0);
+        return header;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buf,
+            long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int read = channel.read(buf, position);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            position += read;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf,
+            long position) throws IOException {
+        while (buf.hasRemaining()) {
+            position += channel.write(buf, position);
+        }
+    }
+
+    private long fileLength() {
+        return HEADER_SIZE + (long) size * size * bytesPerHeight(format);
+    }
+
+    private static int bytesPerHeight(int format) {
+        switch (format) {
+            case FORMAT_FLOAT:
+                return 4;
+            case FORMAT_16BIT:
+                return 2;
+            default:
+                throw new IllegalArgumentException("Unknown format: " + format);
+        }
+    }
+
+    private static void close(RandomAccessFile raf) {
+        if (raf != null) {
+            try {
+                raf.close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Error closing height map", e);
+            }
+        }
+    }
+
+    /**
+     * @return the file this height map is loaded from and saved to.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return {@link #FORMAT_FLOAT} or {@link #FORMAT_16BIT}.
+     */
+    public int getFormat() {
+        return format;
+    }
+}
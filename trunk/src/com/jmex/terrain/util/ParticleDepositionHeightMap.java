@@ -32,6 +32,7 @@
 
 package com.jmex.terrain.util;
 
+import java.util.Random;
 import java.util.logging.Logger;
 
 import com.jme.system.JmeException;
@@ -60,6 +61,7 @@ public class ParticleDepositionHeightMap extends AbstractHeightMap {
 	private int minParticles;
 	private int maxParticles;
 	private float caldera;
+	private long seed;
 
 	/**
 	 * Constructor sets the attributes of the Particle Deposition
@@ -91,6 +93,36 @@ public class ParticleDepositionHeightMap extends AbstractHeightMap {
 		int minParticles,
 		int maxParticles,
 		float caldera) {
+		this(size, jumps, peakWalk, minParticles, maxParticles, caldera,
+			new Random().nextLong());
+	}
+
+	/**
+	 * Constructor sets the attributes of the Particle Deposition
+	 * Height Map and then generates the map. The same seed and attributes
+	 * always generate the same map.
+	 *
+	 * @param size the size of the terrain where the area is size x size.
+	 * @param jumps number of areas to drop particles.
+	 * @param peakWalk determines how much to agitate the drop point.
+	 * @param minParticles the minimum number of particles per jump.
+	 * @param maxParticles the maximum number of particles per jump.
+	 * @param caldera defines the altitude to invert a peak.
+	 * @param seed the seed for the random number generator.
+	 *
+	 * @throws JmeException if any value is less than zero, and
+	 * 		if caldera is not between 0 and 1. If minParticles is greater than
+	 * 		max particles as well.
+	 * @see #ParticleDepositionHeightMap(int, int, int, int, int, float)
+	 */
+	public ParticleDepositionHeightMap(
+		int size,
+		int jumps,
+		int peakWalk,
+		int minParticles,
+		int maxParticles,
+		float caldera,
+		long seed) {
 
 		if (size <= 0
 			|| jumps < 0
@@ -114,6 +146,7 @@ public class ParticleDepositionHeightMap extends AbstractHeightMap {
 		this.minParticles = minParticles;
 		this.maxParticles = maxParticles;
 		this.caldera = caldera;
+		this.seed = seed;
 
 		load();
 	}
@@ -147,13 +180,14 @@ public class ParticleDepositionHeightMap extends AbstractHeightMap {
 		}
 
 		heightData = new float[size*size];
+		Random random = new Random(seed);
 
 		//create peaks.
 		for (int i = 0; i < jumps; i++) {
 
 			//pick a random point.
-			x = (int) (Math.rint(Math.random() * (size - 1)));
-			y = (int) (Math.rint(Math.random() * (size - 1)));
+			x = (int) (Math.rint(random.nextDouble() * (size - 1)));
+			y = (int) (Math.rint(random.nextDouble() * (size - 1)));
 
 			//set the caldera point.
 			calderaX = x;
@@ -162,13 +196,13 @@ public class ParticleDepositionHeightMap extends AbstractHeightMap {
 			int numberParticles =
 				(int) (Math
 					.rint(
-						(Math.random() * (maxParticles - minParticles))
+						(random.nextDouble() * (maxParticles - minParticles))
 							+ minParticles));
 			//drop particles.
 			for (int j = 0; j < numberParticles; j++) {
 				//check to see if we should aggitate the drop point.
 				if (peakWalk != 0 && j % peakWalk == 0) {
-					m = (int) (Math.rint(Math.random() * 7));
+					m = (int) (Math.rint(random.nextDouble() * 7));
 					x = (x + dx[m] + size) % size;
 					y = (y + dy[m] + size) % size;
 				}
@@ -186,7 +220,7 @@ public class ParticleDepositionHeightMap extends AbstractHeightMap {
 					done = true;
 
 					//check neighbors to see if we are higher.
-					m = (int) (Math.rint((Math.random() * 8)));
+					m = (int) (Math.rint((random.nextDouble() * 8)));
 					for (int jj = 0; jj < 8; jj++) {
 						tx = (sx + dx[(jj + m) % 8]) % (size);
 						ty = (sy + dy[(jj + m) % 8]) % (size);
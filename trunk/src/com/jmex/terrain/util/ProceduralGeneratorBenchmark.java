@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2003-2008 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors 
+ *   may be used to endorse or promote products derived from this software 
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jmex.terrain.util;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.swing.ImageIcon;
+
+import com.jme.util.WorkerPool;
+
+/**
+ * <code>ProceduralGeneratorBenchmark</code> times the height map and
+ * procedural texture generators with the <code>WorkerPool</code> set to 1, 2,
+ * 4... threads up to the number of available processors, and checks that every
+ * thread count produces exactly the same output.
+ * <p>
+ * Usage:
+ * <code>ProceduralGeneratorBenchmark [mapSize] [textureSize] [maxThreads]</code>
+ */
+public class ProceduralGeneratorBenchmark {
+
+    public static void main(String[] args) {
+        final int mapSize = args.length > 0 ? Integer.parseInt(args[0]) : 1025;
+        final int textureSize = args.length > 1 ? Integer.parseInt(args[1])
+                : 2048;
+        Logger.getLogger("").setLevel(Level.WARNING);
+
+        List<Integer> threadCounts = new ArrayList<Integer>();
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime
+                .getRuntime().availableProcessors();
+        for (int t = 1; t < maxThreads; t *= 2) {
+            threadCounts.add(t);
+        }
+        threadCounts.add(maxThreads);
+
+        final AbstractHeightMap[] map = new AbstractHeightMap[1];
+        Job[] jobs = new Job[] { new Job("hill " + mapSize) {
+            int run() {
+                map[0] = new HillHeightMap(mapSize, 2000, 10, 100, (byte) 2,
+                        1);
+                return Arrays.hashCode(map[0].getHeightMap());
+            }
+        }, new Job("fluid sim " + mapSize) {
+            int run() {
+                return Arrays.hashCode(new FluidSimHeightMap(mapSize, 100,
+                        -500, 500, 100, 100, 0.033f, 10, 1).getHeightMap());
+            }
+        }, new Job("particle deposition " + mapSize) {
+            int run() {
+                return Arrays.hashCode(new ParticleDepositionHeightMap(
+                        mapSize, 20, 3, 2000, 5000, 0.5f, 1).getHeightMap());
+            }
+        }, new Job("splat texture " + textureSize) {
+            int run() {
+                ProceduralSplatTextureGenerator gen = createGenerator(map[0]);
+                gen.createTexture(textureSize);
+                BufferedImage img = (BufferedImage) gen.getImageIcon()
+                        .getImage();
+                return Arrays.hashCode(img.getRGB(0, 0, textureSize,
+                        textureSize, null, 0, textureSize));
+            }
+        }, new Job("splat image " + textureSize) {
+            int run() {
+                ByteBuffer data = createGenerator(map[0]).createImage(
+                        textureSize).getData(0);
+                return data.hashCode();
+            }
+        } };
+
+        for (Job job : jobs) {
+            StringBuilder line = new StringBuilder(job.name + ":");
+            Integer result = null;
+            long serial = 0;
+            for (int threads : threadCounts) {
+                WorkerPool.setThreadCount(threads);
+                // warm up, then keep the best of three
+                job.run();
+                long best = Long.MAX_VALUE;
+                for (int i = 0; i < 3; i++) {
+                    long start = System.nanoTime();
+                    int hash = job.run();
+                    best = Math.min(best, System.nanoTime() - start);
+                    if (result == null) {
+                        result = hash;
+                    } else if (result.intValue() != hash) {
+                        throw new IllegalStateException(job.name
+                                + " differs with " + threads + " threads");
+                    }
+                }
+                if (threads == 1) {
+                    serial = best;
+                }
+                line.append("  ").append(threads).append(" thr ").append(
+                        best / 1000000).append(" ms (x").append(
+                        String.format("%.2f", serial / (double) best))
+                        .append(")");
+            }
+            System.out.println(line);
+        }
+        WorkerPool.shutdown();
+    }
+
+    private static ProceduralSplatTextureGenerator createGenerator(
+            AbstractHeightMap map) {
+        ProceduralSplatTextureGenerator gen = new ProceduralSplatTextureGenerator(
+                map);
+        gen.addTexture(createImage(256, 1, false), -128, 0, 128);
+        gen.addTexture(createImage(256, 2, false), 0, 128, 255);
+        gen.addTexture(createImage(256, 3, false), 128, 255, 384);
+        gen.addSplatTexture(createImage(512, 4, true), createImage(256, 5,
+                false));
+        return gen;
+    }
+
+    private static ImageIcon createImage(int size, long seed, boolean alpha) {
+        BufferedImage img = new BufferedImage(size, size,
+                alpha ? BufferedImage.TYPE_INT_ARGB
+                        : BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(seed);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                img.setRGB(x, y, random.nextInt());
+            }
+        }
+        return new ImageIcon(img);
+    }
+
+    private abstract static class Job {
+        final String name;
+
+        Job(String name) {
+            this.name = name;
+        }
+
+        /** @return a hash of the generated data */
+        abstract int run();
+    }
+}
@@ -34,9 +34,9 @@ package com.jmex.terrain.util;
 
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.logging.Logger;
 
 import javax.swing.ImageIcon;
 
@@ -52,15 +52,20 @@ import javax.swing.ImageIcon;
  * @version $Id: ProceduralSplatTextureGenerator.java,v 1.5 2007/08/20 10:28:45 rherlitz Exp $
  *  */
 public class ProceduralSplatTextureGenerator extends ProceduralTextureGenerator {
-    private static final Logger logger = Logger
-            .getLogger(ProceduralSplatTextureGenerator.class.getName());
-    
 	// collection of alpha maps
 	protected List<BufferedImage> splatMaps;
 
 	// collection of texture maps
 	protected List<BufferedImage> splatTextures;
 
+	// splat data collected by prepareInputs
+	private int[][] mapPixels;
+	private int[] mapWidths;
+	private int[] mapHeights;
+	private int[][] texturePixels;
+	private int[] textureWidths;
+	private int[] textureHeights;
+
 	/**
 	 * Constructor instantiates a new <code>ProceduralSplatTexture</code>
 	 * object initializing the list for textures and the height map.
@@ -106,16 +111,39 @@ public class ProceduralSplatTextureGenerator extends ProceduralTextureGenerator
 	}
 
 	/**
-	 * <code>createTexture</code> overrides the method in
+	 * <code>prepareInputs</code> extends the method in
+	 * <code>ProceduralTextureGenerator</code> to also collect the data of the
+	 * splat maps.
+	 */
+	protected void prepareInputs() {
+		super.prepareInputs();
+
+		int splatSize = splatTextures.size();
+		mapPixels = new int[splatSize][];
+		mapWidths = new int[splatSize];
+		mapHeights = new int[splatSize];
+		texturePixels = new int[splatSize][];
+		textureWidths = new int[splatSize];
+		textureHeights = new int[splatSize];
+		for (int i = 0; i < splatSize; i++) {
+			BufferedImage splatMap = splatMaps.get(i);
+			BufferedImage splatTexture = splatTextures.get(i);
+			mapPixels[i] = ((DataBufferInt) splatMap.getRaster().getDataBuffer()).getData();
+			mapWidths[i] = splatMap.getWidth();
+			mapHeights[i] = splatMap.getHeight();
+			texturePixels[i] = ((DataBufferInt) splatTexture.getRaster().getDataBuffer()).getData();
+			textureWidths[i] = splatTexture.getWidth();
+			textureHeights[i] = splatTexture.getHeight();
+		}
+	}
+
+	/**
+	 * <code>computeRow</code> overrides the method in
 	 * <code>ProcduralTextureGenerator</code> to provide the capability to
 	 * overlay the existing procedural texture with one or more 'splat' maps.
 	 */
-	public void createTexture(int textureSize) {
-		super.createTexture(textureSize);
-
-		BufferedImage img = new BufferedImage(textureSize, textureSize, BufferedImage.TYPE_INT_RGB);
-		BufferedImage splatTexture;
-		BufferedImage splatMap;
+	protected void computeRow(int z, int textureSize, int[] store, int offset) {
+		super.computeRow(z, textureSize, store, offset);
 
 		float alpha;
 		int scaledX;
@@ -126,55 +154,40 @@ public class ProceduralSplatTextureGenerator extends ProceduralTextureGenerator
 		int green;
 		int blue;
 
-		int splatSize = splatTextures.size();
-
-		img.getGraphics().drawImage(proceduralTexture.getImage(), 0, 0, null);
+		int splatSize = mapPixels.length;
+		// the splat maps are addressed top down
+		int y = textureSize - (z + 1);
 
 		for (int x = 0; x < textureSize; x++) {
-			for (int y = 0; y < textureSize; y++) {
-				rgb = img.getRGB(x, y);
-				red = (rgb & 0x00FF0000) >> 16;
-				green = (rgb & 0x0000FF00) >> 8;
-				blue = (rgb & 0x000000FF);
-
-				for (int i = 0; i < splatSize; i++) {
-					splatMap = splatMaps.get(i);
-					splatTexture = splatTextures.get(i);
-
-					// Retrieve the amount of the color to use for this texture.
-					scaledX = (int) (x * (splatMap.getWidth() / (float) textureSize));
-					scaledY = (int) (splatMap.getHeight() - ((y * (splatMap.getHeight() / (float) textureSize)) + 1));
-
-					alpha = ((splatMap.getRGB(scaledX, scaledY) >> 24) & 0x000000FF) / 255.0f;
-
-					// We may have to tile the texture if the terrain is larger
-					// than the texture.
-					scaledX = x % splatTexture.getWidth();
-					scaledY = y % splatTexture.getHeight();
-
-					// perform alpha composite
-					if (alpha > 0) {
-						red = (int) ((red * (1.0f - alpha)) + (((splatTexture.getRGB(scaledX, scaledY) & 0x00FF0000) >> 16) * alpha));
-						green = (int) ((green * (1.0f - alpha)) + (((splatTexture.getRGB(scaledX, scaledY) & 0x0000FF00) >> 8) * alpha));
-						blue = (int) ((blue * (1.0f - alpha)) + (((splatTexture.getRGB(scaledX, scaledY) & 0x000000FF)) * alpha));
-					}
+			rgb = store[offset + x];
+			red = (rgb & 0x00FF0000) >> 16;
+			green = (rgb & 0x0000FF00) >> 8;
+			blue = (rgb & 0x000000FF);
+
+			for (int i = 0; i < splatSize; i++) {
+				// Retrieve the amount of the color to use for this texture.
+				scaledX = (int) (x * (mapWidths[i] / (float) textureSize));
+				scaledY = (int) (mapHeights[i] - ((y * (mapHeights[i] / (float) textureSize)) + 1));
+
+				alpha = ((mapPixels[i][scaledY * mapWidths[i] + scaledX] >> 24) & 0x000000FF) / 255.0f;
+
+				// We may have to tile the texture if the terrain is larger
+				// than the texture.
+				scaledX = x % textureWidths[i];
+				scaledY = y % textureHeights[i];
+
+				// perform alpha composite
+				if (alpha > 0) {
+					int texel = texturePixels[i][scaledY * textureWidths[i] + scaledX];
+					red = (int) ((red * (1.0f - alpha)) + (((texel & 0x00FF0000) >> 16) * alpha));
+					green = (int) ((green * (1.0f - alpha)) + (((texel & 0x0000FF00) >> 8) * alpha));
+					blue = (int) ((blue * (1.0f - alpha)) + (((texel & 0x000000FF)) * alpha));
 				}
-
-				// set the color for the final texture.
-				rgb = red << 16 | green << 8 | blue;
-				img.setRGB(x, y, rgb);
-
-				red = 0;
-				green = 0;
-				blue = 0;
 			}
-		}
 
-		// create the new image from the data.
-		proceduralTexture = new ImageIcon(img);
-		proceduralTexture.setDescription("TerrainTexture");
-
-		logger.fine("Created splat texture successfully.");
+			// set the color for the final texture.
+			store[offset + x] = red << 16 | green << 8 | blue;
+		}
 	}
 
 	/**
@@ -37,13 +37,17 @@ import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.logging.Logger;
 
 import javax.imageio.ImageIO;
 import javax.swing.ImageIcon;
 
+import com.jme.image.Image;
 import com.jme.system.JmeException;
+import com.jme.util.WorkerPool;
+import com.jme.util.geom.BufferUtils;
 
 /**
  * <code>ProceduralTexture</code> generates an <code>ImageIcon</code>
@@ -60,6 +64,9 @@ import com.jme.system.JmeException;
  * Currently, the output texture will have the same dimensions as the input
  * heightmap.
  *
+ * The output rows are generated in parallel on the <code>WorkerPool</code>;
+ * the result does not depend on the number of threads.
+ *
  * @author Mark Powell
  * @version $Id: ProceduralTextureGenerator.java,v 1.7 2007/08/20 10:28:45 rherlitz Exp $
  */
@@ -77,6 +84,14 @@ public class ProceduralTextureGenerator {
   //the size of the texture.
   protected int size;
 
+  //input texture data collected by prepareInputs.
+  private int[][] tilePixels;
+  private int[] tileWidths;
+  private int[] tileHeights;
+
+  //rows below which a texture is not split across threads.
+  protected static final int MIN_ROWS_PER_TASK = 16;
+
   /**
    * Constructor instantiates a new <code>ProceduralTexture</code> object
    * initializing the list for textures and the height map.
@@ -92,84 +107,136 @@ public class ProceduralTextureGenerator {
    * <code>createTexture</code> takes the current height map and
    * the current loaded textures and produces an <code>ImageIcon</code>
    * which can be retrieved with a call to <code>getImageIcon</code>.
+   * Rows are generated in parallel on the <code>WorkerPool</code>.
    */
-  public void createTexture(int textureSize) {
+  public void createTexture(final int textureSize) {
     BufferedImage img =
         new BufferedImage(textureSize, textureSize, BufferedImage.TYPE_INT_RGB);
-    DataBufferInt data =
-        (DataBufferInt) img.getRaster().getDataBuffer();
-    int[] pixels = data.getData();
+    final int[] pixels =
+        ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+
+    prepareInputs();
+    WorkerPool.getPool().invokeRange(textureSize, MIN_ROWS_PER_TASK,
+        new WorkerPool.RangeTask() {
+      public void run(int start, int end) {
+        for (int z = start; z < end; z++) {
+          //the image is stored top down, z = 0 is its last row.
+          computeRow(z, textureSize, pixels, (textureSize - (z + 1))
+              * textureSize);
+        }
+      }
+    });
+
+    //create the new image from the data.
+    proceduralTexture = new ImageIcon(img);
+    proceduralTexture.setDescription("TerrainTexture");
+
+    logger.fine("Created procedural texture successfully.");
+  }
+
+  /**
+   * <code>createImage</code> generates the same texture as
+   * <code>createTexture</code>, but writes it straight into the direct
+   * <code>ByteBuffer</code> of an RGB8 <code>Image</code> instead of going
+   * through a <code>BufferedImage</code>. The rows are laid out like
+   * <code>TextureManager.loadImage(getImageIcon().getImage(), true)</code>
+   * would lay them out, so the result can be used for a texture directly.
+   * Rows are generated in parallel on the <code>WorkerPool</code>.
+   * <code>getImageIcon</code> is not affected.
+   * @param textureSize the width and height of the image.
+   * @return the generated image.
+   */
+  public Image createImage(final int textureSize) {
+    final ByteBuffer data =
+        BufferUtils.createByteBuffer(textureSize * textureSize * 3);
+
+    prepareInputs();
+    WorkerPool.getPool().invokeRange(textureSize, MIN_ROWS_PER_TASK,
+        new WorkerPool.RangeTask() {
+      public void run(int start, int end) {
+        int[] row = new int[textureSize];
+        byte[] bytes = new byte[textureSize * 3];
+        //own position per task, the buffer is shared.
+        ByteBuffer out = data.duplicate();
+        for (int z = start; z < end; z++) {
+          computeRow(z, textureSize, row, 0);
+          for (int x = 0, b = 0; x < textureSize; x++) {
+            int rgb = row[x];
+            bytes[b++] = (byte) (rgb >> 16);
+            bytes[b++] = (byte) (rgb >> 8);
+            bytes[b++] = (byte) rgb;
+          }
+          out.position(z * textureSize * 3);
+          out.put(bytes);
+        }
+      }
+    });
 
-    //tempvalues for the color
-    int red = 0;
-    int green = 0;
-    int blue = 0;
+    logger.fine("Created procedural image successfully.");
+    return new Image(Image.Format.RGB8, textureSize, textureSize, data);
+  }
 
+  /**
+   * <code>prepareInputs</code> is called before the rows of a texture are
+   * generated and collects the input data <code>computeRow</code> reads,
+   * so the rows can be computed by several threads at once.
+   */
+  protected void prepareInputs() {
     int tlSize = textureList.size();
-    int twidths[] = new int[tlSize];
-    int theights[] = new int[tlSize];
+    tilePixels = new int[tlSize][];
+    tileWidths = new int[tlSize];
+    tileHeights = new int[tlSize];
     for (int i = 0; i < tlSize; i++) {
-      BufferedImage tempImg =
-          textureList.get(i).imageData;
-      twidths[i] = tempImg.getWidth();
-      theights[i] = tempImg.getHeight();
+      BufferedImage tempImg = textureList.get(i).imageData;
+      tilePixels[i] =
+          ((DataBufferInt) tempImg.getRaster().getDataBuffer()).getData();
+      tileWidths[i] = tempImg.getWidth();
+      tileHeights[i] = tempImg.getHeight();
     }
+  }
 
-    int scaledX;
-    int scaledZ;
-
+  /**
+   * <code>computeRow</code> computes the colors of one row of the output
+   * texture. It may be called for different rows from several threads at
+   * once, and must only read the state collected by
+   * <code>prepareInputs</code>.
+   * @param z the row, 0 being the row at the height map's z = 0.
+   * @param textureSize the width and height of the output texture.
+   * @param store where to write the RGB colors of the row.
+   * @param offset the index in store of the row's first pixel.
+   */
+  protected void computeRow(int z, int textureSize, int[] store, int offset) {
+    int tlSize = tilePixels.length;
     float mapRatio = (float) size / (float) textureSize;
 
-    //check each pixel of the heightmap
-    BufferedImage tempImg;
-    float scalar;
     for (int x = 0; x < textureSize; x++) {
-      for (int z = 0; z < textureSize; z++) {
-        //combine every texture for this pixel
-        for (int i = 0; i < tlSize; i++) {
-          tempImg =
-              textureList.get(i).imageData;
-          data =
-              (DataBufferInt) tempImg.getRaster()
-              .getDataBuffer();
-          pixels = data.getData();
-
-          //We may have to tile the texture if the terrain is
-          //larger than the texture.
-          scaledX = x % twidths[i];
-          scaledZ = z % theights[i];
-
-          //Retrieve the amount of the color to use for this
-          //texture.
-          scalar = getTextureScale(interpolateHeight(x, z, mapRatio), i);
-          red += scalar
-              * ( (pixels[scaledZ * twidths[i]
-                   + scaledX] & 0x00FF0000)
-                 >> 16);
-          green += scalar
-              * ( (pixels[scaledZ * twidths[i]
-                   + scaledX] & 0x0000FF00)
-                 >> 8);
-          blue += scalar
-              * ( (pixels[scaledZ * twidths[i]
-                   + scaledX] & 0x000000FF));
-        }
-
-        //set the color for the final texture.
-        int rgb = red << 16 | green << 8 | blue;
-        img.setRGB(x, textureSize - (z + 1), rgb);
-
-        red = 0;
-        green = 0;
-        blue = 0;
+      //tempvalues for the color
+      int red = 0;
+      int green = 0;
+      int blue = 0;
+      float height = interpolateHeight(x, z, mapRatio);
+
+      //combine every texture for this pixel
+      for (int i = 0; i < tlSize; i++) {
+        int[] pixels = tilePixels[i];
+
+        //We may have to tile the texture if the terrain is
+        //larger than the texture.
+        int scaledX = x % tileWidths[i];
+        int scaledZ = z % tileHeights[i];
+        int pixel = pixels[scaledZ * tileWidths[i] + scaledX];
+
+        //Retrieve the amount of the color to use for this
+        //texture.
+        float scalar = getTextureScale(height, i);
+        red += scalar * ( (pixel & 0x00FF0000) >> 16);
+        green += scalar * ( (pixel & 0x0000FF00) >> 8);
+        blue += scalar * (pixel & 0x000000FF);
       }
-    }
-
-    //create the new image from the data.
-    proceduralTexture = new ImageIcon(img);
-    proceduralTexture.setDescription("TerrainTexture");
 
-    logger.fine("Created procedural texture successfully.");
+      //set the color for the final texture.
+      store[offset + x] = red << 16 | green << 8 | blue;
+    }
   }
 
   /**
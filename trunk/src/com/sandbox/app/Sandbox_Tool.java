@@ -559,6 +559,10 @@ public class Sandbox_Tool extends JFrame implements ActionListener{
     		activearea.loadMap();
     	}
     	
+    	if (event.getActionCommand().equals("Save AREA/INTERIOR")) {
+    		activearea.saveMap();
+    	}
+    	
     	
     	
     	if (event.getActionCommand().equals("Grid Lines")){
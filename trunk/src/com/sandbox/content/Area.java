@@ -1,20 +1,26 @@
 package com.sandbox.content;
 
+import java.io.File;
+
 import com.jme.bounding.BoundingBox;
 import com.jme.math.Vector3f;
 import com.jme.scene.Node;
 import com.jmex.terrain.TerrainPage;
+import com.jmex.terrain.util.MappedHeightMap;
 import com.sandbox.util.Converter;
 import com.sandbox.util.FileClass;
 
 public class Area {
 	
+	public static final String MAP_DIR = "src/com/sandbox/data/map/";
+	
 	private boolean update = false;
 	private String name;
 	private int size;
 	private boolean type;
 	
 	private float[] map;
+	private MappedHeightMap heightMap;
 	
 	private Node area = new Node("Area");
 	TerrainPage page;
@@ -59,21 +65,77 @@ public class Area {
 			map[0] = 0;
 		}
 		this.map = map;
+		heightMap = new MappedHeightMap(map, getMapFile(), MappedHeightMap.FORMAT_FLOAT);
+	}
+	
+	private File getMapFile(){
+		String file = name == null || name.length() == 0 ? "TestMap" : name;
+		return new File(MAP_DIR + file + MappedHeightMap.EXTENSION);
 	}
 	
 	public void loadMap(){
-		FileClass areafile = new FileClass("src/com/sandbox/data/map/TestMap.mp");
+		File binary = new File(MAP_DIR + "TestMap" + MappedHeightMap.EXTENSION);
+		if(binary.isFile()){
+			loadMap(binary);
+			return;
+		}
+		
+		// old text format, converted to binary on the next save
+		FileClass areafile = new FileClass(MAP_DIR + "TestMap.mp");
 		name = areafile.search("mapname");
 		map = Converter.Array_StringToFloat(areafile.search("height"));
+		heightMap = new MappedHeightMap(map, binary, MappedHeightMap.FORMAT_FLOAT);
 		
 		System.out.println("Load");
 		recreateArea();
 	}
 	
+	public void loadMap(File file){
+		heightMap = new MappedHeightMap(file);
+		map = heightMap.getHeightMap();
+		if(name == null || name.length() == 0){
+			name = file.getName().substring(0, file.getName().lastIndexOf('.'));
+		}
+		
+		recreateArea();
+	}
+	
+	/**
+	 * Saves the height map, writing only the region edited since the last
+	 * load or save once the map has been saved in full.
+	 */
+	public boolean saveMap(){
+		if(heightMap == null){
+			return false;
+		}
+		return heightMap.saveDirty();
+	}
+	
+	public void setHeight(int x, int z, float height){
+		heightMap.setHeightAtPoint(height, x, z);
+		if(page != null){
+			page.setHeightMapValue(x, z, height);
+		}
+		update = true;
+	}
+	
+	/**
+	 * Rebuilds the terrain geometry after a series of setHeight calls.
+	 */
+	public void updateHeights(){
+		if(page != null){
+			page.updateFromHeightMap();
+		}
+	}
+	
 	public float[] getMap(){
 		return map;
 	}
 	
+	public MappedHeightMap getHeightMap(){
+		return heightMap;
+	}
+	
 	public void recreateArea(){
 		
 		//
@@ -66,7 +66,7 @@ private static DisplaySystem display = DisplaySystem.getDisplaySystem();
 	    manager.setEndColor(new ColorRGBA(0.121f, 0.312f, 1.0f, 1.0f));
 	    manager.getParticleController().setControlFlow(false);
 	    manager.setInitialVelocity(0.12f); 
-	    
+	    manager.setUseParticleArrays(true);
 	    
 	    manager.setGeometry((Geometry) object);
 	    manager.warmUp(60);
@@ -118,7 +118,7 @@ private static DisplaySystem display = DisplaySystem.getDisplaySystem();
 	    manager.setEndColor(new ColorRGBA(0.121f, 0.312f, 1.0f, 0.0f));
 	    manager.getParticleController().setControlFlow(false);
 	    manager.setInitialVelocity(0.12f); 
-	    
+	    manager.setUseParticleArrays(true);
 	    
 	    manager.setGeometry((Geometry)(cn.getChild(0)));
 	    manager.warmUp(60);
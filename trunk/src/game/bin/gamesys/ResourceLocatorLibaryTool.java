@@ -4,6 +4,7 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -21,10 +22,30 @@ public class ResourceLocatorLibaryTool {
 
 	    private static final Map<String, ArrayList<ResourceLocator>> locatorMap = new HashMap<String, ArrayList<ResourceLocator>>();
 
+	    private static final Object NOT_FOUND = new Object();
+
+	    private static volatile ConcurrentHashMap<String, Object> lookupCache = new ConcurrentHashMap<String, Object>();
+
 	    public static URL locateResource(String resourceType, String resourceName) {
 	        if (resourceName == null) {
 	            return null;
 	        }
+	        ConcurrentHashMap<String, Object> cache = lookupCache;
+	        String key = resourceType + '\0' + resourceName;
+	        Object cached = cache.get(key);
+	        if (cached != null) {
+	            return cached != NOT_FOUND ? (URL) cached : null;
+	        }
+	        URL rVal = findResource(resourceType, resourceName);
+	        cache.put(key, rVal != null ? rVal : NOT_FOUND);
+	        return rVal;
+	    }
+
+	    public static void clearCache() {
+	        lookupCache = new ConcurrentHashMap<String, Object>();
+	    }
+
+	    private static URL findResource(String resourceType, String resourceName) {
 	        synchronized (locatorMap) {
 	            ArrayList<ResourceLocator> bases = locatorMap.get(resourceType);
 	            if (bases != null) {
@@ -64,6 +85,7 @@ public class ResourceLocatorLibaryTool {
 
 	            if (!bases.contains(locator)) {
 	                bases.add(locator);
+	                clearCache();
 	            }
 	        }
 	    }
@@ -75,7 +97,11 @@ public class ResourceLocatorLibaryTool {
 	            if (bases == null) {
 	                return false;
 	            }
-	            return bases.remove(locator);
+	            if (bases.remove(locator)) {
+	                clearCache();
+	                return true;
+	            }
+	            return false;
 	        }
 	    }
 }
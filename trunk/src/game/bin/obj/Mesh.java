@@ -9,6 +9,7 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.logging.Logger;
 
 import com.jme.bounding.BoundingBox;
@@ -26,6 +27,7 @@ import com.jme.scene.state.MaterialState;
 import com.jme.scene.state.RenderState;
 import com.jme.scene.state.TextureState;
 import com.jme.system.DisplaySystem;
+import com.jme.util.TextureKey;
 import com.jme.util.TextureManager;
 import com.jme.util.export.Savable;
 import com.jme.util.export.binary.BinaryExporter;
@@ -37,6 +39,8 @@ import com.jmex.model.converters.Md2ToJme;
 import com.jmex.model.converters.Md3ToJme;
 import com.jmex.model.converters.MilkToJme;
 import com.jmex.model.converters.ObjToJme;
+import com.jmex.model.util.AssetStreamer;
+import com.jmex.model.util.ModelCache;
 import com.jmex.physics.DynamicPhysicsNode;
 import com.jmex.physics.PhysicsSpace;
 import com.jmex.physics.material.Material;
@@ -67,6 +71,8 @@ public class Mesh extends Node{
 	
 	MaterialState material_state;
 	
+	private boolean streaming;
+	
 	public void iniMesh(){
 		material_state = display.getRenderer().createMaterialState();
 		material_state.setColorMaterial(MaterialState.ColorMaterial.AmbientAndDiffuse);
@@ -79,16 +85,54 @@ public class Mesh extends Node{
 	public void addModel(String model_file_name, String model_name){
 		logger.info("Add Mesh " + model_name + " to " + name);
 		
-		Node loaded_model = new Node(model_name);
-		FormatConverter	formatConverter = null;		
-        ByteArrayOutputStream BO = new ByteArrayOutputStream();
-        
-        String modelFormat = model_file_name.substring(model_file_name.lastIndexOf(".") + 1, model_file_name.length());
         String modelBinary = model_file_name.substring(0, model_file_name.lastIndexOf(".") + 1) + "jbin";
         
         URL model_url = ResourceLocatorLibaryTool.locateResource(ResourceLocatorLibaryTool.TYPE_MODEL, model_file_name);
         URL model_url_jbin = ResourceLocatorLibaryTool.locateResource(ResourceLocatorLibaryTool.TYPE_MODEL, modelBinary);
         
+        attachModel(readModel(model_file_name, model_name, model_url, model_url_jbin));
+        
+	    logger.info("Child_" + model_name + " has been added to Node_" + name);
+	}
+	
+	/**
+	 * Same as addModel, but the model is read and converted by the
+	 * AssetStreamer in the background and only attached once it arrived.
+	 * 
+	 * @return the pending load, that can be cancelled.
+	 */
+	public AssetStreamer.Request<Spatial> addModelAsync(final String model_file_name, final String model_name, int priority){
+		logger.info("Add Mesh " + model_name + " to " + name + " (streamed)");
+		
+        String modelBinary = model_file_name.substring(0, model_file_name.lastIndexOf(".") + 1) + "jbin";
+        
+        // locate on this thread, the locators are not thread safe
+        final URL model_url = ResourceLocatorLibaryTool.locateResource(ResourceLocatorLibaryTool.TYPE_MODEL, model_file_name);
+        final URL model_url_jbin = ResourceLocatorLibaryTool.locateResource(ResourceLocatorLibaryTool.TYPE_MODEL, modelBinary);
+        
+        return AssetStreamer.getStreamer().loadModel(new Callable<Spatial>() {
+        	public Spatial call() {
+        		return readModel(model_file_name, model_name, model_url, model_url_jbin);
+        	}
+        }, null, priority, new AssetStreamer.AssetListener<Spatial>() {
+        	public void assetLoaded(AssetStreamer.Request<Spatial> request, Spatial asset) {
+        		attachModel((Node) asset);
+        		updateRenderState();
+        		logger.info("Child_" + model_name + " has been added to Node_" + name);
+        	}
+        	
+        	public void assetFailed(AssetStreamer.Request<Spatial> request, Throwable cause) {
+        		logger.warning("Child_" + model_name + " could not be added to Node_" + name);
+        	}
+        });
+	}
+	
+	private Node readModel(String model_file_name, String model_name, URL model_url, URL model_url_jbin){
+		Node loaded_model = new Node(model_name);
+		FormatConverter	formatConverter = null;		
+        
+        String modelFormat = model_file_name.substring(model_file_name.lastIndexOf(".") + 1, model_file_name.length());
+        
         if (model_url_jbin == null){
         	logger.info("Create jbin Format" + " (Node_" + name + " - Child_" + model_name + ")");
             //evaluate the format
@@ -108,12 +152,13 @@ public class Mesh extends Node{
             formatConverter.setProperty("mtllib", model_url);
 
             try {
-                    formatConverter.convert(model_url.openStream(), BO);
-                    loaded_model = (Node) BinaryImporter.getInstance().load(new ByteArrayInputStream(BO.toByteArray()));
-
-                    //save the jbin format
-                    //BinaryExporter.getInstance().save((Savable)loaded_model, new File(modelBinary));
-                    //BinaryExporter.getInstance().save((Savable)loaded_model, new File("/C:/Dokumente und Einstellungen/DarkPhoenixX/workspace/Zero_Zombie_Zone/bin/game/data/test.jbin"));
+                    // converted once, later starts read the cached jbin
+                    Savable converted = ModelCache.getDefault().load(model_url, formatConverter);
+                    if (converted instanceof Node) {
+                        loaded_model = (Node) converted;
+                    } else {
+                        loaded_model.attachChild((Spatial) converted);
+                    }
             } catch (IOException e) {				
                     e.printStackTrace();
                     
@@ -131,6 +176,10 @@ public class Mesh extends Node{
             }
 	    }
         
+	    return loaded_model;
+	}
+	
+	private void attachModel(Node loaded_model){
 	    Quaternion temp = new Quaternion();
 	    temp.fromAngleAxis(FastMath.PI / 2, new Vector3f(-1, 0, 0));
 	    loaded_model.setLocalRotation(temp);
@@ -153,7 +202,6 @@ public class Mesh extends Node{
 	        
 	        
         
-	    logger.info("Child_" + model_name + " has been added to Node_" + name);
 	}
 	
 	/*public void addModel(String model_file_name, String model_name, boolean physic){
@@ -269,26 +317,21 @@ public class Mesh extends Node{
 		
         // Base texture
 		
-       	baseMap = TextureManager.loadTexture(
-       			ResourceLocatorLibaryTool.locateResource(ResourceLocatorLibaryTool.TYPE_TEXTURE, texture_file_name_base),
-                Texture.MinificationFilter.Trilinear, Texture.MagnificationFilter.Bilinear);
+       	baseMap = loadTexture(texture_file_name_base, TextureManager.COMPRESS_BY_DEFAULT
+       			? Image.Format.Guess : Image.Format.GuessNoCompression);
         baseMap.setWrap(Texture.WrapMode.Repeat);
         texture_state.setTexture(baseMap, 0);
         
         
         if(RuntimeCash.getNormalMapping()){
 	        // Normal map
-	        normalMap = TextureManager.loadTexture(
-	        		ResourceLocatorLibaryTool.locateResource(ResourceLocatorLibaryTool.TYPE_TEXTURE, texture_file_name_normal),
-	                Texture.MinificationFilter.Trilinear, Texture.MagnificationFilter.Bilinear,
-	                Image.Format.GuessNoCompression, 0.0f, true);
+	        normalMap = loadTexture(texture_file_name_normal, Image.Format.GuessNoCompression);
 	        normalMap.setWrap(Texture.WrapMode.Repeat);
 	        texture_state.setTexture(normalMap, 1);
 	
 	        // Specular map
-	        specMap = TextureManager.loadTexture(
-	        		ResourceLocatorLibaryTool.locateResource(ResourceLocatorLibaryTool.TYPE_TEXTURE, texture_file_name_spec),
-	                Texture.MinificationFilter.Trilinear, Texture.MagnificationFilter.Bilinear);
+	        specMap = loadTexture(texture_file_name_spec, TextureManager.COMPRESS_BY_DEFAULT
+	        		? Image.Format.Guess : Image.Format.GuessNoCompression);
 	        specMap.setWrap(Texture.WrapMode.Repeat);
 	        texture_state.setTexture(specMap, 2);
         }
@@ -318,26 +361,21 @@ public class Mesh extends Node{
 		
         // Base texture
 		
-       	baseMap = TextureManager.loadTexture(
-       			ResourceLocatorLibaryTool.locateResource(ResourceLocatorLibaryTool.TYPE_TEXTURE, texture_file_name_base),
-                Texture.MinificationFilter.Trilinear, Texture.MagnificationFilter.Bilinear);
+       	baseMap = loadTexture(texture_file_name_base, TextureManager.COMPRESS_BY_DEFAULT
+       			? Image.Format.Guess : Image.Format.GuessNoCompression);
         baseMap.setWrap(Texture.WrapMode.Repeat);
         texture_state.setTexture(baseMap, 0);
         
         
         if(RuntimeCash.getNormalMapping()){
 	        // Normal map
-	        normalMap = TextureManager.loadTexture(
-	        		ResourceLocatorLibaryTool.locateResource(ResourceLocatorLibaryTool.TYPE_TEXTURE, texture_file_name_normal),
-	                Texture.MinificationFilter.Trilinear, Texture.MagnificationFilter.Bilinear,
-	                Image.Format.GuessNoCompression, 0.0f, true);
+	        normalMap = loadTexture(texture_file_name_normal, Image.Format.GuessNoCompression);
 	        normalMap.setWrap(Texture.WrapMode.Repeat);
 	        texture_state.setTexture(normalMap, 1);
 	
 	        // Specular map
-	        specMap = TextureManager.loadTexture(
-	        		ResourceLocatorLibaryTool.locateResource(ResourceLocatorLibaryTool.TYPE_TEXTURE, texture_file_name_spec),
-	                Texture.MinificationFilter.Trilinear, Texture.MagnificationFilter.Bilinear);
+	        specMap = loadTexture(texture_file_name_spec, TextureManager.COMPRESS_BY_DEFAULT
+	        		? Image.Format.Guess : Image.Format.GuessNoCompression);
 	        specMap.setWrap(Texture.WrapMode.Repeat);
 	        texture_state.setTexture(specMap, 2);
         }
@@ -349,6 +387,32 @@ public class Mesh extends Node{
         this.getChild(child).setRenderState(material_state);
 	}
 	
+	/**
+	 * @param streaming
+	 *            if true the textures of addTexture are loaded in the
+	 *            background by the AssetStreamer, showing the default texture
+	 *            until they arrived.
+	 */
+	public void setStreaming(boolean streaming){
+		this.streaming = streaming;
+	}
+	
+	public boolean isStreaming(){
+		return streaming;
+	}
+	
+	private Texture loadTexture(String texture_file_name, Image.Format format){
+		URL texture_url = ResourceLocatorLibaryTool.locateResource(ResourceLocatorLibaryTool.TYPE_TEXTURE, texture_file_name);
+		if (streaming && texture_url != null){
+			return AssetStreamer.getStreamer().loadTexture(new TextureKey(texture_url, true, format),
+					Texture.MinificationFilter.Trilinear, Texture.MagnificationFilter.Bilinear, 0.0f,
+					AssetStreamer.NORMAL_PRIORITY, null).getPlaceholder();
+		}
+		return TextureManager.loadTexture(texture_url,
+                Texture.MinificationFilter.Trilinear, Texture.MagnificationFilter.Bilinear,
+                format, 0.0f, true);
+	}
+	
 	private void removeMaterialStates(Node node) {
         node.clearRenderState(RenderState.RS_MATERIAL);
 
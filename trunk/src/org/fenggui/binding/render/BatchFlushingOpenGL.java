@@ -0,0 +1,382 @@
+/*
+ * FengGUI - Java GUIs in OpenGL (http://www.fenggui.org)
+ * 
+ * Copyright (C) 2005, 2006 FengGUI Project
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details:
+ * http://www.gnu.org/copyleft/lesser.html#TOC3
+ * 
+ * $Id$
+ */
+package org.fenggui.binding.render;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * The <code>IOpenGL</code> handed out by <code>Graphics</code>. It draws
+ * the quads that <code>Graphics</code> has batched up before forwarding any
+ * call, so that custom rendering always sees the state and ordering it would
+ * have seen with immediate mode drawing. It also reports color and texture
+ * environment changes back to <code>Graphics</code>.
+ */
+class BatchFlushingOpenGL implements IOpenGL
+{
+	private final IOpenGL gl;
+	private final Graphics graphics;
+
+	BatchFlushingOpenGL(IOpenGL gl, Graphics graphics)
+	{
+		this.gl = gl;
+		this.graphics = graphics;
+	}
+
+	public void setModelMatrixMode()
+	{
+		graphics.sync();
+		gl.setModelMatrixMode();
+	}
+
+	public void setProjectionMatrixMode()
+	{
+		graphics.sync();
+		gl.setProjectionMatrixMode();
+	}
+
+	public void pushMatrix()
+	{
+		graphics.sync();
+		gl.pushMatrix();
+	}
+
+	public void popMatrix()
+	{
+		graphics.sync();
+		gl.popMatrix();
+	}
+
+	public void loadIdentity()
+	{
+		graphics.sync();
+		gl.loadIdentity();
+	}
+
+	public void pushAllAttribs()
+	{
+		graphics.sync();
+		gl.pushAllAttribs();
+	}
+
+	public void popAllAttribs()
+	{
+		graphics.sync();
+		gl.popAllAttribs();
+		graphics.attribsPopped();
+	}
+
+	public int[] getInt(Attribute attrib)
+	{
+		graphics.sync();
+		return gl.getInt(attrib);
+	}
+
+	public float[] getFloat(Attribute attrib)
+	{
+		graphics.sync();
+		return gl.getFloat(attrib);
+	}
+
+	public boolean[] getBoolean(Attribute attrib)
+	{
+		graphics.sync();
+		return gl.getBoolean(attrib);
+	}
+
+	public double[] getDouble(Attribute attrib)
+	{
+		graphics.sync();
+		return gl.getDouble(attrib);
+	}
+
+	public String getString(Attribute attrib)
+	{
+		graphics.sync();
+		return gl.getString(attrib);
+	}
+
+	public void enable(Attribute attrib)
+	{
+		graphics.sync();
+		gl.enable(attrib);
+	}
+
+	public void disable(Attribute attrib)
+	{
+		graphics.sync();
+		gl.disable(attrib);
+	}
+
+	public void enableTexture2D(boolean b)
+	{
+		graphics.sync();
+		gl.enableTexture2D(b);
+	}
+
+	public void setTexEnvModeDecal()
+	{
+		graphics.sync();
+		gl.setTexEnvModeDecal();
+		graphics.texEnvModeSet(false);
+	}
+
+	public void setTexEnvModeModulate()
+	{
+		graphics.sync();
+		gl.setTexEnvModeModulate();
+		graphics.texEnvModeSet(true);
+	}
+
+	public void setViewPort(int x, int y, int width, int height)
+	{
+		graphics.sync();
+		gl.setViewPort(x, y, width, height);
+	}
+
+	public void setOrtho2D(int left, int right, int bottom, int top)
+	{
+		graphics.sync();
+		gl.setOrtho2D(left, right, bottom, top);
+	}
+
+	public void setDepthFunctionToLEqual()
+	{
+		graphics.sync();
+		gl.setDepthFunctionToLEqual();
+	}
+
+	public void translateZ(float z)
+	{
+		graphics.sync();
+		gl.translateZ(z);
+	}
+
+	public void translateXY(int x, int y)
+	{
+		graphics.sync();
+		gl.translateXY(x, y);
+	}
+
+	public void rotate(float angle)
+	{
+		graphics.sync();
+		gl.rotate(angle);
+	}
+
+	public void rotate(float angle, int x, int y, int z)
+	{
+		graphics.sync();
+		gl.rotate(angle, x, y, z);
+	}
+
+	public void setScissor(int x, int width, int y, int height)
+	{
+		graphics.sync();
+		gl.setScissor(x, width, y, height);
+	}
+
+	public void activateTexture(int i)
+	{
+		graphics.sync();
+		gl.activateTexture(i);
+	}
+
+	public int genLists(int range)
+	{
+		graphics.sync();
+		return gl.genLists(range);
+	}
+
+	public void startList(int list)
+	{
+		graphics.sync();
+		gl.startList(list);
+	}
+
+	public void endList()
+	{
+		graphics.sync();
+		gl.endList();
+	}
+
+	public void callList(int list)
+	{
+		graphics.sync();
+		gl.callList(list);
+	}
+
+	public void end()
+	{
+		graphics.sync();
+		gl.end();
+	}
+
+	public void startQuads()
+	{
+		graphics.sync();
+		gl.startQuads();
+	}
+
+	public void startLines()
+	{
+		graphics.sync();
+		gl.startLines();
+	}
+
+	public void startLineStrip()
+	{
+		graphics.sync();
+		gl.startLineStrip();
+	}
+
+	public void startLineLoop()
+	{
+		graphics.sync();
+		gl.startLineLoop();
+	}
+
+	public void startTriangles()
+	{
+		graphics.sync();
+		gl.startTriangles();
+	}
+
+	public void startTriangleStrip()
+	{
+		graphics.sync();
+		gl.startTriangleStrip();
+	}
+
+	public void startTriangleFan()
+	{
+		graphics.sync();
+		gl.startTriangleFan();
+	}
+
+	public void startQuadStrip()
+	{
+		graphics.sync();
+		gl.startQuadStrip();
+	}
+
+	public void startPoints()
+	{
+		graphics.sync();
+		gl.startPoints();
+	}
+
+	public void drawQuads(FloatBuffer vertices, int quadCount)
+	{
+		graphics.sync();
+		gl.drawQuads(vertices, quadCount);
+	}
+
+	public void vertex(float x, float y)
+	{
+		graphics.sync();
+		gl.vertex(x, y);
+	}
+
+	public void rect(float x1, float y1, float x2, float y2)
+	{
+		graphics.sync();
+		gl.rect(x1, y1, x2, y2);
+	}
+
+	public void texCoord(float x, float y)
+	{
+		graphics.sync();
+		gl.texCoord(x, y);
+	}
+
+	public void color(float red, float green, float blue, float alpha)
+	{
+		graphics.flush();
+		gl.color(red, green, blue, alpha);
+		graphics.colorSet(red, green, blue, alpha);
+	}
+
+	public void scale(float scaleX, float scaleY)
+	{
+		graphics.sync();
+		gl.scale(scaleX, scaleY);
+	}
+
+	public void enableLighting(boolean b)
+	{
+		graphics.sync();
+		gl.enableLighting(b);
+	}
+
+	public void setupStateVariables(boolean depthTestEnabled)
+	{
+		graphics.sync();
+		gl.setupStateVariables(depthTestEnabled);
+		graphics.texEnvModeSet(false);
+	}
+
+	public void enableAlternateBlending(boolean b)
+	{
+		graphics.sync();
+		gl.enableAlternateBlending(b);
+	}
+
+	public void lineWidth(float width)
+	{
+		graphics.sync();
+		gl.lineWidth(width);
+	}
+
+	public void pointSize(float size)
+	{
+		graphics.sync();
+		gl.pointSize(size);
+	}
+
+	public void enableStipple()
+	{
+		graphics.sync();
+		gl.enableStipple();
+	}
+
+	public void disableStipple()
+	{
+		graphics.sync();
+		gl.disableStipple();
+	}
+
+	public void lineStipple(int stretch, short pattern)
+	{
+		graphics.sync();
+		gl.lineStipple(stretch, pattern);
+	}
+
+	public void enableAlpha(boolean state)
+	{
+		graphics.sync();
+		gl.enableAlpha(state);
+	}
+
+	public void readPixels(int x, int y, int width, int height, ByteBuffer bgr)
+	{
+		graphics.sync();
+		gl.readPixels(x, y, width, height, bgr);
+	}
+}
@@ -55,8 +55,9 @@ public abstract class Binding
 
 	public Binding(IOpenGL gl)
 	{
-		openGL = gl;
 		graphics = new Graphics(gl);
+		// drawing through the binding must not overtake the quads batched by Graphics
+		openGL = graphics.getOpenGL();
 
 		instance = this;
 	}
@@ -19,6 +19,11 @@
  */
 package org.fenggui.binding.render;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import org.fenggui.binding.render.IOpenGL.Attribute;
 import org.fenggui.util.CharacterPixmap;
 import org.fenggui.util.Color;
 import org.fenggui.util.Point;
@@ -27,6 +32,14 @@ import org.fenggui.util.Rectangle;
 /**
  * Provides a library of graphical functions for GUI classes to utilise, rather
  * than each class having to implement its own OpenGL rendering directly.
+ * <p>
+ * Filled rectangles, images and glyphs are not drawn one by one. They are
+ * collected in a vertex array that is drawn with a single call as soon as
+ * the texture, the clip space or any other OpenGL state changes. The
+ * <code>IOpenGL</code> returned by <code>getOpenGL()</code> draws the
+ * pending quads before it forwards a call, so custom rendering can be mixed
+ * freely with the methods of this class.
+ * </p>
  * 
  * @todo make use of the handy '...' operator for paramters. This can allow
  * to pass an arbitray number of pixmaps to a draw routine #
@@ -37,10 +50,70 @@ import org.fenggui.util.Rectangle;
 public class Graphics
 {
 	/**
-	   * The OpenGL Object
-	   */
+	 * Number of floats per batched vertex: x, y, s, t, red, green, blue, alpha.
+	 */
+	private static final int VERTEX_SIZE = 8;
+
+	/**
+	 * Number of floats per batched quad.
+	 */
+	private static final int QUAD_SIZE = VERTEX_SIZE * 4;
+
+	/**
+	 * Maximum number of quads collected before they are drawn.
+	 */
+	private static final int MAX_QUADS = 512;
+
+	/**
+	 * The OpenGL Object
+	 */
 	private IOpenGL gl;
 
+	/**
+	 * The OpenGL object handed out to custom rendering code.
+	 */
+	private final IOpenGL flushingGL;
+
+	/**
+	 * Vertex data of the quads that have not been drawn yet.
+	 */
+	private final float[] batch = new float[MAX_QUADS * QUAD_SIZE];
+
+	/**
+	 * Direct copy of <code>batch</code> passed to OpenGL.
+	 */
+	private FloatBuffer batchBuffer = null;
+
+	/**
+	 * Number of quads in <code>batch</code>.
+	 */
+	private int batchQuads = 0;
+
+	/**
+	 * Texture bound for the pending quads or <code>null</code> if they
+	 * are not textured.
+	 */
+	private ITexture batchTexture = null;
+
+	/**
+	 * Draw the quads collected so far after every primitive.
+	 */
+	private boolean batching = true;
+
+	/**
+	 * Whether the texture environment is known to be in modulate mode.
+	 */
+	private boolean modulate = false;
+
+	/**
+	 * The current pen colour. It is only valid if <code>colorKnown</code>
+	 * is set and has only been passed on to OpenGL if <code>colorApplied</code>
+	 * is set.
+	 */
+	private float red = 1, green = 1, blue = 1, alpha = 1;
+	private boolean colorKnown = false;
+	private boolean colorApplied = false;
+
 	/**
 	 * The current font we are rendering with.
 	 */
@@ -91,6 +164,205 @@ public class Graphics
 	public Graphics(IOpenGL gl)
 	{
 		this.gl = gl;
+		flushingGL = new BatchFlushingOpenGL(gl, this);
+	}
+
+	/**
+	 * Returns whether quads are collected and drawn together.
+	 * 
+	 * @return true if batching is enabled
+	 */
+	public boolean isBatching()
+	{
+		return batching;
+	}
+
+	/**
+	 * Enables or disables batching. If disabled every rectangle, image and
+	 * glyph is drawn by its own call, which makes it easier to follow the
+	 * rendering in a debugger.
+	 * 
+	 * @param batching true to collect quads, false to draw them one by one
+	 */
+	public void setBatching(boolean batching)
+	{
+		flush();
+		this.batching = batching;
+	}
+
+	/**
+	 * Draws all quads that have been collected since the last state change.
+	 * The current colour is undefined afterwards and texturing is disabled
+	 * if the quads were textured.
+	 */
+	public void flush()
+	{
+		if (batchQuads == 0)
+			return;
+
+		if (batchBuffer == null)
+		{
+			batchBuffer = ByteBuffer.allocateDirect(batch.length * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+		}
+
+		batchBuffer.clear();
+		batchBuffer.put(batch, 0, batchQuads * QUAD_SIZE);
+		batchBuffer.flip();
+
+		gl.drawQuads(batchBuffer, batchQuads);
+
+		batchQuads = 0;
+		colorApplied = false;
+
+		if (batchTexture != null)
+		{
+			gl.enableTexture2D(false);
+			batchTexture = null;
+		}
+	}
+
+	/**
+	 * Draws the pending quads and passes the pen colour on to OpenGL so
+	 * that immediate mode primitives can follow.
+	 */
+	void sync()
+	{
+		flush();
+
+		if (colorKnown && !colorApplied)
+		{
+			gl.color(red, green, blue, alpha);
+			colorApplied = true;
+		}
+	}
+
+	/**
+	 * Called when the colour has been set through the OpenGL object.
+	 */
+	void colorSet(float red, float green, float blue, float alpha)
+	{
+		this.red = red;
+		this.green = green;
+		this.blue = blue;
+		this.alpha = alpha;
+		colorKnown = true;
+		colorApplied = true;
+	}
+
+	/**
+	 * Called when the texture environment has been set through the
+	 * OpenGL object.
+	 */
+	void texEnvModeSet(boolean modulate)
+	{
+		this.modulate = modulate;
+	}
+
+	/**
+	 * Called after the attributes have been restored through the OpenGL
+	 * object, which leaves the colour and texture environment unknown.
+	 */
+	void attribsPopped()
+	{
+		colorKnown = false;
+		modulate = false;
+	}
+
+	/**
+	 * Prepares the batch for another quad with the given texture. Pending
+	 * quads of a different texture are drawn first.
+	 * 
+	 * @param tex the texture or <code>null</code> for a plain quad
+	 * @param needsModulate whether the texture is blended with the colour
+	 */
+	private void beginQuad(ITexture tex, boolean needsModulate)
+	{
+		if (!colorKnown)
+		{
+			float[] c = gl.getFloat(Attribute.CURRENT_COLOR);
+
+			if (c != null)
+				colorSet(c[0], c[1], c[2], c[3]);
+			else
+				colorSet(1, 1, 1, 1);
+		}
+
+		if (batchQuads == MAX_QUADS || (batchQuads > 0 && batchTexture != tex))
+		{
+			flush();
+		}
+
+		if (tex != null && needsModulate && !modulate)
+		{
+			flush();
+			gl.setTexEnvModeModulate();
+			modulate = true;
+		}
+
+		if (batchQuads == 0 && tex != null)
+		{
+			gl.enableTexture2D(true);
+			tex.bind();
+		}
+
+		batchTexture = tex;
+	}
+
+	/**
+	 * Appends a vertex in the current colour to the quad being built.
+	 */
+	private int putVertex(int i, float x, float y, float s, float t)
+	{
+		return putVertex(i, x, y, s, t, red, green, blue, alpha);
+	}
+
+	/**
+	 * Appends a vertex to the quad being built.
+	 */
+	private int putVertex(int i, float x, float y, float s, float t, float r, float g, float b, float a)
+	{
+		final float[] batch = this.batch;
+
+		batch[i] = x;
+		batch[i + 1] = y;
+		batch[i + 2] = s;
+		batch[i + 3] = t;
+		batch[i + 4] = r;
+		batch[i + 5] = g;
+		batch[i + 6] = b;
+		batch[i + 7] = a;
+
+		return i + VERTEX_SIZE;
+	}
+
+	/**
+	 * Appends a textured quad in the current colour. The texture coordinates
+	 * are mapped the same way for all images: (startX, endY) at the lower
+	 * left corner, (endX, startY) at the upper right corner.
+	 */
+	private void putQuad(float x1, float y1, float x2, float y2, float startX, float startY, float endX, float endY)
+	{
+		int i = batchQuads * QUAD_SIZE;
+
+		i = putVertex(i, x1, y1, startX, endY);
+		i = putVertex(i, x1, y2, startX, startY);
+		i = putVertex(i, x2, y2, endX, startY);
+		putVertex(i, x2, y1, endX, endY);
+
+		endQuad();
+	}
+
+	/**
+	 * Completes the quad being built.
+	 */
+	private void endQuad()
+	{
+		batchQuads++;
+
+		if (!batching)
+		{
+			flush();
+		}
 	}
 
 	/**
@@ -115,12 +387,14 @@ public class Graphics
 		// setup the clip space rectangle that we keep in the Graphics instance 
 		clipSpace.set(x, y, width, height);
 
+		flush();
 		gl.setScissor(x, width, y, height);
 	}
 
 	public void resetClipSpace()
 	{
 		clipSpace.set(0, 0, 10000, 10000);
+		flush();
 		gl.setScissor(clipSpace.getX(), clipSpace.getWidth(), clipSpace.getY(), clipSpace.getHeight());
 	}
 
@@ -141,13 +415,8 @@ public class Graphics
 		x += offset.getX();
 		y += offset.getY();
 
-		gl.startQuads();
-		gl.vertex(x, y);
-		gl.vertex(x, y + height);
-		gl.vertex(x + width, y + height);
-		gl.vertex(x + width, y);
-		gl.end();
-
+		beginQuad(null, false);
+		putQuad(x, y, x + width, y + height, 0, 0, 0, 0);
 	}
 
 	/**
@@ -176,7 +445,8 @@ public class Graphics
 	 */
 	public IOpenGL getOpenGL()
 	{
-		return gl;
+		sync();
+		return flushingGL;
 	}
 
 	/**
@@ -195,60 +465,32 @@ public class Graphics
 	{
 
 		// sanity check (johannes)
-		if (text == null)
+		if (text == null || text.length() == 0)
 			return;
 
 		x += offset.getX();
 		y += offset.getY();
 
-		gl.enableTexture2D(true);
+		CharacterPixmap pixmap = getFont().getCharPixMap(text.charAt(0));
 
-		CharacterPixmap pixmap = null;
+		// all glyphs are expected to share the texture of the first one
+		final ITexture tex = pixmap.getTexture();
+		final boolean hasAlpha = tex.hasAlpha();
 
 		for (int i = 0; i < text.length(); i++)
 		{
-			pixmap = getFont().getCharPixMap(text.charAt(i));
-
-			if (i == 0)
+			if (i > 0)
 			{
-				ITexture tex = pixmap.getTexture();
-
-				if (tex.hasAlpha())
-				{
-					gl.setTexEnvModeModulate();
-				}
-
-				tex.bind();
-				gl.startQuads();
+				pixmap = getFont().getCharPixMap(text.charAt(i));
 			}
 
-			final int imgWidth = pixmap.getWidth();
-			final int imgHeight = pixmap.getHeight();
-
-			final float endY = pixmap.getEndY();
-			final float endX = pixmap.getEndX();
+			beginQuad(tex, hasAlpha);
 
-			final float startX = pixmap.getStartX();
-			final float startY = pixmap.getStartY();
-
-			gl.texCoord(startX, endY);
-			gl.vertex(x, y);
-
-			gl.texCoord(startX, startY);
-			gl.vertex(x, imgHeight + y);
-
-			gl.texCoord(endX, startY);
-			gl.vertex(imgWidth + x, imgHeight + y);
-
-			gl.texCoord(endX, endY);
-			gl.vertex(imgWidth + x, y);
+			putQuad(x, y, x + pixmap.getWidth(), y + pixmap.getHeight(), pixmap.getStartX(), pixmap.getStartY(), pixmap
+					.getEndX(), pixmap.getEndY());
 
 			x += pixmap.getCharWidth();
 		}
-		gl.end();
-		// gl.translate(0,0,-0.1f);
-		gl.enableTexture2D(false);
-		// gl.translateXY(-offset.getX(), -offset.getY());    	
 	}
 
 	/**
@@ -269,10 +511,12 @@ public class Graphics
 	{
 		x += offset.getX();
 		y += offset.getY();
+		flush();
 		gl.pushMatrix();
 		gl.translateXY(x, y);
 		gl.rotate(angle);
 		drawString(text, -offset.getX(), -offset.getY());
+		flush();
 		gl.popMatrix();
 	}
 
@@ -290,8 +534,6 @@ public class Graphics
 		x += offset.getX();
 		y += offset.getY();
 
-		gl.enableTexture2D(true);
-
 		ITexture tex = pixmap.getTexture();
 
 		/*
@@ -305,35 +547,9 @@ public class Graphics
 			throw new NullPointerException("pixmap " + pixmap + " has no texture! pixmap.getTexture() == null");
 		}
 
-		if (tex.hasAlpha())
-		{
-			gl.setTexEnvModeModulate();
-		}
-		tex.bind();
-
-		gl.startQuads();
-
-		final float endY = pixmap.getEndY();
-		final float endX = pixmap.getEndX();
-
-		final float startX = pixmap.getStartX();
-		final float startY = pixmap.getStartY();
-
-		gl.texCoord(startX, endY);
-		gl.vertex(x, y);
-
-		gl.texCoord(startX, startY);
-		gl.vertex(x, imgHeight + y);
-
-		gl.texCoord(endX, startY);
-		gl.vertex(imgWidth + x, imgHeight + y);
-
-		gl.texCoord(endX, endY);
-		gl.vertex(imgWidth + x, y);
-
-		gl.end();
-		// gl.translate(0,0,-0.1f);
-		gl.enableTexture2D(false);
+		beginQuad(tex, tex.hasAlpha());
+		putQuad(x, y, x + imgWidth, y + imgHeight, pixmap.getStartX(), pixmap.getStartY(), pixmap.getEndX(), pixmap
+				.getEndY());
 	}
 
 	public void drawImage(Pixmap pixmap, int x, int y)
@@ -341,8 +557,6 @@ public class Graphics
 		x += offset.getX();
 		y += offset.getY();
 
-		gl.enableTexture2D(true);
-
 		ITexture tex = pixmap.getTexture();
 
 		if (tex == null)
@@ -350,39 +564,9 @@ public class Graphics
 			throw new NullPointerException("pixmap " + pixmap + " has no texture! pixmap.getTexture() == null");
 		}
 
-		if (tex.hasAlpha())
-		{
-			gl.setTexEnvModeModulate();
-		}
-
-		tex.bind();
-
-		gl.startQuads();
-
-		final int imgWidth = pixmap.getWidth();
-		final int imgHeight = pixmap.getHeight();
-
-		final float endY = pixmap.getEndY();
-		final float endX = pixmap.getEndX();
-
-		final float startX = pixmap.getStartX();
-		final float startY = pixmap.getStartY();
-
-		gl.texCoord(startX, endY);
-		gl.vertex(x, y);
-
-		gl.texCoord(startX, startY);
-		gl.vertex(x, imgHeight + y);
-
-		gl.texCoord(endX, startY);
-		gl.vertex(imgWidth + x, imgHeight + y);
-
-		gl.texCoord(endX, endY);
-		gl.vertex(imgWidth + x, y);
-		gl.end();
-		// gl.translate(0,0,-0.1f);
-		gl.enableTexture2D(false);
-		// gl.translateXY(-offset.getX(), -offset.getY());
+		beginQuad(tex, tex.hasAlpha());
+		putQuad(x, y, x + pixmap.getWidth(), y + pixmap.getHeight(), pixmap.getStartX(), pixmap.getStartY(), pixmap
+				.getEndX(), pixmap.getEndY());
 	}
 
 	/**
@@ -400,38 +584,14 @@ public class Graphics
 		x += offset.getX();
 		y += offset.getY();
 
-		gl.enableTexture2D(true);
-
-		gl.setTexEnvModeModulate();
-
-		tex.bind();
-
-		gl.startQuads();
-
 		int imgWidth = tex.getImageWidth();
 		int imgHeight = tex.getImageHeight();
 
 		float endY = (float) imgHeight / (float) tex.getTextureHeight();
 		float endX = (float) imgWidth / (float) tex.getTextureWidth();
-		float startX = 0;
-		float startY = 0;
-
-		gl.texCoord(startX, endY);
-		gl.vertex(x, y);
-
-		gl.texCoord(startX, startY);
-		gl.vertex(x, imgHeight + y);
-
-		gl.texCoord(endX, startY);
-		gl.vertex(imgWidth + x, imgHeight + y);
-
-		gl.texCoord(endX, endY);
-		gl.vertex(imgWidth + x, y);
-		gl.end();
-		// gl.translate(0,0,-0.1f);
-		gl.enableTexture2D(false);
-		// gl.translateXY(-offset.getX(), -offset.getY());
 
+		beginQuad(tex, true);
+		putQuad(x, y, x + imgWidth, y + imgHeight, 0, 0, endX, endY);
 	}
 
 	/**
@@ -465,16 +625,7 @@ public class Graphics
 		    return;
 		}
 		 */
-		gl.enableTexture2D(true);
-
-		if (tex.hasAlpha())
-		{
-			gl.setTexEnvModeModulate();
-		}
-
-		tex.bind();
-
-		gl.startQuads();
+		beginQuad(tex, tex.hasAlpha());
 
 		// texture positions
 		float startY = 0.0f; // top
@@ -513,20 +664,7 @@ public class Graphics
 			startY = (float) (height - rHeight) / (float) height;
 		}
 
-		gl.texCoord(startX, endY);
-		gl.vertex(x, y);
-
-		gl.texCoord(startX, startY);
-		gl.vertex(x, rHeight + y);
-
-		gl.texCoord(endX, startY);
-		gl.vertex(rWidth + x, rHeight + y);
-
-		gl.texCoord(endX, endY);
-		gl.vertex(rWidth + x, y);
-		gl.end();
-		gl.enableTexture2D(false);
-
+		putQuad(x, y, x + rWidth, y + rHeight, startX, startY, endX, endY);
 	}
 
 	/**
@@ -536,7 +674,7 @@ public class Graphics
 	 */
 	public void setColor(Color c)
 	{
-		gl.color(c.getRed(), c.getGreen(), c.getBlue(), c.getAlpha());
+		setColor(c.getRed(), c.getGreen(), c.getBlue(), c.getAlpha());
 	}
 
 	/**
@@ -548,7 +686,7 @@ public class Graphics
 	 */
 	public void setColor(float red, float green, float blue)
 	{
-		gl.color(red, green, blue, 1);
+		setColor(red, green, blue, 1);
 	}
 
 	/**
@@ -561,7 +699,13 @@ public class Graphics
 	 */
 	public void setColor(float red, float green, float blue, float alpha)
 	{
-		gl.color(red, green, blue, alpha);
+		// only recorded here, batched quads carry their colour per vertex
+		this.red = red;
+		this.green = green;
+		this.blue = blue;
+		this.alpha = alpha;
+		colorKnown = true;
+		colorApplied = false;
 	}
 
 	/**
@@ -624,6 +768,7 @@ public class Graphics
 		x2 += offset.getX();
 		y2 += offset.getY();
 
+		sync();
 		gl.startLines();
 		gl.vertex(x1, y1);
 		gl.vertex(x2, y2);
@@ -681,6 +826,7 @@ public class Graphics
 		x3 += offset.getX();
 		y3 += offset.getY();
 
+		sync();
 		gl.startTriangles();
 		gl.vertex(x3, y3);
 		gl.vertex(x2, y2);
@@ -727,26 +873,26 @@ public class Graphics
 		x += offset.getX();
 		y += offset.getY();
 
-		gl.startQuads();
+		beginQuad(null, false);
+
+		int i = batchQuads * QUAD_SIZE;
 
 		// lower left corner
-		gl.color(c1.getRed(), c1.getGreen(), c1.getBlue(), c1.getAlpha());
-		gl.vertex(x, y);
+		i = putVertex(i, x, y, 0, 0, c1.getRed(), c1.getGreen(), c1.getBlue(), c1.getAlpha());
 
 		// upper left corner
-		gl.color(c4.getRed(), c4.getGreen(), c4.getBlue(), c4.getAlpha());
-		gl.vertex(x, y + height);
+		i = putVertex(i, x, y + height, 0, 0, c4.getRed(), c4.getGreen(), c4.getBlue(), c4.getAlpha());
 
 		// upper right corner
-		gl.color(c3.getRed(), c3.getGreen(), c3.getBlue(), c3.getAlpha());
-		gl.vertex(x + width, y + height);
+		i = putVertex(i, x + width, y + height, 0, 0, c3.getRed(), c3.getGreen(), c3.getBlue(), c3.getAlpha());
 
 		// lower right corner
-		gl.color(c2.getRed(), c2.getGreen(), c2.getBlue(), c2.getAlpha());
-		gl.vertex(x + width, y);
+		putVertex(i, x + width, y, 0, 0, c2.getRed(), c2.getGreen(), c2.getBlue(), c2.getAlpha());
 
-		gl.end();
+		endQuad();
 
+		// immediate mode left the colour of the last corner behind
+		setColor(c2);
 	}
 
 	/**
@@ -770,6 +916,7 @@ public class Graphics
 		y += offset.getY();
 
 		setColor(bright);
+		sync();
 
 		// @todo: gl.startLineLoop would be better, but probs with blending#
 		gl.startLines();
@@ -781,6 +928,7 @@ public class Graphics
 		gl.vertex(x + width, y + height);
 
 		setColor(dark);
+		sync();
 
 		gl.vertex(x + width + 1, y + height);
 		gl.vertex(x, y + height);
@@ -809,6 +957,7 @@ public class Graphics
 
 		// should be light between 135 (3*pi/4) and 305 (-pi/4) degrees
 		setColor(light);
+		sync();
 
 		gl.startLineLoop();
 
@@ -861,6 +1010,7 @@ public class Graphics
 		x += offset.getX();
 		y += offset.getY();
 
+		sync();
 		gl.startLineLoop();
 
 		for (double d = a1; d <= a2; d += step)
@@ -0,0 +1,148 @@
+/*
+ * FengGUI - Java GUIs in OpenGL (http://www.fenggui.org)
+ * 
+ * Copyright (c) 2005, 2006 FengGUI Project
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details:
+ * http://www.gnu.org/copyleft/lesser.html#TOC3
+ * 
+ * $Id: IOpenGL.java 520 2008-05-05 15:10:32Z marcmenghin $
+ */
+package org.fenggui.binding.render;
+
+import java.nio.FloatBuffer;
+import java.util.Hashtable;
+
+import org.fenggui.binding.render.dummy.DummyOpenGL;
+import org.fenggui.binding.render.dummy.DummyTexture;
+import org.fenggui.util.CharacterPixmap;
+import org.fenggui.util.Color;
+
+/**
+ * Counts the draw calls <code>Graphics</code> issues for a typical frame of
+ * clipped widgets with backgrounds, bevels, icons and text, once with
+ * batching disabled (one call per quad, as immediate mode rendering did)
+ * and once with batching enabled. The OpenGL calls go to a
+ * <code>DummyOpenGL</code>, so the timings only show the CPU side cost.
+ * <p>
+ * Usage: <code>GraphicsBenchmark [frames]</code>
+ */
+public class GraphicsBenchmark
+{
+	private static final int WIDGETS = 20;
+	private static final int ROWS = 8;
+
+	public static void main(String[] args)
+	{
+		int frames = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+
+		ITexture icons = new DummyTexture();
+		ImageFont font = createFont(new DummyTexture());
+		Pixmap icon = new Pixmap(icons, 0, 0, 16, 16);
+
+		run(false, frames, font, icon);
+		run(true, frames, font, icon);
+	}
+
+	private static void run(boolean batching, int frames, ImageFont font, Pixmap icon)
+	{
+		CountingOpenGL gl = new CountingOpenGL();
+		Graphics g = new Graphics(gl);
+		g.setBatching(batching);
+		g.setFont(font);
+
+		// warm up
+		for (int i = 0; i < frames / 10; i++)
+		{
+			drawFrame(g, icon);
+		}
+
+		gl.immediateCalls = 0;
+		gl.arrayCalls = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < frames; i++)
+		{
+			drawFrame(g, icon);
+		}
+		long nanos = System.nanoTime() - start;
+
+		System.out.println("batching " + (batching ? "on: " : "off:") + " " + gl.immediateCalls / frames
+				+ " immediate + " + gl.arrayCalls / frames + " array draw calls per frame, " + nanos / frames / 1000
+				+ " us per frame");
+	}
+
+	private static void drawFrame(Graphics g, Pixmap icon)
+	{
+		IOpenGL gl = g.getOpenGL();
+		gl.pushAllAttribs();
+		g.resetTransformations();
+
+		for (int w = 0; w < WIDGETS; w++)
+		{
+			int x = (w % 5) * 150;
+			int y = (w / 5) * 150;
+
+			g.setClipSpace(x, y, 140, 140);
+			g.drawBlendedFilledRect(x, y, 140, 140, Color.WHITE, Color.WHITE, Color.LIGHT_GRAY, Color.LIGHT_GRAY);
+			g.drawBevelRectangle(x, y, 140, 140, Color.WHITE, Color.DARK_GRAY);
+
+			for (int r = 0; r < ROWS; r++)
+			{
+				int rowY = y + 4 + r * 16;
+
+				g.setColor(r % 2 == 0 ? Color.WHITE : Color.LIGHT_GRAY);
+				g.drawFilledRectangle(x + 2, rowY, 136, 16);
+				g.setColor(Color.WHITE);
+				g.drawImage(icon, x + 4, rowY);
+				g.setColor(Color.BLACK);
+				g.drawString("Item number " + r, x + 24, rowY);
+			}
+		}
+
+		g.resetClipSpace();
+		gl.popAllAttribs();
+	}
+
+	private static ImageFont createFont(ITexture texture)
+	{
+		Hashtable<Character, CharacterPixmap> chars = new Hashtable<Character, CharacterPixmap>();
+
+		for (char c = 32; c < 127; c++)
+		{
+			int x = (c - 32) % 16 * 8;
+			int y = (c - 32) / 16 * 12;
+			chars.put(c, new CharacterPixmap(texture, x, y, 8, 12, c, 7));
+		}
+
+		return new ImageFont(null, chars, 12);
+	}
+
+	/**
+	 * Counts immediate mode primitives and vertex array draw calls.
+	 */
+	private static class CountingOpenGL extends DummyOpenGL
+	{
+		private long immediateCalls = 0;
+		private long arrayCalls = 0;
+
+		@Override
+		public void end()
+		{
+			immediateCalls++;
+		}
+
+		@Override
+		public void drawQuads(FloatBuffer vertices, int quadCount)
+		{
+			arrayCalls++;
+		}
+	}
+}
@@ -19,6 +19,7 @@
 package org.fenggui.binding.render;
 
 import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
 
 
 /**
@@ -95,6 +96,17 @@ public interface IOpenGL {
     public void startTriangleFan();
     public void startQuadStrip();
     public void startPoints();
+
+    /**
+     * Draws a number of quads from an interleaved vertex array in one call.
+     * Every vertex consists of eight floats: x, y, s, t, red, green, blue
+     * and alpha. Texture coordinates are only used if texturing is enabled.
+     * The current color is undefined afterwards.
+     * 
+     * @param vertices the vertex data, starting at position zero
+     * @param quadCount the number of quads (four vertices each) to draw
+     */
+    public void drawQuads(FloatBuffer vertices, int quadCount);
     
     public void vertex(float x, float y);
     public void rect(float x1, float y1, float x2, float y2);
@@ -1,6 +1,7 @@
 package org.fenggui.binding.render.dummy;
 
 import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
 
 import org.fenggui.binding.render.IOpenGL;
 
@@ -88,6 +89,11 @@ public class DummyOpenGL implements IOpenGL {
 		
 	}
 
+	public void drawQuads(FloatBuffer vertices, int quadCount) {
+		// does nothing! It's a dummy implementation
+		
+	}
+
 	public void startQuads() {
 		// does nothing! It's a dummy implementation
 		
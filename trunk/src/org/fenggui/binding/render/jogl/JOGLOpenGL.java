@@ -36,9 +36,20 @@ import org.fenggui.binding.render.IOpenGL;
 public class JOGLOpenGL implements IOpenGL
 {
 
+	/**
+	 * Size of one interleaved vertex passed to <code>drawQuads</code> in bytes.
+	 */
+	private static final int QUAD_VERTEX_STRIDE = 8 * 4;
+
 	private GL gl;
 	private GLU glu;
 
+	/**
+	 * Number of texture units whose coordinate arrays have to be switched
+	 * off while drawing quads, queried on first use.
+	 */
+	private int textureUnits = 0;
+
 	/**
 	 * Creates a new <code>JOGLOpenGL</code> instance.
 	 * @param gl the JOGL binding
@@ -258,6 +269,52 @@ public class JOGLOpenGL implements IOpenGL
 		gl.glEnd();
 	}
 
+	public void drawQuads(FloatBuffer vertices, int quadCount)
+	{
+		gl.glPushClientAttrib(GL_CLIENT_VERTEX_ARRAY_BIT);
+
+		// client side arrays are only read while no vertex buffer is bound
+		if (gl.isExtensionAvailable("GL_ARB_vertex_buffer_object"))
+		{
+			gl.glBindBufferARB(GL_ARRAY_BUFFER_ARB, 0);
+		}
+
+		// the host application may have left arrays enabled that we do not feed
+		if (gl.isFunctionAvailable("glClientActiveTexture"))
+		{
+			if (textureUnits == 0)
+			{
+				int[] units = new int[1];
+				gl.glGetIntegerv(GL_MAX_TEXTURE_UNITS, units, 0);
+				textureUnits = Math.max(1, units[0]);
+			}
+
+			for (int i = 1; i < textureUnits; i++)
+			{
+				gl.glClientActiveTexture(GL_TEXTURE0 + i);
+				gl.glDisableClientState(GL_TEXTURE_COORD_ARRAY);
+			}
+			gl.glClientActiveTexture(GL_TEXTURE0);
+		}
+		gl.glDisableClientState(GL_NORMAL_ARRAY);
+
+		gl.glEnableClientState(GL_VERTEX_ARRAY);
+		gl.glEnableClientState(GL_TEXTURE_COORD_ARRAY);
+		gl.glEnableClientState(GL_COLOR_ARRAY);
+
+		vertices.position(0);
+		gl.glVertexPointer(2, GL_FLOAT, QUAD_VERTEX_STRIDE, vertices);
+		vertices.position(2);
+		gl.glTexCoordPointer(2, GL_FLOAT, QUAD_VERTEX_STRIDE, vertices);
+		vertices.position(4);
+		gl.glColorPointer(4, GL_FLOAT, QUAD_VERTEX_STRIDE, vertices);
+		vertices.position(0);
+
+		gl.glDrawArrays(GL_QUADS, 0, quadCount * 4);
+
+		gl.glPopClientAttrib();
+	}
+
 	public int genLists(int range)
 	{
 		return gl.glGenLists(range);
@@ -26,9 +26,13 @@ import java.nio.IntBuffer;
 import org.fenggui.binding.render.IOpenGL;
 import org.fenggui.binding.render.IOpenGL.Attribute;
 import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.ARBBufferObject;
+import org.lwjgl.opengl.ARBVertexBufferObject;
+import org.lwjgl.opengl.ContextCapabilities;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL12;
 import org.lwjgl.opengl.GL13;
+import org.lwjgl.opengl.GLContext;
 import org.lwjgl.util.glu.GLU;
 
 
@@ -38,6 +42,16 @@ import org.lwjgl.util.glu.GLU;
  */
 public class LWJGLOpenGL implements IOpenGL
 {
+	/**
+	 * Size of one interleaved vertex passed to <code>drawQuads</code> in bytes.
+	 */
+	private static final int QUAD_VERTEX_STRIDE = 8 * 4;
+
+	/**
+	 * Number of texture units whose coordinate arrays have to be switched
+	 * off while drawing quads, queried on first use.
+	 */
+	private int textureUnits = 0;
 
 	/**
 	 * 
@@ -216,6 +230,54 @@ public class LWJGLOpenGL implements IOpenGL
 		GL11.glEnd();
 	}
 
+	public void drawQuads(FloatBuffer vertices, int quadCount)
+	{
+		ContextCapabilities caps = GLContext.getCapabilities();
+
+		GL11.glPushClientAttrib(GL11.GL_CLIENT_VERTEX_ARRAY_BIT);
+
+		// client side arrays are only read while no vertex buffer is bound
+		if (caps.GL_ARB_vertex_buffer_object)
+		{
+			ARBBufferObject.glBindBufferARB(ARBVertexBufferObject.GL_ARRAY_BUFFER_ARB, 0);
+		}
+
+		// the host application may have left arrays enabled that we do not feed
+		if (caps.OpenGL13)
+		{
+			if (textureUnits == 0)
+			{
+				IntBuffer buf = BufferUtils.createIntBuffer(16);
+				GL11.glGetInteger(GL13.GL_MAX_TEXTURE_UNITS, buf);
+				textureUnits = Math.max(1, buf.get(0));
+			}
+
+			for (int i = 1; i < textureUnits; i++)
+			{
+				GL13.glClientActiveTexture(GL13.GL_TEXTURE0 + i);
+				GL11.glDisableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+			}
+			GL13.glClientActiveTexture(GL13.GL_TEXTURE0);
+		}
+		GL11.glDisableClientState(GL11.GL_NORMAL_ARRAY);
+
+		GL11.glEnableClientState(GL11.GL_VERTEX_ARRAY);
+		GL11.glEnableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+		GL11.glEnableClientState(GL11.GL_COLOR_ARRAY);
+
+		vertices.position(0);
+		GL11.glVertexPointer(2, QUAD_VERTEX_STRIDE, vertices);
+		vertices.position(2);
+		GL11.glTexCoordPointer(2, QUAD_VERTEX_STRIDE, vertices);
+		vertices.position(4);
+		GL11.glColorPointer(4, QUAD_VERTEX_STRIDE, vertices);
+		vertices.position(0);
+
+		GL11.glDrawArrays(GL11.GL_QUADS, 0, quadCount * 4);
+
+		GL11.glPopClientAttrib();
+	}
+
 	public int genLists(int range)
 	{
 		return GL11.glGenLists(range);
@@ -41,6 +41,7 @@ import org.odejava.ode.SWIGTYPE_p_float;
  */
 public class GeomBox extends PlaceableGeom {
 
+    private final Vector3f size = new Vector3f();
 
     /**
      * Create box geometry to specific space.
@@ -56,6 +57,7 @@ public class GeomBox extends PlaceableGeom {
 
         spaceId = Ode.getPARENTSPACEID_ZERO();
         geomId = Ode.dCreateBox( spaceId, sizeX, sizeY, sizeZ );
+        size.set( sizeX, sizeY, sizeZ );
 
         retrieveNativeAddr();
 
@@ -74,6 +76,10 @@ public class GeomBox extends PlaceableGeom {
     }
 
     public void setSize( Vector3f size ) {
+        if ( this.size.equals( size ) ) {
+            return;
+        }
+        this.size.set( size );
         Ode.dGeomBoxSetLengths( geomId, size.x, size.y, size.z );
     }
 }
@@ -83,11 +83,17 @@ public class GeomCapsule extends PlaceableGeom {
     }
 
     public void setRadius( float radius ) {
+        if ( this.radius == radius ) {
+            return;
+        }
         this.radius = radius;
         Ode.dGeomCapsuleSetParams( geomId, radius, length );
     }
 
     public void setLength( float length ) {
+        if ( this.length == length ) {
+            return;
+        }
         this.length = length;
         Ode.dGeomCapsuleSetParams( geomId, radius, length );
     }
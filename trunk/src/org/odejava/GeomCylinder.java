@@ -81,11 +81,17 @@ public class GeomCylinder extends PlaceableGeom {
     }
 
     public void setRadius( float radius ) {
+        if ( this.radius == radius ) {
+            return;
+        }
         this.radius = radius;
         Ode.dGeomCylinderSetParams( geomId, radius, length );
     }
 
     public void setLength( float length ) {
+        if ( this.length == length ) {
+            return;
+        }
         this.length = length;
         Ode.dGeomCylinderSetParams( geomId, radius, length );
     }
@@ -39,6 +39,8 @@ import org.odejava.ode.Ode;
  */
 public class GeomSphere extends PlaceableGeom {
 
+    private float radius;
+
     /**
      * Create sphere geometry to specific space.
      *
@@ -51,11 +53,16 @@ public class GeomSphere extends PlaceableGeom {
         super( name );
         spaceId = Ode.getPARENTSPACEID_ZERO();
         geomId = Ode.dCreateSphere( spaceId, radius );
+        this.radius = radius;
 
         retrieveNativeAddr();
     }
 
     public void setRadius( float radius ) {
+        if ( this.radius == radius ) {
+            return;
+        }
+        this.radius = radius;
         Ode.dGeomSphereSetRadius( geomId, radius );
     }
 
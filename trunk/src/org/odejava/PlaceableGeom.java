@@ -56,6 +56,11 @@ public abstract class PlaceableGeom extends Geom implements Placeable {
     private boolean fixed = true;
     private SWIGTYPE_p_float float4Array;
 
+    // last values handed to ODE, used to skip redundant updates while no body moves this geom
+    private final Vector3f appliedPosition = new Vector3f();
+    private final Quaternion appliedQuaternion = new Quaternion();
+    private boolean positionApplied, quaternionApplied;
+
     /**
      * Calls the super constructor
      *
@@ -71,6 +76,14 @@ public abstract class PlaceableGeom extends Geom implements Placeable {
      * @param position to set
      */
     public void setPosition( Vector3f position ) {
+        if ( body == null ) {
+            // a geom without a body is only moved by us - don't dirty the space if nothing changed
+            if ( positionApplied && appliedPosition.equals( position ) ) {
+                return;
+            }
+            appliedPosition.set( position );
+            positionApplied = true;
+        }
 
         //Odejava.odeLog.debug("dGeomSetPosition(geomId: " + geomId + ", x, z y)");
         Ode.dGeomSetPosition( geomId, position.x, position.y, position.z );
@@ -90,6 +103,13 @@ public abstract class PlaceableGeom extends Geom implements Placeable {
      * @param quaternion the rotation quaternion to use
      */
     public void setQuaternion( Quaternion quaternion ) {
+        if ( body == null ) {
+            if ( quaternionApplied && appliedQuaternion.equals( quaternion ) ) {
+                return;
+            }
+            appliedQuaternion.set( quaternion );
+            quaternionApplied = true;
+        }
         if ( float4Array == null ) {
             float4Array = Ode.new_floatArray( 4 );
         }
@@ -108,6 +128,7 @@ public abstract class PlaceableGeom extends Geom implements Placeable {
      * @param r rotation matrix to use
      */
     public void setRotation( Matrix3f r ) {
+        quaternionApplied = false;
         SWIGTYPE_p_float tmpArray = Ode.new_floatArray( 12 );
         Ode.floatArray_setitem( tmpArray, 0, r.get( 0, 0 ) );
         Ode.floatArray_setitem( tmpArray, 1, r.get( 0, 1 ) );
@@ -133,6 +154,7 @@ public abstract class PlaceableGeom extends Geom implements Placeable {
      * @param angle angle component
      */
     public void setAxisAndAngle( float ax, float ay, float az, float angle ) {
+        quaternionApplied = false;
         SWIGTYPE_p_float tmpArray = Ode.new_floatArray( 4 );
 
         //Odejava.odeLog.debug("Ode.dQFromAxisAndAngle");
@@ -195,6 +217,7 @@ public abstract class PlaceableGeom extends Geom implements Placeable {
      * @param z Z coordinate
      */
     public void setPosition( float x, float y, float z ) {
+        positionApplied = false;
         Ode.dGeomSetPosition( geomId, x, y, z );
     }
 
@@ -315,6 +338,9 @@ public abstract class PlaceableGeom extends Geom implements Placeable {
 
 
         this.body = body;
+        // attaching or detaching a body moves the geom
+        positionApplied = false;
+        quaternionApplied = false;
 
         if ( body != null ) {
 